@@ -0,0 +1,64 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.benchmark;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Operations;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+
+/**
+ * Benchmarks of the aggregations.
+ *
+ * @author julien Gaffuri
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+
+	/** The approximate number of stats. */
+	@Param({"10000", "100000"})
+	public int size;
+
+	/** The share of the hypercube positions having a value. */
+	@Param({"0.3", "0.9"})
+	public double density;
+
+	private StatsHypercube hc;
+
+	@SuppressWarnings("javadoc")
+	@Setup(Level.Trial)
+	public void setup() {
+		this.hc = SyntheticData.generate(this.size, this.density);
+	}
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public Collection<Stat> sum() { return Operations.computeAggregation(this.hc, v -> { double s = 0; for(double d : v) s += d; return s; }, "d0", "TOTAL"); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public Collection<Stat> median() { return Operations.computeMedianDim(this.hc, "time", "MEDIAN"); }
+
+}
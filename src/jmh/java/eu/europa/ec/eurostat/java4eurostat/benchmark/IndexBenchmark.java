@@ -0,0 +1,83 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+
+/**
+ * Benchmarks of the index construction and single value retrieval.
+ *
+ * @author julien Gaffuri
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IndexBenchmark {
+
+	/** The approximate number of stats. */
+	@Param({"10000", "100000"})
+	public int size;
+
+	/** The share of the hypercube positions having a value. */
+	@Param({"0.3", "0.9"})
+	public double density;
+
+	/** The number of single value retrievals per lookup benchmark invocation. */
+	private static final int NB_LOOKUPS = 10000;
+
+	private StatsHypercube hc;
+	private StatsIndex index;
+	private String[] dimLabels;
+	private String[][] keys;
+
+	@SuppressWarnings("javadoc")
+	@Setup(Level.Trial)
+	public void setup() {
+		this.hc = SyntheticData.generate(this.size, this.density);
+		this.dimLabels = this.hc.getDimLabels();
+		this.index = new StatsIndex(this.hc, this.dimLabels);
+
+		//pick random existing positions
+		ArrayList<Stat> stats = new ArrayList<>(this.hc.stats);
+		Random rnd = new Random(1);
+		this.keys = new String[NB_LOOKUPS][];
+		for(int i=0; i<NB_LOOKUPS; i++) this.keys[i] = stats.get(rnd.nextInt(stats.size())).getDimValues(this.dimLabels);
+	}
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsIndex build() { return new StatsIndex(this.hc, this.dimLabels); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public double lookup() {
+		double sum = 0;
+		for(String[] key : this.keys) sum += this.index.getSingleValue(key);
+		return sum;
+	}
+
+}
@@ -0,0 +1,83 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import eu.europa.ec.eurostat.java4eurostat.io.EurostatTSV;
+import eu.europa.ec.eurostat.java4eurostat.io.JSONStat;
+
+/**
+ * Benchmarks of the data loading.
+ *
+ * @author julien Gaffuri
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+	/** The approximate number of stats. */
+	@Param({"10000", "100000"})
+	public int size;
+
+	/** The share of the hypercube positions having a value. */
+	@Param({"0.3", "0.9"})
+	public double density;
+
+	private File tsv, csv;
+	private String jsonStat;
+
+	@SuppressWarnings("javadoc")
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		this.tsv = File.createTempFile("j4e_bench", ".tsv");
+		SyntheticData.writeTSV(this.size, this.density, this.tsv);
+		this.csv = File.createTempFile("j4e_bench", ".csv");
+		SyntheticData.writeCSV(this.size, this.density, this.csv);
+		this.jsonStat = SyntheticData.toJSONStat(this.size, this.density);
+	}
+
+	@SuppressWarnings("javadoc")
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		this.tsv.delete();
+		this.csv.delete();
+	}
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsHypercube loadTSV() { return EurostatTSV.load(this.tsv.getPath()); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsHypercube loadCSV() { return CSV.load(this.csv.getPath(), "value"); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsHypercube loadJSONStat() { return JSONStat.load(this.jsonStat); }
+
+}
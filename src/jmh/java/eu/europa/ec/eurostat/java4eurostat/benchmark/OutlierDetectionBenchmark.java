@@ -0,0 +1,90 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.benchmark;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.EBTimeUtil;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.Outlier;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.OutlierDetection;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+
+/**
+ * Benchmarks of the outlier detection on monthly time series.
+ *
+ * @author julien Gaffuri
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OutlierDetectionBenchmark {
+
+	/** The number of months of the time series. */
+	@Param({"120", "600"})
+	public int length;
+
+	/** The share of the months having a value. */
+	@Param({"0.9", "1"})
+	public double density;
+
+	/** The number of series of the hypercube for the batch detection. */
+	private static final int NB_SERIES = 1000;
+
+	private StatsIndex series;
+	private StatsHypercube hc;
+
+	@SuppressWarnings("javadoc")
+	@Setup(Level.Trial)
+	public void setup() {
+		StatsHypercube hc = new StatsHypercube("time");
+		Random rnd = new Random(42);
+		for(int t=0; t<this.length; t++) {
+			if(rnd.nextDouble() >= this.density) continue;
+			double v = 100 + 10*Math.sin(t*Math.PI/6) + rnd.nextGaussian();
+			if(rnd.nextDouble() < 0.02) v += 30;
+			hc.stats.add(new Stat(v, "time", EBTimeUtil.getEBText(1970 + t/12, 1 + t%12)));
+		}
+		this.series = new StatsIndex(hc, "time");
+
+		this.hc = new StatsHypercube("geo", "time");
+		for(int g=0; g<NB_SERIES; g++)
+			for(int t=0; t<this.length; t++) {
+				if(rnd.nextDouble() >= this.density) continue;
+				double v = 100 + 10*Math.sin(t*Math.PI/6) + rnd.nextGaussian();
+				if(rnd.nextDouble() < 0.02) v += 30;
+				this.hc.stats.add(new Stat(v, "geo", "G" + g, "time", EBTimeUtil.getEBText(1970 + t/12, 1 + t%12)));
+			}
+	}
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public ArrayList<Outlier> detect() { return TimeSeriesUtil.performOutlierDetection(this.series, 6, "bench"); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public OutlierDetection detectBatch() { return TimeSeriesUtil.performOutlierDetection(this.hc, new String[] { "geo" }, 6); }
+
+}
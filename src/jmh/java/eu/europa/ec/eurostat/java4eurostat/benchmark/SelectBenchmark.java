@@ -0,0 +1,68 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+
+/**
+ * Benchmarks of the selections.
+ *
+ * @author julien Gaffuri
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectBenchmark {
+
+	/** The approximate number of stats. */
+	@Param({"10000", "100000"})
+	public int size;
+
+	/** The share of the hypercube positions having a value. */
+	@Param({"0.3", "0.9"})
+	public double density;
+
+	private StatsHypercube hc;
+
+	@SuppressWarnings("javadoc")
+	@Setup(Level.Trial)
+	public void setup() {
+		this.hc = SyntheticData.generate(this.size, this.density);
+	}
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsHypercube selectDimValueEqualTo() { return this.hc.selectDimValueEqualTo("d0", "v0"); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsHypercube selectValueGreaterThan() { return this.hc.selectValueGreaterThan(500); }
+
+	@SuppressWarnings("javadoc")
+	@Benchmark
+	public StatsHypercube selectAnd() { return this.hc.select(new And(new DimValueEqualTo("d1", "v1"), new ValueGreaterThan(500))); }
+
+}
@@ -0,0 +1,176 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.EBTimeUtil;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+
+/**
+ * Generation of synthetic hypercubes and files for the benchmarks.
+ *
+ * The hypercubes have some categorical dimensions (d0, d1, ...) and a monthly time dimension.
+ * Their size and sparsity are configurable.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class SyntheticData {
+
+	/** The number of categorical dimensions. */
+	public static final int NB_DIMS = 3;
+
+	/** The number of time periods. */
+	public static final int NB_TIMES = 24;
+
+	/** The seed of the random generator, so that the data are the same from one run to the other. */
+	private static final long SEED = 42;
+
+	/**
+	 * @param size The approximate number of stats.
+	 * @param density The share of the hypercube positions having a value, between 0 and 1.
+	 * @return The number of values of each categorical dimension.
+	 */
+	public static int getDimSize(int size, double density) {
+		double positions = size / density / NB_TIMES;
+		return Math.max(1, (int)Math.ceil(Math.pow(positions, 1.0 / NB_DIMS)));
+	}
+
+	/** @return The dimension labels. */
+	public static String[] getDimLabels() {
+		String[] out = new String[NB_DIMS];
+		for(int k=0; k<NB_DIMS; k++) out[k] = "d"+k;
+		return out;
+	}
+
+	/** @return The time periods. */
+	public static String[] getTimes() {
+		String[] out = new String[NB_TIMES];
+		for(int t=0; t<NB_TIMES; t++) out[t] = EBTimeUtil.getEBText(2000 + t/12, 1 + t%12);
+		return out;
+	}
+
+	/**
+	 * Generate a random hypercube.
+	 *
+	 * @param size The approximate number of stats.
+	 * @param density The share of the hypercube positions having a value, between 0 and 1.
+	 * @return
+	 */
+	public static StatsHypercube generate(int size, double density) {
+		String[] dimLabels = getDimLabels(), times = getTimes();
+		int dimSize = getDimSize(size, density);
+		StatsHypercube hc = new StatsHypercube(dimLabels);
+		hc.dimLabels.add("time");
+		Random rnd = new Random(SEED);
+		int[] coords = new int[NB_DIMS];
+		do {
+			for(String time : times) {
+				if(rnd.nextDouble() >= density) continue;
+				Stat s = new Stat();
+				s.value = Math.round(rnd.nextGaussian() * 1000 + 5000) / 10.0;
+				for(int k=0; k<NB_DIMS; k++) s.dims.put(dimLabels[k], "v"+coords[k]);
+				s.dims.put("time", time);
+				if(rnd.nextDouble() < 0.05) s.addAllFlags("p");
+				hc.stats.add(s);
+			}
+		} while(next(coords, dimSize));
+		return hc;
+	}
+
+	/** Move to the next position. Return false when all positions have been visited. */
+	private static boolean next(int[] coords, int dimSize) {
+		for(int k=coords.length-1; k>=0; k--) {
+			if(++coords[k] < dimSize) return true;
+			coords[k] = 0;
+		}
+		return false;
+	}
+
+	/**
+	 * Write a random hypercube as an Eurostat TSV file.
+	 *
+	 * @param size
+	 * @param density
+	 * @param file
+	 * @throws IOException
+	 */
+	public static void writeTSV(int size, double density, File file) throws IOException {
+		String[] dimLabels = getDimLabels(), times = getTimes();
+		int dimSize = getDimSize(size, density);
+		Random rnd = new Random(SEED);
+		StringBuilder sb = new StringBuilder();
+		sb.append(String.join(",", dimLabels)).append("\\time");
+		for(String time : times) sb.append('\t').append(time);
+		sb.append('\n');
+		int[] coords = new int[NB_DIMS];
+		do {
+			for(int k=0; k<NB_DIMS; k++) sb.append(k==0 ? "" : ",").append("v").append(coords[k]);
+			for(int t=0; t<times.length; t++) {
+				sb.append('\t');
+				if(rnd.nextDouble() >= density) { sb.append(": "); continue; }
+				sb.append(Math.round(rnd.nextGaussian() * 1000 + 5000) / 10.0);
+				sb.append(rnd.nextDouble() < 0.05 ? " p" : " ");
+			}
+			sb.append('\n');
+		} while(next(coords, dimSize));
+		Files.write(file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Write a random hypercube as a CSV file.
+	 *
+	 * @param size
+	 * @param density
+	 * @param file
+	 */
+	public static void writeCSV(int size, double density, File file) {
+		CSV.save(generate(size, density), "value", file.getPath());
+	}
+
+	/**
+	 * Build a random hypercube as a JSON-stat string.
+	 *
+	 * @param size
+	 * @param density
+	 * @return
+	 */
+	public static String toJSONStat(int size, double density) {
+		String[] dimLabels = getDimLabels(), times = getTimes();
+		int dimSize = getDimSize(size, density);
+		JSONObject obj = new JSONObject();
+		JSONArray id = new JSONArray(), sizes = new JSONArray();
+		JSONObject dimension = new JSONObject();
+		for(int k=0; k<=NB_DIMS; k++) {
+			String dimLabel = k<NB_DIMS ? dimLabels[k] : "time";
+			int n = k<NB_DIMS ? dimSize : NB_TIMES;
+			id.put(dimLabel);
+			sizes.put(n);
+			JSONObject index = new JSONObject();
+			for(int i=0; i<n; i++) index.put(k<NB_DIMS ? "v"+i : times[i], i);
+			dimension.put(dimLabel, new JSONObject().put("category", new JSONObject().put("index", index)));
+		}
+		JSONObject value = new JSONObject(), status = new JSONObject();
+		Random rnd = new Random(SEED);
+		long nb = (long)Math.pow(dimSize, NB_DIMS) * NB_TIMES;
+		for(long i=0; i<nb; i++) {
+			if(rnd.nextDouble() >= density) continue;
+			value.put(""+i, Math.round(rnd.nextGaussian() * 1000 + 5000) / 10.0);
+			if(rnd.nextDouble() < 0.05) status.put(""+i, "p");
+		}
+		obj.put("version", "2.0").put("class", "dataset").put("id", id).put("size", sizes).put("dimension", dimension).put("value", value).put("status", status);
+		return obj.toString();
+	}
+
+}
@@ -10,9 +10,12 @@ import java.util.HashSet;
 import java.util.Set;
 import java.util.StringTokenizer;
 
+import eu.europa.ec.eurostat.java4eurostat.base.TimePeriod;
+
 /**
  * 
  * Some generic functions to manipulate EuroBase timestamps
+ * Prefer {@link TimePeriod}, which encodes the time periods into integers.
  * 
  * @author julien Gaffuri
  *
@@ -41,17 +44,8 @@ public class EBTimeUtil {
 	}
 
 	public static String get(String HICPMDate, int nb) {
-		if(isYear(HICPMDate)){
-			return (getYearInt(HICPMDate)+nb)+" ";
-		} else if (isMonth(HICPMDate)) {
-			int year = getYearInt(HICPMDate) + ((int)nb/12);
-			int month = getMonthInt(HICPMDate) + nb%12;
-
-			if(month<1) {month+=12;year--;}
-			if(month>12) {month-=12;year++;}
-
-			return getEBText(year, month);
-		}
+		int code = TimePeriod.encode(HICPMDate);
+		if(code != TimePeriod.NONE) return TimePeriod.decode(TimePeriod.add(code, nb)) + " ";
 		System.err.println("Unhandled date format: "+HICPMDate);
 		return null;
 	}
@@ -61,17 +55,14 @@ public class EBTimeUtil {
 	public static String getDecPrevYear(String time) { return (getYearInt(time)-1) + "M12 "; }
 
 	public static int getDuration(String date1, String date2) {
-		if(isYear(date1) && isYear(date2))
-			return getYearInt(date2) - getYearInt(date1);
-		else if(isMonth(date1) && isMonth(date2))
-			return getMonthInt(date2)-getMonthInt(date1) + 12*(getYearInt(date2)-getYearInt(date1));
+		int code1 = TimePeriod.encode(date1), code2 = TimePeriod.encode(date2);
+		if(code1 != TimePeriod.NONE && code2 != TimePeriod.NONE && TimePeriod.getFrequency(code1) == TimePeriod.getFrequency(code2))
+			return TimePeriod.getDuration(code1, code2);
 		System.err.println("Unhandled date format: "+date1+" "+date2);
 		return 0;
 	}
 
-	public static Comparator<String> HICPMDateComparator = new Comparator<String>(){
-		public int compare(String time1, String time2) { return -getDuration(time1, time2); }
-	};
+	public static Comparator<String> HICPMDateComparator = TimePeriod.COMPARATOR;
 	public static boolean isStrictlyBefore(String time1, String time2) { return HICPMDateComparator.compare(time1, time2) < 0; }
 
 
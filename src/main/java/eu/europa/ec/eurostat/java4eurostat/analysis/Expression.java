@@ -0,0 +1,384 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.GroupBy.Aggregate;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Join.Type;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+
+/**
+ * A lazy expression on hypercubes.
+ *
+ * The selection, element-wise operation, join and aggregation steps are recorded into a DAG, which is computed only
+ * when {@link #evaluate()} is called. Before the computation, the DAG is optimised:
+ * - consecutive selections are combined,
+ * - consecutive element-wise operations are fused into a single one, also with the operation of a join,
+ * - selections on dimension values are pushed below element-wise operations and joins.
+ * The intermediate hypercubes which are not used elsewhere are modified in place, and an expression used several times
+ * is computed once: It is not fused with, or pushed below, the expressions using it.
+ *
+ * The element-wise operations are supposed to transform NaN values into NaN values, as the arithmetic operations do:
+ * When they are fused into a join, they are also applied to the NaN values of the missing stats.
+ *
+ * Example: Expression.of(hc).mult(100).div(Expression.of(tot)).select(cri).evaluate()
+ *
+ * @author julien Gaffuri
+ *
+ */
+public abstract class Expression {
+
+	/**
+	 * @param hc
+	 * @return An expression of an hypercube. The hypercube is not modified by the computation of the expressions using it.
+	 */
+	public static Expression of(StatsHypercube hc) { return new Source(hc); }
+
+	/**
+	 * @param cri
+	 * @return The selection of the stats.
+	 */
+	public Expression select(Criteria cri) { return new Select(this, cri); }
+
+	/**
+	 * @param op
+	 * @return An element-wise operation on the values.
+	 */
+	public Expression apply(DoubleUnaryOperator op) { return new Map(this, op); }
+
+	/**
+	 * @return The absolute values
+	 */
+	public Expression abs() { return apply(Math::abs); }
+	/**
+	 * @param factor
+	 * @return The values multiplied by a factor
+	 */
+	public Expression mult(double factor) { return apply(v -> v * factor); }
+	/**
+	 * @param valueToSum
+	 * @return The values plus a quantity
+	 */
+	public Expression sum(double valueToSum) { return apply(v -> v + valueToSum); }
+	/**
+	 * @param exp
+	 * @return The values to a power
+	 */
+	public Expression pow(double exp) { return apply(v -> Math.pow(v, exp)); }
+	/**
+	 * @param valueToDiff
+	 * @return The values minus a quantity
+	 */
+	public Expression diff(double valueToDiff) { return sum(-valueToDiff); }
+	/**
+	 * @param valueToDiv
+	 * @return The values divided by a quantity
+	 */
+	public Expression div(double valueToDiv) { return mult(1/valueToDiv); }
+	/**
+	 * @return The opposite values
+	 */
+	public Expression opp() { return mult(-1); }
+
+	/**
+	 * @param e
+	 * @param op The operation, computed on the values of both expressions.
+	 * @param type The join type.
+	 * @return The join of two expressions. See {@link Join}.
+	 */
+	public Expression join(Expression e, DoubleBinaryOperator op, Type type) { return new JoinNode(this, e, op, type); }
+
+	/**
+	 * @param e
+	 * @return The values plus the values of another expression. The stats without match get NaN.
+	 */
+	public Expression sum(Expression e) { return join(e, (v1, v2) -> v1 + v2, Type.LEFT); }
+	/**
+	 * @param e
+	 * @return The values minus the values of another expression. The stats without match get NaN.
+	 */
+	public Expression diff(Expression e) { return join(e, (v1, v2) -> v1 - v2, Type.LEFT); }
+	/**
+	 * @param e
+	 * @return The values multiplied by the values of another expression. The stats without match get NaN.
+	 */
+	public Expression mult(Expression e) { return join(e, (v1, v2) -> v1 * v2, Type.LEFT); }
+	/**
+	 * @param e
+	 * @return The values divided by the values of another expression. The stats without match get NaN.
+	 */
+	public Expression div(Expression e) { return join(e, (v1, v2) -> v1 / v2, Type.LEFT); }
+
+	/**
+	 * @param dimLabel The dimension to aggregate along.
+	 * @param aggs The aggregates to compute.
+	 * @param aggDimValues The dimension values for the aggregates, in the aggregate order.
+	 * @return The aggregation along a dimension. See {@link GroupBy}.
+	 */
+	public Expression aggregate(String dimLabel, Aggregate[] aggs, String... aggDimValues) { return new AggregateNode(this, dimLabel, aggs, aggDimValues); }
+
+
+	/**
+	 * Compute the expression.
+	 *
+	 * @return The resulting hypercube.
+	 */
+	public StatsHypercube evaluate() {
+		Expression e = optimize();
+		IdentityHashMap<Expression, Integer> consumers = new IdentityHashMap<>();
+		e.countConsumers(consumers);
+		return e.evaluate(new IdentityHashMap<>(), consumers).hc;
+	}
+
+	/**
+	 * @return The optimised expression, which is evaluated by {@link #evaluate()}.
+	 */
+	public Expression optimize() {
+		IdentityHashMap<Expression, Integer> consumers = new IdentityHashMap<>();
+		countConsumers(consumers);
+		return optimize(new IdentityHashMap<>(), consumers, Collections.newSetFromMap(new IdentityHashMap<>()));
+	}
+
+	/** @return The dimension labels of the resulting hypercube. */
+	public abstract Collection<String> getDimLabels();
+
+	/** @return The input expressions. */
+	abstract Expression[] getInputs();
+
+	/**
+	 * Optimise the expression, its inputs being optimised.
+	 * The shared expressions have several consumers: They must be kept as they are, to be computed once.
+	 */
+	abstract Expression rewrite(Expression[] inputs, Set<Expression> shared);
+
+	/** Compute the expression, its inputs being computed. */
+	abstract Result compute(Result[] inputs, boolean[] ownedInputs);
+
+	private Expression optimize(IdentityHashMap<Expression, Expression> done, IdentityHashMap<Expression, Integer> consumers, Set<Expression> shared) {
+		Expression out = done.get(this);
+		if(out != null) return out;
+		Expression[] inputs = getInputs().clone();
+		for(int i=0; i<inputs.length; i++) inputs[i] = inputs[i].optimize(done, consumers, shared);
+		out = rewrite(inputs, shared);
+		done.put(this, out);
+		Integer nb = consumers.get(this);
+		if(nb != null && nb.intValue() > 1) shared.add(out);
+		return out;
+	}
+
+	private void countConsumers(IdentityHashMap<Expression, Integer> consumers) {
+		for(Expression in : getInputs()) {
+			Integer nb = consumers.get(in);
+			consumers.put(in, nb == null ? 1 : nb + 1);
+			if(nb == null) in.countConsumers(consumers);
+		}
+	}
+
+	private Result evaluate(IdentityHashMap<Expression, Result> done, IdentityHashMap<Expression, Integer> consumers) {
+		Result out = done.get(this);
+		if(out != null) return out;
+		Expression[] inputs = getInputs();
+		Result[] results = new Result[inputs.length];
+		boolean[] owned = new boolean[inputs.length];
+		for(int i=0; i<inputs.length; i++) {
+			results[i] = inputs[i].evaluate(done, consumers);
+			//an intermediate result can be modified only if it is not used elsewhere
+			owned[i] = results[i].owned && consumers.get(inputs[i]).intValue() == 1;
+		}
+		out = compute(results, owned);
+		done.put(this, out);
+		return out;
+	}
+
+	/** A computed hypercube. */
+	static class Result {
+		StatsHypercube hc;
+		/** True if the hypercube and its stats are not referenced by the user: they can be modified. */
+		boolean owned;
+		Result(StatsHypercube hc, boolean owned) { this.hc = hc; this.owned = owned; }
+	}
+
+
+	/** An hypercube */
+	private static class Source extends Expression {
+		private StatsHypercube hc;
+		Source(StatsHypercube hc) { this.hc = hc; }
+		@Override
+		public Collection<String> getDimLabels() { return this.hc.dimLabels; }
+		@Override
+		Expression[] getInputs() { return new Expression[0]; }
+		@Override
+		Expression rewrite(Expression[] inputs, Set<Expression> shared) { return this; }
+		@Override
+		Result compute(Result[] inputs, boolean[] owned) { return new Result(this.hc, false); }
+		@Override
+		public String toString() { return "source" + this.hc.dimLabels; }
+	}
+
+	/** A selection */
+	private static class Select extends Expression {
+		private Expression in;
+		private Criteria cri;
+		Select(Expression in, Criteria cri) { this.in = in; this.cri = cri; }
+		@Override
+		public Collection<String> getDimLabels() { return this.in.getDimLabels(); }
+		@Override
+		Expression[] getInputs() { return new Expression[] { this.in }; }
+
+		@Override
+		Expression rewrite(Expression[] inputs, Set<Expression> shared) {
+			Expression in_ = inputs[0];
+			if(shared.contains(in_)) return new Select(in_, this.cri);
+
+			//combine selections
+			if(in_ instanceof Select) return new Select(((Select)in_).in, new And(((Select)in_).cri, this.cri)).rewrite(new Expression[] { ((Select)in_).in }, shared);
+
+			Set<String> dimLabels = Selection.getDimLabels(this.cri);
+			if(dimLabels == null) return new Select(in_, this.cri);
+
+			//selection on dimension values: push below element-wise operations
+			if(in_ instanceof Map) {
+				Map m = (Map) in_;
+				return new Map(new Select(m.in, this.cri).rewrite(new Expression[] { m.in }, shared), m.op);
+			}
+
+			//push below joins
+			if(in_ instanceof JoinNode && ((JoinNode)in_).type != Type.OUTER) {
+				JoinNode j = (JoinNode) in_;
+				boolean inLeft = j.in1.getDimLabels().containsAll(dimLabels), inRight = j.in2.getDimLabels().containsAll(dimLabels);
+				//the stats of the first expression without match are kept by left joins: a selection on the second one only is not equivalent
+				boolean toLeft = inLeft, toRight = inRight && (j.type == Type.INNER || inLeft);
+				if(toLeft || toRight) {
+					Expression in1 = toLeft ? new Select(j.in1, this.cri).rewrite(new Expression[] { j.in1 }, shared) : j.in1;
+					Expression in2 = toRight ? new Select(j.in2, this.cri).rewrite(new Expression[] { j.in2 }, shared) : j.in2;
+					return new JoinNode(in1, in2, j.op, j.type);
+				}
+			}
+			return new Select(in_, this.cri);
+		}
+
+		@Override
+		Result compute(Result[] inputs, boolean[] owned) {
+			//the selected stats are shared with the input
+			return new Result(inputs[0].hc.select(this.cri), owned[0]);
+		}
+		@Override
+		public String toString() { return "select(" + this.in + ")"; }
+	}
+
+	/** An element-wise operation */
+	private static class Map extends Expression {
+		private Expression in;
+		private DoubleUnaryOperator op;
+		Map(Expression in, DoubleUnaryOperator op) { this.in = in; this.op = op; }
+		@Override
+		public Collection<String> getDimLabels() { return this.in.getDimLabels(); }
+		@Override
+		Expression[] getInputs() { return new Expression[] { this.in }; }
+
+		@Override
+		Expression rewrite(Expression[] inputs, Set<Expression> shared) {
+			Expression in_ = inputs[0];
+			if(shared.contains(in_)) return new Map(in_, this.op);
+
+			//fuse element-wise operations
+			if(in_ instanceof Map) return new Map(((Map)in_).in, ((Map)in_).op.andThen(this.op));
+			//fuse into the join operation
+			if(in_ instanceof JoinNode) {
+				JoinNode j = (JoinNode) in_;
+				DoubleBinaryOperator jop = j.op;
+				DoubleUnaryOperator op_ = this.op;
+				return new JoinNode(j.in1, j.in2, (v1, v2) -> op_.applyAsDouble(jop.applyAsDouble(v1, v2)), j.type);
+			}
+			return new Map(in_, this.op);
+		}
+
+		@Override
+		Result compute(Result[] inputs, boolean[] owned) {
+			if(owned[0]) return new Result(inputs[0].hc.applyDouble(this.op), true);
+			return new Result(Operations.computeDouble(inputs[0].hc, this.op), true);
+		}
+		@Override
+		public String toString() { return "apply(" + this.in + ")"; }
+	}
+
+	/** A join */
+	private static class JoinNode extends Expression {
+		private Expression in1, in2;
+		private DoubleBinaryOperator op;
+		private Type type;
+		JoinNode(Expression in1, Expression in2, DoubleBinaryOperator op, Type type) { this.in1 = in1; this.in2 = in2; this.op = op; this.type = type; }
+		@Override
+		public Collection<String> getDimLabels() {
+			Set<String> out = new LinkedHashSet<>(this.in1.getDimLabels());
+			out.addAll(this.in2.getDimLabels());
+			return out;
+		}
+		@Override
+		Expression[] getInputs() { return new Expression[] { this.in1, this.in2 }; }
+
+		@Override
+		Expression rewrite(Expression[] inputs, Set<Expression> shared) {
+			Expression in1 = inputs[0], in2 = inputs[1];
+			DoubleBinaryOperator op_ = this.op;
+			//fuse the element-wise operations of the inputs
+			if(in1 instanceof Map && !shared.contains(in1)) {
+				DoubleUnaryOperator f = ((Map)in1).op;
+				DoubleBinaryOperator op__ = op_;
+				op_ = (v1, v2) -> op__.applyAsDouble(f.applyAsDouble(v1), v2);
+				in1 = ((Map)in1).in;
+			}
+			if(in2 instanceof Map && !shared.contains(in2)) {
+				DoubleUnaryOperator f = ((Map)in2).op;
+				DoubleBinaryOperator op__ = op_;
+				op_ = (v1, v2) -> op__.applyAsDouble(v1, f.applyAsDouble(v2));
+				in2 = ((Map)in2).in;
+			}
+			return new JoinNode(in1, in2, op_, this.type);
+		}
+
+		@Override
+		Result compute(Result[] inputs, boolean[] owned) {
+			return new Result(Join.compute(inputs[0].hc, inputs[1].hc, this.op, this.type), true);
+		}
+		@Override
+		public String toString() { return "join(" + this.in1 + "," + this.in2 + ")"; }
+	}
+
+	/** An aggregation */
+	private static class AggregateNode extends Expression {
+		private Expression in;
+		private String dimLabel;
+		private Aggregate[] aggs;
+		private String[] aggDimValues;
+		AggregateNode(Expression in, String dimLabel, Aggregate[] aggs, String[] aggDimValues) { this.in = in; this.dimLabel = dimLabel; this.aggs = aggs; this.aggDimValues = aggDimValues; }
+		@Override
+		public Collection<String> getDimLabels() {
+			Collection<String> out = new ArrayList<>(this.in.getDimLabels());
+			if(!out.contains(this.dimLabel)) out.add(this.dimLabel);
+			return out;
+		}
+		@Override
+		Expression[] getInputs() { return new Expression[] { this.in }; }
+		@Override
+		Expression rewrite(Expression[] inputs, Set<Expression> shared) { return new AggregateNode(inputs[0], this.dimLabel, this.aggs, this.aggDimValues); }
+		@Override
+		Result compute(Result[] inputs, boolean[] owned) {
+			return new Result(GroupBy.compute(inputs[0].hc, this.dimLabel, this.aggs, this.aggDimValues), true);
+		}
+		@Override
+		public String toString() { return "aggregate(" + this.in + ")"; }
+	}
+
+}
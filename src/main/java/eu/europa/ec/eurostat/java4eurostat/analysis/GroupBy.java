@@ -0,0 +1,297 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.StreamingAggregator.Accumulator;
+import eu.europa.ec.eurostat.java4eurostat.analysis.StreamingAggregator.Extremum;
+import eu.europa.ec.eurostat.java4eurostat.analysis.StreamingAggregator.Moments;
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.DimValueDictionary;
+import eu.europa.ec.eurostat.java4eurostat.base.LongIntHashMap;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+
+/**
+ * Group-by engine, to compute several aggregates of hypercube values in a single pass.
+ *
+ * The stats are grouped by the values of some grouping dimensions. The dimension values are encoded with dictionaries
+ * and the codes of a group are packed into a single long key. The aggregates of each group are computed with accumulators,
+ * which are updated for each stat: No index is built, and the values of a group are not copied into an array.
+ * The accumulators are the ones of the {@link StreamingAggregator}s.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class GroupBy {
+
+	/**
+	 * The aggregates which can be computed in a single pass.
+	 */
+	public enum Aggregate {
+		/** The number of values */
+		COUNT,
+		/** The sum of the values */
+		SUM,
+		/** The mean of the values */
+		MEAN,
+		/** The minimum of the values. NaN values are ignored. */
+		MIN,
+		/** The maximum of the values. NaN values are ignored. */
+		MAX,
+		/** The standard deviation of the values (with bias correction) */
+		STD,
+		/** The root mean square of the values */
+		RMS;
+	}
+
+	/**
+	 * Compute aggregates of the values along a dimension.
+	 * The stats are grouped by all other dimensions, and the aggregates are added as new values of the dimension.
+	 *
+	 * @param hc
+	 * @param dimLabel The dimension to aggregate along.
+	 * @param aggs The aggregates to compute.
+	 * @param aggDimValues The dimension values for the aggregates, in the aggregate order.
+	 * @return The hypercube of the aggregates.
+	 */
+	public static StatsHypercube compute(StatsHypercube hc, String dimLabel, Aggregate[] aggs, String[] aggDimValues) {
+		ArrayList<String> lbls = new ArrayList<>(hc.dimLabels);
+		lbls.remove(dimLabel);
+		return compute(hc, lbls.toArray(new String[lbls.size()]), dimLabel, aggs, aggDimValues);
+	}
+
+	/**
+	 * Compute aggregates of the values of groups of stats.
+	 *
+	 * @param hc
+	 * @param groupDimLabels The dimensions whose values define the groups.
+	 * @param aggDimLabel The dimension of the aggregates.
+	 * @param aggs The aggregates to compute.
+	 * @param aggDimValues The dimension values for the aggregates, in the aggregate order.
+	 * @return The hypercube of the aggregates, with the grouping dimensions and the aggregate dimension.
+	 */
+	public static StatsHypercube compute(StatsHypercube hc, String[] groupDimLabels, String aggDimLabel, Aggregate[] aggs, String[] aggDimValues) {
+		if(aggs.length != aggDimValues.length)
+			throw new IllegalArgumentException("As many aggregate dimension values as aggregates expected: " + aggs.length + " and " + aggDimValues.length);
+		Groups groups = new Groups(hc, groupDimLabels);
+
+		//single pass: accumulate the values of each group
+		Accumulators acc = new Accumulators(groups.nb);
+		for(int i=0; i<groups.size; i++) acc.accumulate(groups.groups[i], groups.values[i]);
+
+		//build output hypercube
+		StatsHypercube out = groups.newHypercube(aggDimLabel);
+		for(int g=0; g<groups.nb; g++)
+			for(int a=0; a<aggs.length; a++)
+				out.stats.add(groups.newStat(g, acc.get(g, aggs[a]), aggDimLabel, aggDimValues[a]));
+		return out;
+	}
+
+	/**
+	 * Compute aggregates of the values along a dimension, with streaming aggregators.
+	 * The stats are grouped by all other dimensions, and the aggregates are added as new values of the dimension.
+	 *
+	 * @param hc
+	 * @param dimLabel The dimension to aggregate along.
+	 * @param aggs The aggregators.
+	 * @param aggDimValues The dimension values for the aggregates, in the aggregator order.
+	 * @return The hypercube of the aggregates.
+	 */
+	public static StatsHypercube compute(StatsHypercube hc, String dimLabel, StreamingAggregator[] aggs, String[] aggDimValues) {
+		ArrayList<String> lbls = new ArrayList<>(hc.dimLabels);
+		lbls.remove(dimLabel);
+		return compute(hc, lbls.toArray(new String[lbls.size()]), dimLabel, aggs, aggDimValues);
+	}
+
+	/**
+	 * Compute aggregates of the values of groups of stats, with streaming aggregators.
+	 * An accumulator is used for each group and aggregator.
+	 *
+	 * @param hc
+	 * @param groupDimLabels The dimensions whose values define the groups.
+	 * @param aggDimLabel The dimension of the aggregates.
+	 * @param aggs The aggregators.
+	 * @param aggDimValues The dimension values for the aggregates, in the aggregator order.
+	 * @return The hypercube of the aggregates, with the grouping dimensions and the aggregate dimension.
+	 */
+	public static StatsHypercube compute(StatsHypercube hc, String[] groupDimLabels, String aggDimLabel, StreamingAggregator[] aggs, String[] aggDimValues) {
+		if(aggs.length != aggDimValues.length)
+			throw new IllegalArgumentException("As many aggregate dimension values as aggregators expected: " + aggs.length + " and " + aggDimValues.length);
+		Groups groups = new Groups(hc, groupDimLabels);
+
+		//single pass: accumulate the values of each group
+		Accumulator[][] acc = new Accumulator[groups.nb][aggs.length];
+		for(int g=0; g<groups.nb; g++)
+			for(int a=0; a<aggs.length; a++) acc[g][a] = aggs[a].init();
+		for(int i=0; i<groups.size; i++) {
+			Accumulator[] acc_ = acc[groups.groups[i]];
+			for(int a=0; a<aggs.length; a++) acc_[a].accumulate(groups.values[i]);
+		}
+
+		//build output hypercube
+		StatsHypercube out = groups.newHypercube(aggDimLabel);
+		for(int g=0; g<groups.nb; g++)
+			for(int a=0; a<aggs.length; a++)
+				out.stats.add(groups.newStat(g, acc[g][a].finish(), aggDimLabel, aggDimValues[a]));
+		return out;
+	}
+
+
+	/**
+	 * The groups of the stats of an hypercube.
+	 */
+	static class Groups {
+		String[] groupDimLabels;
+		DimValueDictionary[] dictionaries;
+		long[] multipliers, cards;
+		/** The number of stats */
+		int size;
+		/** The stat values */
+		double[] values;
+		/** The group of each stat */
+		int[] groups;
+		/** The number of groups */
+		int nb = 0;
+		/** The key of each group */
+		long[] keys = new long[16];
+
+		Groups(StatsHypercube hc, String[] groupDimLabels) {
+			this.groupDimLabels = groupDimLabels;
+			int nbDims = groupDimLabels.length;
+			this.size = hc.stats.size();
+
+			//get dimension value codes
+			this.dictionaries = new DimValueDictionary[nbDims];
+			int[][] codes = new int[nbDims][];
+			if(hc instanceof ColumnarStatsHypercube) {
+				//reuse the columns
+				ColumnarStatsHypercube chc = (ColumnarStatsHypercube) hc;
+				for(int k=0; k<nbDims; k++) {
+					this.dictionaries[k] = chc.getDictionary(groupDimLabels[k]);
+					codes[k] = chc.getCodes(groupDimLabels[k]);
+					if(this.dictionaries[k] == null) this.dictionaries[k] = new DimValueDictionary();
+					if(codes[k] == null) { codes[k] = new int[this.size]; Arrays.fill(codes[k], -1); }
+				}
+				this.values = chc.getValues();
+			} else {
+				//encode stats in a single pass
+				for(int k=0; k<nbDims; k++) {
+					this.dictionaries[k] = new DimValueDictionary();
+					codes[k] = new int[this.size];
+				}
+				this.values = new double[this.size];
+				int i = 0;
+				for(Stat s : hc.stats) {
+					for(int k=0; k<nbDims; k++) codes[k][i] = this.dictionaries[k].encode(s.dims.get(groupDimLabels[k]));
+					this.values[i++] = s.value;
+				}
+			}
+
+			//compute key multipliers. The code -1 (null) is shifted to 0.
+			this.multipliers = new long[nbDims];
+			this.cards = new long[nbDims];
+			long m = 1;
+			for(int k=nbDims-1; k>=0; k--) {
+				this.multipliers[k] = m;
+				this.cards[k] = this.dictionaries[k].size() + 1;
+				if(m > Long.MAX_VALUE / this.cards[k]) throw new IllegalArgumentException("Too many groups to group by " + Arrays.toString(groupDimLabels));
+				m *= this.cards[k];
+			}
+
+			//assign the stats to groups
+			LongIntHashMap groupIds = new LongIntHashMap(16);
+			this.groups = new int[this.size];
+			for(int i=0; i<this.size; i++) {
+				long key = 0;
+				for(int k=0; k<nbDims; k++) key += (codes[k][i] + 1) * this.multipliers[k];
+				int g = groupIds.get(key);
+				if(g == LongIntHashMap.NONE) {
+					if(this.nb == this.keys.length) this.keys = Arrays.copyOf(this.keys, 2 * this.nb);
+					this.keys[this.nb] = key;
+					g = this.nb++;
+					groupIds.put(key, g);
+				}
+				this.groups[i] = g;
+			}
+		}
+
+		/** Build an empty hypercube with the grouping dimensions and the aggregate dimension. */
+		StatsHypercube newHypercube(String aggDimLabel) {
+			ArrayList<String> outDimLabels = new ArrayList<>(Arrays.asList(this.groupDimLabels));
+			if(!outDimLabels.contains(aggDimLabel)) outDimLabels.add(aggDimLabel);
+			return new StatsHypercube(outDimLabels.toArray(new String[outDimLabels.size()]));
+		}
+
+		/** Build the stat of an aggregate of a group. */
+		Stat newStat(int g, double value, String aggDimLabel, String aggDimValue) {
+			Stat s = new Stat(value);
+			for(int k=0; k<this.groupDimLabels.length; k++) {
+				String dimValue = getDimValue(g, k);
+				if(dimValue != null) s.dims.put(this.groupDimLabels[k], dimValue);
+			}
+			s.dims.put(aggDimLabel, aggDimValue);
+			return s;
+		}
+
+		/** The value of a grouping dimension of a group, or null. */
+		String getDimValue(int g, int k) {
+			int code = (int)(this.keys[g] / this.multipliers[k] % this.cards[k]) - 1;
+			return code < 0 ? null : this.dictionaries[k].getValue(code);
+		}
+
+		/** The values of the grouping dimensions of a group, separated by commas. */
+		String getLabel(int g) {
+			StringBuilder sb = new StringBuilder();
+			for(int k=0; k<this.groupDimLabels.length; k++) {
+				if(k>0) sb.append(',');
+				String dimValue = getDimValue(g, k);
+				if(dimValue != null) sb.append(dimValue);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * The accumulators of all groups, indexed by group: the moments, the minimum and the maximum of the values.
+	 */
+	private static class Accumulators {
+		Moments[] moments;
+		Extremum[] min, max;
+
+		Accumulators(int nb) {
+			this.moments = new Moments[nb];
+			this.min = new Extremum[nb];
+			this.max = new Extremum[nb];
+			for(int g=0; g<nb; g++) {
+				this.moments[g] = new Moments();
+				this.min[g] = new Extremum(false);
+				this.max[g] = new Extremum(true);
+			}
+		}
+
+		void accumulate(int g, double v) {
+			this.moments[g].accumulate(v);
+			this.min[g].accumulate(v);
+			this.max[g].accumulate(v);
+		}
+
+		double get(int g, Aggregate agg) {
+			Moments m = this.moments[g];
+			switch (agg) {
+			case COUNT: return m.getCount();
+			case SUM: return m.getSum();
+			case MEAN: return m.getMean();
+			case MIN: return this.min[g].finish();
+			case MAX: return this.max[g].finish();
+			case STD: return Math.sqrt(m.getVariance());
+			case RMS: return m.getRMS();
+			default: return Double.NaN;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,280 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.DimValueDictionary;
+import eu.europa.ec.eurostat.java4eurostat.base.LongIntHashMap;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+
+/**
+ * Join engine, to combine the values of two hypercubes with a binary operation.
+ *
+ * The stats of both hypercubes are matched on their common dimensions. The values of these dimensions are encoded
+ * with shared dictionaries, and the codes are packed into a single long key.
+ * Dimensions which are not common are broadcast: For example, regional values (geo, time) can be divided by
+ * national totals (country, time) of an hypercube without the geo dimension, if country is a dimension of both.
+ * The output stats have the dimensions of both hypercubes.
+ *
+ * Two join algorithms are available: A hash join, which indexes the second hypercube in a hash table,
+ * and a sort-merge join, which sorts both hypercubes by key with a counting sort and merges them.
+ * The sort-merge join is preferable when the key space is dense, that is when the number of possible keys is not much
+ * larger than the number of stats.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class Join {
+
+	/** The join types. */
+	public enum Type {
+		/** Only the matching stats. */
+		INNER,
+		/** The matching stats, and the stats of the first hypercube without match, with a NaN second value. */
+		LEFT,
+		/** The matching stats, and the stats of both hypercubes without match, with NaN as missing value. */
+		OUTER;
+	}
+
+	/** The join algorithms. */
+	public enum Strategy {
+		/** A hash join. */
+		HASH,
+		/** A sort-merge join. */
+		SORT_MERGE,
+		/** Choose depending on the density of the key space. */
+		AUTO;
+	}
+
+	/**
+	 * Join two hypercubes, and compute a binary operation on the values of the matching stats.
+	 *
+	 * @param hc1
+	 * @param hc2
+	 * @param op The operation, computed on the values of hc1 and hc2.
+	 * @param type The join type.
+	 * @return The hypercube of the results.
+	 */
+	public static StatsHypercube compute(StatsHypercube hc1, StatsHypercube hc2, DoubleBinaryOperator op, Type type) {
+		return compute(hc1, hc2, op, type, Strategy.AUTO);
+	}
+
+	/**
+	 * Join two hypercubes, and compute a binary operation on the values of the matching stats.
+	 *
+	 * @param hc1
+	 * @param hc2
+	 * @param op The operation, computed on the values of hc1 and hc2.
+	 * @param type The join type.
+	 * @param strategy The join algorithm.
+	 * @return The hypercube of the results.
+	 */
+	public static StatsHypercube compute(StatsHypercube hc1, StatsHypercube hc2, DoubleBinaryOperator op, Type type, Strategy strategy) {
+		//get join dimensions, and output dimensions
+		ArrayList<String> keyDims = new ArrayList<>(), outDims = new ArrayList<>(hc1.dimLabels);
+		for(String dimLabel : hc2.dimLabels)
+			if(hc1.dimLabels.contains(dimLabel)) keyDims.add(dimLabel); else outDims.add(dimLabel);
+		String[] keyDimLabels = keyDims.toArray(new String[keyDims.size()]);
+
+		//encode keys
+		Side s2 = new Side(hc2);
+		DimValueDictionary[] dictionaries = s2.encode(keyDimLabels, null);
+		Side s1 = new Side(hc1);
+		s1.encode(keyDimLabels, dictionaries);
+		long nbKeys = 1;
+		long[] multipliers = new long[keyDimLabels.length];
+		for(int k=keyDimLabels.length-1; k>=0; k--) {
+			multipliers[k] = nbKeys;
+			long card = dictionaries[k].size() + 1;
+			if(nbKeys > Long.MAX_VALUE / card) throw new IllegalArgumentException("Too many keys to join on " + keyDims);
+			nbKeys *= card;
+		}
+		s1.computeKeys(multipliers);
+		s2.computeKeys(multipliers);
+
+		StatsHypercube out = new StatsHypercube(outDims.toArray(new String[outDims.size()]));
+		if(strategy == Strategy.AUTO)
+			strategy = nbKeys <= 2L * (s1.n + s2.n) ? Strategy.SORT_MERGE : Strategy.HASH;
+		//the counting sort needs an array of the size of the key space
+		if(nbKeys >= Integer.MAX_VALUE) strategy = Strategy.HASH;
+		if(strategy == Strategy.SORT_MERGE) sortMergeJoin(s1, s2, (int)nbKeys, op, type, out);
+		else hashJoin(s1, s2, op, type, out);
+		return out;
+	}
+
+	private static void hashJoin(Side s1, Side s2, DoubleBinaryOperator op, Type type, StatsHypercube out) {
+		//index second side: first position of each key, and chain of the next positions with the same key
+		LongIntHashMap first = new LongIntHashMap(s2.n);
+		int[] next = new int[s2.n];
+		for(int j=s2.n-1; j>=0; j--) {
+			next[j] = first.get(s2.keys[j]);
+			first.put(s2.keys[j], j);
+		}
+
+		//probe with first side
+		boolean[] matched2 = type == Type.OUTER ? new boolean[s2.n] : null;
+		for(int i=0; i<s1.n; i++) {
+			int j = s1.keys[i] < 0 ? LongIntHashMap.NONE : first.get(s1.keys[i]);
+			if(j == LongIntHashMap.NONE) {
+				if(type != Type.INNER) out.stats.add(newStat(s1, i, s2, -1, op));
+				continue;
+			}
+			for(; j != LongIntHashMap.NONE; j = next[j]) {
+				out.stats.add(newStat(s1, i, s2, j, op));
+				if(matched2 != null) matched2[j] = true;
+			}
+		}
+
+		if(matched2 != null)
+			for(int j=0; j<s2.n; j++) if(!matched2[j]) out.stats.add(newStat(s1, -1, s2, j, op));
+	}
+
+	private static void sortMergeJoin(Side s1, Side s2, int nbKeys, DoubleBinaryOperator op, Type type, StatsHypercube out) {
+		int[] start1 = new int[nbKeys+1], start2 = new int[nbKeys+1];
+		int[] sorted1 = s1.sort(nbKeys, start1), sorted2 = s2.sort(nbKeys, start2);
+
+		//stats of the first side with a value unknown by the second
+		if(type != Type.INNER)
+			for(int i=0; i<s1.n; i++) if(s1.keys[i] < 0) out.stats.add(newStat(s1, i, s2, -1, op));
+
+		//merge
+		for(int key=0; key<nbKeys; key++) {
+			int from1 = start1[key], to1 = start1[key+1], from2 = start2[key], to2 = start2[key+1];
+			if(from2 == to2) {
+				if(type != Type.INNER) for(int a=from1; a<to1; a++) out.stats.add(newStat(s1, sorted1[a], s2, -1, op));
+			} else if(from1 == to1) {
+				if(type == Type.OUTER) for(int b=from2; b<to2; b++) out.stats.add(newStat(s1, -1, s2, sorted2[b], op));
+			} else {
+				for(int a=from1; a<to1; a++)
+					for(int b=from2; b<to2; b++) out.stats.add(newStat(s1, sorted1[a], s2, sorted2[b], op));
+			}
+		}
+	}
+
+	/** Build an output stat from the stats of both sides. -1 is given for a missing stat. */
+	private static Stat newStat(Side s1, int i, Side s2, int j, DoubleBinaryOperator op) {
+		Stat s = new Stat(op.applyAsDouble(i<0 ? Double.NaN : s1.values[i], j<0 ? Double.NaN : s2.values[j]));
+		if(j >= 0) s2.putDims(s, j);
+		if(i >= 0) s1.putDims(s, i);
+		return s;
+	}
+
+
+	/**
+	 * A side of a join: the values and keys of the stats of an hypercube.
+	 */
+	private static class Side {
+		ColumnarStatsHypercube chc = null;
+		String[] columnLabels;
+		Stat[] stats = null;
+		int n;
+		double[] values;
+		int[][] codes;
+		/** The key of each stat, -1 if a dimension value is unknown by the dictionaries. */
+		long[] keys;
+
+		Side(StatsHypercube hc) {
+			this.n = hc.stats.size();
+			if(hc instanceof ColumnarStatsHypercube) {
+				this.chc = (ColumnarStatsHypercube) hc;
+				this.columnLabels = this.chc.getColumnLabels();
+				this.values = this.chc.getValues();
+			} else {
+				this.stats = hc.stats.toArray(new Stat[this.n]);
+				this.values = new double[this.n];
+				for(int i=0; i<this.n; i++) this.values[i] = this.stats[i].value;
+			}
+		}
+
+		/**
+		 * Encode the dimension values of the stats.
+		 *
+		 * @param dictionaries The dictionaries to use, or null to build them.
+		 * @return The dictionaries. The code of the values unknown by given dictionaries is -2.
+		 */
+		DimValueDictionary[] encode(String[] dimLabels, DimValueDictionary[] dictionaries) {
+			boolean build = dictionaries == null;
+			if(build) dictionaries = new DimValueDictionary[dimLabels.length];
+			this.codes = new int[dimLabels.length][];
+			for(int k=0; k<dimLabels.length; k++) {
+				if(this.chc != null && this.chc.getDictionary(dimLabels[k]) != null) {
+					//reuse or translate the code column
+					DimValueDictionary dict = this.chc.getDictionary(dimLabels[k]);
+					int[] codes_ = this.chc.getCodes(dimLabels[k]);
+					if(build) {
+						dictionaries[k] = dict;
+						this.codes[k] = codes_;
+						continue;
+					}
+					int[] tr = new int[dict.size()];
+					for(int c=0; c<tr.length; c++) {
+						int c_ = dictionaries[k].getCode(dict.getValue(c));
+						tr[c] = c_ < 0 ? -2 : c_;
+					}
+					this.codes[k] = new int[this.n];
+					for(int i=0; i<this.n; i++) this.codes[k][i] = codes_[i] < 0 ? -1 : tr[codes_[i]];
+					continue;
+				}
+
+				if(build) dictionaries[k] = new DimValueDictionary();
+				this.codes[k] = new int[this.n];
+				for(int i=0; i<this.n; i++) {
+					String dv = this.chc != null ? null : this.stats[i].dims.get(dimLabels[k]);
+					if(dv == null) this.codes[k][i] = -1;
+					else if(build) this.codes[k][i] = dictionaries[k].encode(dv);
+					else {
+						int c = dictionaries[k].getCode(dv);
+						this.codes[k][i] = c < 0 ? -2 : c;
+					}
+				}
+			}
+			return dictionaries;
+		}
+
+		void computeKeys(long[] multipliers) {
+			this.keys = new long[this.n];
+			for(int i=0; i<this.n; i++) {
+				long key = 0;
+				for(int k=0; k<multipliers.length; k++) {
+					int c = this.codes[k][i];
+					if(c < -1) { key = -1; break; }
+					key += (c + 1) * multipliers[k];
+				}
+				this.keys[i] = key;
+			}
+		}
+
+		/**
+		 * Sort the stats by key, with a counting sort. The stats with key -1 are ignored.
+		 *
+		 * @param start Filled with the position in the output of the first stat of each key.
+		 * @return The stat positions, sorted by key.
+		 */
+		int[] sort(int nbKeys, int[] start) {
+			for(int i=0; i<this.n; i++) if(this.keys[i] >= 0) start[(int)this.keys[i]+1]++;
+			for(int key=0; key<nbKeys; key++) start[key+1] += start[key];
+			int[] pos = Arrays.copyOf(start, nbKeys);
+			int[] out = new int[start[nbKeys]];
+			for(int i=0; i<this.n; i++) if(this.keys[i] >= 0) out[pos[(int)this.keys[i]]++] = i;
+			return out;
+		}
+
+		void putDims(Stat s, int i) {
+			if(this.stats != null) {
+				s.dims.putAll(this.stats[i].dims);
+				return;
+			}
+			for(String dimLabel : this.columnLabels) {
+				String dv = this.chc.getDimValue(dimLabel, i);
+				if(dv != null) s.dims.put(dimLabel, dv);
+			}
+		}
+	}
+
+}
@@ -4,17 +4,29 @@
 package eu.europa.ec.eurostat.java4eurostat.analysis;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.UnaryOperator;
 
 import org.apache.commons.math3.stat.StatUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import eu.europa.ec.eurostat.java4eurostat.analysis.GroupBy.Aggregate;
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.FlatStatsIndex;
 import eu.europa.ec.eurostat.java4eurostat.base.Stat;
 import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
 import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import eu.europa.ec.eurostat.java4eurostat.util.StatsUtil;
 
 /**
  * Operations on hypercube structures.
@@ -27,16 +39,30 @@ public class Operations {
 
 	/**
 	 * Compute a unary operation on hypercube values.
+	 * NB: The values are boxed. Prefer {@link #computeDouble(StatsHypercube, DoubleUnaryOperator)}.
 	 * 
 	 * @param hc
 	 * @param uop
 	 * @return
 	 */
 	public static StatsHypercube compute(StatsHypercube hc, UnaryOperator<Double> uop){
+		return computeDouble(hc, v -> uop.apply(v).doubleValue());
+	}
+
+	/**
+	 * Compute a unary operation on hypercube values, without boxing them.
+	 * 
+	 * @param hc
+	 * @param uop
+	 * @return
+	 */
+	public static StatsHypercube computeDouble(StatsHypercube hc, DoubleUnaryOperator uop){
+		if(hc instanceof ColumnarStatsHypercube)
+			return ((ColumnarStatsHypercube)hc).copy().applyDouble(uop);
 		StatsHypercube out = new StatsHypercube(hc.getDimLabels());
 		for(Stat s : hc.stats){
 			Stat s_ = new Stat(s);
-			s_.value = uop.apply(new Double(s.value)).doubleValue();
+			s_.value = uop.applyAsDouble(s.value);
 			out.stats.add(s_);
 		}
 		return out;
@@ -44,6 +70,7 @@ public class Operations {
 
 	/**
 	 * Compute a binary operation.
+	 * NB: The values are boxed. Prefer {@link #computeDouble(StatsHypercube, StatsHypercube, DoubleBinaryOperator)}.
 	 * 
 	 * @param hc1
 	 * @param hc2
@@ -51,9 +78,24 @@ public class Operations {
 	 * @return
 	 */
 	public static StatsHypercube compute(StatsHypercube hc1, StatsHypercube hc2, BinaryOperator<Double> bop){
+		return computeDouble(hc1, hc2, (v1, v2) -> bop.apply(v1, v2).doubleValue());
+	}
+
+	/**
+	 * Compute a binary operation, without boxing the values.
+	 * The stats of hc1 without single match in hc2 get a NaN second value. See {@link Join} for other join types and broadcasting.
+	 * 
+	 * @param hc1
+	 * @param hc2
+	 * @param bop
+	 * @return
+	 */
+	public static StatsHypercube computeDouble(StatsHypercube hc1, StatsHypercube hc2, DoubleBinaryOperator bop){
+		if(hc1 instanceof ColumnarStatsHypercube)
+			return ((ColumnarStatsHypercube)hc1).copy().applyDouble(bop, hc2);
 		String[] dimLabels = hc1.getDimLabels();
 		StatsHypercube out = new StatsHypercube(dimLabels);
-		StatsIndex hcI2 = new StatsIndex(hc2, dimLabels);
+		FlatStatsIndex hcI2 = new FlatStatsIndex(hc2, dimLabels);
 		for(Stat s : hc1.stats){
 			//retrieve values
 			double v1 = s.value;
@@ -61,7 +103,7 @@ public class Operations {
 
 			//compute new value
 			Stat s_ = new Stat(s);
-			s_.value = bop.apply(new Double(v1), new Double(v2)).doubleValue();
+			s_.value = bop.applyAsDouble(v1, v2);
 			out.stats.add(s_);
 		}
 		return out;
@@ -80,37 +122,154 @@ public class Operations {
 	 */
 	public static Collection<Stat> computeAggregation(StatsHypercube hc, Aggregator agg, String dimLabel, String aggDimValue) {
 		Collection<Stat> out = new ArrayList<>();
+		//get through index leaves
+		for(Collection<Stat> leaf : getLeaves(hc, dimLabel, aggDimValue)) {
+			Stat s = aggregate(leaf, agg, dimLabel, aggDimValue, false);
+			if(s != null) out.add(s);
+		}
+		return out;
+	}
+
+	/**
+	 * Compute an aggregated value of all values along a dimension, in parallel.
+	 * The index leaves are partitioned across the threads of a fork-join pool.
+	 * If the aggregator is not thread safe, the computation is sequential.
+	 * If it is combinable, the large leaves are also split into parts, whose partial aggregates are combined.
+	 * 
+	 * @param hc
+	 * @param agg The aggregation operation.
+	 * @param dimLabel The dimension to aggregate along.
+	 * @param aggDimValue The dimension value for the new aggregated value.
+	 * @param parallelism The number of threads.
+	 * @param ordered If true, the output is in the same order as the one of the sequential computation. Otherwise, the order is not deterministic.
+	 * @return
+	 */
+	public static Collection<Stat> computeAggregation(StatsHypercube hc, Aggregator agg, String dimLabel, String aggDimValue, int parallelism, boolean ordered) {
+		if(parallelism <= 1 || !agg.isThreadSafe()) return computeAggregation(hc, agg, dimLabel, aggDimValue);
+
+		ArrayList<Collection<Stat>> leaves = new ArrayList<>(getLeaves(hc, dimLabel, aggDimValue));
+		Stat[] outOrdered = ordered ? new Stat[leaves.size()] : null;
+		ConcurrentLinkedQueue<Stat> outUnordered = ordered ? null : new ConcurrentLinkedQueue<>();
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		try {
+			pool.invoke(new LeafAggregation(leaves, 0, leaves.size(), agg, dimLabel, aggDimValue, outOrdered, outUnordered));
+		} finally {
+			pool.shutdown();
+		}
+
+		if(!ordered) return new ArrayList<>(outUnordered);
+		Collection<Stat> out = new ArrayList<>(outOrdered.length);
+		for(Stat s : outOrdered) if(s != null) out.add(s);
+		return out;
+	}
 
-		//index along the other dimensions
+	/** The minimum number of leaves aggregated by a parallel task. */
+	private static final int MIN_LEAVES_PER_TASK = 256;
+	/** The number of values above which the values of a leaf are aggregated in parallel parts, for combinable aggregators. */
+	private static final int LARGE_LEAF_SIZE = 1 << 16;
+
+	/**
+	 * Aggregate a range of leaves, splitting it recursively.
+	 */
+	private static class LeafAggregation extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final List<Collection<Stat>> leaves;
+		private final int from, to;
+		private final Aggregator agg;
+		private final String dimLabel, aggDimValue;
+		private final Stat[] outOrdered;
+		private final Collection<Stat> outUnordered;
+
+		LeafAggregation(List<Collection<Stat>> leaves, int from, int to, Aggregator agg, String dimLabel, String aggDimValue, Stat[] outOrdered, Collection<Stat> outUnordered) {
+			this.leaves = leaves; this.from = from; this.to = to;
+			this.agg = agg; this.dimLabel = dimLabel; this.aggDimValue = aggDimValue;
+			this.outOrdered = outOrdered; this.outUnordered = outUnordered;
+		}
+
+		@Override
+		protected void compute() {
+			if(this.to - this.from > MIN_LEAVES_PER_TASK) {
+				int mid = (this.from + this.to) >>> 1;
+				invokeAll(new LeafAggregation(this.leaves, this.from, mid, this.agg, this.dimLabel, this.aggDimValue, this.outOrdered, this.outUnordered),
+						new LeafAggregation(this.leaves, mid, this.to, this.agg, this.dimLabel, this.aggDimValue, this.outOrdered, this.outUnordered));
+				return;
+			}
+			for(int i=this.from; i<this.to; i++) {
+				Stat s = aggregate(this.leaves.get(i), this.agg, this.dimLabel, this.aggDimValue, true);
+				if(s == null) continue;
+				if(this.outOrdered != null) this.outOrdered[i] = s;
+				else this.outUnordered.add(s);
+			}
+		}
+	}
+
+	/**
+	 * Index the stats of an hypercube along all dimensions but one, and return the index leaves.
+	 */
+	private static Collection<Collection<Stat>> getLeaves(StatsHypercube hc, String dimLabel, String aggDimValue) {
 		ArrayList<String> lbls = new ArrayList<>(hc.dimLabels);
 		boolean b = lbls.remove(dimLabel);
 		if(!b) LOGGER.error("Cannot compute aggregate " + aggDimValue + " along non-existing dimension: " + dimLabel);
-		StatsIndex index = new StatsIndex(hc, lbls.toArray(new String[lbls.size()]));
-
-		//get through index leaves
-		for(Collection<Stat> leaf : index.getLeaves()) {
+		return new StatsIndex(hc, lbls.toArray(new String[lbls.size()])).getLeaves();
+	}
 
-			if(leaf.size()==0) {
-				LOGGER.warn("Unexpected empty leaf in stat index encourtered " + dimLabel + " - " + aggDimValue);
-				continue;
-			}
+	/**
+	 * Compute the aggregated stat of an index leaf.
+	 * 
+	 * @param split If true and the aggregator is combinable, large leaves are aggregated in parallel parts. This must be called from a fork-join pool.
+	 * @return The aggregated stat, or null if the leaf is empty.
+	 */
+	private static Stat aggregate(Collection<Stat> leaf, Aggregator agg, String dimLabel, String aggDimValue, boolean split) {
+		if(leaf.size()==0) {
+			LOGGER.warn("Unexpected empty leaf in stat index encourtered " + dimLabel + " - " + aggDimValue);
+			return null;
+		}
 
-			//prepare aggregated stat
-			Stat s = new Stat(leaf.iterator().next());
-			s.dims.put(dimLabel, aggDimValue);
-			if(LOGGER.isDebugEnabled()) LOGGER.debug("Compute aggregate for " + s.dims);
+		//prepare aggregated stat
+		Stat s = new Stat(leaf.iterator().next());
+		s.dims.put(dimLabel, aggDimValue);
+		if(LOGGER.isDebugEnabled()) LOGGER.debug("Compute aggregate for " + s.dims);
 
-			//get values to aggregate
-			//TODO: provide possiblity to ignore some dimension values
-			double[] vals = new double[leaf.size()]; int i=0;
-			for(Stat s_ : leaf) vals[i++] = s_.value;
+		//get values to aggregate
+		//TODO: provide possiblity to ignore some dimension values
+		double[] vals = new double[leaf.size()]; int i=0;
+		for(Stat s_ : leaf) vals[i++] = s_.value;
 
-			//compute aggregated value
+		//compute aggregated value
+		if(!split || !agg.isCombinable() || vals.length < 2 * LARGE_LEAF_SIZE) {
 			s.value = agg.compute(vals);
+			return s;
+		}
 
-			out.add(s);
+		//compute partial aggregates of parts of the values in parallel, and combine them
+		int nb = vals.length / LARGE_LEAF_SIZE;
+		double[] partials = new double[nb];
+		ArrayList<RecursiveAction> tasks = new ArrayList<>();
+		for(int k=0; k<nb; k++) {
+			int k_ = k, start = (int)((long)vals.length * k / nb), end = (int)((long)vals.length * (k+1) / nb);
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+				@Override
+				protected void compute() { partials[k_] = agg.compute(Arrays.copyOfRange(vals, start, end)); }
+			});
 		}
-		return out;
+		ForkJoinTask.invokeAll(tasks);
+		s.value = agg.combine(partials);
+		return s;
+	}
+
+	/**
+	 * Compute several aggregated values of all values along a dimension, in a single pass.
+	 * See {@link GroupBy}.
+	 * 
+	 * @param hc
+	 * @param dimLabel The dimension to aggregate along.
+	 * @param aggs The aggregates to compute.
+	 * @param aggDimValues The dimension values for the new aggregated values, in the aggregate order.
+	 * @return The hypercube of the aggregated values.
+	 */
+	public static StatsHypercube computeAggregates(StatsHypercube hc, String dimLabel, Aggregate[] aggs, String... aggDimValues) {
+		return GroupBy.compute(hc, dimLabel, aggs, aggDimValues);
 	}
 
 	/**
@@ -126,6 +285,27 @@ public class Operations {
 		 * @return The aggregate value.
 		 */
 		double compute(double[] values);
+
+		/**
+		 * @return True if the aggregator can be used by several threads at the same time.
+		 * This is the case of aggregators without mutable state, which should override this method to be computed in parallel.
+		 * By default, an aggregator is assumed not to be thread safe.
+		 */
+		default boolean isThreadSafe() { return false; }
+
+		/**
+		 * @return True if the aggregate of some values can be computed from the aggregates of parts of these values, with {@link #combine(double[])}.
+		 * This is the case of the sum, minimum and maximum, not of the mean or the median.
+		 */
+		default boolean isCombinable() { return false; }
+
+		/**
+		 * Combine the aggregates of parts of some values, for combinable aggregators.
+		 * 
+		 * @param partials The aggregates of the parts.
+		 * @return The aggregate of all values.
+		 */
+		default double combine(double[] partials) { return compute(partials); }
 	}
 
 
@@ -138,12 +318,7 @@ public class Operations {
 	 * @return
 	 */
 	public static Collection<Stat> computeSumDim(StatsHypercube hc, String dimLabel, String sumDimValue) {
-		return computeAggregation(hc, new Aggregator() {
-			@Override
-			public double compute(double[] vals) {
-				return StatUtils.sum(vals);
-			}
-		}, dimLabel, sumDimValue);
+		return computeAggregates(hc, dimLabel, new Aggregate[] { Aggregate.SUM }, sumDimValue).stats;
 	}
 
 	/**
@@ -155,13 +330,7 @@ public class Operations {
 	 * @return
 	 */
 	public static Collection<Stat> computeMaxDim(StatsHypercube hc, String dimLabel, String maxDimValue) {
-		return computeAggregation(hc, new Aggregator() {
-			@Override
-			public double compute(double[] vals) {
-				if(vals.length == 0) return Double.NaN;
-				return StatUtils.max(vals);
-			}
-		}, dimLabel, maxDimValue);
+		return computeAggregates(hc, dimLabel, new Aggregate[] { Aggregate.MAX }, maxDimValue).stats;
 	}
 
 	/**
@@ -173,13 +342,7 @@ public class Operations {
 	 * @return
 	 */
 	public static Collection<Stat> computeMinDim(StatsHypercube hc, String dimLabel, String minDimValue) {
-		return computeAggregation(hc, new Aggregator() {
-			@Override
-			public double compute(double[] vals) {
-				if(vals.length == 0) return Double.NaN;
-				return StatUtils.min(vals);
-			}
-		}, dimLabel, minDimValue);
+		return computeAggregates(hc, dimLabel, new Aggregate[] { Aggregate.MIN }, minDimValue).stats;
 	}
 
 	/**
@@ -191,13 +354,7 @@ public class Operations {
 	 * @return
 	 */
 	public static Collection<Stat> computeMeanDim(StatsHypercube hc, String dimLabel, String meanDimValue) {
-		return computeAggregation(hc, new Aggregator() {
-			@Override
-			public double compute(double[] vals) {
-				if(vals.length == 0) return Double.NaN;
-				return StatUtils.mean(vals);
-			}
-		}, dimLabel, meanDimValue);
+		return computeAggregates(hc, dimLabel, new Aggregate[] { Aggregate.MEAN }, meanDimValue).stats;
 	}
 
 
@@ -217,9 +374,41 @@ public class Operations {
 				if(vals.length == 0) return Double.NaN;
 				return StatUtils.percentile(vals, percentile);
 			}
+			@Override
+			public boolean isThreadSafe() { return true; }
 		}, dimLabel, percentileDimValue);
 	}
 
+	/**
+	 * Compute several percentiles of all values along a dimension.
+	 * The values of each group are sorted once for all percentiles.
+	 * 
+	 * @param hc
+	 * @param percentiles The percentiles, in ]0,100].
+	 * @param dimLabel
+	 * @param percentileDimValues The dimension values for the new values, in the percentile order.
+	 * @return The result.
+	 * @throws IllegalArgumentException if there is not one dimension value per percentile.
+	 */
+	public static Collection<Stat> computePercentilesDim(StatsHypercube hc, double[] percentiles, String dimLabel, String... percentileDimValues) {
+		if(percentiles.length != percentileDimValues.length)
+			throw new IllegalArgumentException("Expected one dimension value per percentile. Number of percentiles: " + percentiles.length + ", number of dimension values: " + percentileDimValues.length);
+		Collection<Stat> out = new ArrayList<>();
+		for(Collection<Stat> leaf : getLeaves(hc, dimLabel, Arrays.toString(percentileDimValues))) {
+			if(leaf.size()==0) continue;
+			double[] vals = new double[leaf.size()]; int i=0;
+			for(Stat s_ : leaf) vals[i++] = s_.value;
+			double[] ps = StatsUtil.getPercentiles(vals, percentiles);
+			for(int p=0; p<percentiles.length; p++) {
+				Stat s = new Stat(leaf.iterator().next());
+				s.dims.put(dimLabel, percentileDimValues[p]);
+				s.value = ps[p];
+				out.add(s);
+			}
+		}
+		return out;
+	}
+
 	/**
 	 * Compute the median of all values along a dimension.
 	 * 
@@ -265,13 +454,7 @@ public class Operations {
 	 * @return The result.
 	 */
 	public static Collection<Stat> computeStdDim(StatsHypercube hc, String dimLabel, String stdDimValue) {
-		return computeAggregation(hc, new Aggregator() {
-			@Override
-			public double compute(double[] vals) {
-				if(vals.length == 0) return Double.NaN;
-				return Math.sqrt(StatUtils.variance(vals));
-			}
-		}, dimLabel, stdDimValue);
+		return computeAggregates(hc, dimLabel, new Aggregate[] { Aggregate.STD }, stdDimValue).stats;
 	}
 
 	/**
@@ -283,13 +466,7 @@ public class Operations {
 	 * @return The result.
 	 */
 	public static Collection<Stat> computeRMSDim(StatsHypercube hc, String dimLabel, String rmsDimValue) {
-		return computeAggregation(hc, new Aggregator() {
-			@Override
-			public double compute(double[] vals) {
-				if(vals.length == 0) return Double.NaN;
-				return Math.sqrt(StatUtils.sumSq(vals)/vals.length);
-			}
-		}, dimLabel, rmsDimValue);
+		return computeAggregates(hc, dimLabel, new Aggregate[] { Aggregate.RMS }, rmsDimValue).stats;
 	}
 
 	/*
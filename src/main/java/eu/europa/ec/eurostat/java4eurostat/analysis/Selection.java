@@ -3,7 +3,11 @@
  */
 package eu.europa.ec.eurostat.java4eurostat.analysis;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.TimePeriod;
 
 /**
  * Classes and interface for data selection/filtering/dicing/slicing
@@ -12,7 +16,28 @@ import eu.europa.ec.eurostat.java4eurostat.base.Stat;
  * 
  */
 public class Selection {
-	//TODO define selection grammar?
+
+	/**
+	 * Parse a selection query into a criteria.
+	 * Ex: <code>geo IN (FR,DE) AND time &gt;= 2015 AND value &gt; 0</code>
+	 *
+	 * A query combines predicates with AND, OR, NOT and parenthesis. AND has precedence over OR. The predicates are:
+	 * <ul>
+	 * <li><code>dim = v</code>, <code>dim != v</code> (or <code>dim &lt;&gt; v</code>) on dimension values,</li>
+	 * <li><code>dim IN (v1,v2,...)</code>, <code>dim NOT IN (v1,v2,...)</code> on dimension values,</li>
+	 * <li><code>dim &gt; x</code>, <code>&lt;</code>, <code>&gt;=</code>, <code>&lt;=</code> on numeric dimension values, such as time,</li>
+	 * <li><code>dim BETWEEN p1 AND p2</code> on time periods of the same frequency, such as 2015M01, see {@link TimePeriodBetween},</li>
+	 * <li><code>value = x</code>, <code>!=</code>, <code>&gt;</code>, <code>&lt;</code>, <code>&gt;=</code>, <code>&lt;=</code> on the statistical values.</li>
+	 * </ul>
+	 * Keywords are case insensitive. Dimension values containing spaces or special characters can be quoted with ' or ".
+	 *
+	 * @param query
+	 * @return The criteria.
+	 * @throws IllegalArgumentException if the query is not valid.
+	 */
+	public static Criteria parse(String query) {
+		return new SelectionParser(query).parse();
+	}
 
 	/**
 	 * A generic selection criteria to specify whether a statistical value should be kept of not.
@@ -29,6 +54,35 @@ public class Selection {
 		boolean keep(Stat stat);
 	}
 
+	/**
+	 * Retrieve the dimension labels a criteria depends on.
+	 * This allows to evaluate the criteria on partial stats, whose only some dimension values are known.
+	 * 
+	 * @param cri
+	 * @return The dimension labels, or null if the criteria depends also on something else than dimension values (value, flags, etc.).
+	 */
+	public static Set<String> getDimLabels(Criteria cri) {
+		Set<String> out = new HashSet<>();
+		return getDimLabels(cri, out) ? out : null;
+	}
+	private static boolean getDimLabels(Criteria cri, Set<String> out) {
+		if(cri instanceof DimValueEqualTo || cri instanceof DimValueDifferentFrom) {
+			String[] dlv = cri instanceof DimValueEqualTo ? ((DimValueEqualTo)cri).getDimLabelValues() : ((DimValueDifferentFrom)cri).getDimLabelValues();
+			for(int i=0; i<dlv.length; i+=2) out.add(dlv[i]);
+			return true;
+		}
+		if(cri instanceof DimValueGreaterThan) { out.add(((DimValueGreaterThan)cri).getDimLabel()); return true; }
+		if(cri instanceof DimValueLowerThan) { out.add(((DimValueLowerThan)cri).getDimLabel()); return true; }
+		if(cri instanceof DimValueGreaterOrEqualThan) { out.add(((DimValueGreaterOrEqualThan)cri).getDimLabel()); return true; }
+		if(cri instanceof DimValueLowerOrEqualThan) { out.add(((DimValueLowerOrEqualThan)cri).getDimLabel()); return true; }
+		if(cri instanceof TimePeriodBetween) { out.add(((TimePeriodBetween)cri).getDimLabel()); return true; }
+		if(cri instanceof Not) return getDimLabels(((Not)cri).getCriteria(), out);
+		Criteria[] cris = cri instanceof And ? ((And)cri).getCriteria() : cri instanceof Or ? ((Or)cri).getCriteria() : null;
+		if(cris == null) return false;
+		for(Criteria c : cris) if(!getDimLabels(c, out)) return false;
+		return true;
+	}
+
 	/** Selection criteria on values */
 	public static class ValueEqualTo implements Criteria {
 		private double value;
@@ -37,6 +91,8 @@ public class Selection {
 		 */
 		/* */
 		public ValueEqualTo(double value){ this.value = value; }
+		/** @return The value */
+		public double getValue() { return this.value; }
 		@Override
 		public boolean keep(Stat stat) { return stat.value == this.value; }
 	}
@@ -47,6 +103,8 @@ public class Selection {
 		 * @param value
 		 */
 		public ValueDifferentFrom(double value){ this.value = value; }
+		/** @return The value */
+		public double getValue() { return this.value; }
 		@Override
 		public boolean keep(Stat stat) { return stat.value != this.value; }
 	}
@@ -57,6 +115,8 @@ public class Selection {
 		 * @param value
 		 */
 		public ValueGreaterThan(double value){ this.value = value; }
+		/** @return The value */
+		public double getValue() { return this.value; }
 		@Override
 		public boolean keep(Stat stat) { return stat.value > this.value; }
 	}
@@ -67,6 +127,8 @@ public class Selection {
 		 * @param value
 		 */
 		public ValueLowerThan(double value){ this.value = value; }
+		/** @return The value */
+		public double getValue() { return this.value; }
 		@Override
 		public boolean keep(Stat stat) { return stat.value < this.value; }
 	}
@@ -77,6 +139,8 @@ public class Selection {
 		 * @param value
 		 */
 		public ValueGreaterOrEqualThan(double value){ this.value = value; }
+		/** @return The value */
+		public double getValue() { return this.value; }
 		@Override
 		public boolean keep(Stat stat) { return stat.value >= this.value; }
 	}
@@ -87,6 +151,8 @@ public class Selection {
 		 * @param value
 		 */
 		public ValueLowerOrEqualThan(double value){ this.value = value; }
+		/** @return The value */
+		public double getValue() { return this.value; }
 		@Override
 		public boolean keep(Stat stat) { return stat.value <= this.value; }
 	}
@@ -100,6 +166,8 @@ public class Selection {
 		 * @param dimLabelValues
 		 */
 		public DimValueEqualTo(String... dimLabelValues){ this.dimLabelValues = dimLabelValues; }
+		/** @return The list of couples (label,value) */
+		public String[] getDimLabelValues() { return this.dimLabelValues; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -115,6 +183,8 @@ public class Selection {
 		 * @param dimLabelValues
 		 */
 		public DimValueDifferentFrom(String... dimLabelValues){ this.dimLabelValues = dimLabelValues; }
+		/** @return The list of couples (label,value) */
+		public String[] getDimLabelValues() { return this.dimLabelValues; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -131,6 +201,10 @@ public class Selection {
 		 * @param dimValue
 		 */
 		public DimValueGreaterThan(String dimLabel, double dimValue){ this.dimLabel = dimLabel; this.dimValue = dimValue; }
+		/** @return The dimension label */
+		public String getDimLabel() { return this.dimLabel; }
+		/** @return The dimension value threshold */
+		public double getDimValue() { return this.dimValue; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -146,6 +220,10 @@ public class Selection {
 		 * @param dimValue
 		 */
 		public DimValueLowerThan(String dimLabel, double dimValue){ this.dimLabel = dimLabel; this.dimValue = dimValue; }
+		/** @return The dimension label */
+		public String getDimLabel() { return this.dimLabel; }
+		/** @return The dimension value threshold */
+		public double getDimValue() { return this.dimValue; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -161,6 +239,10 @@ public class Selection {
 		 * @param dimValue
 		 */
 		public DimValueGreaterOrEqualThan(String dimLabel, double dimValue){ this.dimLabel = dimLabel; this.dimValue = dimValue; }
+		/** @return The dimension label */
+		public String getDimLabel() { return this.dimLabel; }
+		/** @return The dimension value threshold */
+		public double getDimValue() { return this.dimValue; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -176,6 +258,10 @@ public class Selection {
 		 * @param dimValue
 		 */
 		public DimValueLowerOrEqualThan(String dimLabel, double dimValue){ this.dimLabel = dimLabel; this.dimValue = dimValue; }
+		/** @return The dimension label */
+		public String getDimLabel() { return this.dimLabel; }
+		/** @return The dimension value threshold */
+		public double getDimValue() { return this.dimValue; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -184,6 +270,49 @@ public class Selection {
 		}
 	}
 
+	/**
+	 * Selection criteria for statistics whose time period is within a range, bounds included.
+	 * Only the time periods with the same frequency as the bounds are kept. See {@link TimePeriod}.
+	 */
+	public static class TimePeriodBetween implements Criteria {
+		private String dimLabel;
+		private int from, to;
+		/**
+		 * @param dimLabel The time dimension label.
+		 * @param from The first time period, or null.
+		 * @param to The last time period, or null.
+		 */
+		public TimePeriodBetween(String dimLabel, String from, String to){
+			this.dimLabel = dimLabel;
+			this.from = from == null ? TimePeriod.NONE : encode(from);
+			this.to = to == null ? TimePeriod.NONE : encode(to);
+			if(this.from == TimePeriod.NONE && this.to == TimePeriod.NONE) throw new IllegalArgumentException("At least one bound expected");
+			if(this.from != TimePeriod.NONE && this.to != TimePeriod.NONE && TimePeriod.getFrequency(this.from) != TimePeriod.getFrequency(this.to))
+				throw new IllegalArgumentException("The bounds must have the same frequency: " + from + ", " + to);
+		}
+		private static int encode(String period) {
+			int code = TimePeriod.encode(period);
+			if(code == TimePeriod.NONE) throw new IllegalArgumentException("Not a time period: " + period);
+			return code;
+		}
+		/** @return The dimension label */
+		public String getDimLabel() { return this.dimLabel; }
+
+		/**
+		 * @param code
+		 * @return True if the time period code is within the range.
+		 */
+		public boolean keep(int code) {
+			if(code == TimePeriod.NONE) return false;
+			int ref = this.from == TimePeriod.NONE ? this.to : this.from;
+			if(TimePeriod.getFrequency(code) != TimePeriod.getFrequency(ref)) return false;
+			return (this.from == TimePeriod.NONE || code >= this.from) && (this.to == TimePeriod.NONE || code <= this.to);
+		}
+
+		@Override
+		public boolean keep(Stat stat) { return keep(TimePeriod.encode(stat.dims.get(this.dimLabel))); }
+	}
+
 	/**
 	 *  A composite data criteria (or)
 	 */
@@ -193,6 +322,8 @@ public class Selection {
 		 * @param cri
 		 */
 		public Or(Criteria... cri){ this.cri = cri; }
+		/** @return The combined criteria */
+		public Criteria[] getCriteria() { return this.cri; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -210,6 +341,8 @@ public class Selection {
 		 * @param cri
 		 */
 		public And(Criteria... cri){ this.cri = cri; }
+		/** @return The combined criteria */
+		public Criteria[] getCriteria() { return this.cri; }
 		@Override
 		public boolean keep(Stat stat) {
 			for(int i=0; i<this.cri.length; i++) if(!this.cri[i].keep(stat)) return false;
@@ -226,6 +359,8 @@ public class Selection {
 		 * @param cri
 		 */
 		public Not(Criteria cri){ this.cri = cri; }
+		/** @return The negated criteria */
+		public Criteria getCriteria() { return this.cri; }
 
 		@Override
 		public boolean keep(Stat stat) {
@@ -0,0 +1,194 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.TimePeriodBetween;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerThan;
+import eu.europa.ec.eurostat.java4eurostat.base.TimePeriod;
+
+/**
+ * A recursive descent parser of the selection query language. See {@link Selection#parse(String)}.
+ *
+ * @author julien Gaffuri
+ *
+ */
+class SelectionParser {
+
+	private String query;
+	private int pos = 0;
+
+	SelectionParser(String query) { this.query = query; }
+
+	Criteria parse() {
+		Criteria cri = parseOr();
+		skipSpaces();
+		if(this.pos < this.query.length()) throw error("Unexpected '" + this.query.charAt(this.pos) + "'");
+		return cri;
+	}
+
+	//or := and (OR and)*
+	private Criteria parseOr() {
+		ArrayList<Criteria> cris = new ArrayList<>();
+		cris.add(parseAnd());
+		while(acceptKeyword("OR")) cris.add(parseAnd());
+		return cris.size() == 1 ? cris.get(0) : new Or(cris.toArray(new Criteria[cris.size()]));
+	}
+
+	//and := not (AND not)*
+	private Criteria parseAnd() {
+		ArrayList<Criteria> cris = new ArrayList<>();
+		cris.add(parseNot());
+		while(acceptKeyword("AND")) cris.add(parseNot());
+		return cris.size() == 1 ? cris.get(0) : new And(cris.toArray(new Criteria[cris.size()]));
+	}
+
+	//not := NOT not | '(' or ')' | predicate
+	private Criteria parseNot() {
+		if(acceptKeyword("NOT")) return new Not(parseNot());
+		if(accept("(")) {
+			Criteria cri = parseOr();
+			expect(")");
+			return cri;
+		}
+		return parsePredicate();
+	}
+
+	//predicate := label [NOT] IN '(' value (',' value)* ')' | label BETWEEN value AND value | label operator value
+	private Criteria parsePredicate() {
+		String label = parseToken("a dimension label or 'value'");
+		boolean isValue = "value".equals(label);
+
+		int p = this.pos;
+		boolean not = acceptKeyword("NOT");
+		if(acceptKeyword("IN")) {
+			if(isValue) throw error("IN is not supported for 'value'");
+			expect("(");
+			ArrayList<String> dlv = new ArrayList<>();
+			do { dlv.add(label); dlv.add(parseToken("a dimension value")); } while(accept(","));
+			expect(")");
+			if(not) return new DimValueDifferentFrom(dlv.toArray(new String[dlv.size()]));
+			if(dlv.size() == 2) return new DimValueEqualTo(label, dlv.get(1));
+			Criteria[] cris = new Criteria[dlv.size()/2];
+			for(int i=0; i<cris.length; i++) cris[i] = new DimValueEqualTo(label, dlv.get(2*i+1));
+			return new Or(cris);
+		}
+		if(not) { this.pos = p; throw error("IN expected after NOT"); }
+		if(acceptKeyword("BETWEEN")) {
+			if(isValue) throw error("BETWEEN is not supported for 'value'");
+			int p1 = this.pos;
+			String from = parseToken("a time period");
+			int f = TimePeriod.encode(from);
+			if(f == TimePeriod.NONE) { this.pos = p1; throw error("Time period expected instead of '" + from + "'"); }
+			if(!acceptKeyword("AND")) throw error("AND expected");
+			int p2 = this.pos;
+			String to = parseToken("a time period");
+			int t = TimePeriod.encode(to);
+			if(t == TimePeriod.NONE || TimePeriod.getFrequency(t) != TimePeriod.getFrequency(f)) { this.pos = p2; throw error("Time period of the same frequency as '" + from + "' expected instead of '" + to + "'"); }
+			return new TimePeriodBetween(label, from, to);
+		}
+
+		String op = parseOperator();
+		int valuePos = this.pos;
+		String value = parseToken("a value");
+		if(isValue) {
+			double v = parseNumber(value, valuePos);
+			switch (op) {
+			case "=": return new ValueEqualTo(v);
+			case "!=": return new ValueDifferentFrom(v);
+			case ">": return new ValueGreaterThan(v);
+			case "<": return new ValueLowerThan(v);
+			case ">=": return new ValueGreaterOrEqualThan(v);
+			default: return new ValueLowerOrEqualThan(v);
+			}
+		}
+		switch (op) {
+		case "=": return new DimValueEqualTo(label, value);
+		case "!=": return new DimValueDifferentFrom(label, value);
+		case ">": return new DimValueGreaterThan(label, parseNumber(value, valuePos));
+		case "<": return new DimValueLowerThan(label, parseNumber(value, valuePos));
+		case ">=": return new DimValueGreaterOrEqualThan(label, parseNumber(value, valuePos));
+		default: return new DimValueLowerOrEqualThan(label, parseNumber(value, valuePos));
+		}
+	}
+
+	private String parseOperator() {
+		for(String op : new String[] { "!=", "<>", ">=", "<=", "=", ">", "<" })
+			if(accept(op)) return "<>".equals(op) ? "!=" : op;
+		throw error("Operator expected");
+	}
+
+	/** Parse a quoted or unquoted token. */
+	private String parseToken(String expected) {
+		skipSpaces();
+		if(this.pos >= this.query.length()) throw error(expected + " expected");
+		char q = this.query.charAt(this.pos);
+		if(q == '\'' || q == '"') {
+			int end = this.query.indexOf(q, this.pos+1);
+			if(end < 0) throw error("Unclosed quote");
+			String token = this.query.substring(this.pos+1, end);
+			this.pos = end+1;
+			return token;
+		}
+		int start = this.pos;
+		while(this.pos < this.query.length() && isTokenChar(this.query.charAt(this.pos))) this.pos++;
+		if(start == this.pos) throw error(expected + " expected");
+		return this.query.substring(start, this.pos);
+	}
+
+	private static boolean isTokenChar(char c) {
+		return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '+' || c == '.' || c == ':' || c == '/';
+	}
+
+	private double parseNumber(String value, int p) {
+		try { return Double.parseDouble(value); }
+		catch (@SuppressWarnings("unused") NumberFormatException e) { this.pos = p; throw error("Number expected instead of '" + value + "'"); }
+	}
+
+	/** Accept a keyword, case insensitive, which is not the start of a longer token. */
+	private boolean acceptKeyword(String keyword) {
+		skipSpaces();
+		int end = this.pos + keyword.length();
+		if(end > this.query.length() || !this.query.regionMatches(true, this.pos, keyword, 0, keyword.length())) return false;
+		if(end < this.query.length() && isTokenChar(this.query.charAt(end))) return false;
+		this.pos = end;
+		return true;
+	}
+
+	private boolean accept(String symbol) {
+		skipSpaces();
+		if(!this.query.startsWith(symbol, this.pos)) return false;
+		this.pos += symbol.length();
+		return true;
+	}
+
+	private void expect(String symbol) {
+		if(!accept(symbol)) throw error("'" + symbol + "' expected");
+	}
+
+	private void skipSpaces() {
+		while(this.pos < this.query.length() && Character.isWhitespace(this.query.charAt(this.pos))) this.pos++;
+	}
+
+	private IllegalArgumentException error(String message) {
+		return new IllegalArgumentException(message + " at position " + this.pos + " in query: " + this.query);
+	}
+
+}
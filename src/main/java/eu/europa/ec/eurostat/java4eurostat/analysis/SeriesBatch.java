@@ -0,0 +1,240 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.DimValueDictionary;
+import eu.europa.ec.eurostat.java4eurostat.base.Flag;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.TimePeriod;
+
+/**
+ * The time series of an hypercube, to be processed in parallel.
+ *
+ * The stats are grouped into series by the values of the series dimensions (see {@link GroupBy}) and sorted by series.
+ * The times are encoded once into time periods (see {@link TimePeriod}), so that each series can be aligned on its periods
+ * into arrays of values, which are reused from one series to the next.
+ *
+ * @author julien Gaffuri
+ *
+ */
+class SeriesBatch {
+
+	private StatsHypercube hc;
+	GroupBy.Groups groups;
+	/** The number of series */
+	int nb;
+	/** The time dimension values, by time code */
+	String[] times;
+	/** The time code of each stat */
+	int[] timeCodes;
+	/** The time period of each time code */
+	int[] periods;
+	/** The stats, sorted by series: The stats of the series g are at the positions starts[g] to starts[g+1] excluded. */
+	int[] stats, starts;
+	/** The flags of each stat, as bit masks of the flag types. Null if not computed, or if no stat is flagged. */
+	int[] flagMasks;
+
+	SeriesBatch(StatsHypercube hc, String[] seriesDimLabels) {
+		this.hc = hc;
+		this.groups = new GroupBy.Groups(hc, seriesDimLabels);
+		this.nb = this.groups.nb;
+
+		//get the time codes, and the time periods of the codes
+		if(hc instanceof ColumnarStatsHypercube && ((ColumnarStatsHypercube)hc).getCodes("time") != null) {
+			ColumnarStatsHypercube chc = (ColumnarStatsHypercube) hc;
+			DimValueDictionary dic = chc.getDictionary("time");
+			this.times = dic.getValues();
+			this.timeCodes = chc.getCodes("time");
+			this.periods = dic.getTimeCodes();
+		} else {
+			DimValueDictionary dic = new DimValueDictionary();
+			this.timeCodes = new int[this.groups.size];
+			int i = 0;
+			for(Stat s : hc.stats) this.timeCodes[i++] = dic.encode(s.dims.get("time"));
+			this.times = dic.getValues();
+			this.periods = dic.getTimeCodes();
+		}
+
+		//sort the stats by series
+		this.starts = new int[this.nb+1];
+		for(int i=0; i<this.groups.size; i++) this.starts[this.groups.groups[i]+1]++;
+		for(int g=0; g<this.nb; g++) this.starts[g+1] += this.starts[g];
+		this.stats = new int[this.groups.size];
+		int[] next = Arrays.copyOf(this.starts, this.nb);
+		for(int i=0; i<this.groups.size; i++) this.stats[next[this.groups.groups[i]]++] = i;
+	}
+
+	/**
+	 * Compute the flags of the stats, so that they are aligned with the values. See {@link #flagMasks}.
+	 */
+	void computeFlagMasks() {
+		if(this.hc instanceof ColumnarStatsHypercube) {
+			ColumnarStatsHypercube chc = (ColumnarStatsHypercube) this.hc;
+			byte[] codes = chc.getFlagCodes();
+			if(codes == null) return;
+			DimValueDictionary dic = chc.getFlagDictionary();
+			int[] masks = new int[dic.size()];
+			for(int c=0; c<masks.length; c++) masks[c] = getFlagMask(dic.getValue(c));
+			this.flagMasks = new int[this.groups.size];
+			for(int i=0; i<this.groups.size; i++) this.flagMasks[i] = masks[codes[i] & 0xFF];
+			return;
+		}
+		int i = 0;
+		for(Stat s : this.hc.stats) {
+			String flags = s.getFlags();
+			if(!flags.isEmpty()) {
+				if(this.flagMasks == null) this.flagMasks = new int[this.groups.size];
+				this.flagMasks[i] = getFlagMask(flags);
+			}
+			i++;
+		}
+	}
+
+	/** The bit mask of the flag types of a text. */
+	private static int getFlagMask(String flags) {
+		int mask = 0;
+		if(flags == null) return mask;
+		for(int i=0; i<flags.length(); i++) {
+			Flag.FlagType f = Flag.code.get("" + flags.charAt(i));
+			if(f != null) mask |= 1 << f.ordinal();
+		}
+		return mask;
+	}
+
+	/** Add the flag types of a bit mask to a stat. */
+	static void addFlags(Stat s, int mask) {
+		for(Flag.FlagType f : Flag.FlagType.values()) if((mask & 1 << f.ordinal()) != 0) s.addFlag(f);
+	}
+
+	/** The label of a series: Its dimension values, separated by commas. */
+	String getLabel(int g) { return this.groups.getLabel(g); }
+
+	/**
+	 * The process of a series.
+	 *
+	 * @param <T> The type of the outputs.
+	 */
+	interface SeriesProcess<T> {
+		/**
+		 * @param g The series.
+		 * @param buf The buffers of the thread, to align the series.
+		 * @param out The list to add the outputs to.
+		 */
+		void process(int g, Buffers buf, ArrayList<T> out);
+	}
+
+	/**
+	 * Process all series, by blocks of series in parallel.
+	 *
+	 * @param parallelism The number of threads.
+	 * @param p
+	 * @return The outputs, in series order.
+	 * @throws IllegalStateException if the process of a series fails, or if the processing is interrupted.
+	 */
+	<T> ArrayList<T> process(int parallelism, SeriesProcess<T> p) {
+		ArrayList<T> out = new ArrayList<T>();
+		ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+		try {
+			int nbBlocks = Math.max(1, Math.min(this.nb, 4 * Math.max(parallelism, 1)));
+			ArrayList<ForkJoinTask<ArrayList<T>>> tasks = new ArrayList<>();
+			for(int b=0; b<nbBlocks; b++) {
+				int gStart = (int)((long)this.nb * b / nbBlocks), gEnd = (int)((long)this.nb * (b+1) / nbBlocks);
+				tasks.add(pool.submit(() -> {
+					ArrayList<T> out_ = new ArrayList<T>();
+					Buffers buf = new Buffers();
+					for(int g=gStart; g<gEnd; g++) p.process(g, buf, out_);
+					return out_;
+				}));
+			}
+			for(ForkJoinTask<ArrayList<T>> task : tasks) out.addAll(task.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while processing the series", e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not process the series", e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return out;
+	}
+
+	/**
+	 * The arrays of a series aligned on its periods, reused from one series to the next.
+	 */
+	class Buffers {
+		/** The length of the aligned series */
+		int n;
+		/** The period of the first position */
+		int min;
+		/** The values, NaN for the missing periods */
+		double[] values = new double[0];
+		/** Additional arrays, of the same size as the values */
+		double[] diff, std;
+		/** For each position, the series (+1) whose value was set last: The positions do not need to be reset between series. */
+		int[] stamps;
+		/** For each position, the time code */
+		int[] timeCodes;
+		/** For each position, the flags, if computed. See {@link SeriesBatch#flagMasks}. */
+		int[] flags;
+
+		/**
+		 * Align a series on its periods.
+		 *
+		 * @param g The series.
+		 * @return false if the series is empty or its times are not periods of a same frequency.
+		 */
+		boolean align(int g) {
+			int start = SeriesBatch.this.starts[g], end = SeriesBatch.this.starts[g+1];
+			int[] stats = SeriesBatch.this.stats, tcs = SeriesBatch.this.timeCodes, periods = SeriesBatch.this.periods;
+			if(start == end) return false;
+
+			//get the time extent of the series
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, freq = -1;
+			for(int k=start; k<end; k++) {
+				int tc = tcs[stats[k]];
+				int period = tc < 0 ? TimePeriod.NONE : periods[tc];
+				if(period == TimePeriod.NONE) return false;
+				int f = TimePeriod.getFrequency(period).ordinal();
+				if(freq >= 0 && f != freq) return false;
+				freq = f;
+				if(period < min) min = period;
+				if(period > max) max = period;
+			}
+
+			//align the values. The values of a period present several times are missing.
+			this.n = max-min+1;
+			this.min = min;
+			if(this.n > this.values.length) {
+				int size = Math.max(this.n, 2 * this.values.length);
+				this.values = new double[size]; this.diff = new double[size]; this.std = new double[size];
+				this.stamps = new int[size]; this.timeCodes = new int[size]; this.flags = new int[size];
+			}
+			Arrays.fill(this.values, 0, this.n, Double.NaN);
+			double[] statValues = SeriesBatch.this.groups.values;
+			for(int k=start; k<end; k++) {
+				int tc = tcs[stats[k]], p = periods[tc] - min;
+				this.values[p] = this.stamps[p] == g+1 ? Double.NaN : statValues[stats[k]];
+				this.stamps[p] = g+1;
+				this.timeCodes[p] = tc;
+				this.flags[p] = SeriesBatch.this.flagMasks == null ? 0 : SeriesBatch.this.flagMasks[stats[k]];
+			}
+			return true;
+		}
+
+		/** @return true if the series has a stat at a position. */
+		boolean isPresent(int g, int p) { return this.stamps[p] == g+1; }
+
+		/** @return The time of a position with a stat. */
+		String getTime(int p) { return SeriesBatch.this.times[this.timeCodes[p]]; }
+	}
+
+}
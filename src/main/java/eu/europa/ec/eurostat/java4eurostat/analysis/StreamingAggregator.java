@@ -0,0 +1,213 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Operations.Aggregator;
+import eu.europa.ec.eurostat.java4eurostat.util.TDigest;
+
+/**
+ * An aggregator which does not need the values to aggregate to be all in memory.
+ *
+ * The aggregation is done with an accumulator: It is initialised, the values are accumulated one by one,
+ * and the aggregated value is computed at the end. Partial accumulators, for example of chunks processed in parallel,
+ * can be merged. The accumulators of the built-in aggregators use a constant memory.
+ *
+ * A streaming aggregator is also an {@link Aggregator}, which accumulates the values of an array.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public interface StreamingAggregator extends Aggregator {
+
+	/**
+	 * @return A new accumulator, without any value.
+	 */
+	Accumulator init();
+
+	@Override
+	default double compute(double[] values) {
+		Accumulator acc = init();
+		for(double v : values) acc.accumulate(v);
+		return acc.finish();
+	}
+
+	/**
+	 * A streaming aggregator uses a new accumulator for each computation: It is thread safe.
+	 */
+	@Override
+	default boolean isThreadSafe() { return true; }
+
+	/**
+	 * The partial state of an aggregation.
+	 */
+	interface Accumulator {
+		/**
+		 * Add a value.
+		 * @param value
+		 */
+		void accumulate(double value);
+
+		/**
+		 * Add the values of another accumulator of the same aggregator.
+		 * @param partial
+		 */
+		void merge(Accumulator partial);
+
+		/**
+		 * @return The aggregated value of the accumulated values. The accumulator can still be used after.
+		 */
+		double finish();
+	}
+
+
+	/** The number of values */
+	StreamingAggregator COUNT = () -> new Moments() {
+		@Override
+		public double finish() { return getCount(); }
+	};
+
+	/** The sum of the values */
+	StreamingAggregator SUM = () -> new Moments() {
+		@Override
+		public double finish() { return getSum(); }
+	};
+
+	/** The mean of the values */
+	StreamingAggregator MEAN = Moments::new;
+
+	/** The variance of the values (with bias correction), computed with Welford's algorithm. */
+	StreamingAggregator VARIANCE = () -> new Moments() {
+		@Override
+		public double finish() { return getVariance(); }
+	};
+
+	/** The standard deviation of the values (with bias correction) */
+	StreamingAggregator STD = () -> new Moments() {
+		@Override
+		public double finish() { return Math.sqrt(getVariance()); }
+	};
+
+	/** The root mean square of the values */
+	StreamingAggregator RMS = () -> new Moments() {
+		@Override
+		public double finish() { return getRMS(); }
+	};
+
+	/** The minimum of the values. NaN values are ignored. */
+	StreamingAggregator MIN = () -> new Extremum(false);
+
+	/** The maximum of the values. NaN values are ignored. */
+	StreamingAggregator MAX = () -> new Extremum(true);
+
+	/**
+	 * An approximate percentile of the values, estimated with a t-digest of default compression. NaN values are ignored.
+	 * 
+	 * @param percentile The percentile, in [0,100].
+	 * @return The aggregator.
+	 */
+	static StreamingAggregator percentile(double percentile) { return percentile(percentile, TDigest.DEFAULT_COMPRESSION); }
+
+	/**
+	 * An approximate percentile of the values, estimated with a t-digest. NaN values are ignored.
+	 * 
+	 * @param percentile The percentile, in [0,100].
+	 * @param compression The compression of the t-digest, see {@link TDigest}.
+	 * @return The aggregator.
+	 */
+	static StreamingAggregator percentile(double percentile, double compression) {
+		if(percentile < 0 || percentile > 100) throw new IllegalArgumentException("Percentile should be in [0,100]: " + percentile);
+		return () -> new Percentile(percentile / 100, compression);
+	}
+
+
+	/**
+	 * An accumulator of the number, sum, sum of squares, mean and sum of squared deviations of the values.
+	 * Its aggregated value is the mean.
+	 */
+	class Moments implements Accumulator {
+		long count = 0;
+		double sum = 0, sumSq = 0, mean = 0, m2 = 0;
+
+		/** @return The number of values. */
+		public long getCount() { return this.count; }
+		/** @return The sum of the values. */
+		public double getSum() { return this.sum; }
+		/** @return The mean of the values, or NaN if there is none. */
+		public double getMean() { return this.count == 0 ? Double.NaN : this.mean; }
+		/** @return The variance of the values (with bias correction), or NaN if there is none. */
+		public double getVariance() { return this.count == 0 ? Double.NaN : this.count == 1 ? 0 : this.m2 / (this.count - 1); }
+		/** @return The root mean square of the values, or NaN if there is none. */
+		public double getRMS() { return this.count == 0 ? Double.NaN : Math.sqrt(this.sumSq / this.count); }
+
+		@Override
+		public double finish() { return getMean(); }
+
+		@Override
+		public void accumulate(double value) {
+			this.count++;
+			this.sum += value;
+			this.sumSq += value * value;
+			//Welford's update
+			double d = value - this.mean;
+			this.mean += d / this.count;
+			this.m2 += d * (value - this.mean);
+		}
+
+		@Override
+		public void merge(Accumulator partial) {
+			Moments p = (Moments) partial;
+			if(p.count == 0) return;
+			long count = this.count + p.count;
+			//Chan's update
+			double d = p.mean - this.mean;
+			this.mean += d * p.count / count;
+			this.m2 += p.m2 + d * d * this.count * p.count / count;
+			this.sum += p.sum;
+			this.sumSq += p.sumSq;
+			this.count = count;
+		}
+	}
+
+	/**
+	 * An accumulator of the minimum or maximum of the values.
+	 */
+	class Extremum implements Accumulator {
+		private boolean max;
+		private double value = Double.NaN;
+
+		Extremum(boolean max) { this.max = max; }
+
+		@Override
+		public void accumulate(double value) {
+			if(Double.isNaN(value)) return;
+			if(Double.isNaN(this.value) || (this.max ? value > this.value : value < this.value)) this.value = value;
+		}
+
+		@Override
+		public void merge(Accumulator partial) { accumulate(((Extremum) partial).value); }
+
+		@Override
+		public double finish() { return this.value; }
+	}
+
+	/**
+	 * An accumulator of an approximate percentile, based on a t-digest.
+	 */
+	class Percentile implements Accumulator {
+		private double q;
+		private TDigest digest;
+
+		Percentile(double q, double compression) { this.q = q; this.digest = new TDigest(compression); }
+
+		@Override
+		public void accumulate(double value) { this.digest.add(value); }
+
+		@Override
+		public void merge(Accumulator partial) { this.digest.merge(((Percentile) partial).digest); }
+
+		@Override
+		public double finish() { return this.digest.quantile(this.q); }
+	}
+
+}
@@ -4,6 +4,7 @@
 package eu.europa.ec.eurostat.java4eurostat.analysis;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -13,6 +14,7 @@ import org.apache.commons.math3.stat.StatUtils;
 import eu.europa.ec.eurostat.java4eurostat.base.Stat;
 import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
 import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import eu.europa.ec.eurostat.java4eurostat.base.TimePeriod;
 import eu.europa.ec.eurostat.java4eurostat.util.Util;
 
 /**
@@ -32,13 +34,39 @@ public class TimeSeriesUtil {
 	//sort time series
 	public static ArrayList<Stat> sort(Collection<Stat> series){
 		ArrayList<Stat> series_ = new ArrayList<Stat>(series);
-		Collections.sort(series_, new Comparator<Stat>() {
-			public int compare(Stat s1, Stat s2) { return s1.dims.get("time").compareTo(s2.dims.get("time")); }
-		});
-		return series_;
+		String[] times = new String[series_.size()];
+		for(int i=0; i<times.length; i++) times[i] = series_.get(i).dims.get("time");
+		int[] order = sortTimes(times);
+		if(order == null) {
+			Collections.sort(series_, new Comparator<Stat>() {
+				public int compare(Stat s1, Stat s2) { return s1.dims.get("time").compareTo(s2.dims.get("time")); }
+			});
+			return series_;
+		}
+		ArrayList<Stat> out = new ArrayList<Stat>(order.length);
+		for(int i : order) out.add(series_.get(i));
+		return out;
 	}
 
-
+	/**
+	 * Sort time periods, by encoding them once into integers. See {@link TimePeriod}.
+	 *
+	 * @param times
+	 * @return The positions of the time periods, in time order, or null if some are not time periods.
+	 */
+	private static int[] sortTimes(String[] times) {
+		//pack the code and position, and sort
+		long[] keys = new long[times.length];
+		for(int i=0; i<times.length; i++) {
+			int code = TimePeriod.encode(times[i]);
+			if(code == TimePeriod.NONE) return null;
+			keys[i] = (long)code << 32 | i;
+		}
+		Arrays.sort(keys);
+		int[] out = new int[times.length];
+		for(int i=0; i<out.length; i++) out[i] = (int)keys[i];
+		return out;
+	}
 
 	public static double getAverageMonth(StatsIndex series, String startMonth, String endMonth, boolean allShouldBeThere, int inputRouding){
 		int sY = EBTimeUtil.getYearInt(startMonth), sM = EBTimeUtil.getMonthInt(startMonth);
@@ -64,7 +92,8 @@ public class TimeSeriesUtil {
 		int sY = EBTimeUtil.getYearInt(startMonth), sM = EBTimeUtil.getMonthInt(startMonth);
 		int eY = EBTimeUtil.getYearInt(endMonth),   eM = EBTimeUtil.getMonthInt(endMonth);
 
-		ArrayList<Double> vals_ = new ArrayList<Double>();
+		double[] vals = new double[Math.max(0, 12*(eY-sY) + eM-sM + 1)];
+		int nb = 0;
 		for(int y=sY; y<=eY; y++){
 			int sM_ = y==sY?sM:1, eM_ = y==eY?eM:12;
 			for(int m=sM_; m<=eM_; m++){
@@ -72,21 +101,36 @@ public class TimeSeriesUtil {
 				if(Double.isNaN(v))
 					if(allShouldBeThere) return Double.NaN;
 					else continue;
-				vals_.add(v);
+				vals[nb++] = v;
 			}
 		}
-		if(vals_.size() == 0) return Double.NaN;
-		double[] vals = new double[vals_.size()]; for(int i=0;i<vals_.size();i++) vals[i]=vals_.get(i);
-		return Math.sqrt(StatUtils.variance(vals));
+		if(nb == 0) return Double.NaN;
+		return Math.sqrt(StatUtils.variance(vals, 0, nb));
 	}
 
 	public static ArrayList<String> getTimeList(StatsIndex series){
-		ArrayList<String> t = new ArrayList<String>(); t.addAll(series.getKeys());
-		Collections.sort(t);
+		String[] times = series.getKeys().toArray(new String[0]);
+		int[] order = sortTimes(times);
+		ArrayList<String> t = new ArrayList<String>(times.length);
+		if(order == null) { t.addAll(Arrays.asList(times)); Collections.sort(t); }
+		else for(int i : order) t.add(times[i]);
 		return t;
 	}
 
+	/**
+	 * Compute the moving average of a time series, over the window of the 2w+1 periods centred on each period.
+	 * The series is aligned on its integer periods (see {@link TimePeriod}) and the window is slid with running sums,
+	 * so that the computation is linear. The series which are not aligned on periods of a same frequency are
+	 * computed window by window, as monthly series.
+	 *
+	 * @param seriesM The time series.
+	 * @param w The half-width of the window.
+	 * @return The moving average series, with the same times.
+	 */
 	public static StatsIndex getMovingAverageMonth(StatsIndex seriesM, int w){
+		StatsIndex out = getMoving(seriesM, w, false);
+		if(out != null) return out;
+
 		StatsHypercube sh = new StatsHypercube("time");
 		ArrayList<String> times = getTimeList(seriesM);
 		for(String time : times){
@@ -98,6 +142,134 @@ public class TimeSeriesUtil {
 		return new StatsIndex(sh, "time");
 	}
 
+	/**
+	 * Compute the moving average of a series of values of consecutive periods, over the window of the 2w+1 values
+	 * centred on each value. The values outside of the series are missing.
+	 *
+	 * @param values The values, NaN when missing.
+	 * @param w The half-width of the window.
+	 * @param allShouldBeThere If true, the average is NaN when a value of the window is missing. Otherwise, the average of the values present.
+	 * @param out The array to fill with the averages, of the same length as the values. If null, a new one is created.
+	 * @return The averages, NaN when there is no value in the window.
+	 */
+	public static double[] getMovingAverage(double[] values, int w, boolean allShouldBeThere, double[] out) {
+		if(out == null) out = new double[values.length];
+		moving(values, values.length, w, allShouldBeThere, out, null);
+		return out;
+	}
+
+	/**
+	 * Compute the moving standard deviation of a series of values of consecutive periods, over the window of the 2w+1 values
+	 * centred on each value. The values outside of the series are missing. As {@link #getStdMonth(StatsIndex, String, String, boolean)},
+	 * the standard deviation is the square root of the bias corrected variance.
+	 *
+	 * @param values The values, NaN when missing.
+	 * @param w The half-width of the window.
+	 * @param allShouldBeThere If true, the standard deviation is NaN when a value of the window is missing. Otherwise, the standard deviation of the values present.
+	 * @param out The array to fill with the standard deviations, of the same length as the values. If null, a new one is created.
+	 * @return The standard deviations, NaN when there is no value in the window.
+	 */
+	public static double[] getMovingStd(double[] values, int w, boolean allShouldBeThere, double[] out) {
+		if(out == null) out = new double[values.length];
+		moving(values, values.length, w, allShouldBeThere, null, out);
+		return out;
+	}
+
+	/**
+	 * Slide the window over the values, maintaining the sum and the sum of squares of the values present in the window.
+	 * The values are shifted by the first value present, to limit the loss of precision of the sum of squares.
+	 */
+	private static void moving(double[] values, int n, int w, boolean allShouldBeThere, double[] average, double[] std) {
+		double ref = 0;
+		for(int i=0; i<n; i++) if(!Double.isNaN(values[i])) { ref = values[i]; break; }
+
+		//the window of the position -1, from -w-1 to w-1
+		double sum = 0, sum2 = 0;
+		int nb = 0, nbMissing = w+1;
+		for(int i=0; i<w; i++) {
+			double v = i<n ? values[i] : Double.NaN;
+			if(Double.isNaN(v)) { nbMissing++; continue; }
+			v -= ref; nb++; sum += v; sum2 += v*v;
+		}
+
+		for(int i=0; i<n; i++) {
+			//enter the value i+w
+			double v = i+w<n ? values[i+w] : Double.NaN;
+			if(Double.isNaN(v)) nbMissing++;
+			else { v -= ref; nb++; sum += v; sum2 += v*v; }
+			//leave the value i-w-1
+			v = i-w-1>=0 ? values[i-w-1] : Double.NaN;
+			if(Double.isNaN(v)) nbMissing--;
+			else { v -= ref; nb--; sum -= v; sum2 -= v*v; }
+
+			boolean none = nb == 0 || (allShouldBeThere && nbMissing > 0);
+			if(average != null) average[i] = none ? Double.NaN : ref + sum/nb;
+			if(std != null) std[i] = none ? Double.NaN : nb == 1 ? 0 : Math.sqrt(Math.max(0, (sum2 - sum*sum/nb) / (nb-1)));
+		}
+	}
+
+	/**
+	 * Compute a moving statistic of a series aligned on its integer periods.
+	 *
+	 * @return The series of the moving statistic, or null if the times are not periods of a same frequency.
+	 */
+	private static StatsIndex getMoving(StatsIndex series, int w, boolean std) {
+		AlignedSeries as = AlignedSeries.align(series);
+		if(as == null) return null;
+		double[] out = std ? getMovingStd(as.values, w, false, null) : getMovingAverage(as.values, w, false, null);
+
+		StatsHypercube sh = new StatsHypercube("time");
+		for(int i=0; i<as.times.length; i++){
+			Stat s = new Stat();
+			s.value = out[as.positions[i]];
+			s.dims.put("time", as.times[i]);
+			sh.stats.add(s);
+		}
+		return new StatsIndex(sh, "time");
+	}
+
+	/**
+	 * A time series aligned on its integer periods: The value of a period is at the position of the period from the first one.
+	 */
+	private static class AlignedSeries {
+		/** The times of the series, in time order */
+		String[] times;
+		/** The position of each time */
+		int[] positions;
+		/** The values, NaN for the missing periods */
+		double[] values;
+
+		/**
+		 * @return The aligned series, or null if the series is empty or its times are not periods of a same frequency.
+		 */
+		static AlignedSeries align(StatsIndex series) {
+			String[] times = series.getKeys().toArray(new String[0]);
+			if(times.length == 0) return null;
+			int[] codes = new int[times.length];
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+			for(int i=0; i<times.length; i++) {
+				int code = TimePeriod.encode(times[i]);
+				if(code == TimePeriod.NONE || (i>0 && TimePeriod.getFrequency(code) != TimePeriod.getFrequency(codes[0]))) return null;
+				codes[i] = code;
+				if(code < min) min = code;
+				if(code > max) max = code;
+			}
+
+			AlignedSeries as = new AlignedSeries();
+			as.values = new double[max-min+1];
+			Arrays.fill(as.values, Double.NaN);
+			as.times = new String[times.length];
+			as.positions = new int[times.length];
+			int[] order = sortTimes(times);
+			for(int i=0; i<times.length; i++) {
+				as.times[i] = times[order[i]];
+				as.positions[i] = codes[order[i]] - min;
+				as.values[as.positions[i]] = series.getSingleValue(as.times[i]);
+			}
+			return as;
+		}
+	}
+
 
 	public static StatsIndex diff(StatsIndex series1, StatsIndex series2) {
 		StatsHypercube sh = new StatsHypercube("time");
@@ -111,7 +283,18 @@ public class TimeSeriesUtil {
 		return new StatsIndex(sh, "time");
 	}
 
+	/**
+	 * Compute the moving standard deviation of a time series, over the window of the 2w+1 periods centred on each period.
+	 * See {@link #getMovingAverageMonth(StatsIndex, int)}.
+	 *
+	 * @param seriesM The time series.
+	 * @param w The half-width of the window.
+	 * @return The moving standard deviation series, with the same times.
+	 */
 	public static StatsIndex getMovingStdMonth(StatsIndex seriesM, int w) {
+		StatsIndex out = getMoving(seriesM, w, true);
+		if(out != null) return out;
+
 		StatsHypercube sh = new StatsHypercube("time");
 		ArrayList<String> times = getTimeList(seriesM);
 		for(String time : times){
@@ -146,15 +329,308 @@ public class TimeSeriesUtil {
 		ArrayList<Gap> gaps = new ArrayList<Gap>();
 		ArrayList<String> t = getTimeList(series);
 		String t1 = t.get(0), t2;
+		int c1 = TimePeriod.encode(t1), c2;
 		for(int i=1; i<t.size(); i++){
 			t2 = t.get(i);
-			String t2_ = EBTimeUtil.getNext(t1);
-			if(!t2.equals(t2_)) gaps.add(new Gap(label,t1,t2));
-			t1 = t2;
+			c2 = TimePeriod.encode(t2);
+			if(c1 == TimePeriod.NONE || c2 == TimePeriod.NONE || TimePeriod.getFrequency(c1) != TimePeriod.getFrequency(c2) || TimePeriod.getDuration(c1, c2) != 1)
+				gaps.add(new Gap(label,t1,t2));
+			t1 = t2; c1 = c2;
 		}
 		return gaps;
 	}
 
+	/**
+	 * The completeness of all time series of an hypercube. The indicators are stored by series, in arrays indexed by series.
+	 */
+	public static class Completeness {
+		/** The completeness indicators. */
+		public enum Indicator {
+			/** The number of periods with a value */
+			NB_VALUES,
+			/** The number of periods from the first to the last period with a value */
+			NB_PERIODS,
+			/** The share of these periods with a value */
+			FILL_RATIO,
+			/** The number of gaps */
+			NB_GAPS,
+			/** The number of periods without value, between the first and the last period with a value */
+			NB_MISSING,
+			/** The number of periods of the longest gap */
+			MAX_GAP,
+			/** The number of years without value, between the first and the last period with a value */
+			NB_EMPTY_YEARS;
+		}
+
+		/** The dimensions identifying the series. */
+		public String[] seriesDimLabels;
+		/** The dimension values of each series. */
+		public String[][] seriesDimValues;
+		/** The labels of the series: Their dimension values, separated by commas. */
+		public String[] labels;
+		/** The first and last times with a value of each series, or null if none. */
+		public String[] first, last;
+		/** The indicators of each series. */
+		public int[] nbValues, nbPeriods, nbGaps, nbMissing, maxGap;
+		/** The years without value of each series, between the first and the last period with a value. */
+		public int[][] emptyYears;
+		/** The gaps, by series and in time order. */
+		public ArrayList<Gap> gaps;
+
+		/**
+		 * @param g The series.
+		 * @return The share of periods with a value, from the first to the last one, or NaN if the series has no value.
+		 */
+		public double getFillRatio(int g) { return this.nbPeriods[g] == 0 ? Double.NaN : this.nbValues[g] / (double)this.nbPeriods[g]; }
+
+		/**
+		 * @param g The series.
+		 * @param ind
+		 * @return The value of an indicator for a series.
+		 */
+		public double get(int g, Indicator ind) {
+			switch (ind) {
+			case NB_VALUES: return this.nbValues[g];
+			case NB_PERIODS: return this.nbPeriods[g];
+			case FILL_RATIO: return getFillRatio(g);
+			case NB_GAPS: return this.nbGaps[g];
+			case NB_MISSING: return this.nbMissing[g];
+			case MAX_GAP: return this.maxGap[g];
+			default: return this.emptyYears[g].length;
+			}
+		}
+
+		/**
+		 * Build a table of the indicators, to be saved for example with {@link eu.europa.ec.eurostat.java4eurostat.io.CSV#saveMultiValues(StatsHypercube, String, String)}
+		 * with the "indicator" dimension as column dimension.
+		 *
+		 * @return An hypercube with the series dimensions, the "first" and "last" dimensions and the "indicator" dimension.
+		 */
+		public StatsHypercube getHypercube() {
+			String[] dimLabels = Arrays.copyOf(this.seriesDimLabels, this.seriesDimLabels.length + 3);
+			dimLabels[dimLabels.length-3] = "first";
+			dimLabels[dimLabels.length-2] = "last";
+			dimLabels[dimLabels.length-1] = "indicator";
+			StatsHypercube out = new StatsHypercube(dimLabels);
+			for(int g=0; g<this.labels.length; g++)
+				for(Indicator ind : Indicator.values()) {
+					Stat s = new Stat(get(g, ind));
+					for(int k=0; k<this.seriesDimLabels.length; k++)
+						if(this.seriesDimValues[g][k] != null) s.dims.put(this.seriesDimLabels[k], this.seriesDimValues[g][k]);
+					if(this.first[g] != null) s.dims.put("first", this.first[g]);
+					if(this.last[g] != null) s.dims.put("last", this.last[g]);
+					s.dims.put("indicator", ind.toString());
+					out.stats.add(s);
+				}
+			return out;
+		}
+	}
+
+	private static final int[] NO_YEAR = new int[0];
+
+	/**
+	 * Analyse the completeness of all time series of an hypercube, in parallel, using all available processors.
+	 * See {@link #performCompletenessAnalysis(StatsHypercube, String[], int)}.
+	 *
+	 * @param hc
+	 * @param seriesDimLabels The dimensions identifying the series.
+	 * @return The completeness of the series.
+	 */
+	public static Completeness performCompletenessAnalysis(StatsHypercube hc, String... seriesDimLabels) {
+		return performCompletenessAnalysis(hc, seriesDimLabels, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Analyse the completeness of all time series of an hypercube, in parallel: The gaps, the first and last periods,
+	 * the fill ratio and the empty years of each series.
+	 *
+	 * As for the batch outlier detection, each series is aligned on its time periods into an array of values.
+	 * The periods whose value is missing or NaN are missing. The series whose times are not periods of a same frequency
+	 * are considered as without value.
+	 *
+	 * @param hc
+	 * @param seriesDimLabels The dimensions identifying the series.
+	 * @param parallelism The number of threads.
+	 * @return The completeness of the series.
+	 */
+	public static Completeness performCompletenessAnalysis(StatsHypercube hc, String[] seriesDimLabels, int parallelism) {
+		SeriesBatch sb = new SeriesBatch(hc, seriesDimLabels);
+		Completeness out = new Completeness();
+		int nb = sb.nb;
+		out.seriesDimLabels = seriesDimLabels.clone();
+		out.seriesDimValues = new String[nb][];
+		out.labels = new String[nb];
+		out.first = new String[nb]; out.last = new String[nb];
+		out.nbValues = new int[nb]; out.nbPeriods = new int[nb]; out.nbGaps = new int[nb]; out.nbMissing = new int[nb]; out.maxGap = new int[nb];
+		out.emptyYears = new int[nb][];
+		out.gaps = sb.process(parallelism, (g, buf, gaps) -> {
+			String label = out.labels[g] = sb.getLabel(g);
+			out.seriesDimValues[g] = new String[seriesDimLabels.length];
+			for(int k=0; k<seriesDimLabels.length; k++) out.seriesDimValues[g][k] = sb.groups.getDimValue(g, k);
+			out.emptyYears[g] = NO_YEAR;
+			if(!buf.align(g)) return;
+
+			//scan the periods
+			int prev = -1, prevYear = 0, nbValues = 0;
+			for(int p=0; p<buf.n; p++) {
+				if(Double.isNaN(buf.values[p])) continue;
+				nbValues++;
+				int year = TimePeriod.getYear(buf.min + p);
+				if(prev < 0) out.first[g] = buf.getTime(p);
+				else {
+					int missing = p - prev - 1;
+					if(missing > 0) {
+						out.nbGaps[g]++;
+						out.nbMissing[g] += missing;
+						if(missing > out.maxGap[g]) out.maxGap[g] = missing;
+						gaps.add(new Gap(label, buf.getTime(prev), buf.getTime(p)));
+					}
+					if(year > prevYear + 1) {
+						int[] ey = out.emptyYears[g], ey_ = Arrays.copyOf(ey, ey.length + year - prevYear - 1);
+						for(int y=prevYear+1; y<year; y++) ey_[ey.length + y - prevYear - 1] = y;
+						out.emptyYears[g] = ey_;
+					}
+				}
+				prev = p; prevYear = year;
+			}
+			if(prev < 0) return;
+			out.last[g] = buf.getTime(prev);
+			out.nbValues[g] = nbValues;
+			out.nbPeriods[g] = nbValues + out.nbMissing[g];
+		});
+		return out;
+	}
+
+	/**
+	 * The derivations of time series.
+	 */
+	public enum Derivation {
+		/** The difference to the value lag periods before */
+		DIFFERENCE,
+		/** The ratio to the value lag periods before */
+		RATIO,
+		/** The rate of change from the value lag periods before, in percent. Ex: Monthly (mmor) with lag 1, annual (manr) with lag 12 for monthly series. */
+		RATE,
+		/** The sum of the values of the lag last periods */
+		ROLLING_SUM,
+		/** The average of the values of the lag last periods. Ex: 12-month moving average with lag 12 for monthly series. */
+		ROLLING_AVERAGE,
+		/** The average of the values of each year (aind). The lag is not used. */
+		ANNUAL_AVERAGE;
+	}
+
+	/**
+	 * Derive all time series of an hypercube, using all available processors.
+	 * The series are identified by the values of all dimensions but the time.
+	 * See {@link #derive(StatsHypercube, String[], Derivation, int, int)}.
+	 *
+	 * @param hc
+	 * @param der The derivation.
+	 * @param lag The number of periods.
+	 * @return The hypercube of the derived series.
+	 */
+	public static StatsHypercube derive(StatsHypercube hc, Derivation der, int lag) {
+		ArrayList<String> lbls = new ArrayList<>(hc.dimLabels);
+		lbls.remove("time");
+		return derive(hc, lbls.toArray(new String[lbls.size()]), der, lag, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Derive all time series of an hypercube, in parallel.
+	 *
+	 * As for the batch outlier detection, each series is aligned on its time periods into an array of values,
+	 * so that the value lag periods before is at a fixed offset. A derived value is computed only if all values it depends on
+	 * are present: For the rolling sums and averages, the values of all lag periods; for the annual averages, the values
+	 * of all periods of the year. The flags of the derived values are the union of the flags of these values.
+	 * The derived values which are NaN or infinite are not kept.
+	 *
+	 * @param hc
+	 * @param seriesDimLabels The dimensions identifying the series.
+	 * @param der The derivation.
+	 * @param lag The number of periods.
+	 * @param parallelism The number of threads.
+	 * @return The hypercube of the derived series, with the series dimensions and the time dimension. The annual averages are annual series.
+	 */
+	public static StatsHypercube derive(StatsHypercube hc, String[] seriesDimLabels, Derivation der, int lag, int parallelism) {
+		if(lag < 1 && der != Derivation.ANNUAL_AVERAGE) throw new IllegalArgumentException("Positive lag expected: " + lag);
+		SeriesBatch sb = new SeriesBatch(hc, seriesDimLabels);
+		sb.computeFlagMasks();
+
+		ArrayList<String> dimLabels = new ArrayList<>(Arrays.asList(seriesDimLabels));
+		if(!dimLabels.contains("time")) dimLabels.add("time");
+		StatsHypercube out = new StatsHypercube(dimLabels.toArray(new String[dimLabels.size()]));
+		out.stats.addAll(sb.process(parallelism, (g, buf, stats) -> {
+			if(!buf.align(g)) return;
+			double[] v = buf.values;
+			int n = buf.n;
+			switch (der) {
+			case DIFFERENCE:
+			case RATIO:
+			case RATE:
+				for(int p=lag; p<n; p++) {
+					double v0 = v[p-lag], v1 = v[p];
+					if(Double.isNaN(v0) || Double.isNaN(v1)) continue;
+					double d = der == Derivation.DIFFERENCE ? v1 - v0 : der == Derivation.RATIO ? v1 / v0 : 100 * (v1 / v0 - 1);
+					addDerivedStat(stats, sb, g, d, buf.getTime(p), buf.flags[p-lag] | buf.flags[p]);
+				}
+				return;
+			case ROLLING_SUM:
+			case ROLLING_AVERAGE: {
+				//slide the window of the lag last periods, from p-lag+1 to p
+				double sum = 0;
+				int nbMissing = lag;
+				for(int p=0; p<n; p++) {
+					if(Double.isNaN(v[p])) nbMissing++; else sum += v[p];
+					if(p >= lag) { if(Double.isNaN(v[p-lag])) nbMissing--; else sum -= v[p-lag]; }
+					else nbMissing--;
+					if(nbMissing > 0) continue;
+					int flags = 0;
+					for(int q=p-lag+1; q<=p; q++) flags |= buf.flags[q];
+					addDerivedStat(stats, sb, g, der == Derivation.ROLLING_SUM ? sum : sum / lag, buf.getTime(p), flags);
+				}
+				return;
+			}
+			default: {
+				//scan the years
+				TimePeriod.Frequency f = TimePeriod.getFrequency(buf.min);
+				int year = TimePeriod.getYear(buf.min), nb = 0, flags = 0, last = -1;
+				double sum = 0;
+				for(int p=0; p<=n; p++) {
+					int y = p == n ? year + 1 : TimePeriod.getYear(buf.min + p);
+					if(y != year) {
+						if(nb == TimePeriod.getNbPeriods(year, f)) addDerivedStat(stats, sb, g, sum / nb, getYearText(year, buf.getTime(last)), flags);
+						year = y; nb = 0; flags = 0; sum = 0;
+					}
+					if(p == n || Double.isNaN(v[p])) continue;
+					nb++; sum += v[p]; flags |= buf.flags[p]; last = p;
+				}
+			}
+			}
+		}));
+		return out;
+	}
+
+	/**
+	 * @param year
+	 * @param time A time period of the series.
+	 * @return The text of the year, in the same format as the time periods of the series: "2013 " for Eurobase "2013M03 ", "2013" for "2013M03".
+	 */
+	private static String getYearText(int year, String time) {
+		return time.endsWith(" ") ? EBTimeUtil.getEBText(year) : Integer.toString(year);
+	}
+
+	private static void addDerivedStat(ArrayList<Stat> stats, SeriesBatch sb, int g, double value, String time, int flags) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) return;
+		Stat s = new Stat(value);
+		for(int k=0; k<sb.groups.groupDimLabels.length; k++) {
+			String dimValue = sb.groups.getDimValue(g, k);
+			if(dimValue != null) s.dims.put(sb.groups.groupDimLabels[k], dimValue);
+		}
+		s.dims.put("time", time);
+		if(flags != 0) SeriesBatch.addFlags(s, flags);
+		stats.add(s);
+	}
+
 	/**
 	 * @param series The time series.
 	 * @param w The half-width of the smoothing window for the trend construction and the dispersion calculation. Advised value: 6 for monthly data.
@@ -164,6 +640,19 @@ public class TimeSeriesUtil {
 	 * @return List of outliers.
 	 */
 	public static ArrayList<Outlier> performOutlierDetection(StatsIndex series, int w, double thNbStd, double diffTh, String label) {
+		ArrayList<Outlier> outliers = new ArrayList<Outlier>();
+		AlignedSeries as = AlignedSeries.align(series);
+		if(as != null) {
+			int n = as.values.length;
+			double[] diff = new double[n], std = new double[n];
+			computeDiffStd(as.values, n, w, diff, std);
+			for(int i=0; i<as.times.length; i++) {
+				int p = as.positions[i];
+				if(isOutlier(diff[p], std[p], thNbStd, diffTh)) outliers.add(new Outlier(label, as.times[i], diff[p], std[p]));
+			}
+			return outliers;
+		}
+
 		//compute trend
 		StatsIndex seriesMean = getMovingAverageMonth(series, w);
 		//compute difference to trend
@@ -180,19 +669,10 @@ public class TimeSeriesUtil {
 		System.out.println("seriesSD");
 		TimeSeriesUtil.printSeries(seriesSD);*/
 
-		ArrayList<Outlier> outliers = new ArrayList<Outlier>();
-
 		for(String time : series.getKeys()){
 			double diff = seriesDiff.getSingleValue(time);
 			double std = seriesStd.getSingleValue(time);
-
-			if(Math.abs(diff) <= diffTh) continue;
-			if(std <= diffTh/thNbStd) continue;
-
-			double gravity = Math.abs(diff)/std;
-			if(gravity <= thNbStd) continue;
-
-			outliers.add(new Outlier(label, time, diff, std));
+			if(isOutlier(diff, std, thNbStd, diffTh)) outliers.add(new Outlier(label, time, diff, std));
 		}
 
 		//Collections.sort(out);
@@ -202,6 +682,96 @@ public class TimeSeriesUtil {
 		return performOutlierDetection(series, w, 3, 0, label);
 	}
 
+	/**
+	 * Compute the differences of an aligned series to its trend, and the moving standard deviation of these differences.
+	 *
+	 * @param values The aligned values. Only the n first ones are used.
+	 * @param n The length of the series.
+	 * @param w The half-width of the smoothing window.
+	 * @param diff The array to fill with the differences to the trend.
+	 * @param std The array to fill with the standard deviations of the differences.
+	 */
+	private static void computeDiffStd(double[] values, int n, int w, double[] diff, double[] std) {
+		//compute trend
+		moving(values, n, w, false, diff, null);
+		//compute difference to trend
+		for(int i=0; i<n; i++) diff[i] = values[i] - diff[i];
+		//compute std
+		moving(diff, n, w, false, null, std);
+	}
+
+	/** The values whose difference to the trend is NaN are not outliers. */
+	private static boolean isOutlier(double diff, double std, double thNbStd, double diffTh) {
+		if(!(Math.abs(diff) > diffTh)) return false;
+		if(std <= diffTh/thNbStd) return false;
+		return Math.abs(diff)/std > thNbStd;
+	}
+
+	/**
+	 * The result of an outlier detection over all series of an hypercube.
+	 */
+	public static class OutlierDetection {
+		/** The outliers, by series and in time order. */
+		public ArrayList<Outlier> outliers = new ArrayList<Outlier>();
+		/** The labels of the series: Their dimension values, separated by commas. */
+		public String[] labels;
+		/** The computation time of each series, in nanoseconds. */
+		public long[] durations;
+		/** The total computation time, in nanoseconds. */
+		public long duration;
+	}
+
+	/**
+	 * Detect the outliers of all time series of an hypercube, in parallel, using all available processors.
+	 * See {@link #performOutlierDetection(StatsHypercube, String[], int, double, double, int)}.
+	 *
+	 * @param hc
+	 * @param seriesDimLabels The dimensions identifying the series.
+	 * @param w The half-width of the smoothing window. Advised value: 6 for monthly data.
+	 * @return The outliers.
+	 */
+	public static OutlierDetection performOutlierDetection(StatsHypercube hc, String[] seriesDimLabels, int w) {
+		return performOutlierDetection(hc, seriesDimLabels, w, 3, 0, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Detect the outliers of all time series of an hypercube, in parallel.
+	 *
+	 * The stats are grouped into series by the values of the series dimensions (see {@link GroupBy}), and each series is
+	 * aligned on its time periods into an array of values, which is processed as {@link #performOutlierDetection(StatsIndex, int, double, double, String)}.
+	 * No intermediate hypercube is built, and the arrays are reused from one series to the next.
+	 * The series whose times are not periods of a same frequency are ignored. The values of a time present several times
+	 * in a series are considered as missing.
+	 *
+	 * @param hc
+	 * @param seriesDimLabels The dimensions identifying the series.
+	 * @param w The half-width of the smoothing window. Advised value: 6 for monthly data.
+	 * @param thNbStd The number of STD used to consider a value as possible outlier. Advised value: 3.
+	 * @param diffTh The minimal difference to consider a value as possible outlier. Advised value: 0.
+	 * @param parallelism The number of threads.
+	 * @return The outliers.
+	 */
+	public static OutlierDetection performOutlierDetection(StatsHypercube hc, String[] seriesDimLabels, int w, double thNbStd, double diffTh, int parallelism) {
+		long t0 = System.nanoTime();
+		SeriesBatch sb = new SeriesBatch(hc, seriesDimLabels);
+		OutlierDetection out = new OutlierDetection();
+		out.labels = new String[sb.nb];
+		out.durations = new long[sb.nb];
+		out.outliers = sb.process(parallelism, (g, buf, outliers) -> {
+			long t = System.nanoTime();
+			String label = out.labels[g] = sb.getLabel(g);
+			if(buf.align(g)) {
+				computeDiffStd(buf.values, buf.n, w, buf.diff, buf.std);
+				for(int p=0; p<buf.n; p++)
+					if(buf.isPresent(g, p) && isOutlier(buf.diff[p], buf.std[p], thNbStd, diffTh))
+						outliers.add(new Outlier(label, buf.getTime(p), buf.diff[p], buf.std[p]));
+			}
+			out.durations[g] = System.nanoTime() - t;
+		});
+		out.duration = System.nanoTime() - t0;
+		return out;
+	}
+
 	public static class Outlier implements Comparable<Outlier>{
 		public String label;
 		public String time;
@@ -228,7 +798,7 @@ public class TimeSeriesUtil {
 			Stat s = series.getSingleStat(EBTimeUtil.getEBText(year, m));
 			if(s == null) continue;
 			if(Double.isNaN(s.value)) continue;
-			s.value *= factor;
+			s.setValue(s.value * factor);
 		}
 	}
 
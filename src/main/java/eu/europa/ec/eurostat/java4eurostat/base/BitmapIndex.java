@@ -0,0 +1,214 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.BitSet;
+import java.util.HashMap;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+
+/**
+ * Inverted indexes of the dimension values of a columnar hypercube.
+ *
+ * For each indexed dimension and each dimension value, the positions of the stats having this value are stored
+ * either as a sorted array of positions (for rare values) or as a bitmap (for frequent values).
+ * Selection criteria based on dimension values can then be evaluated with bitmap operations, without scanning the stats.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class BitmapIndex {
+
+	/** The number of indexed stats. */
+	private int size;
+
+	/** The indexes, by dimension label. */
+	private HashMap<String, DimIndex> indexes = new HashMap<>();
+
+	/**
+	 * Build the inverted indexes of some dimensions of a columnar hypercube.
+	 *
+	 * @param hc
+	 * @param dimLabels The dimensions to index.
+	 */
+	public BitmapIndex(ColumnarStatsHypercube hc, String... dimLabels){
+		this.size = hc.size();
+		for(String dimLabel : dimLabels) {
+			int[] codes = hc.getCodes(dimLabel);
+			if(codes == null) continue;
+			this.indexes.put(dimLabel, new DimIndex(hc.getDictionary(dimLabel), codes, this.size));
+		}
+	}
+
+	/**
+	 * @param dimLabel
+	 * @return True if the dimension is indexed.
+	 */
+	public boolean isIndexed(String dimLabel) { return this.indexes.containsKey(dimLabel); }
+
+	/**
+	 * @param dimLabel
+	 * @param dimValue
+	 * @return The number of stats having a dimension value, or -1 if the dimension is not indexed.
+	 */
+	public int getCount(String dimLabel, String dimValue) {
+		DimIndex di = this.indexes.get(dimLabel);
+		if(di == null) return -1;
+		int code = di.dict.getCode(dimValue);
+		return code<0 || code>=di.counts.length ? 0 : di.counts[code];
+	}
+
+	/**
+	 * @param dimLabel
+	 * @param dimValue
+	 * @return The positions of the stats having a dimension value, or null if the dimension is not indexed.
+	 */
+	public BitSet get(String dimLabel, String dimValue) {
+		DimIndex di = this.indexes.get(dimLabel);
+		if(di == null) return null;
+		return di.get(di.dict.getCode(dimValue), this.size);
+	}
+
+	/**
+	 * @param dimLabel
+	 * @return The number of stats by code of the dimension values, or null if the dimension is not indexed.
+	 */
+	int[] getCounts(String dimLabel) {
+		DimIndex di = this.indexes.get(dimLabel);
+		return di == null ? null : di.counts;
+	}
+
+	/**
+	 * @param cri
+	 * @return True if the criteria can be evaluated with the indexes. See {@link #evaluate(Criteria)}.
+	 */
+	public boolean supports(Criteria cri) {
+		if(cri instanceof DimValueEqualTo || cri instanceof DimValueDifferentFrom) {
+			String[] dlv = cri instanceof DimValueEqualTo ? ((DimValueEqualTo)cri).getDimLabelValues() : ((DimValueDifferentFrom)cri).getDimLabelValues();
+			for(int i=0; i<dlv.length; i+=2) if(!isIndexed(dlv[i])) return false;
+			return true;
+		}
+		if(cri instanceof Not) return supports(((Not)cri).getCriteria());
+		Criteria[] cris = cri instanceof And ? ((And)cri).getCriteria() : cri instanceof Or ? ((Or)cri).getCriteria() : null;
+		if(cris == null) return false;
+		for(Criteria c : cris) if(!supports(c)) return false;
+		return true;
+	}
+
+	/**
+	 * Evaluate a selection criteria with the indexes.
+	 * Supported criteria are {@link DimValueEqualTo} and {@link DimValueDifferentFrom} on indexed dimensions,
+	 * and their combinations with {@link And}, {@link Or} and {@link Not}.
+	 *
+	 * @param cri
+	 * @return The positions of the stats to keep, or null if the criteria cannot be evaluated with the indexes.
+	 */
+	public BitSet evaluate(Criteria cri) {
+		if(cri instanceof DimValueEqualTo) {
+			String[] dlv = ((DimValueEqualTo)cri).getDimLabelValues();
+			BitSet out = null;
+			for(int i=0; i<dlv.length; i+=2) {
+				BitSet bs = get(dlv[i], dlv[i+1]);
+				if(bs == null) return null;
+				if(out == null) out = bs; else out.and(bs);
+			}
+			return out == null ? all() : out;
+		}
+		if(cri instanceof DimValueDifferentFrom) {
+			String[] dlv = ((DimValueDifferentFrom)cri).getDimLabelValues();
+			BitSet out = all();
+			for(int i=0; i<dlv.length; i+=2) {
+				BitSet bs = get(dlv[i], dlv[i+1]);
+				if(bs == null) return null;
+				out.andNot(bs);
+			}
+			return out;
+		}
+		if(cri instanceof And) {
+			BitSet out = null;
+			for(Criteria c : ((And)cri).getCriteria()) {
+				BitSet bs = evaluate(c);
+				if(bs == null) return null;
+				if(out == null) out = bs; else out.and(bs);
+			}
+			return out == null ? all() : out;
+		}
+		if(cri instanceof Or) {
+			BitSet out = new BitSet(this.size);
+			for(Criteria c : ((Or)cri).getCriteria()) {
+				BitSet bs = evaluate(c);
+				if(bs == null) return null;
+				out.or(bs);
+			}
+			return out;
+		}
+		if(cri instanceof Not) {
+			BitSet bs = evaluate(((Not)cri).getCriteria());
+			if(bs == null) return null;
+			BitSet out = all();
+			out.andNot(bs);
+			return out;
+		}
+		return null;
+	}
+
+	private BitSet all() {
+		BitSet out = new BitSet(this.size);
+		out.set(0, this.size);
+		return out;
+	}
+
+
+
+	/**
+	 * The inverted index of a dimension.
+	 */
+	private static class DimIndex {
+		DimValueDictionary dict;
+		/** The number of stats, by code. */
+		int[] counts;
+		/** The sorted positions, by code, for the rare values. */
+		int[][] positions;
+		/** The bitmaps, by code, for the frequent values. */
+		BitSet[] bitmaps;
+
+		DimIndex(DimValueDictionary dict, int[] codes, int size) {
+			this.dict = dict;
+			int nb = dict.size();
+			this.counts = new int[nb];
+			for(int i=0; i<size; i++) if(codes[i] >= 0) this.counts[codes[i]]++;
+
+			//use a bitmap when it is smaller than the array of positions
+			this.positions = new int[nb][];
+			this.bitmaps = new BitSet[nb];
+			for(int code=0; code<nb; code++) {
+				if(this.counts[code] == 0) continue;
+				if(32L * this.counts[code] > size) this.bitmaps[code] = new BitSet(size);
+				else this.positions[code] = new int[this.counts[code]];
+			}
+
+			int[] fill = new int[nb];
+			for(int i=0; i<size; i++) {
+				int code = codes[i];
+				if(code < 0) continue;
+				if(this.bitmaps[code] != null) this.bitmaps[code].set(i);
+				else this.positions[code][fill[code]++] = i;
+			}
+		}
+
+		BitSet get(int code, int size) {
+			BitSet out = new BitSet(size);
+			if(code < 0 || code >= this.counts.length) return out;
+			if(this.bitmaps[code] != null) out.or(this.bitmaps[code]);
+			else if(this.positions[code] != null) for(int i : this.positions[code]) out.set(i);
+			return out;
+		}
+	}
+
+}
@@ -0,0 +1,790 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+import java.util.function.Predicate;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+
+/**
+ * A hypercube of statistical values, stored as columns.
+ *
+ * The dimension values are encoded with one dictionary per dimension, and stored as one integer column per dimension.
+ * The statistical values are stored in a single double column, and the flags as a byte column of flag combination codes.
+ * This representation is much more compact in memory than a collection of {@link Stat} objects.
+ *
+ * The {@link #stats} collection remains available, as a view: the stats are built on the fly when iterating over it,
+ * and the stats added to it are encoded into the columns. The stats can be removed with the iterator or with a predicate
+ * (removeIf). As the stats are built on the fly, removing a stat object (remove, removeAll, retainAll) has no effect.
+ * The stats retrieved from this view, for example with a {@link StatsIndex}, are bound to their position: The changes of their value
+ * made with {@link Stat#setValue(double)} and the changes of their flags are written into the columns.
+ * NB: The direct changes of their value field and of their dimension values are not. Once stats are removed, the stats retrieved before
+ * cannot be changed anymore.
+ * At most 255 flag combinations can be stored.
+ *
+ * The selections do not modify the hypercube: They can be done by several threads at the same time, as long as the hypercube is not modified.
+ * The bitmap indexes and the selection planner they build lazily are published safely.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class ColumnarStatsHypercube extends StatsHypercube {
+	private final static Logger LOGGER = LogManager.getLogger(ColumnarStatsHypercube.class.getName());
+
+	/** The labels of the dimension columns. */
+	private ArrayList<String> columnLabels = new ArrayList<>();
+
+	/** The dictionaries of the dimension columns. */
+	private ArrayList<DimValueDictionary> dictionaries = new ArrayList<>();
+
+	/** The dimension columns: codes[column][position] */
+	private int[][] codes = new int[0][];
+
+	/** The value column. */
+	private double[] values;
+
+	/** The flag column, as codes of the flag dictionary. Null when no stat is flagged. */
+	private byte[] flags = null;
+
+	/** The dictionary of the flag combinations. The code 0 is for no flag. */
+	private DimValueDictionary flagDictionary = null;
+
+	/** The number of stats. */
+	private int size = 0;
+
+	/** The dimensions for which bitmap indexes are used, or null. */
+	private HashSet<String> bitmapIndexDimLabels = null;
+
+	/** The bitmap indexes. Null when not built yet or invalidated by a change. */
+	private volatile BitmapIndex bitmapIndex = null;
+
+	/** The selection planner. Null when not built yet, or outdated. */
+	private volatile SelectionPlanner planner = null;
+
+	/** The number of changes of the stat positions, to detect the bound stats which are outdated. */
+	private int modCount = 0;
+
+	/**
+	 * Build an empty columnar hypercube.
+	 *
+	 * @param dimLabels The dimension labels.
+	 */
+	public ColumnarStatsHypercube(String... dimLabels){
+		this(16, dimLabels);
+	}
+
+	/**
+	 * Build an empty columnar hypercube.
+	 *
+	 * @param capacity The initial number of stats the columns can store.
+	 * @param dimLabels The dimension labels.
+	 */
+	public ColumnarStatsHypercube(int capacity, String... dimLabels){
+		super(dimLabels);
+		this.stats = new ColumnarStats();
+		this.values = new double[Math.max(capacity, 1)];
+		for(String dimLabel : dimLabels) getOrCreateColumn(dimLabel);
+	}
+
+	/**
+	 * Build a columnar hypercube from an hypercube.
+	 *
+	 * @param hc
+	 */
+	public ColumnarStatsHypercube(StatsHypercube hc){
+		this(hc.stats.size(), hc.getDimLabels());
+		for(Stat s : hc.stats) addStat(s);
+	}
+
+	/**
+	 * Build a columnar hypercube from its columns.
+	 * NB: The arrays and dictionaries are used as internal storage: they are not copied, unless their lengths differ from the length of the value array.
+	 *
+	 * @param dimLabels The dimension labels.
+	 * @param columnLabels The column labels.
+	 * @param dictionaries The dictionaries, for each column.
+	 * @param codes The codes of the dimension values, for each column.
+	 * @param values The values.
+	 * @param flags The flag combination codes, or null if no stat is flagged.
+	 * @param flagDictionary The dictionary of the flag combinations, or null if no stat is flagged.
+	 * @param size The number of stats.
+	 */
+	public ColumnarStatsHypercube(String[] dimLabels, String[] columnLabels, DimValueDictionary[] dictionaries, int[][] codes, double[] values, byte[] flags, DimValueDictionary flagDictionary, int size){
+		super(dimLabels);
+		this.stats = new ColumnarStats();
+		this.columnLabels.addAll(Arrays.asList(columnLabels));
+		this.dictionaries.addAll(Arrays.asList(dictionaries));
+		this.size = size;
+		int capacity = Math.max(values.length, 1);
+		this.values = values.length == capacity ? values : Arrays.copyOf(values, capacity);
+		this.codes = new int[codes.length][];
+		for(int col=0; col<codes.length; col++) this.codes[col] = codes[col].length == capacity ? codes[col] : Arrays.copyOf(codes[col], capacity);
+		if(flags != null && flagDictionary != null) {
+			this.flags = flags.length == capacity ? flags : Arrays.copyOf(flags, capacity);
+			this.flagDictionary = flagDictionary;
+		}
+		for(String dimLabel : dimLabels) getOrCreateColumn(dimLabel);
+	}
+
+	/**
+	 * Build an empty hypercube sharing the column structure and dictionaries of another one.
+	 */
+	private ColumnarStatsHypercube(ColumnarStatsHypercube hc, int capacity){
+		super(hc.getDimLabels());
+		this.stats = new ColumnarStats();
+		this.values = new double[Math.max(capacity, 1)];
+		this.columnLabels.addAll(hc.columnLabels);
+		this.dictionaries.addAll(hc.dictionaries);
+		this.codes = new int[hc.codes.length][this.values.length];
+		this.flagDictionary = hc.flagDictionary;
+	}
+
+
+
+	/**
+	 * Copy the hypercube. The columns are copied, the dictionaries are shared.
+	 *
+	 * @return The copy.
+	 */
+	public ColumnarStatsHypercube copy() {
+		ColumnarStatsHypercube out = new ColumnarStatsHypercube(this, this.size);
+		System.arraycopy(this.values, 0, out.values, 0, this.size);
+		for(int col=0; col<this.codes.length; col++) System.arraycopy(this.codes[col], 0, out.codes[col], 0, this.size);
+		if(this.flags != null) out.flags = Arrays.copyOf(this.flags, out.values.length);
+		out.size = this.size;
+		return out;
+	}
+
+	/**
+	 * @return The number of stats.
+	 */
+	public int size() { return this.size; }
+
+	/**
+	 * @param dimLabel
+	 * @return The index of the column of a dimension, or -1 if there is none.
+	 */
+	public int getColumn(String dimLabel) { return this.columnLabels.indexOf(dimLabel); }
+
+	/**
+	 * @return The column labels, in column order.
+	 */
+	public String[] getColumnLabels() { return this.columnLabels.toArray(new String[this.columnLabels.size()]); }
+
+	/**
+	 * @param dimLabel
+	 * @return The dictionary of a dimension, or null if there is none.
+	 */
+	public DimValueDictionary getDictionary(String dimLabel) {
+		int col = getColumn(dimLabel);
+		return col<0 ? null : this.dictionaries.get(col);
+	}
+
+	/**
+	 * Return the code column of a dimension.
+	 * NB: The array is the internal storage: it is not a copy, and only its first {@link #size()} elements are meaningful.
+	 *
+	 * @param dimLabel
+	 * @return The codes of the dimension values, or null if there is no column for this dimension.
+	 */
+	public int[] getCodes(String dimLabel) {
+		int col = getColumn(dimLabel);
+		return col<0 ? null : this.codes[col];
+	}
+
+	/**
+	 * Return the value column.
+	 * NB: The array is the internal storage: it is not a copy, and only its first {@link #size()} elements are meaningful.
+	 *
+	 * @return The values.
+	 */
+	public double[] getValues() { return this.values; }
+
+	/**
+	 * @param i The stat position.
+	 * @return The value of the stat.
+	 */
+	public double getValue(int i) { return this.values[i]; }
+
+	/**
+	 * @param i The stat position.
+	 * @param value The new value of the stat.
+	 */
+	public void setValue(int i, double value) { this.values[i] = value; }
+
+	/**
+	 * @param dimLabel
+	 * @param i The stat position.
+	 * @return The dimension value of the stat.
+	 */
+	public String getDimValue(String dimLabel, int i) {
+		int col = getColumn(dimLabel);
+		if(col<0) return null;
+		return this.dictionaries.get(col).getValue(this.codes[col][i]);
+	}
+
+	/**
+	 * @param i The stat position.
+	 * @return The flags of the stat.
+	 */
+	public String getFlags(int i) {
+		if(this.flags == null) return "";
+		return this.flagDictionary.getValue(this.flags[i] & 0xFF);
+	}
+
+	/**
+	 * Return the flag column. The flags of a stat are given by the flag combination dictionary entry of its code.
+	 * NB: The array is the internal storage: it is not a copy, and only its first {@link #size()} elements are meaningful.
+	 *
+	 * @return The flag combination codes, or null if no stat is flagged.
+	 */
+	public byte[] getFlagCodes() { return this.flags; }
+
+	/**
+	 * @return The dictionary of the flag combinations, or null if no stat is flagged.
+	 */
+	public DimValueDictionary getFlagDictionary() { return this.flags == null ? null : this.flagDictionary; }
+
+	/**
+	 * @param i The stat position.
+	 * @param flags The new flags of the stat, or null.
+	 * @throws IllegalStateException if the flags are a new combination, and there are already 255 flag combinations.
+	 */
+	public void setFlags(int i, String flags) { setFlagCode(i, getFlagCode(flags)); }
+
+	/**
+	 * Build the stat object at a position.
+	 *
+	 * @param i The stat position.
+	 * @return The stat. It is bound to its position: the changes made with {@link Stat#setValue(double)} and the changes of its flags are written into the hypercube.
+	 */
+	public Stat getStat(int i) {
+		ColumnarStat s = new ColumnarStat();
+		fill(s, i);
+		s.position = i;
+		s.modCount = this.modCount;
+		return s;
+	}
+
+	/** Set the value, dimension values and flags of the stat at a position into a stat object. */
+	void fill(Stat s, int i) {
+		s.value = this.values[i];
+		for(int col=0; col<this.codes.length; col++) {
+			int code = this.codes[col][i];
+			if(code < 0) s.dims.remove(this.columnLabels.get(col));
+			else s.dims.put(this.columnLabels.get(col), this.dictionaries.get(col).getValue(code));
+		}
+		s.clearFlags();
+		if(this.flags != null && this.flags[i] != 0) s.addAllFlags(getFlags(i));
+	}
+
+
+
+	/**
+	 * Add a stat.
+	 *
+	 * @param s
+	 */
+	public void addStat(Stat s) {
+		int flagCode = getFlagCode(s.getFlags());
+		for(String dimLabel : s.dims.keySet()) getOrCreateColumn(dimLabel);
+		int i = newPosition();
+		this.values[i] = s.value;
+		for(int col=0; col<this.codes.length; col++)
+			this.codes[col][i] = this.dictionaries.get(col).encode(s.dims.get(this.columnLabels.get(col)));
+		setFlagCode(i, flagCode);
+	}
+
+	/**
+	 * Add a stat from its dimension values.
+	 *
+	 * @param value The value.
+	 * @param flags The flags, or null.
+	 * @param dimLabelValues The position of the statistical value in the hypercube: list of pairs: dimLabel1,dimValue1,dimLabel2,dimValue2,...
+	 */
+	public void addStat(double value, String flags, String... dimLabelValues) {
+		int flagCode = getFlagCode(flags);
+		for(int k=0; k<dimLabelValues.length; k+=2) getOrCreateColumn(dimLabelValues[k]);
+		int i = newPosition();
+		this.values[i] = value;
+		for(int col=0; col<this.codes.length; col++) this.codes[col][i] = -1;
+		for(int k=0; k<dimLabelValues.length; k+=2) {
+			int col = getColumn(dimLabelValues[k]);
+			this.codes[col][i] = this.dictionaries.get(col).encode(dimLabelValues[k+1]);
+		}
+		setFlagCode(i, flagCode);
+	}
+
+	/**
+	 * Add a stat from its dimension value codes.
+	 * This is the fastest way to fill the hypercube.
+	 *
+	 * @param value The value.
+	 * @param flags The flags, or null.
+	 * @param dimCodes The codes of the dimension values, in column order (see {@link #getColumn(String)}).
+	 */
+	public void addStat(double value, String flags, int[] dimCodes) {
+		int flagCode = getFlagCode(flags);
+		int i = newPosition();
+		this.values[i] = value;
+		for(int col=0; col<this.codes.length; col++) this.codes[col][i] = dimCodes[col];
+		setFlagCode(i, flagCode);
+	}
+
+	/**
+	 * Append the stats of another columnar hypercube.
+	 * The dimension value codes of the other hypercube are remapped to the dictionaries of this one.
+	 *
+	 * @param hc
+	 */
+	public void addAll(ColumnarStatsHypercube hc) {
+		//translation table of the flag codes of the other hypercube
+		int[] flagTranslation = null;
+		if(hc.flags != null) {
+			flagTranslation = new int[hc.flagDictionary.size()];
+			for(int code=0; code<flagTranslation.length; code++) flagTranslation[code] = getFlagCode(hc.flagDictionary.getValue(code));
+		}
+
+		for(String dimLabel : hc.dimLabels) if(!this.dimLabels.contains(dimLabel)) this.dimLabels.add(dimLabel);
+
+		//translation tables of the codes of the other hypercube, by column
+		int nbCols = hc.codes.length;
+		int[] cols = new int[nbCols];
+		int[][] translations = new int[nbCols][];
+		for(int c=0; c<nbCols; c++) {
+			cols[c] = getOrCreateColumn(hc.columnLabels.get(c));
+			DimValueDictionary dict = hc.dictionaries.get(c), dict_ = this.dictionaries.get(cols[c]);
+			if(dict == dict_) continue;
+			translations[c] = new int[dict.size()];
+			for(int code=0; code<translations[c].length; code++) translations[c][code] = dict_.encode(dict.getValue(code));
+		}
+
+		int start = this.size, n = hc.size;
+		ensureCapacity(start + n);
+		this.bitmapIndex = null;
+		this.planner = null;
+		System.arraycopy(hc.values, 0, this.values, start, n);
+		for(int col=0; col<this.codes.length; col++) Arrays.fill(this.codes[col], start, start+n, -1);
+		for(int c=0; c<nbCols; c++) {
+			int[] src = hc.codes[c], dst = this.codes[cols[c]], tr = translations[c];
+			if(tr == null) System.arraycopy(src, 0, dst, start, n);
+			else for(int i=0; i<n; i++) dst[start+i] = src[i]<0 ? src[i] : tr[src[i]];
+		}
+		this.size += n;
+
+		//flags
+		if(flagTranslation != null)
+			for(int i=0; i<n; i++) setFlagCode(start+i, flagTranslation[hc.flags[i] & 0xFF]);
+		else if(this.flags != null)
+			Arrays.fill(this.flags, start, start+n, (byte)0);
+	}
+
+	/** Reserve a new position at the end of the columns. */
+	private int newPosition() {
+		this.bitmapIndex = null;
+		this.planner = null;
+		if(this.size == this.values.length) ensureCapacity(this.values.length + (this.values.length >> 1) + 1);
+		return this.size++;
+	}
+
+	/** Ensure the columns can store a number of stats. */
+	private void ensureCapacity(int capacity) {
+		if(capacity <= this.values.length) return;
+		this.values = Arrays.copyOf(this.values, capacity);
+		for(int col=0; col<this.codes.length; col++) this.codes[col] = Arrays.copyOf(this.codes[col], capacity);
+		if(this.flags != null) this.flags = Arrays.copyOf(this.flags, capacity);
+	}
+
+	/**
+	 * Get the code of a flag combination, adding it to the flag dictionary if necessary.
+	 *
+	 * @throws IllegalStateException if there are already 255 flag combinations.
+	 */
+	private int getFlagCode(String flags) {
+		if(flags == null || flags.isEmpty()) return 0;
+		if(this.flagDictionary == null) {
+			this.flagDictionary = new DimValueDictionary();
+			this.flagDictionary.encode("");
+		}
+		String flags_ = canonicalFlags(flags);
+		int code = this.flagDictionary.getCode(flags_);
+		if(code >= 0) return code;
+		if(this.flagDictionary.size() > 255) throw new IllegalStateException("Too many flag combinations. Could not store flags " + flags);
+		return this.flagDictionary.encode(flags_);
+	}
+
+	/** Set the flag combination code of the stat at a position. */
+	private void setFlagCode(int i, int code) {
+		if(code == 0) {
+			if(this.flags != null) this.flags[i] = 0;
+			return;
+		}
+		if(this.flags == null) this.flags = new byte[this.values.length];
+		this.flags[i] = (byte)code;
+	}
+
+	/** Sort the flag characters, so that a flag combination has a single representation. */
+	static String canonicalFlags(String flags) {
+		if(flags.length() == 1) return flags;
+		char[] fl = flags.toCharArray();
+		Arrays.sort(fl);
+		return new String(fl);
+	}
+
+	/** Get the column of a dimension, creating it if necessary. */
+	private int getOrCreateColumn(String dimLabel) {
+		int col = getColumn(dimLabel);
+		if(col >= 0) return col;
+		col = this.codes.length;
+		this.columnLabels.add(dimLabel);
+		this.dictionaries.add(new DimValueDictionary());
+		this.bitmapIndex = null;
+		this.planner = null;
+		this.codes = Arrays.copyOf(this.codes, col+1);
+		this.codes[col] = new int[this.values.length];
+		Arrays.fill(this.codes[col], 0, this.size, -1);
+		return col;
+	}
+
+	/** Remove a position, shifting the next ones. */
+	private void remove(int i) {
+		this.bitmapIndex = null;
+		this.planner = null;
+		this.modCount++;
+		int n = this.size - i - 1;
+		System.arraycopy(this.values, i+1, this.values, i, n);
+		for(int col=0; col<this.codes.length; col++) System.arraycopy(this.codes[col], i+1, this.codes[col], i, n);
+		if(this.flags != null) System.arraycopy(this.flags, i+1, this.flags, i, n);
+		this.size--;
+	}
+
+	/** Remove the positions not kept. */
+	private void compact(boolean[] keep) {
+		this.bitmapIndex = null;
+		this.planner = null;
+		this.modCount++;
+		int j = 0;
+		for(int i=0; i<this.size; i++) {
+			if(!keep[i]) continue;
+			if(i != j) {
+				this.values[j] = this.values[i];
+				for(int col=0; col<this.codes.length; col++) this.codes[col][j] = this.codes[col][i];
+				if(this.flags != null) this.flags[j] = this.flags[i];
+			}
+			j++;
+		}
+		this.size = j;
+	}
+
+
+
+	@Override
+	public HashSet<String> getDimValues(String dimLabel) {
+		HashSet<String> dimValues = new HashSet<>();
+		if(this.size == 0) return dimValues;
+		int col = getColumn(dimLabel);
+		if(col < 0) { dimValues.add(null); return dimValues; }
+		DimValueDictionary dict = this.dictionaries.get(col);
+		int[] codes_ = this.codes[col];
+		boolean[] found = new boolean[dict.size()];
+		boolean foundNull = false;
+		for(int i=0; i<this.size; i++) {
+			int code = codes_[i];
+			if(code < 0) foundNull = true;
+			else found[code] = true;
+		}
+		for(int code=0; code<found.length; code++) if(found[code]) dimValues.add(dict.getValue(code));
+		if(foundNull) dimValues.add(null);
+		return dimValues;
+	}
+
+	/**
+	 * Use bitmap indexes on some dimensions to speed up selections on dimension values.
+	 * The indexes are built when necessary, and rebuilt after changes.
+	 * See {@link BitmapIndex}.
+	 *
+	 * @param dimLabels The dimensions to index. If none is specified, all dimensions are indexed.
+	 */
+	public void createBitmapIndex(String... dimLabels) {
+		this.bitmapIndexDimLabels = new HashSet<>();
+		if(dimLabels.length == 0) this.bitmapIndexDimLabels.addAll(this.columnLabels);
+		else this.bitmapIndexDimLabels.addAll(Arrays.asList(dimLabels));
+		this.bitmapIndex = null;
+		this.planner = null;
+	}
+
+	/**
+	 * Stop using bitmap indexes.
+	 */
+	public void dropBitmapIndex() {
+		this.bitmapIndexDimLabels = null;
+		this.bitmapIndex = null;
+		this.planner = null;
+	}
+
+	/**
+	 * @return The bitmap indexes, or null if none is used.
+	 */
+	public BitmapIndex getBitmapIndex() {
+		HashSet<String> dimLabels = this.bitmapIndexDimLabels;
+		if(dimLabels == null) return null;
+		//the indexes built by concurrent calls are equivalent: any of them can be kept
+		BitmapIndex bi = this.bitmapIndex;
+		if(bi == null) this.bitmapIndex = bi = new BitmapIndex(this, dimLabels.toArray(new String[dimLabels.size()]));
+		return bi;
+	}
+
+	/**
+	 * @return The planner of the selections. See {@link SelectionPlanner}.
+	 */
+	public SelectionPlanner getSelectionPlanner() {
+		SelectionPlanner sp = this.planner;
+		if(sp == null) this.planner = sp = new SelectionPlanner(this);
+		return sp;
+	}
+
+	@Override
+	public ColumnarStatsHypercube select(Criteria sel) {
+		return extract(getSelectionPlanner().evaluate(sel));
+	}
+
+	@Override
+	public ColumnarStatsHypercube select(String query) {
+		return (ColumnarStatsHypercube) super.select(query);
+	}
+
+	/** Build a new hypercube with the positions to keep. */
+	private ColumnarStatsHypercube extract(BitSet keep) {
+		int nb = keep.cardinality();
+		ColumnarStatsHypercube out = new ColumnarStatsHypercube(this, nb);
+		int j = 0;
+		for(int i = keep.nextSetBit(0); i >= 0; i = keep.nextSetBit(i+1)) {
+			out.values[j] = this.values[i];
+			for(int col=0; col<this.codes.length; col++) out.codes[col][j] = this.codes[col][i];
+			if(this.flags != null && this.flags[i] != 0) {
+				if(out.flags == null) out.flags = new byte[out.values.length];
+				out.flags[j] = this.flags[i];
+			}
+			j++;
+		}
+		out.size = nb;
+		return out;
+	}
+
+	@Override
+	public ColumnarStatsHypercube delete(String dimLabel) {
+		int col = getColumn(dimLabel);
+		if(col < 0) {
+			if(this.size > 0) LOGGER.error("Error: dimension "+dimLabel+" not defined");
+		} else {
+			this.columnLabels.remove(col);
+			this.dictionaries.remove(col);
+			int[][] codes_ = new int[this.codes.length-1][];
+			for(int c=0, c_=0; c<this.codes.length; c++) if(c != col) codes_[c_++] = this.codes[c];
+			this.codes = codes_;
+			this.bitmapIndex = null;
+			this.planner = null;
+		}
+		this.dimLabels.remove(dimLabel);
+		return this;
+	}
+
+	@Override
+	public ColumnarStatsHypercube add(String dimLabel, String dimValue) {
+		this.dimLabels.add(dimLabel);
+		int col = getOrCreateColumn(dimLabel);
+		Arrays.fill(this.codes[col], 0, this.size, this.dictionaries.get(col).encode(dimValue));
+		this.bitmapIndex = null;
+		this.planner = null;
+		return this;
+	}
+
+	@Override
+	public ColumnarStatsHypercube delete(String dimLabel, String dimValue) {
+		int col = getColumn(dimLabel);
+		if(col < 0) return this;
+		int code = this.dictionaries.get(col).getCode(dimValue);
+		if(code < 0) return this;
+		int[] codes_ = this.codes[col];
+		boolean[] keep = new boolean[this.size];
+		for(int i=0; i<this.size; i++) keep[i] = codes_[i] != code;
+		compact(keep);
+		return this;
+	}
+
+	@Override
+	public void changeDimValue(String dimLabel, String dimValueOld, String dimValueNew) {
+		int col = getColumn(dimLabel);
+		if(col < 0) return;
+		DimValueDictionary dict = this.dictionaries.get(col);
+		int codeOld = dict.getCode(dimValueOld);
+		if(codeOld < 0) return;
+		int codeNew = dict.encode(dimValueNew);
+		this.bitmapIndex = null;
+		this.planner = null;
+		int[] codes_ = this.codes[col];
+		for(int i=0; i<this.size; i++) if(codes_[i] == codeOld) codes_[i] = codeNew;
+	}
+
+	@Override
+	public ColumnarStatsHypercube applyDouble(DoubleUnaryOperator op) {
+		for(int i=0; i<this.size; i++) this.values[i] = op.applyAsDouble(this.values[i]);
+		return this;
+	}
+
+	@Override
+	public ColumnarStatsHypercube applyDouble(DoubleBinaryOperator op, StatsHypercube hc) {
+		String[] dimLabels = getDimLabels();
+		FlatStatsIndex hcI = new FlatStatsIndex(hc, dimLabels);
+		//translate the codes of this hypercube into the codes of the index, once for all
+		int[] cols = new int[dimLabels.length];
+		int[][] translations = new int[dimLabels.length][];
+		for(int k=0; k<dimLabels.length; k++) {
+			cols[k] = getColumn(dimLabels[k]);
+			if(cols[k] >= 0) translations[k] = hcI.getTranslation(dimLabels[k], this.dictionaries.get(cols[k]));
+		}
+		int[] codes_ = new int[dimLabels.length];
+		for(int i=0; i<this.size; i++) {
+			for(int k=0; k<cols.length; k++) {
+				int code = cols[k]<0 ? -1 : this.codes[cols[k]][i];
+				codes_[k] = code<0 ? -1 : translations[k][code];
+			}
+			this.values[i] = op.applyAsDouble(this.values[i], hcI.getValue(hcI.getPosition(codes_)));
+		}
+		return this;
+	}
+
+	@Override
+	public HashMap<String, Double> toMap(){
+		HashMap<String, Double> map = new HashMap<>();
+		String dimLabel = this.dimLabels.iterator().next();
+		int col = getColumn(dimLabel);
+		for(int i=0; i<this.size; i++)
+			map.put(col<0 ? null : this.dictionaries.get(col).getValue(this.codes[col][i]), this.values[i]);
+		return map;
+	}
+
+
+
+	/**
+	 * The stat collection view of the columns.
+	 */
+	private class ColumnarStats extends AbstractCollection<Stat> {
+
+		@Override
+		public Iterator<Stat> iterator() {
+			return new Iterator<Stat>() {
+				private int i = 0;
+				/** The position of the last stat returned, or -1. */
+				private int last = -1;
+				@Override
+				public boolean hasNext() { return this.i < ColumnarStatsHypercube.this.size; }
+				@Override
+				public Stat next() {
+					if(!hasNext()) throw new NoSuchElementException();
+					this.last = this.i;
+					return getStat(this.i++);
+				}
+				@Override
+				public void remove() {
+					if(this.last < 0) throw new IllegalStateException();
+					ColumnarStatsHypercube.this.remove(this.last);
+					this.i = this.last;
+					this.last = -1;
+				}
+			};
+		}
+
+		@Override
+		public boolean removeIf(Predicate<? super Stat> filter) {
+			int n = ColumnarStatsHypercube.this.size;
+			boolean[] keep = new boolean[n];
+			boolean removed = false;
+			for(int i=0; i<n; i++) {
+				keep[i] = !filter.test(getStat(i));
+				removed |= !keep[i];
+			}
+			if(removed) compact(keep);
+			return removed;
+		}
+
+		@Override
+		public int size() { return ColumnarStatsHypercube.this.size; }
+
+		@Override
+		public boolean add(Stat s) {
+			addStat(s);
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			ColumnarStatsHypercube.this.size = 0;
+			ColumnarStatsHypercube.this.bitmapIndex = null;
+			ColumnarStatsHypercube.this.planner = null;
+			ColumnarStatsHypercube.this.modCount++;
+		}
+	}
+
+	/**
+	 * A stat of the hypercube, bound to its position.
+	 */
+	private class ColumnarStat extends Stat {
+		/** The position of the stat. -1 while the stat is being built. */
+		private int position = -1;
+		/** The number of changes of the stat positions when the stat was built. */
+		private int modCount;
+
+		@Override
+		public void setValue(double value) {
+			super.setValue(value);
+			if(this.position >= 0) ColumnarStatsHypercube.this.setValue(getPosition(), value);
+		}
+
+		@Override
+		public boolean addFlag(Flag.FlagType flag) {
+			boolean changed = super.addFlag(flag);
+			if(changed) writeFlags();
+			return changed;
+		}
+
+		@Override
+		public boolean removeFlag(Flag.FlagType flag) {
+			boolean changed = super.removeFlag(flag);
+			if(changed) writeFlags();
+			return changed;
+		}
+
+		@Override
+		void clearFlags() {
+			super.clearFlags();
+			writeFlags();
+		}
+
+		private void writeFlags() {
+			if(this.position >= 0) setFlags(getPosition(), getFlags());
+		}
+
+		private int getPosition() {
+			if(this.modCount != ColumnarStatsHypercube.this.modCount)
+				throw new IllegalStateException("Stats were removed from the hypercube since the stat was retrieved: it cannot be changed. " + this);
+			return this.position;
+		}
+	}
+
+}
@@ -0,0 +1,301 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.function.DoublePredicate;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.TimePeriodBetween;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerThan;
+
+/**
+ * A selection criteria compiled for a columnar hypercube.
+ *
+ * The criteria is compiled once: The dimension labels are resolved to columns, and the dimension values to dictionary codes.
+ * Comparisons of numeric dimension values and time periods are resolved to a table of booleans by code,
+ * so that they are evaluated as integer lookups, without parsing the dimension values of each stat.
+ * The tree of {@link And}, {@link Or} and {@link Not} criteria is flattened into a postfix program,
+ * which is evaluated column by column on bitmaps.
+ * The criteria which cannot be compiled are evaluated on the stats, as usual.
+ *
+ * The compiled criteria is valid as long as the hypercube dimension values are not changed.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class CompiledCriteria {
+
+	/** The program instructions. */
+	private static final int LEAF = 0, AND = 1, OR = 2, NOT = 3;
+
+	private ColumnarStatsHypercube hc;
+
+	/** The program, in postfix order: the instructions, their argument (the leaf or the number of operands) */
+	private int[] instructions, arguments;
+	private Leaf[] leaves;
+
+	/**
+	 * Compile a selection criteria.
+	 *
+	 * @param hc The hypercube the criteria is evaluated on.
+	 * @param cri The criteria.
+	 */
+	public CompiledCriteria(ColumnarStatsHypercube hc, Criteria cri) {
+		this.hc = hc;
+		ArrayList<int[]> program = new ArrayList<>();
+		ArrayList<Leaf> leaves = new ArrayList<>();
+		compile(cri, program, leaves);
+		this.instructions = new int[program.size()];
+		this.arguments = new int[program.size()];
+		for(int i=0; i<program.size(); i++) {
+			this.instructions[i] = program.get(i)[0];
+			this.arguments[i] = program.get(i)[1];
+		}
+		this.leaves = leaves.toArray(new Leaf[leaves.size()]);
+	}
+
+	/**
+	 * @return The number of criteria which could not be compiled, and are evaluated on the stats.
+	 */
+	public int getUncompiledCount() {
+		int nb = 0;
+		for(Leaf leaf : this.leaves) if(leaf instanceof StatLeaf) nb++;
+		return nb;
+	}
+
+	/**
+	 * Evaluate the criteria on all stats.
+	 *
+	 * @return The positions of the stats to keep.
+	 */
+	public BitSet evaluate() {
+		BitSet all = new BitSet(this.hc.size());
+		all.set(0, this.hc.size());
+		return evaluate(all);
+	}
+
+	/**
+	 * Evaluate the criteria on some stats.
+	 *
+	 * @param candidates The positions of the stats to evaluate the criteria on.
+	 * @return The positions of the candidate stats to keep.
+	 */
+	public BitSet evaluate(BitSet candidates) {
+		BitSet[] stack = new BitSet[this.instructions.length];
+		int top = 0;
+		for(int p=0; p<this.instructions.length; p++) {
+			int arg = this.arguments[p];
+			switch (this.instructions[p]) {
+			case LEAF:
+				stack[top++] = this.leaves[arg].evaluate(candidates);
+				break;
+			case AND:
+				for(int k=1; k<arg; k++) stack[top-arg].and(stack[top-arg+k]);
+				top -= arg - 1;
+				break;
+			case OR:
+				for(int k=1; k<arg; k++) stack[top-arg].or(stack[top-arg+k]);
+				top -= arg - 1;
+				break;
+			case NOT:
+				BitSet bs = (BitSet) candidates.clone();
+				bs.andNot(stack[top-1]);
+				stack[top-1] = bs;
+				break;
+			default:
+				break;
+			}
+		}
+		BitSet out = stack[0];
+		out.and(candidates);
+		return out;
+	}
+
+	private void compile(Criteria cri, ArrayList<int[]> program, ArrayList<Leaf> leaves) {
+		if(cri instanceof And || cri instanceof Or) {
+			Criteria[] cris = cri instanceof And ? ((And)cri).getCriteria() : ((Or)cri).getCriteria();
+			if(cris.length == 0) {
+				addLeaf(new ConstantLeaf(cri instanceof And), program, leaves);
+				return;
+			}
+			for(Criteria c : cris) compile(c, program, leaves);
+			if(cris.length > 1) program.add(new int[] { cri instanceof And ? AND : OR, cris.length });
+			return;
+		}
+		if(cri instanceof Not) {
+			compile(((Not)cri).getCriteria(), program, leaves);
+			program.add(new int[] { NOT, 0 });
+			return;
+		}
+		addLeaf(compileLeaf(cri), program, leaves);
+	}
+
+	private static void addLeaf(Leaf leaf, ArrayList<int[]> program, ArrayList<Leaf> leaves) {
+		program.add(new int[] { LEAF, leaves.size() });
+		leaves.add(leaf);
+	}
+
+	private Leaf compileLeaf(Criteria cri) {
+		if(cri instanceof DimValueEqualTo || cri instanceof DimValueDifferentFrom) {
+			boolean equal = cri instanceof DimValueEqualTo;
+			String[] dlv = equal ? ((DimValueEqualTo)cri).getDimLabelValues() : ((DimValueDifferentFrom)cri).getDimLabelValues();
+			ArrayList<int[]> columns = new ArrayList<>();
+			ArrayList<Integer> codes = new ArrayList<>();
+			for(int k=0; k<dlv.length; k+=2) {
+				int[] column = this.hc.getCodes(dlv[k]);
+				int code = column == null ? -1 : this.hc.getDictionary(dlv[k]).getCode(dlv[k+1]);
+				//a value which is not in the hypercube: no stat has it
+				if(code < 0) { if(equal) return new ConstantLeaf(false); continue; }
+				columns.add(column);
+				codes.add(code);
+			}
+			int[] codes_ = new int[codes.size()];
+			for(int k=0; k<codes_.length; k++) codes_[k] = codes.get(k);
+			return new CodeLeaf(columns.toArray(new int[columns.size()][]), codes_, equal);
+		}
+		if(cri instanceof DimValueGreaterThan) {
+			DimValueGreaterThan c = (DimValueGreaterThan)cri;
+			double t = c.getDimValue();
+			return numericLeaf(c.getDimLabel(), v -> v > t);
+		}
+		if(cri instanceof DimValueLowerThan) {
+			DimValueLowerThan c = (DimValueLowerThan)cri;
+			double t = c.getDimValue();
+			return numericLeaf(c.getDimLabel(), v -> v < t);
+		}
+		if(cri instanceof DimValueGreaterOrEqualThan) {
+			DimValueGreaterOrEqualThan c = (DimValueGreaterOrEqualThan)cri;
+			double t = c.getDimValue();
+			return numericLeaf(c.getDimLabel(), v -> v >= t);
+		}
+		if(cri instanceof DimValueLowerOrEqualThan) {
+			DimValueLowerOrEqualThan c = (DimValueLowerOrEqualThan)cri;
+			double t = c.getDimValue();
+			return numericLeaf(c.getDimLabel(), v -> v <= t);
+		}
+		if(cri instanceof TimePeriodBetween) {
+			TimePeriodBetween c = (TimePeriodBetween)cri;
+			int[] codes = this.hc.getCodes(c.getDimLabel());
+			if(codes == null) return new ConstantLeaf(false);
+			int[] timeCodes = this.hc.getDictionary(c.getDimLabel()).getTimeCodes();
+			boolean[] table = new boolean[timeCodes.length];
+			for(int code=0; code<table.length; code++) table[code] = c.keep(timeCodes[code]);
+			return new TableLeaf(codes, table);
+		}
+		if(cri instanceof ValueEqualTo) { double t = ((ValueEqualTo)cri).getValue(); return new ValueLeaf(v -> v == t); }
+		if(cri instanceof ValueDifferentFrom) { double t = ((ValueDifferentFrom)cri).getValue(); return new ValueLeaf(v -> v != t); }
+		if(cri instanceof ValueGreaterThan) { double t = ((ValueGreaterThan)cri).getValue(); return new ValueLeaf(v -> v > t); }
+		if(cri instanceof ValueLowerThan) { double t = ((ValueLowerThan)cri).getValue(); return new ValueLeaf(v -> v < t); }
+		if(cri instanceof ValueGreaterOrEqualThan) { double t = ((ValueGreaterOrEqualThan)cri).getValue(); return new ValueLeaf(v -> v >= t); }
+		if(cri instanceof ValueLowerOrEqualThan) { double t = ((ValueLowerOrEqualThan)cri).getValue(); return new ValueLeaf(v -> v <= t); }
+		return new StatLeaf(cri);
+	}
+
+	/** Resolve a test on numeric dimension values to a table of booleans by code. */
+	private Leaf numericLeaf(String dimLabel, DoublePredicate test) {
+		int[] codes = this.hc.getCodes(dimLabel);
+		if(codes == null) return new ConstantLeaf(false);
+		double[] numericValues = this.hc.getDictionary(dimLabel).getNumericValues();
+		boolean[] table = new boolean[numericValues.length];
+		for(int code=0; code<table.length; code++) table[code] = test.test(numericValues[code]);
+		return new TableLeaf(codes, table);
+	}
+
+	/**
+	 * A compiled elementary criteria.
+	 */
+	private interface Leaf {
+		/** @return The positions of the candidate stats satisfying the criteria. Other positions may be set. */
+		BitSet evaluate(BitSet candidates);
+	}
+
+	private static class ConstantLeaf implements Leaf {
+		private boolean value;
+		ConstantLeaf(boolean value) { this.value = value; }
+		@Override
+		public BitSet evaluate(BitSet candidates) { return this.value ? (BitSet) candidates.clone() : new BitSet(); }
+	}
+
+	/** Equality (or difference) of codes, on several columns. */
+	private static class CodeLeaf implements Leaf {
+		private int[][] columns;
+		private int[] codes;
+		private boolean equal;
+		CodeLeaf(int[][] columns, int[] codes, boolean equal) { this.columns = columns; this.codes = codes; this.equal = equal; }
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			BitSet out = (BitSet) candidates.clone();
+			for(int k=0; k<this.columns.length; k++) {
+				int[] col = this.columns[k];
+				int code = this.codes[k];
+				for(int i = out.nextSetBit(0); i >= 0; i = out.nextSetBit(i+1))
+					if((col[i] == code) != this.equal) out.clear(i);
+			}
+			return out;
+		}
+	}
+
+	/** A test on the codes of a column, resolved to a table of booleans by code. */
+	private static class TableLeaf implements Leaf {
+		private int[] column;
+		private boolean[] table;
+		TableLeaf(int[] column, boolean[] table) { this.column = column; this.table = table; }
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			BitSet out = new BitSet();
+			for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i+1)) {
+				int code = this.column[i];
+				if(code >= 0 && this.table[code]) out.set(i);
+			}
+			return out;
+		}
+	}
+
+	/** A test on the values column. */
+	private class ValueLeaf implements Leaf {
+		private DoublePredicate test;
+		ValueLeaf(DoublePredicate test) { this.test = test; }
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			double[] values = CompiledCriteria.this.hc.getValues();
+			BitSet out = new BitSet();
+			for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i+1))
+				if(this.test.test(values[i])) out.set(i);
+			return out;
+		}
+	}
+
+	/** A criteria which could not be compiled, evaluated on the stats. */
+	private class StatLeaf implements Leaf {
+		private Criteria cri;
+		StatLeaf(Criteria cri) { this.cri = cri; }
+		@Override
+		public BitSet evaluate(BitSet candidates) {
+			BitSet out = new BitSet();
+			Stat s = new Stat();
+			for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i+1)) {
+				CompiledCriteria.this.hc.fill(s, i);
+				if(this.cri.keep(s)) out.set(i);
+			}
+			return out;
+		}
+	}
+
+}
@@ -0,0 +1,524 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Compacity;
+
+/**
+ * A hypercube of statistical values, stored as a dense array.
+ *
+ * All positions of the hypercube are stored in a single array, in row-major order (the last dimension varies the fastest),
+ * as in JSON-stat. Missing values are NaN. Flags are stored in a parallel byte array of flag combination codes.
+ * A value is retrieved from its dimension values with a simple offset computation.
+ *
+ * This representation is suitable for compact hypercubes only. See {@link #promote(StatsHypercube)}.
+ *
+ * The {@link #stats} collection is a view of the non-NaN values: the stats are built on the fly when iterating over it.
+ * The stats retrieved from this view, for example with a {@link StatsIndex}, are bound to their position: The changes of their value
+ * made with {@link Stat#setValue(double)} and the changes of their flags are written into the hypercube.
+ * NB: The direct changes of their value field and of their dimension values are not. Once values are deleted, the stats retrieved before
+ * cannot be changed anymore.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class DenseStatsHypercube extends StatsHypercube {
+	private final static Logger LOGGER = LogManager.getLogger(DenseStatsHypercube.class.getName());
+
+	/**
+	 * The default compacity threshold above which a hypercube is promoted to the dense representation by {@link #promote(StatsHypercube)}.
+	 */
+	public static final double DEFAULT_PROMOTION_THRESHOLD = 0.8;
+
+	/** The dimension labels, in row-major order. */
+	private String[] orderedDimLabels;
+
+	/** The dictionaries of the dimension values. The code of a dimension value is its coordinate. */
+	private DimValueDictionary[] dictionaries;
+
+	/** The offset increment of each dimension. */
+	private int[] strides;
+
+	/** The values. NaN for missing values. */
+	private double[] values;
+
+	/** The flags, as codes of the flag dictionary. Null when no value is flagged. */
+	private byte[] flags = null;
+
+	/** The dictionary of the flag combinations. The code 0 is for no flag. */
+	private DimValueDictionary flagDictionary = null;
+
+	/** The number of deletions of values, to detect the bound stats which are outdated. */
+	private int modCount = 0;
+
+	/**
+	 * Build an empty dense hypercube.
+	 *
+	 * @param dimLabels The dimension labels, in row-major order.
+	 * @param dimValues The dimension values, for each dimension.
+	 */
+	public DenseStatsHypercube(String[] dimLabels, String[][] dimValues){
+		super(dimLabels);
+		this.stats = new DenseStats();
+		this.orderedDimLabels = dimLabels.clone();
+		this.dictionaries = new DimValueDictionary[dimLabels.length];
+		for(int k=0; k<dimLabels.length; k++) {
+			this.dictionaries[k] = new DimValueDictionary();
+			for(String dimValue : dimValues[k]) this.dictionaries[k].encode(dimValue);
+		}
+		this.strides = new int[dimLabels.length];
+		long size = 1;
+		for(int k=dimLabels.length-1; k>=0; k--) {
+			this.strides[k] = (int)size;
+			size *= this.dictionaries[k].size();
+			if(size > Integer.MAX_VALUE) throw new IllegalArgumentException("Hypercube too large for a dense representation: " + size + " positions.");
+		}
+		this.values = new double[(int)size];
+		Arrays.fill(this.values, Double.NaN);
+	}
+
+	/**
+	 * Build a dense hypercube from an hypercube.
+	 * When several values are provided for a same position, the last one is kept.
+	 *
+	 * @param hc
+	 */
+	public DenseStatsHypercube(StatsHypercube hc){
+		this(hc.getDimLabels(), getSortedDimValues(hc));
+		for(Stat s : hc.stats) {
+			int offset = getOffset(s.getDimValues(this.orderedDimLabels));
+			if(offset < 0) continue;
+			if(!Double.isNaN(this.values[offset])) LOGGER.warn("Several values for position " + s.dims + ". Only one is kept.");
+			this.values[offset] = s.value;
+			setFlags(offset, s.getFlags());
+		}
+	}
+
+	private static String[][] getSortedDimValues(StatsHypercube hc) {
+		String[] dimLabels = hc.getDimLabels();
+		String[][] dimValues = new String[dimLabels.length][];
+		for(int k=0; k<dimLabels.length; k++) {
+			ArrayList<String> dvs = new ArrayList<>(hc.getDimValues(dimLabels[k]));
+			if(dvs.remove(null)) LOGGER.warn("Missing values for dimension " + dimLabels[k] + " ignored.");
+			Collections.sort(dvs);
+			dimValues[k] = dvs.toArray(new String[dvs.size()]);
+		}
+		return dimValues;
+	}
+
+	/**
+	 * Return the dense version of an hypercube if its compacity is above {@link #DEFAULT_PROMOTION_THRESHOLD}, the hypercube itself otherwise.
+	 * See {@link #promote(StatsHypercube, double)}.
+	 *
+	 * @param hc
+	 * @return
+	 */
+	public static StatsHypercube promote(StatsHypercube hc) { return promote(hc, DEFAULT_PROMOTION_THRESHOLD); }
+
+	/**
+	 * Return the dense version of an hypercube if its compacity is above a threshold, the hypercube itself otherwise.
+	 * NaN values are not kept in the dense representation.
+	 * NB: The dense version is a copy: its changes are not reflected into the hypercube.
+	 *
+	 * @param hc
+	 * @param promotionThreshold The compacity threshold, in [0,1].
+	 * @return
+	 */
+	public static StatsHypercube promote(StatsHypercube hc, double promotionThreshold) {
+		if(hc instanceof DenseStatsHypercube) return hc;
+		if(hc.dimLabels.size() == 0 || hc.stats.size() == 0) return hc;
+		double compacity = Compacity.getCompacityIndicator(hc, false, false);
+		//compacity above 1 means several values for a same position
+		if(compacity < promotionThreshold || compacity > 1) return hc;
+		return new DenseStatsHypercube(hc);
+	}
+
+
+
+	/**
+	 * @return The dimension labels, in row-major order.
+	 */
+	@Override
+	public String[] getDimLabels(){ return this.orderedDimLabels.clone(); }
+
+	/**
+	 * @param dimLabel
+	 * @return The dictionary of a dimension, or null if there is none.
+	 */
+	public DimValueDictionary getDictionary(String dimLabel) {
+		int k = getDimIndex(dimLabel);
+		return k<0 ? null : this.dictionaries[k];
+	}
+
+	private int getDimIndex(String dimLabel) {
+		for(int k=0; k<this.orderedDimLabels.length; k++) if(this.orderedDimLabels[k].equals(dimLabel)) return k;
+		return -1;
+	}
+
+	/**
+	 * @return The number of positions of the hypercube.
+	 */
+	public int getMaxSize() { return this.values.length; }
+
+	/**
+	 * Compute the offset of a position.
+	 *
+	 * @param dimValues The dimension values, in row-major order (see {@link #getDimLabels()}).
+	 * @return The offset, or -1 if the position is not in the hypercube.
+	 */
+	public int getOffset(String... dimValues) {
+		if(dimValues.length != this.dictionaries.length) return -1;
+		int offset = 0;
+		for(int k=0; k<dimValues.length; k++) {
+			int code = this.dictionaries[k].getCode(dimValues[k]);
+			if(code < 0) return -1;
+			offset += code * this.strides[k];
+		}
+		return offset;
+	}
+
+	/**
+	 * Compute the offset of a position.
+	 *
+	 * @param coords The coordinates, in row-major order.
+	 * @return The offset.
+	 */
+	public int getOffset(int[] coords) {
+		int offset = 0;
+		for(int k=0; k<coords.length; k++) offset += coords[k] * this.strides[k];
+		return offset;
+	}
+
+	/**
+	 * @param dimValues The dimension values, in row-major order (see {@link #getDimLabels()}).
+	 * @return The value, or NaN if there is none.
+	 */
+	public double getValue(String... dimValues) {
+		int offset = getOffset(dimValues);
+		return offset<0 ? Double.NaN : this.values[offset];
+	}
+
+	/**
+	 * @param offset
+	 * @return The value, or NaN if there is none.
+	 */
+	public double getValue(int offset) { return this.values[offset]; }
+
+	/**
+	 * @param offset
+	 * @param value
+	 */
+	public void setValue(int offset, double value) { this.values[offset] = value; }
+
+	/**
+	 * @param offset
+	 * @return The flags.
+	 */
+	public String getFlags(int offset) {
+		if(this.flags == null) return "";
+		return this.flagDictionary.getValue(this.flags[offset] & 0xFF);
+	}
+
+	/**
+	 * @param offset
+	 * @param flags
+	 * @throws IllegalStateException if the flags are a new combination, and there are already 255 flag combinations.
+	 */
+	public void setFlags(int offset, String flags) {
+		if(flags == null || flags.isEmpty()) {
+			if(this.flags != null) this.flags[offset] = 0;
+			return;
+		}
+		if(this.flagDictionary == null) {
+			this.flagDictionary = new DimValueDictionary();
+			this.flagDictionary.encode("");
+		}
+		String flags_ = ColumnarStatsHypercube.canonicalFlags(flags);
+		int code = this.flagDictionary.getCode(flags_);
+		if(code < 0) {
+			if(this.flagDictionary.size() > 255) throw new IllegalStateException("Too many flag combinations. Could not store flags " + flags + " at " + offset);
+			code = this.flagDictionary.encode(flags_);
+		}
+		if(this.flags == null) this.flags = new byte[this.values.length];
+		this.flags[offset] = (byte)code;
+	}
+
+	/**
+	 * Build the stat object at a position.
+	 *
+	 * @param offset
+	 * @return The stat, or null if there is no value. It is bound to its position: the changes made with {@link Stat#setValue(double)} and the changes of its flags are written into the hypercube.
+	 */
+	public Stat getStat(int offset) {
+		if(offset < 0 || Double.isNaN(this.values[offset])) return null;
+		DenseStat s = new DenseStat();
+		s.value = this.values[offset];
+		int o = offset;
+		for(int k=0; k<this.strides.length; k++) {
+			int code = o / this.strides[k];
+			o -= code * this.strides[k];
+			s.dims.put(this.orderedDimLabels[k], this.dictionaries[k].getValue(code));
+		}
+		if(this.flags != null && this.flags[offset] != 0) s.addAllFlags(getFlags(offset));
+		s.offset = offset;
+		s.modCount = this.modCount;
+		return s;
+	}
+
+	/**
+	 * @return The number of non-NaN values.
+	 */
+	public int size() {
+		int nb = 0;
+		for(double v : this.values) if(!Double.isNaN(v)) nb++;
+		return nb;
+	}
+
+
+
+	@Override
+	public HashSet<String> getDimValues(String dimLabel) {
+		HashSet<String> dimValues = new HashSet<>();
+		int k = getDimIndex(dimLabel);
+		if(k < 0) {
+			if(size() > 0) dimValues.add(null);
+			return dimValues;
+		}
+		int stride = this.strides[k], n = this.dictionaries[k].size();
+		boolean[] found = new boolean[n];
+		for(int offset=0; offset<this.values.length; offset++)
+			if(!Double.isNaN(this.values[offset])) found[(offset / stride) % n] = true;
+		for(int code=0; code<n; code++) if(found[code]) dimValues.add(this.dictionaries[k].getValue(code));
+		return dimValues;
+	}
+
+	@Override
+	public DenseStatsHypercube delete(String dimLabel) {
+		int k = getDimIndex(dimLabel);
+		if(k < 0) {
+			LOGGER.error("Error: dimension "+dimLabel+" not defined");
+			return this;
+		}
+		if(this.dictionaries[k].size() > 1) {
+			LOGGER.error("Cannot delete dimension " + dimLabel + " of a dense hypercube: several dimension values.");
+			return this;
+		}
+		//a dimension with a single value does not contribute to the offsets
+		this.orderedDimLabels = remove(this.orderedDimLabels, k);
+		DimValueDictionary[] dictionaries_ = new DimValueDictionary[this.dictionaries.length-1];
+		int[] strides_ = new int[this.strides.length-1];
+		for(int i=0, j=0; i<this.dictionaries.length; i++) {
+			if(i == k) continue;
+			dictionaries_[j] = this.dictionaries[i];
+			strides_[j++] = this.strides[i];
+		}
+		this.dictionaries = dictionaries_;
+		this.strides = strides_;
+		this.dimLabels.remove(dimLabel);
+		return this;
+	}
+
+	private static String[] remove(String[] array, int k) {
+		String[] out = new String[array.length-1];
+		for(int i=0, j=0; i<array.length; i++) if(i != k) out[j++] = array[i];
+		return out;
+	}
+
+	@Override
+	public DenseStatsHypercube add(String dimLabel, String dimValue) {
+		if(getDimIndex(dimLabel) >= 0) {
+			LOGGER.error("Dimension " + dimLabel + " already defined.");
+			return this;
+		}
+		//a new last dimension with a single value does not change the offsets
+		this.orderedDimLabels = Arrays.copyOf(this.orderedDimLabels, this.orderedDimLabels.length+1);
+		this.orderedDimLabels[this.orderedDimLabels.length-1] = dimLabel;
+		this.dictionaries = Arrays.copyOf(this.dictionaries, this.dictionaries.length+1);
+		this.dictionaries[this.dictionaries.length-1] = new DimValueDictionary();
+		this.dictionaries[this.dictionaries.length-1].encode(dimValue);
+		this.strides = Arrays.copyOf(this.strides, this.strides.length+1);
+		this.strides[this.strides.length-1] = 1;
+		this.dimLabels.add(dimLabel);
+		return this;
+	}
+
+	@Override
+	public DenseStatsHypercube delete(String dimLabel, String dimValue) {
+		int k = getDimIndex(dimLabel);
+		if(k < 0) return this;
+		int code = this.dictionaries[k].getCode(dimValue);
+		if(code < 0) return this;
+		int stride = this.strides[k], n = this.dictionaries[k].size();
+		for(int offset=0; offset<this.values.length; offset++)
+			if((offset / stride) % n == code) this.values[offset] = Double.NaN;
+		this.modCount++;
+		return this;
+	}
+
+	@Override
+	public void changeDimValue(String dimLabel, String dimValueOld, String dimValueNew) {
+		int k = getDimIndex(dimLabel);
+		if(k < 0) return;
+		DimValueDictionary dict = this.dictionaries[k];
+		if(dict.getCode(dimValueOld) < 0) return;
+		if(dict.getCode(dimValueNew) >= 0) {
+			LOGGER.error("Cannot change dimension value " + dimValueOld + " of a dense hypercube into existing value " + dimValueNew);
+			return;
+		}
+		DimValueDictionary dict_ = new DimValueDictionary();
+		for(String dv : dict.getValues()) dict_.encode(dimValueOld.equals(dv) ? dimValueNew : dv);
+		this.dictionaries[k] = dict_;
+	}
+
+	@Override
+	public DenseStatsHypercube applyDouble(DoubleUnaryOperator op) {
+		for(int offset=0; offset<this.values.length; offset++)
+			if(!Double.isNaN(this.values[offset])) this.values[offset] = op.applyAsDouble(this.values[offset]);
+		return this;
+	}
+
+	@Override
+	public DenseStatsHypercube applyDouble(DoubleBinaryOperator op, StatsHypercube hc) {
+		FlatStatsIndex hcI = new FlatStatsIndex(hc, this.orderedDimLabels);
+		//translate the coordinates into the codes of the index, once for all
+		int[][] translations = new int[this.orderedDimLabels.length][];
+		for(int k=0; k<this.orderedDimLabels.length; k++)
+			translations[k] = hcI.getTranslation(this.orderedDimLabels[k], this.dictionaries[k]);
+		int[] codes = new int[this.orderedDimLabels.length];
+		for(int offset=0; offset<this.values.length; offset++) {
+			if(Double.isNaN(this.values[offset])) continue;
+			int o = offset;
+			for(int k=0; k<this.strides.length; k++) {
+				int coord = o / this.strides[k];
+				o -= coord * this.strides[k];
+				codes[k] = translations[k][coord];
+			}
+			this.values[offset] = op.applyAsDouble(this.values[offset], hcI.getValue(hcI.getPosition(codes)));
+		}
+		return this;
+	}
+
+	@Override
+	public HashMap<String, Double> toMap(){
+		HashMap<String, Double> map = new HashMap<>();
+		if(this.dictionaries.length != 1) {
+			LOGGER.error("Cannot transform hypercube with " + this.dictionaries.length + " dimensions into a map.");
+			return map;
+		}
+		for(int offset=0; offset<this.values.length; offset++)
+			if(!Double.isNaN(this.values[offset])) map.put(this.dictionaries[0].getValue(offset), this.values[offset]);
+		return map;
+	}
+
+
+
+	/**
+	 * The stat collection view of the non-NaN values.
+	 */
+	private class DenseStats extends AbstractCollection<Stat> {
+
+		@Override
+		public Iterator<Stat> iterator() {
+			return new Iterator<Stat>() {
+				private int offset = next(0);
+				private int next(int from) {
+					int o = from;
+					while(o < DenseStatsHypercube.this.values.length && Double.isNaN(DenseStatsHypercube.this.values[o])) o++;
+					return o;
+				}
+				@Override
+				public boolean hasNext() { return this.offset < DenseStatsHypercube.this.values.length; }
+				@Override
+				public Stat next() {
+					if(!hasNext()) throw new NoSuchElementException();
+					Stat s = getStat(this.offset);
+					this.offset = next(this.offset+1);
+					return s;
+				}
+			};
+		}
+
+		@Override
+		public int size() { return DenseStatsHypercube.this.size(); }
+
+		@Override
+		public boolean add(Stat s) {
+			int offset = getOffset(s.getDimValues(DenseStatsHypercube.this.orderedDimLabels));
+			if(offset < 0) {
+				LOGGER.error("Cannot add stat " + s + " to dense hypercube: position out of the hypercube.");
+				return false;
+			}
+			DenseStatsHypercube.this.values[offset] = s.value;
+			setFlags(offset, s.getFlags());
+			return true;
+		}
+
+		@Override
+		public void clear() {
+			Arrays.fill(DenseStatsHypercube.this.values, Double.NaN);
+			DenseStatsHypercube.this.modCount++;
+		}
+	}
+
+	/**
+	 * A stat of the hypercube, bound to its position.
+	 */
+	private class DenseStat extends Stat {
+		/** The offset of the stat. -1 while the stat is being built. */
+		private int offset = -1;
+		/** The number of deletions of values when the stat was built. */
+		private int modCount;
+
+		@Override
+		public void setValue(double value) {
+			super.setValue(value);
+			if(this.offset >= 0) DenseStatsHypercube.this.setValue(checkedOffset(), value);
+		}
+
+		@Override
+		public boolean addFlag(Flag.FlagType flag) {
+			boolean changed = super.addFlag(flag);
+			if(changed) writeFlags();
+			return changed;
+		}
+
+		@Override
+		public boolean removeFlag(Flag.FlagType flag) {
+			boolean changed = super.removeFlag(flag);
+			if(changed) writeFlags();
+			return changed;
+		}
+
+		@Override
+		void clearFlags() {
+			super.clearFlags();
+			writeFlags();
+		}
+
+		private void writeFlags() {
+			if(this.offset >= 0) setFlags(checkedOffset(), getFlags());
+		}
+
+		private int checkedOffset() {
+			if(this.modCount != DenseStatsHypercube.this.modCount)
+				throw new IllegalStateException("Values were deleted from the hypercube since the stat was retrieved: it cannot be changed. " + this);
+			return this.offset;
+		}
+	}
+
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A dictionary of dimension values.
+ *
+ * Each distinct dimension value is stored once and identified by an integer code.
+ * Codes are attributed incrementally, starting from 0. The code -1 stands for a null value.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class DimValueDictionary {
+
+	/** The dimension values, by code. */
+	private ArrayList<String> values = new ArrayList<>();
+
+	/** The codes, by dimension value. */
+	private HashMap<String,Integer> codes = new HashMap<>();
+
+	/** The numeric dimension values, by code. Null when not computed yet or outdated. */
+	private volatile double[] numericValues = null;
+
+	/** The time period codes, by code. Null when not computed yet or outdated. */
+	private volatile int[] timeCodes = null;
+
+	/**
+	 * @param value The dimension value.
+	 * @return The code of the dimension value, or -1 if the value is not in the dictionary.
+	 */
+	public int getCode(String value) {
+		if(value == null) return -1;
+		Integer code = this.codes.get(value);
+		return code == null ? -1 : code.intValue();
+	}
+
+	/**
+	 * Retrieve the code of a dimension value, adding it to the dictionary if necessary.
+	 *
+	 * @param value The dimension value.
+	 * @return The code of the dimension value.
+	 */
+	public int encode(String value) {
+		if(value == null) return -1;
+		Integer code = this.codes.get(value);
+		if(code != null) return code.intValue();
+		int c = this.values.size();
+		this.values.add(value);
+		this.codes.put(value, c);
+		return c;
+	}
+
+	/**
+	 * @param code The code.
+	 * @return The dimension value of a code, or null for the code -1.
+	 */
+	public String getValue(int code) {
+		if(code < 0) return null;
+		return this.values.get(code);
+	}
+
+	/**
+	 * Return the dimension values parsed as numbers, for numeric dimensions such as time.
+	 * The values are parsed once, until new values are added to the dictionary.
+	 * NB: The array is the internal storage: it is not a copy.
+	 *
+	 * @return The numeric values, by code. NaN for values which are not numbers.
+	 */
+	public double[] getNumericValues() {
+		double[] numericValues_ = this.numericValues;
+		if(numericValues_ != null && numericValues_.length == this.values.size()) return numericValues_;
+		double[] out = new double[this.values.size()];
+		for(int code=0; code<out.length; code++) {
+			try { out[code] = Double.parseDouble(this.values.get(code)); }
+			catch (@SuppressWarnings("unused") NumberFormatException e) { out[code] = Double.NaN; }
+		}
+		this.numericValues = out;
+		return out;
+	}
+
+	/**
+	 * Return the dimension values encoded as time periods, see {@link TimePeriod}.
+	 * The values are encoded once, until new values are added to the dictionary.
+	 * NB: The array is the internal storage: it is not a copy.
+	 *
+	 * @return The time period codes, by code. {@link TimePeriod#NONE} for values which are not time periods.
+	 */
+	public int[] getTimeCodes() {
+		int[] timeCodes_ = this.timeCodes;
+		if(timeCodes_ != null && timeCodes_.length == this.values.size()) return timeCodes_;
+		int[] out = new int[this.values.size()];
+		for(int code=0; code<out.length; code++) out[code] = TimePeriod.encode(this.values.get(code));
+		this.timeCodes = out;
+		return out;
+	}
+
+	/**
+	 * @return The number of dimension values in the dictionary.
+	 */
+	public int size() { return this.values.size(); }
+
+	/**
+	 * @return The dimension values, ordered by code.
+	 */
+	public String[] getValues() { return this.values.toArray(new String[this.values.size()]); }
+
+	@Override
+	public String toString() { return this.values.toString(); }
+}
@@ -0,0 +1,216 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.Arrays;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * An index of the stats of an hypercube, for single value retrieval.
+ *
+ * Contrary to {@link StatsIndex}, which is a tree of maps, this index is flat:
+ * the dimension values are encoded with dictionaries, and the codes of a position are packed into a single long key.
+ * Retrieving a single value requires a single hash probe, once the codes of the dimension values are known.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class FlatStatsIndex {
+	private final static Logger LOGGER = LogManager.getLogger(FlatStatsIndex.class.getName());
+
+	/** Position value for keys with several stats. */
+	private static final int SEVERAL = -2;
+
+	/** The index dimension labels. */
+	private String[] dimLabels;
+
+	/** The dimension value dictionaries, for each index dimension. */
+	private DimValueDictionary[] dictionaries;
+
+	/** The multiplier of the code of each dimension in the packed key. */
+	private long[] multipliers;
+
+	/** The hash table of the keys and stat positions. */
+	private LongIntHashMap positions;
+
+	/** The indexed hypercube, when it is columnar. */
+	private ColumnarStatsHypercube chc = null;
+
+	/** The indexed stats, when the hypercube is not columnar. */
+	private Stat[] stats = null;
+
+	/**
+	 * Build a flat index of an hypercube.
+	 *
+	 * @param hc
+	 * @param dimLabels The index dimension labels.
+	 */
+	public FlatStatsIndex(StatsHypercube hc, String... dimLabels){
+		this.dimLabels = dimLabels.clone();
+		int n = hc.stats.size(), nbDims = dimLabels.length;
+		this.dictionaries = new DimValueDictionary[nbDims];
+
+		//get dimension value codes
+		int[][] codes = new int[nbDims][];
+		if(hc instanceof ColumnarStatsHypercube) {
+			//reuse the codes of the columns
+			this.chc = (ColumnarStatsHypercube) hc;
+			for(int k=0; k<nbDims; k++) {
+				this.dictionaries[k] = this.chc.getDictionary(dimLabels[k]);
+				if(this.dictionaries[k] == null) this.dictionaries[k] = new DimValueDictionary();
+				codes[k] = this.chc.getCodes(dimLabels[k]);
+				if(codes[k] == null) { codes[k] = new int[n]; Arrays.fill(codes[k], -1); }
+			}
+		} else {
+			//encode stats in a single pass
+			this.stats = new Stat[n];
+			for(int k=0; k<nbDims; k++) {
+				this.dictionaries[k] = new DimValueDictionary();
+				codes[k] = new int[n];
+			}
+			int i = 0;
+			for(Stat s : hc.stats) {
+				this.stats[i] = s;
+				for(int k=0; k<nbDims; k++) codes[k][i] = this.dictionaries[k].encode(s.dims.get(dimLabels[k]));
+				i++;
+			}
+		}
+
+		//compute key multipliers. The code -1 (null) is shifted to 0.
+		this.multipliers = new long[nbDims];
+		long m = 1;
+		for(int k=nbDims-1; k>=0; k--) {
+			this.multipliers[k] = m;
+			long card = this.dictionaries[k].size() + 1;
+			if(m > Long.MAX_VALUE / card) throw new IllegalArgumentException("Too many positions to build a flat index on " + Arrays.toString(dimLabels));
+			m *= card;
+		}
+
+		//fill hash table
+		this.positions = new LongIntHashMap(n);
+		for(int i=0; i<n; i++) {
+			long key = 0;
+			for(int k=0; k<nbDims; k++) key += (codes[k][i] + 1) * this.multipliers[k];
+			int p = this.positions.get(key);
+			this.positions.put(key, p == LongIntHashMap.NONE ? i : SEVERAL);
+		}
+	}
+
+	/**
+	 * @return The index dimension labels.
+	 */
+	public String[] getDimLabels() { return this.dimLabels.clone(); }
+
+	/**
+	 * @param dimLabel
+	 * @return The dictionary used by the index for a dimension, or null if the dimension is not indexed.
+	 */
+	public DimValueDictionary getDictionary(String dimLabel) {
+		for(int k=0; k<this.dimLabels.length; k++) if(this.dimLabels[k].equals(dimLabel)) return this.dictionaries[k];
+		return null;
+	}
+
+	/**
+	 * Compute the table to translate the codes of a dictionary into the codes of the index dictionary of a dimension.
+	 * Codes of values which are not in the index dictionary are translated into -2.
+	 *
+	 * @param dimLabel The index dimension.
+	 * @param dict The dictionary to translate.
+	 * @return The translation table.
+	 */
+	public int[] getTranslation(String dimLabel, DimValueDictionary dict) {
+		DimValueDictionary dictI = getDictionary(dimLabel);
+		int[] out = new int[dict.size()];
+		for(int code=0; code<out.length; code++) {
+			int c = dictI == null ? -1 : dictI.getCode(dict.getValue(code));
+			out[code] = c<0 ? -2 : c;
+		}
+		return out;
+	}
+
+	/**
+	 * @param dimValues The dimension values, in the index dimension order.
+	 * @return The position of the stat in the indexed hypercube, -1 if there is none, -2 if there are several.
+	 */
+	public int getPosition(String... dimValues) {
+		if(dimValues.length != this.dimLabels.length) return -1;
+		long key = 0;
+		for(int k=0; k<dimValues.length; k++) {
+			String dv = dimValues[k];
+			int code = dv == null ? -1 : this.dictionaries[k].getCode(dv);
+			if(dv != null && code < 0) return -1;
+			key += (code + 1) * this.multipliers[k];
+		}
+		return getPosition(key);
+	}
+
+	/**
+	 * @param codes The dimension value codes, in the index dimension order. -1 for null values.
+	 * @return The position of the stat in the indexed hypercube, -1 if there is none, -2 if there are several.
+	 */
+	public int getPosition(int[] codes) {
+		long key = 0;
+		for(int k=0; k<codes.length; k++) {
+			if(codes[k] < -1) return -1;
+			key += (codes[k] + 1) * this.multipliers[k];
+		}
+		return getPosition(key);
+	}
+
+	private int getPosition(long key) {
+		int p = this.positions.get(key);
+		return p == LongIntHashMap.NONE ? -1 : p;
+	}
+
+	/**
+	 * @param position A position returned by getPosition.
+	 * @return The stat, or null in case of impossibility
+	 */
+	public Stat getStat(int position) {
+		if(position == SEVERAL) {
+			LOGGER.error("Unexpected data in statindex: Single value expected instead of several.");
+			return null;
+		}
+		if(position < 0) return null;
+		return this.chc != null ? this.chc.getStat(position) : this.stats[position];
+	}
+
+	/**
+	 * @param position A position returned by getPosition.
+	 * @return The value, or NaN in case of impossibility
+	 */
+	public double getValue(int position) {
+		if(position == SEVERAL) {
+			LOGGER.error("Unexpected data in statindex: Single value expected instead of several.");
+			return Double.NaN;
+		}
+		if(position < 0) return Double.NaN;
+		return this.chc != null ? this.chc.getValue(position) : this.stats[position].value;
+	}
+
+	/**
+	 * @param dimValues dim values, in the index dimension order
+	 * @return A stat, or null in case of impossibility
+	 */
+	public Stat getSingleStat(String... dimValues){ return getStat(getPosition(dimValues)); }
+
+	/**
+	 * @param dimValues dim values, in the index dimension order
+	 * @return A single value, or NaN in case of impossibility
+	 */
+	public double getSingleValue(String... dimValues){ return getValue(getPosition(dimValues)); }
+
+	/**
+	 * @param dimValues dim values, in the index dimension order
+	 * @return A flagged single value, or null in case of impossibility
+	 */
+	public String getSingleValueFlagged(String... dimValues){
+		Stat s = getSingleStat(dimValues);
+		if(s == null) return null;
+		return s.getValueFlagged();
+	}
+
+}
@@ -0,0 +1,91 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+/**
+ * A hash table with long keys and int values, based on open addressing.
+ * This avoids boxing keys and values.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class LongIntHashMap {
+	/** The value returned for absent keys. */
+	public static final int NONE = -1;
+
+	private long[] keys;
+	private int[] values;
+	private boolean[] used;
+	private int size = 0, mask;
+
+	/**
+	 * @param expectedSize
+	 */
+	public LongIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while(capacity < expectedSize * 2) capacity <<= 1;
+		init(capacity);
+	}
+
+	private void init(int capacity) {
+		this.keys = new long[capacity];
+		this.values = new int[capacity];
+		this.used = new boolean[capacity];
+		this.mask = capacity - 1;
+	}
+
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		int i = (int)(h ^ (h >>> 32)) & this.mask;
+		while(this.used[i] && this.keys[i] != key) i = (i+1) & this.mask;
+		return i;
+	}
+
+	/**
+	 * @return The number of keys.
+	 */
+	public int size() { return this.size; }
+
+	/**
+	 * @param key
+	 * @return The value of the key, or NONE if the key is absent.
+	 */
+	public int get(long key) {
+		int i = slot(key);
+		return this.used[i] ? this.values[i] : NONE;
+	}
+
+	/**
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, int value) {
+		int i = slot(key);
+		if(!this.used[i]) {
+			if(2 * (this.size+1) > this.keys.length) {
+				rehash();
+				i = slot(key);
+			}
+			this.used[i] = true;
+			this.keys[i] = key;
+			this.size++;
+		}
+		this.values[i] = value;
+	}
+
+	private void rehash() {
+		long[] keys_ = this.keys;
+		int[] values_ = this.values;
+		boolean[] used_ = this.used;
+		init(keys_.length * 2);
+		for(int i=0; i<keys_.length; i++) {
+			if(!used_[i]) continue;
+			int j = slot(keys_[i]);
+			this.used[j] = true;
+			this.keys[j] = keys_[i];
+			this.values[j] = values_[i];
+		}
+	}
+
+}
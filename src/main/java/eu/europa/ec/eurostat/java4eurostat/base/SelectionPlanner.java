@@ -0,0 +1,204 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoublePredicate;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.TimePeriodBetween;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerThan;
+
+/**
+ * A cost-based planner of selections on a columnar hypercube.
+ *
+ * The conjunctions of criteria are evaluated one after the other, each on the stats kept by the previous ones.
+ * The planner orders them so that the cheapest and most selective criteria are evaluated first.
+ * The selectivity of the criteria on dimension values is estimated with the number of stats by dimension value,
+ * which are taken from the bitmap indexes when available. The selectivity of the criteria on the statistical values
+ * is guessed with fixed ratios. The criteria which can be evaluated with the bitmap indexes are the cheapest,
+ * and the criteria which cannot be compiled (see {@link CompiledCriteria}) the most expensive.
+ *
+ * A planner can be used by several threads at the same time, as long as its hypercube is not modified.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class SelectionPlanner {
+
+	/** The estimated costs by stat of the criteria evaluation. */
+	private static final double INDEX_COST = 0.05, COMPILED_COST = 1, STAT_COST = 20;
+
+	private final ColumnarStatsHypercube hc;
+
+	/** The number of stats by code, by dimension label. They are computed when first needed. */
+	private final ConcurrentHashMap<String, int[]> counts = new ConcurrentHashMap<>();
+
+	/**
+	 * @param hc The hypercube the selections are planned for.
+	 */
+	public SelectionPlanner(ColumnarStatsHypercube hc) { this.hc = hc; }
+
+	/**
+	 * Select the stats satisfying a criteria.
+	 *
+	 * @param cri
+	 * @return The positions of the stats to keep.
+	 */
+	public BitSet evaluate(Criteria cri) {
+		BitSet keep = new BitSet(this.hc.size());
+		keep.set(0, this.hc.size());
+		BitmapIndex bi = this.hc.getBitmapIndex();
+		for(Criteria c : plan(cri)) {
+			if(keep.isEmpty()) break;
+			if(bi != null && bi.supports(c)) keep.and(bi.evaluate(c));
+			else keep = new CompiledCriteria(this.hc, c).evaluate(keep);
+		}
+		return keep;
+	}
+
+	/**
+	 * Split a criteria into its conjunction of criteria, in the order they should be evaluated.
+	 *
+	 * @param cri
+	 * @return The criteria, to be evaluated one after the other.
+	 */
+	public Criteria[] plan(Criteria cri) {
+		ArrayList<Criteria> cris = new ArrayList<>();
+		flatten(cri, cris);
+		int nb = cris.size();
+		Criteria[] out = cris.toArray(new Criteria[nb]);
+		if(nb <= 1) return out;
+
+		//rank by cost of the criteria divided by its filtering power
+		final HashMap<Criteria, Double> ranks = new HashMap<>();
+		for(Criteria c : out) {
+			double filtered = 1 - getSelectivity(c);
+			ranks.put(c, filtered <= 0 ? Double.POSITIVE_INFINITY : getCost(c) / filtered);
+		}
+		Arrays.sort(out, Comparator.comparingDouble(ranks::get));
+		return out;
+	}
+
+	private static void flatten(Criteria cri, ArrayList<Criteria> out) {
+		if(cri instanceof And) for(Criteria c : ((And)cri).getCriteria()) flatten(c, out);
+		else out.add(cri);
+	}
+
+	/**
+	 * Estimate the share of stats satisfying a criteria.
+	 *
+	 * @param cri
+	 * @return The selectivity, in [0,1].
+	 */
+	public double getSelectivity(Criteria cri) {
+		int n = this.hc.size();
+		if(n == 0) return 0;
+		if(cri instanceof DimValueEqualTo || cri instanceof DimValueDifferentFrom) {
+			boolean equal = cri instanceof DimValueEqualTo;
+			String[] dlv = equal ? ((DimValueEqualTo)cri).getDimLabelValues() : ((DimValueDifferentFrom)cri).getDimLabelValues();
+			double sel = 1;
+			for(int i=0; i<dlv.length; i+=2) {
+				double s = getCount(dlv[i], dlv[i+1]) / (double)n;
+				sel *= equal ? s : 1 - s;
+			}
+			return sel;
+		}
+		if(cri instanceof DimValueGreaterThan) { double t = ((DimValueGreaterThan)cri).getDimValue(); return getNumericSelectivity(((DimValueGreaterThan)cri).getDimLabel(), v -> v > t); }
+		if(cri instanceof DimValueLowerThan) { double t = ((DimValueLowerThan)cri).getDimValue(); return getNumericSelectivity(((DimValueLowerThan)cri).getDimLabel(), v -> v < t); }
+		if(cri instanceof DimValueGreaterOrEqualThan) { double t = ((DimValueGreaterOrEqualThan)cri).getDimValue(); return getNumericSelectivity(((DimValueGreaterOrEqualThan)cri).getDimLabel(), v -> v >= t); }
+		if(cri instanceof DimValueLowerOrEqualThan) { double t = ((DimValueLowerOrEqualThan)cri).getDimValue(); return getNumericSelectivity(((DimValueLowerOrEqualThan)cri).getDimLabel(), v -> v <= t); }
+		if(cri instanceof TimePeriodBetween) {
+			TimePeriodBetween c = (TimePeriodBetween)cri;
+			int[] counts = getCounts(c.getDimLabel());
+			if(counts == null) return 0;
+			int[] timeCodes = this.hc.getDictionary(c.getDimLabel()).getTimeCodes();
+			long nb = 0;
+			for(int code=0; code<counts.length && code<timeCodes.length; code++) if(c.keep(timeCodes[code])) nb += counts[code];
+			return nb / (double)n;
+		}
+		if(cri instanceof ValueEqualTo) return 0.1;
+		if(cri instanceof ValueDifferentFrom) return 0.9;
+		if(cri instanceof ValueGreaterThan || cri instanceof ValueLowerThan || cri instanceof ValueGreaterOrEqualThan || cri instanceof ValueLowerOrEqualThan) return 1.0/3;
+		if(cri instanceof Not) return 1 - getSelectivity(((Not)cri).getCriteria());
+		if(cri instanceof And) {
+			double sel = 1;
+			for(Criteria c : ((And)cri).getCriteria()) sel *= getSelectivity(c);
+			return sel;
+		}
+		if(cri instanceof Or) {
+			double sel = 1;
+			for(Criteria c : ((Or)cri).getCriteria()) sel *= 1 - getSelectivity(c);
+			return 1 - sel;
+		}
+		return 0.5;
+	}
+
+	/**
+	 * Estimate the cost by stat of the evaluation of a criteria.
+	 *
+	 * @param cri
+	 * @return The cost, relative to the cost of a compiled elementary criteria.
+	 */
+	public double getCost(Criteria cri) {
+		BitmapIndex bi = this.hc.getBitmapIndex();
+		if(bi != null && bi.supports(cri)) return INDEX_COST;
+		if(cri instanceof Not) return getCost(((Not)cri).getCriteria());
+		Criteria[] cris = cri instanceof And ? ((And)cri).getCriteria() : cri instanceof Or ? ((Or)cri).getCriteria() : null;
+		if(cris == null) return new CompiledCriteria(this.hc, cri).getUncompiledCount() > 0 ? STAT_COST : COMPILED_COST;
+		double cost = 0;
+		for(Criteria c : cris) cost += getCost(c);
+		return cost;
+	}
+
+	private int getCount(String dimLabel, String dimValue) {
+		int[] counts = getCounts(dimLabel);
+		if(counts == null) return 0;
+		int code = this.hc.getDictionary(dimLabel).getCode(dimValue);
+		return code < 0 || code >= counts.length ? 0 : counts[code];
+	}
+
+	private double getNumericSelectivity(String dimLabel, DoublePredicate test) {
+		int[] counts = getCounts(dimLabel);
+		if(counts == null) return 0;
+		double[] numericValues = this.hc.getDictionary(dimLabel).getNumericValues();
+		long nb = 0;
+		for(int code=0; code<counts.length && code<numericValues.length; code++) if(test.test(numericValues[code])) nb += counts[code];
+		return nb / (double)this.hc.size();
+	}
+
+	/** The number of stats by code of a dimension, or null if the dimension is not in the hypercube. */
+	private int[] getCounts(String dimLabel) {
+		int[] codes = this.hc.getCodes(dimLabel);
+		if(codes == null) return null;
+		BitmapIndex bi = this.hc.getBitmapIndex();
+		int[] counts = bi == null ? null : bi.getCounts(dimLabel);
+		if(counts != null) return counts;
+		return this.counts.computeIfAbsent(dimLabel, dl -> {
+			int[] counts_ = new int[this.hc.getDictionary(dl).size()];
+			for(int i=0; i<this.hc.size(); i++) if(codes[i] >= 0) counts_[codes[i]]++;
+			return counts_;
+		});
+	}
+
+}
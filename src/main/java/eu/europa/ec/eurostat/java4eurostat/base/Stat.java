@@ -53,6 +53,15 @@ public class Stat {
 	 */
 	public double value;
 
+	/**
+	 * Change the value.
+	 * For the stats retrieved from the columnar or dense hypercubes, the change is written into the hypercube,
+	 * while a direct change of the {@link #value} field is not.
+	 * 
+	 * @param value
+	 */
+	public void setValue(double value) { this.value = value; }
+
 	/**
 	 * The position of the element in the hypercube.
 	 * Ex: gender - male ; time - 2015 ; country - PL
@@ -101,6 +110,13 @@ public class Stat {
 		return this.flags.remove(flag);
 	}
 
+	/**
+	 * Remove all flags.
+	 */
+	void clearFlags(){
+		if(this.flags != null) this.flags.clear();
+	}
+
 	/**
 	 * Check if the stat value is flagged.
 	 * 
@@ -4,16 +4,20 @@
 package eu.europa.ec.eurostat.java4eurostat.base;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.function.BinaryOperator;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.UnaryOperator;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection;
 import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
 import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
 import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
@@ -113,6 +117,16 @@ public class StatsHypercube {
 		return new StatsHypercube(stats_, new HashSet<>(this.dimLabels));
 	}
 
+	/**
+	 * Extract an hypercube based on a selection query.
+	 * Ex: <code>country IN (Brasil,Japan) AND year &gt;= 2014 AND value &gt; 100</code>
+	 * See {@link Selection#parse(String)}.
+	 * 
+	 * @param query The selection query
+	 * @return The extracted hypercube
+	 */
+	public StatsHypercube select(String query) { return select(Selection.parse(query)); }
+
 	/**
 	 * Extract an hypercube of stats having dimLabel=dimValue
 	 * Ex: gender=male AND country=HU, etc.
@@ -305,12 +319,23 @@ public class StatsHypercube {
 
 	/**
 	 * Apply an operation on the values.
+	 * NB: The values are boxed. Prefer {@link #applyDouble(DoubleUnaryOperator)}.
 	 * 
 	 * @param op
 	 * @return the object itself
 	 */
 	public StatsHypercube apply(UnaryOperator<Double> op) {
-		for(Stat s : this.stats) s.value = op.apply(new Double(s.value)).doubleValue();
+		return applyDouble(v -> op.apply(v).doubleValue());
+	}
+
+	/**
+	 * Apply an operation on the values, without boxing them.
+	 * 
+	 * @param op
+	 * @return the object itself
+	 */
+	public StatsHypercube applyDouble(DoubleUnaryOperator op) {
+		for(Stat s : this.stats) s.setValue(op.applyAsDouble(s.value));
 		return this;
 	}
 
@@ -318,48 +343,26 @@ public class StatsHypercube {
 	 * Apply absolute value.
 	 * @return the object itself
 	 */
-	public StatsHypercube abs() {
-		return apply(new UnaryOperator<Double>() {
-			@Override
-			public Double apply(Double val) { return new Double(Math.abs(val.doubleValue())); }});
-	}
+	public StatsHypercube abs() { return applyDouble(Math::abs); }
 
 	/**
 	 * Multiply the values by a factor.
 	 * @param factor
 	 * @return the object itself
 	 */
-	public StatsHypercube mult(double factor){
-		return apply(new UnaryOperator<Double>() {
-			@Override
-			public Double apply(Double val) {
-				return new Double(val.doubleValue() * factor);
-			}});
-	}
+	public StatsHypercube mult(double factor){ return applyDouble(v -> v * factor); }
 	/**
 	 * Add a qualtity to the values.
 	 * @param valueToSum
 	 * @return the object itself
 	 */
-	public StatsHypercube sum(double valueToSum){
-		return apply(new UnaryOperator<Double>() {
-			@Override
-			public Double apply(Double val) {
-				return new Double(val.doubleValue() + valueToSum);
-			}});
-	}
+	public StatsHypercube sum(double valueToSum){ return applyDouble(v -> v + valueToSum); }
 	/**
 	 * Apply a power to the values.
 	 * @param exp
 	 * @return the object itself
 	 */
-	public StatsHypercube pow(double exp){
-		return apply(new UnaryOperator<Double>() {
-			@Override
-			public Double apply(Double val) {
-				return new Double(Math.pow(val.doubleValue(), exp));
-			}});
-	}
+	public StatsHypercube pow(double exp){ return applyDouble(v -> Math.pow(v, exp)); }
 	/**
 	 * Invert the values.
 	 * @return the object itself
@@ -391,21 +394,28 @@ public class StatsHypercube {
 
 	/**
 	 * Apply an operation to the values, using values of another hypercube.
+	 * NB: The values are boxed. Prefer {@link #applyDouble(DoubleBinaryOperator, StatsHypercube)}.
+	 * 
 	 * @param op
 	 * @param hc
 	 * @return the object itself
 	 */
 	public StatsHypercube apply(BinaryOperator<Double> op, StatsHypercube hc) {
-		String[] dimLabels = getDimLabels();
-		StatsIndex hcI = new StatsIndex(hc, dimLabels);
-		for(Stat s : this.stats) {
-			//get values
-			Double val1 = new Double(s.value);
-			Double val2 = new Double(hcI.getSingleValue(s.getDimValues(dimLabels)));
+		return applyDouble((v1, v2) -> op.apply(v1, v2).doubleValue(), hc);
+	}
 
-			//compute and apply new figure
-			s.value = op.apply(val1, val2).doubleValue();
-		}
+	/**
+	 * Apply an operation to the values, using values of another hypercube, without boxing them.
+	 * 
+	 * @param op
+	 * @param hc
+	 * @return the object itself
+	 */
+	public StatsHypercube applyDouble(DoubleBinaryOperator op, StatsHypercube hc) {
+		String[] dimLabels = getDimLabels();
+		FlatStatsIndex hcI = new FlatStatsIndex(hc, dimLabels);
+		for(Stat s : this.stats)
+			s.setValue(op.applyAsDouble(s.value, hcI.getSingleValue(s.getDimValues(dimLabels))));
 		return this;
 	}
 
@@ -414,49 +424,25 @@ public class StatsHypercube {
 	 * @param hc
 	 * @return the object itself
 	 */
-	public StatsHypercube sum(StatsHypercube hc){
-		return apply(new BinaryOperator<Double>() {
-			@Override
-			public Double apply(Double val1, Double val2) {
-				return new Double(val1.doubleValue() + val2.doubleValue());
-			}}, hc);
-	}
+	public StatsHypercube sum(StatsHypercube hc){ return applyDouble((v1, v2) -> v1 + v2, hc); }
 	/**
 	 * Remove the values of another hypercube.
 	 * @param hc
 	 * @return the object itself
 	 */
-	public StatsHypercube diff(StatsHypercube hc){
-		return apply(new BinaryOperator<Double>() {
-			@Override
-			public Double apply(Double val1, Double val2) {
-				return new Double(val1.doubleValue() - val2.doubleValue());
-			}}, hc);
-	}
+	public StatsHypercube diff(StatsHypercube hc){ return applyDouble((v1, v2) -> v1 - v2, hc); }
 	/**
 	 * Divide by the values of another hypercube.
 	 * @param hc
 	 * @return the object itself
 	 */
-	public StatsHypercube div(StatsHypercube hc){
-		return apply(new BinaryOperator<Double>() {
-			@Override
-			public Double apply(Double val1, Double val2) {
-				return new Double(val1.doubleValue() / val2.doubleValue());
-			}}, hc);
-	}
+	public StatsHypercube div(StatsHypercube hc){ return applyDouble((v1, v2) -> v1 / v2, hc); }
 	/**
 	 * Multiply by the values of another hypercube.
 	 * @param hc
 	 * @return the object itself
 	 */
-	public StatsHypercube mult(StatsHypercube hc){
-		return apply(new BinaryOperator<Double>() {
-			@Override
-			public Double apply(Double val1, Double val2) {
-				return new Double(val1.doubleValue() * val2.doubleValue());
-			}}, hc);
-	}
+	public StatsHypercube mult(StatsHypercube hc){ return applyDouble((v1, v2) -> v1 * v2, hc); }
 
 
 
@@ -504,9 +490,17 @@ public class StatsHypercube {
 	 * @return
 	 */
 	public double[] getQuantiles(int nb) {
-		Collection<Double> vals = new HashSet<>();
-		for(Stat s : this.stats) if(!Double.isNaN(s.value)) vals.add(new Double(s.value));
-		return StatsUtil.getQuantiles(vals, nb);
+		//get the distinct values, sorted
+		double[] vals = new double[this.stats.size()];
+		int n = 0;
+		for(Stat s : this.stats) if(!Double.isNaN(s.value)) vals[n++] = s.value;
+		Arrays.sort(vals, 0, n);
+		int nd = 0;
+		for(int i=0; i<n; i++) if(nd == 0 || Double.compare(vals[i], vals[nd-1]) != 0) vals[nd++] = vals[i];
+
+		double[] out = new double[nb];
+		for(int quantile=0; quantile<nb; quantile++) out[quantile] = StatsUtil.getPercentileSorted(vals, nd, 100*(quantile+1)/(nb+1));
+		return out;
 	}
 
 	/**
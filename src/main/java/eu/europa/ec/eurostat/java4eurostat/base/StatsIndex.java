@@ -31,6 +31,18 @@ public class StatsIndex {
 	 */
 	private Object data;
 
+	/**
+	 * The dense hypercube, when the index is built on all dimensions of a dense hypercube.
+	 * Single values are then retrieved with an offset computation, and the index tree is built only if necessary.
+	 */
+	private DenseStatsHypercube dense = null;
+
+	/** The index dimension labels, when the index is built on a dense hypercube. */
+	private String[] denseDimLabels = null;
+
+	/** The position of the index dimensions in the dense hypercube dimensions. */
+	private int[] densePermutation = null;
+
 	/**
 	 * Build an index depending on the ordered list of dimension labels.
 	 * 
@@ -38,43 +50,87 @@ public class StatsIndex {
 	 * @param dimLabels
 	 */
 	public StatsIndex(StatsHypercube hc, String... dimLabels){
-		if(dimLabels.length == 0){
-			if(hc.stats.size()==0)
+		StatsHypercube hc_ = hc;
+		if(hc_ instanceof DenseStatsHypercube && dimLabels.length == hc_.dimLabels.size()) {
+			String[] denseLabels = hc_.getDimLabels();
+			int[] perm = new int[dimLabels.length];
+			boolean ok = true;
+			for(int i=0; i<dimLabels.length && ok; i++) {
+				perm[i] = -1;
+				for(int k=0; k<denseLabels.length; k++) if(denseLabels[k].equals(dimLabels[i])) perm[i] = k;
+				ok = perm[i] >= 0;
+			}
+			if(ok) {
+				this.dense = (DenseStatsHypercube) hc_;
+				this.denseDimLabels = dimLabels;
+				this.densePermutation = perm;
+				return;
+			}
+		}
+		build(hc_, dimLabels);
+	}
+
+	/**
+	 * Build an index depending on the ordered list of dimension labels.
+	 * If the index is built along all dimensions of the hypercube, and the hypercube is compact enough,
+	 * the hypercube is promoted to the dense representation. See {@link DenseStatsHypercube#promote(StatsHypercube, double)}.
+	 * NB: The index is then built on a dense copy of the hypercube: The stats retrieved from the index are not the ones of the hypercube,
+	 * and their changes are not reflected into the hypercube.
+	 * 
+	 * @param hc
+	 * @param promotionThreshold The compacity threshold above which the hypercube is promoted.
+	 * @param dimLabels
+	 */
+	public StatsIndex(StatsHypercube hc, double promotionThreshold, String... dimLabels){
+		this(dimLabels.length > 0 && dimLabels.length == hc.dimLabels.size() ? DenseStatsHypercube.promote(hc, promotionThreshold) : hc, dimLabels);
+	}
+
+	/**
+	 * Build the index tree, if it is not built yet.
+	 */
+	private void ensureTree() {
+		if(this.dense == null) return;
+		DenseStatsHypercube hc = this.dense;
+		this.dense = null;
+		build(hc, this.denseDimLabels);
+	}
+
+	private void build(StatsHypercube hc, String... dimLabels){ build(hc.stats, dimLabels, 0); }
+
+	/**
+	 * Build the index of some stats, from a given depth of the ordered list of dimension labels.
+	 */
+	private StatsIndex(Collection<Stat> stats, String[] dimLabels, int depth){ build(stats, dimLabels, depth); }
+
+	private void build(Collection<Stat> stats, String[] dimLabels, int depth){
+		if(depth == dimLabels.length){
+			if(stats.size()==0)
 				this.data = null;
-			else if(hc.stats.size()==1)
-				this.data = hc.stats.iterator().next();
+			else if(stats.size()==1)
+				this.data = stats.iterator().next();
 			else
-				this.data = new HashSet<>(hc.stats);
-		} else {
-			//TODO improve with in depth-first construction
-
-			//partition hypercube by dimension values
-			String dimLabel = dimLabels[0];
-			HashMap<String, StatsHypercube> hcP = new HashMap<>();
-			for(Stat s : hc.stats){
-				String dimValue = s.dims.get(dimLabel);
-				StatsHypercube hcP_ = hcP.get(dimValue);
-				if(hcP_ == null) {
-					hcP_ = new StatsHypercube();
-					hcP_.dimLabels = hc.dimLabels;
-					hcP.put(dimValue, hcP_);
-				}
-				hcP_.stats.add(s);
-			}
+				this.data = new HashSet<>(stats);
+			return;
+		}
 
-			//build index recursively from hypercube partition
-			HashMap<String, StatsIndex> data_ = new HashMap<>();
-			this.data = data_;
-			String[] dimLabelsOut = new String[dimLabels.length-1]; for(int i=1; i<dimLabels.length; i++) dimLabelsOut[i-1] = dimLabels[i];
-			for(Entry<String, StatsHypercube> e : hcP.entrySet()){
-				data_.put(e.getKey(), new StatsIndex(e.getValue(), dimLabelsOut));
+		//partition stats by dimension values
+		String dimLabel = dimLabels[depth];
+		HashMap<String, ArrayList<Stat>> partition = new HashMap<>();
+		for(Stat s : stats){
+			String dimValue = s.dims.get(dimLabel);
+			ArrayList<Stat> part = partition.get(dimValue);
+			if(part == null) {
+				part = new ArrayList<>();
+				partition.put(dimValue, part);
 			}
-
-			//HashSet<String> dimValues = hc.getDimValues(dimLabel);
-			//recursive construction
-			//for(String dimValue : dimValues)
-			//	data_.put(dimValue, new StatsIndex(hc.select(dimLabel, dimValue), dimLabelsOut));
+			part.add(s);
 		}
+
+		//build index recursively from partition, depth first
+		HashMap<String, StatsIndex> data_ = new HashMap<>();
+		this.data = data_;
+		for(Entry<String, ArrayList<Stat>> e : partition.entrySet())
+			data_.put(e.getKey(), new StatsIndex(e.getValue(), dimLabels, depth+1));
 	}
 
 	/**
@@ -84,6 +140,7 @@ public class StatsIndex {
 	 * @return
 	 */
 	public StatsIndex getSubIndex(String... dimLabels){
+		ensureTree();
 		StatsIndex out = this;
 		for(String label : dimLabels){
 			if(out.data instanceof Collection || out.data instanceof Stat){
@@ -139,6 +196,8 @@ public class StatsIndex {
 	 * @return A stat, or null in case of impossibility
 	 */
 	public Stat getSingleStat(String... dimLabels){
+		if(this.dense != null && dimLabels.length == this.densePermutation.length)
+			return this.dense.getStat(getDenseOffset(dimLabels));
 		StatsIndex si = getSubIndex(dimLabels);
 		if(si==null) return null;
 		if(si.data instanceof Stat) return ((Stat)si.data);
@@ -151,11 +210,21 @@ public class StatsIndex {
 	 * @return A single value, or NaN in case of impossibility
 	 */
 	public double getSingleValue(String... dimLabels){
+		if(this.dense != null && dimLabels.length == this.densePermutation.length) {
+			int offset = getDenseOffset(dimLabels);
+			return offset<0 ? Double.NaN : this.dense.getValue(offset);
+		}
 		Stat s = getSingleStat(dimLabels);
 		if(s == null) return Double.NaN;
 		return s.value;
 	}
 
+	private int getDenseOffset(String... dimValues){
+		String[] dimValues_ = new String[dimValues.length];
+		for(int i=0; i<dimValues.length; i++) dimValues_[this.densePermutation[i]] = dimValues[i];
+		return this.dense.getOffset(dimValues_);
+	}
+
 	/**
 	 * @param dimLabels dim labels vector
 	 * @return A flagged single value, or NaN in case of impossibility
@@ -171,6 +240,7 @@ public class StatsIndex {
 	 * @return The index keys (which are dimension values).
 	 */
 	public Set<String> getKeys(String... dimLabels){
+		ensureTree();
 		StatsIndex si = getSubIndex(dimLabels);
 		if(si == null)
 			return null;
@@ -202,6 +272,7 @@ public class StatsIndex {
 	 * @param indent 
 	 */
 	public void print(int indent){
+		ensureTree();
 		if(this.data instanceof Stat){
 			for(int i=0;i<indent;i++) System.out.print("\t");
 			System.out.println(((Stat)this.data).value);
@@ -231,6 +302,7 @@ public class StatsIndex {
 	 * @return The leaves of the index, as collections
 	 */
 	public Collection<Collection<Stat>> getLeaves() {
+		ensureTree();
 		Collection<Collection<Stat>> out = new ArrayList<>();
 		if(this.data instanceof Stat) {
 			ArrayList<Stat> s = new ArrayList<>();
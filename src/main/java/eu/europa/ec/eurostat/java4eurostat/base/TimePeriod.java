@@ -0,0 +1,221 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Year;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.Comparator;
+
+/**
+ * A codec of the Eurostat time periods into sortable integers.
+ *
+ * The supported formats are annual (2015), semester (2015S1), quarterly (2015Q1), monthly (2015M03), weekly (2015W05)
+ * and daily (2015M03D12 or 2015-03-12). The ISO forms 2015-S1, 2015-Q1, 2015-03 and 2015-W05 are also supported,
+ * and the surrounding spaces are ignored.
+ *
+ * A period is encoded with its frequency in the high bits, and its ordinal in the low bits. The ordinal is the number
+ * of periods since year 0 (since an epoch for weeks and days), so that the periods of a same frequency can be compared,
+ * shifted and subtracted as integers. Periods of different frequencies are sorted by frequency.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class TimePeriod {
+
+	/** The code returned for a text which is not a time period. */
+	public static final int NONE = -1;
+
+	/** The frequencies. */
+	public enum Frequency {
+		/** Annual */ A,
+		/** Semester */ S,
+		/** Quarterly */ Q,
+		/** Monthly */ M,
+		/** Weekly */ W,
+		/** Daily */ D;
+	}
+	private static final Frequency[] FREQUENCIES = Frequency.values();
+
+	private static final int ORDINAL_BITS = 27, ORDINAL_MASK = (1 << ORDINAL_BITS) - 1;
+	/** Offset of the ordinals of weeks and days, which are counted from 1970. */
+	private static final int EPOCH_OFFSET = 1 << 22;
+	private static final LocalDate MONDAY_1970 = LocalDate.of(1970, 1, 5);
+
+	/**
+	 * Encode a time period.
+	 *
+	 * @param period
+	 * @return The code, or {@link #NONE} if the text is not a supported time period.
+	 */
+	public static int encode(String period) {
+		if(period == null) return NONE;
+		int start = 0, end = period.length();
+		while(start < end && period.charAt(start) == ' ') start++;
+		while(end > start && period.charAt(end-1) == ' ') end--;
+
+		//read the year
+		int i = start, year = 0;
+		while(i < end && i-start < 5 && isDigit(period.charAt(i))) year = 10 * year + period.charAt(i++) - '0';
+		if(i-start != 4) return NONE;
+		if(i == end) return code(Frequency.A, year);
+
+		char c = period.charAt(i++);
+		if(c == '-' && i < end && isDigit(period.charAt(i))) {
+			//ISO month or day
+			int month = readInt(period, i, i+2, end);
+			if(month < 1 || month > 12) return NONE;
+			if(i+2 == end) return code(Frequency.M, 12 * year + month - 1);
+			if(period.charAt(i+2) != '-') return NONE;
+			return dayCode(year, month, readInt(period, i+3, i+5, end), i+5 == end);
+		}
+		if(c == '-' && i < end) c = period.charAt(i++);
+
+		int nb = readInt(period, i, end, end);
+		switch (c) {
+		case 'S': return nb >= 1 && nb <= 2 ? code(Frequency.S, 2 * year + nb - 1) : NONE;
+		case 'Q': return nb >= 1 && nb <= 4 ? code(Frequency.Q, 4 * year + nb - 1) : NONE;
+		case 'W': {
+			LocalDate jan4 = LocalDate.of(year, 1, 4);
+			if(!IsoFields.WEEK_OF_WEEK_BASED_YEAR.rangeRefinedBy(jan4).isValidIntValue(nb)) return NONE;
+			LocalDate monday = jan4.with(IsoFields.WEEK_OF_WEEK_BASED_YEAR, nb).with(DayOfWeek.MONDAY);
+			return code(Frequency.W, (int)ChronoUnit.WEEKS.between(MONDAY_1970, monday) + EPOCH_OFFSET);
+		}
+		case 'M': {
+			int d = period.indexOf('D', i);
+			if(d < 0) return nb >= 1 && nb <= 12 ? code(Frequency.M, 12 * year + nb - 1) : NONE;
+			int month = readInt(period, i, d, end);
+			if(month < 1 || month > 12) return NONE;
+			return dayCode(year, month, readInt(period, d+1, end, end), true);
+		}
+		default: return NONE;
+		}
+	}
+
+	/**
+	 * Decode a time period, in Eurostat format.
+	 *
+	 * @param code
+	 * @return The time period, or null if the code is {@link #NONE}.
+	 */
+	public static String decode(int code) {
+		if(code == NONE) return null;
+		int o = getOrdinal(code);
+		switch (getFrequency(code)) {
+		case A: return Integer.toString(o);
+		case S: return (o / 2) + "S" + (o % 2 + 1);
+		case Q: return (o / 4) + "Q" + (o % 4 + 1);
+		case M: return (o / 12) + "M" + two(o % 12 + 1);
+		case W: {
+			LocalDate monday = MONDAY_1970.plusWeeks(o - EPOCH_OFFSET);
+			return monday.get(IsoFields.WEEK_BASED_YEAR) + "W" + two(monday.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+		}
+		default: {
+			LocalDate day = LocalDate.ofEpochDay(o - EPOCH_OFFSET);
+			return day.getYear() + "M" + two(day.getMonthValue()) + "D" + two(day.getDayOfMonth());
+		}
+		}
+	}
+
+	/**
+	 * @param code
+	 * @return The frequency of a time period.
+	 */
+	public static Frequency getFrequency(int code) { return FREQUENCIES[code >>> ORDINAL_BITS]; }
+
+	/**
+	 * @param code
+	 * @return The ordinal of a time period within its frequency.
+	 */
+	public static int getOrdinal(int code) { return code & ORDINAL_MASK; }
+
+	/**
+	 * @param code
+	 * @return The year of a time period. For weeks, the ISO week-based year.
+	 */
+	public static int getYear(int code) {
+		int o = getOrdinal(code);
+		switch (getFrequency(code)) {
+		case A: return o;
+		case S: return o / 2;
+		case Q: return o / 4;
+		case M: return o / 12;
+		case W: return MONDAY_1970.plusWeeks(o - EPOCH_OFFSET).get(IsoFields.WEEK_BASED_YEAR);
+		default: return LocalDate.ofEpochDay(o - EPOCH_OFFSET).getYear();
+		}
+	}
+
+	/**
+	 * @param year
+	 * @param f
+	 * @return The number of periods of a frequency in a year. For weeks, in the ISO week-based year.
+	 */
+	public static int getNbPeriods(int year, Frequency f) {
+		switch (f) {
+		case A: return 1;
+		case S: return 2;
+		case Q: return 4;
+		case M: return 12;
+		case W: return LocalDate.of(year, 12, 28).get(IsoFields.WEEK_OF_WEEK_BASED_YEAR);
+		default: return Year.isLeap(year) ? 366 : 365;
+		}
+	}
+
+	/**
+	 * Shift a time period.
+	 *
+	 * @param code
+	 * @param nb The number of periods to shift, possibly negative.
+	 * @return The code of the shifted time period, with the same frequency.
+	 */
+	public static int add(int code, int nb) { return code + nb; }
+
+	/**
+	 * @param code1
+	 * @param code2
+	 * @return The number of periods from the first to the second time period.
+	 * @throws IllegalArgumentException if the frequencies are different.
+	 */
+	public static int getDuration(int code1, int code2) {
+		if(code1 >>> ORDINAL_BITS != code2 >>> ORDINAL_BITS)
+			throw new IllegalArgumentException("Time periods with different frequencies: " + decode(code1) + " " + decode(code2));
+		return code2 - code1;
+	}
+
+	/**
+	 * A comparator of time periods. The texts which are not time periods are compared as texts, after the time periods.
+	 * NB: Each time period is parsed at each comparison. To sort many periods, prefer sorting their codes.
+	 */
+	public static final Comparator<String> COMPARATOR = (t1, t2) -> {
+		int c1 = encode(t1), c2 = encode(t2);
+		if(c1 == NONE || c2 == NONE) return c1 == c2 ? t1.compareTo(t2) : c1 == NONE ? 1 : -1;
+		return Integer.compare(c1, c2);
+	};
+
+	private static int code(Frequency f, int ordinal) { return f.ordinal() << ORDINAL_BITS | ordinal; }
+
+	private static int dayCode(int year, int month, int day, boolean complete) {
+		if(!complete || day < 1 || day > LocalDate.of(year, month, 1).lengthOfMonth()) return NONE;
+		return code(Frequency.D, (int)LocalDate.of(year, month, day).toEpochDay() + EPOCH_OFFSET);
+	}
+
+	/** Read a positive integer of at most 2 digits, or -1. */
+	private static int readInt(String s, int from, int to, int end) {
+		if(to > end || to - from < 1 || to - from > 2) return -1;
+		int out = 0;
+		for(int i=from; i<to; i++) {
+			char c = s.charAt(i);
+			if(!isDigit(c)) return -1;
+			out = 10 * out + c - '0';
+		}
+		return out;
+	}
+
+	private static boolean isDigit(char c) { return c >= '0' && c <= '9'; }
+
+	private static String two(int i) { return i < 10 ? "0" + i : Integer.toString(i); }
+
+}
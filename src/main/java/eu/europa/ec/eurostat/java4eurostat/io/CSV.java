@@ -58,34 +58,13 @@ public class CSV {
 
 			//read header
 			String line = br.readLine();
-			Matcher m = pattern.matcher(line);
-			ArrayList<String> keys = new ArrayList<>();
-			while(m.find()){
-				keys.add(m.group(1));
-				m.find();
-			}
+			ArrayList<String> keys = parseHeader(line, pattern);
 			hc.dimLabels.addAll(keys);
 			hc.dimLabels.remove(valueLabel);
 
 			//read data
 			while ((line = br.readLine()) != null) {
-				m = pattern.matcher(line);
-				Stat s = new Stat();
-				for(String key : keys){
-					m.find();
-					String value = m.group(1);
-					if(!"".equals(value)) m.find();
-					if(key.equals(valueLabel)) {
-						try {
-							s.value = Double.parseDouble(value);
-						} catch (NumberFormatException e) {
-							LOGGER.warn("Could not parse statistical value: "+value);
-							s.value = Double.NaN;
-						}
-					}
-					else
-						s.dims.put(key, value);
-				}
+				Stat s = parseLine(line, pattern, keys, valueLabel);
 
 				if(ssc!=null && !ssc.keep(s)) continue;
 
@@ -103,6 +82,85 @@ public class CSV {
 		return hc;		
 	}
 
+	/**
+	 * Load a CSV file in parallel, using all available processors.
+	 * See {@link #loadParallel(String, String, String, Criteria, int)}.
+	 * 
+	 * @param inputFilePath
+	 * @param valueLabel The label of the column with values
+	 * @param ssc Selection criteria
+	 * @return
+	 */
+	public static StatsHypercube loadParallel(String inputFilePath, String valueLabel, Criteria ssc) { return loadParallel(inputFilePath, valueLabel, PAT, ssc, Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * Load a CSV file in parallel.
+	 * The file is split into chunks of lines, which are parsed on several threads.
+	 * NB: The values should not contain line breaks.
+	 * 
+	 * @param inputFilePath
+	 * @param valueLabel The label of the column with values
+	 * @param patternString NB: for tab separated files, use "([^\t]*)"
+	 * @param ssc Selection criteria. It is shared by the threads, and must be thread safe.
+	 * @param parallelism The number of threads.
+	 * @return A columnar hypercube.
+	 */
+	public static StatsHypercube loadParallel(String inputFilePath, String valueLabel, String patternString, Selection.Criteria ssc, int parallelism) {
+		Pattern pattern = Pattern.compile(patternString);
+		ArrayList<String> keys;
+		try (BufferedReader br = new BufferedReader(new FileReader(inputFilePath))) {
+			keys = parseHeader(br.readLine(), pattern);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new StatsHypercube();
+		}
+		ArrayList<String> dimLabels = new ArrayList<>(keys);
+		dimLabels.remove(valueLabel);
+		try {
+			long dataStart = ParallelLoader.getNextLineStart(inputFilePath, 0);
+			return ParallelLoader.load(inputFilePath, dataStart, parallelism, () -> (line, chunk) -> {
+				Stat s = parseLine(line, pattern, keys, valueLabel);
+				if(ssc==null || ssc.keep(s)) chunk.addStat(s);
+			}, dimLabels.toArray(new String[dimLabels.size()]));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new StatsHypercube();
+		}
+	}
+
+	/** Read the column names from a header line. */
+	private static ArrayList<String> parseHeader(String line, Pattern pattern) {
+		Matcher m = pattern.matcher(line);
+		ArrayList<String> keys = new ArrayList<>();
+		while(m.find()){
+			keys.add(m.group(1));
+			m.find();
+		}
+		return keys;
+	}
+
+	/** Read a stat from a data line. */
+	private static Stat parseLine(String line, Pattern pattern, ArrayList<String> keys, String valueLabel) {
+		Matcher m = pattern.matcher(line);
+		Stat s = new Stat();
+		for(String key : keys){
+			m.find();
+			String value = m.group(1);
+			if(!"".equals(value)) m.find();
+			if(key.equals(valueLabel)) {
+				try {
+					s.value = Double.parseDouble(value);
+				} catch (NumberFormatException e) {
+					LOGGER.warn("Could not parse statistical value: "+value);
+					s.value = Double.NaN;
+				}
+			}
+			else
+				s.dims.put(key, value);
+		}
+		return s;
+	}
+
 
 	/**
 	 * Load a CSV file of statistical data for which several values are specified per raw.
@@ -7,6 +7,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.zip.GZIPInputStream;
@@ -26,19 +27,33 @@ public class CompressUtil {
 	 */
 	public static void unGZIP(String inGZIPFile, String outUnGZIPFile){
 		try {
-			GZIPInputStream gzis = new GZIPInputStream(new FileInputStream(inGZIPFile));
-			FileOutputStream out = new FileOutputStream(outUnGZIPFile);
+			unGZIP(new FileInputStream(inGZIPFile), outUnGZIPFile);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Uncompress a GZIP stream into a file.
+	 * The stream is closed.
+	 * 
+	 * @param inGZIP The compressed stream, for example from a file or an URL.
+	 * @param outUnGZIPFile
+	 */
+	public static void unGZIP(InputStream inGZIP, String outUnGZIPFile){
+		try (GZIPInputStream gzis = new GZIPInputStream(inGZIP, BUFFER_SIZE); FileOutputStream out = new FileOutputStream(outUnGZIPFile)) {
 			int len;
-			byte[] buffer = new byte[1024];
+			byte[] buffer = new byte[BUFFER_SIZE];
 			while ((len = gzis.read(buffer)) > 0)
 				out.write(buffer, 0, len);
-			gzis.close();
-			out.close();
 		} catch (Exception e) {
 			e.printStackTrace();
 		}
 	}
 
+	/** The buffer size used to (un)compress streams. */
+	static final int BUFFER_SIZE = 1 << 16;
+
 	/**
 	 * @param inPath
 	 * @param zipFile
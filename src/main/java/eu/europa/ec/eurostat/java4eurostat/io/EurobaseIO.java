@@ -5,13 +5,21 @@ package eu.europa.ec.eurostat.java4eurostat.io;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
+
 import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
 import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
 import eu.europa.ec.eurostat.java4eurostat.util.Util;
@@ -43,7 +51,15 @@ public class EurobaseIO {
 	 * @param ssc
 	 * @return
 	 */
-	public static StatsHypercube getDataFromURL(String url, Criteria ssc){ return JSONStat.load( IOUtil.getDataFromURL(url), true, ssc ); }
+	public static StatsHypercube getDataFromURL(String url, Criteria ssc){
+		//stream the response, to avoid having it all in memory
+		try (InputStream in = new URL(url).openStream()) {
+			return JSONStat.load(in, true, ssc);
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
 
 	/**
 	 * @param url
@@ -87,19 +103,27 @@ public class EurobaseIO {
 	public static String eurobaseBulkURLSuf = ".tsv.gz";
 
 
+	/**
+	 * @param eurobaseDatabaseCode
+	 * @return The URL of the bulk download file of a database.
+	 */
+	public static String getBulkURL(String eurobaseDatabaseCode){ return eurobaseBulkURLBase + eurobaseDatabaseCode + eurobaseBulkURLSuf; }
+
 	/**
 	 * @param eurobaseDatabaseCode
 	 * @param path
-	 * @param unzip
+	 * @param unzip If true, the file is uncompressed on the fly while downloading, and only the TSV file is written. Otherwise, only the compressed file is written.
 	 */
 	public static void getDataBulkDownload(String eurobaseDatabaseCode, String path, boolean unzip){
 		if(!new File(path).exists()) new File(path).mkdirs();
-		String dFilePath = path + File.separator + eurobaseDatabaseCode + eurobaseBulkURLSuf;
-		IOUtil.downloadFile(eurobaseBulkURLBase + eurobaseDatabaseCode + eurobaseBulkURLSuf, dFilePath);		
 		if(unzip){
-			CompressUtil.unGZIP(dFilePath, path + File.separator + eurobaseDatabaseCode+".tsv");
-			new File(dFilePath).delete();
-		}
+			try {
+				CompressUtil.unGZIP(new URL(getBulkURL(eurobaseDatabaseCode)).openStream(), path + File.separator + eurobaseDatabaseCode+".tsv");
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		} else
+			IOUtil.downloadFile(getBulkURL(eurobaseDatabaseCode), path + File.separator + eurobaseDatabaseCode + eurobaseBulkURLSuf);
 	}
 	@SuppressWarnings("javadoc")
 	public static void getDataBulkDownload(String eurobaseDatabaseCode){ getDataBulkDownload(eurobaseDatabaseCode,""); }
@@ -108,15 +132,37 @@ public class EurobaseIO {
 
 
 	/**
+	 * Load a database from its bulk download file.
+	 * The compressed stream is uncompressed and parsed on the fly: no file is written.
+	 * 
+	 * @param eurobaseDatabaseCode
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube getDataBulk(String eurobaseDatabaseCode, Criteria ssc){ return getDataBulk(eurobaseDatabaseCode, ssc, null); }
+
+	/**
+	 * Load a database from its bulk download file.
+	 * The compressed stream is uncompressed and parsed on the fly. The compressed file can be kept on disk at the same time.
+	 * 
 	 * @param eurobaseDatabaseCode
 	 * @param ssc
+	 * @param gzipFilePath The path of the compressed file to keep, or null. If the loading fails, the file is deleted.
 	 * @return
+	 * @throws UncheckedIOException if the file cannot be downloaded, parsed or kept.
 	 */
-	public static StatsHypercube getDataBulk(String eurobaseDatabaseCode, Criteria ssc){
-		getDataBulkDownload(eurobaseDatabaseCode,"");
-		StatsHypercube hc = EurostatTSV.load(File.separator + eurobaseDatabaseCode + ".tsv", ssc);
-		new File(File.separator + eurobaseDatabaseCode + ".tsv").delete();
-		return hc;
+	public static StatsHypercube getDataBulk(String eurobaseDatabaseCode, Criteria ssc, String gzipFilePath){
+		try (InputStream in = new URL(getBulkURL(eurobaseDatabaseCode)).openStream()) {
+			if(gzipFilePath == null) return EurostatTSV.readGZIP(in, ssc);
+			try (OutputStream copy = new FileOutputStream(gzipFilePath); InputStream tee = new DrainingTeeInputStream(in, copy)) {
+				return EurostatTSV.readGZIP(tee, ssc);
+			} catch (IOException e) {
+				new File(gzipFilePath).delete();
+				throw e;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not load bulk data for " + eurobaseDatabaseCode, e);
+		}
 	}
 
 	/**
@@ -125,6 +171,26 @@ public class EurobaseIO {
 	 */
 	public static StatsHypercube getDataBulk(String eurobaseDatabaseCode){ return getDataBulk(eurobaseDatabaseCode, null); }
 
+	/**
+	 * A tee input stream which copies the rest of the input when it is closed, so that the copy is complete.
+	 */
+	private static class DrainingTeeInputStream extends TeeInputStream {
+		private boolean closed = false;
+
+		DrainingTeeInputStream(InputStream in, OutputStream copy) { super(in, copy, false); }
+
+		@Override
+		public void close() throws IOException {
+			if(this.closed) return;
+			this.closed = true;
+			try {
+				IOUtils.consume(this);
+			} finally {
+				super.close();
+			}
+		}
+	}
+
 
 
 	/**
@@ -173,7 +239,15 @@ public class EurobaseIO {
 	 * @param dataFolderPath The TSV file folder
 	 * @param databaseCodes The database codes to download/update
 	 */
-	public static void update(String dataFolderPath, String... databaseCodes){
+	public static void update(String dataFolderPath, String... databaseCodes){ update(dataFolderPath, false, databaseCodes); }
+
+	/**
+	 * Update TSV files located into a folder based on the last update date and newly published data
+	 * @param dataFolderPath The TSV file folder
+	 * @param keepCompressed If true, only the compressed files are stored (see {@link EurostatTSV#loadGZIP(String, Criteria)}). Otherwise, the files are uncompressed on the fly while downloading.
+	 * @param databaseCodes The database codes to download/update
+	 */
+	public static void update(String dataFolderPath, boolean keepCompressed, String... databaseCodes){
 		try {
 			if(!new File(dataFolderPath).exists()) new File(dataFolderPath).mkdirs();
 
@@ -202,15 +276,13 @@ public class EurobaseIO {
 				else System.out.print(Util.df.format(newUpdate));
 
 				if(lastUpdate == null || newUpdate.after(lastUpdate)){
-					System.out.print(" download...");
-					String tsvgz = dataFolderPath + indic + ".tsv.gz";
-					IOUtil.downloadFile(baseUrl2 + indic + ".tsv.gz", tsvgz);
-					System.out.print(" Done.");
-
-					System.out.print(" Uncompress... ");
-					String tsv = dataFolderPath + indic + ".tsv";
-					CompressUtil.unGZIP(tsvgz, tsv);
-					new File(tsvgz).delete();
+					if(keepCompressed) {
+						System.out.print(" download...");
+						IOUtil.downloadFile(baseUrl2 + indic + ".tsv.gz", dataFolderPath + indic + ".tsv.gz");
+					} else {
+						System.out.print(" download and uncompress...");
+						CompressUtil.unGZIP(new URL(baseUrl2 + indic + ".tsv.gz").openStream(), dataFolderPath + indic + ".tsv");
+					}
 					System.out.print(" Done.");
 
 					System.out.print(" Update information file.");
@@ -2,11 +2,21 @@ package eu.europa.ec.eurostat.java4eurostat.io;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.util.ArrayList;
-import java.util.StringTokenizer;
+import java.util.Arrays;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
 import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
 import eu.europa.ec.eurostat.java4eurostat.base.Flag;
 import eu.europa.ec.eurostat.java4eurostat.base.Stat;
@@ -26,97 +36,370 @@ public class EurostatTSV {
 	 * @param ssc
 	 * @return
 	 */
-	@SuppressWarnings("resource")
 	public static StatsHypercube load(String inputFilePath, Criteria ssc){
-		String sep="\t";
-		BufferedReader br = null;
+		try {
+			return load(new FileReader(new File(inputFilePath)), ssc);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new StatsHypercube();
+		}
+	}
+
+	/**
+	 * Load a GZIP compressed TSV file, without uncompressing it on disk.
+	 * 
+	 * @param inputGZIPFilePath
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube loadGZIP(String inputGZIPFilePath, Criteria ssc){
+		try {
+			return loadGZIP(new FileInputStream(inputGZIPFilePath), ssc);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new StatsHypercube();
+		}
+	}
+
+	/**
+	 * Load GZIP compressed TSV data from a stream, for example from a file or an URL.
+	 * The stream is uncompressed and parsed on the fly. It is closed.
+	 * 
+	 * @param inGZIP
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube loadGZIP(InputStream inGZIP, Criteria ssc){
+		try {
+			return readGZIP(inGZIP, ssc);
+		} catch (IOException e) {
+			e.printStackTrace();
+			try { inGZIP.close(); } catch (IOException e1) { e1.printStackTrace(); }
+			return new StatsHypercube();
+		}
+	}
+
+	/**
+	 * Same as {@link #loadGZIP(InputStream, Criteria)}, but the reading errors are thrown.
+	 * 
+	 * @param inGZIP
+	 * @param ssc
+	 * @return
+	 * @throws IOException
+	 */
+	static StatsHypercube readGZIP(InputStream inGZIP, Criteria ssc) throws IOException {
+		return read(new InputStreamReader(new GZIPInputStream(inGZIP, CompressUtil.BUFFER_SIZE)), ssc);
+	}
+
+	/**
+	 * Load TSV data from a reader, in a single pass.
+	 * 
+	 * The selection criteria is pushed down when possible: The parts of the criteria depending only on the row dimensions
+	 * are evaluated once per row, before parsing any of its cells. The parts depending only on the time are evaluated once per time column.
+	 * The reader is closed.
+	 * 
+	 * @param reader
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube load(Reader reader, Criteria ssc){
 		StatsHypercube sh = new StatsHypercube();
-		ArrayList<String> dimLabelsL = new ArrayList<>();
 		try {
-			//read dimensions
-			br = new BufferedReader(new FileReader(new File(inputFilePath)));
+			read(reader, ssc, sh);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return sh;
+	}
+
+	/**
+	 * Same as {@link #load(Reader, Criteria)}, but the reading errors are thrown.
+	 * 
+	 * @param reader
+	 * @param ssc
+	 * @return
+	 * @throws IOException
+	 */
+	static StatsHypercube read(Reader reader, Criteria ssc) throws IOException {
+		StatsHypercube sh = new StatsHypercube();
+		read(reader, ssc, sh);
+		return sh;
+	}
 
-			//read first line
+	private static void read(Reader reader, Criteria ssc, StatsHypercube sh) throws IOException {
+		try (BufferedReader br = reader instanceof BufferedReader ? (BufferedReader)reader : new BufferedReader(reader)) {
+			//read header
 			String line = br.readLine();
-			StringTokenizer st = new StringTokenizer(line,sep);
+			if(line == null) return;
+			Header h = new Header(line, ssc);
+			sh.dimLabels.addAll(Arrays.asList(h.getAllDimLabels()));
+
+			//read rows
+			RowParser rp = new RowParser(h);
+			while ((line = br.readLine()) != null) rp.parse(line, sh.stats::add);
+		}
+	}
+
+	/**
+	 * Load a TSV file in parallel, using all available processors.
+	 * See {@link #loadParallel(String, Criteria, int)}.
+	 * 
+	 * @param inputFilePath
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube loadParallel(String inputFilePath, Criteria ssc){ return loadParallel(inputFilePath, ssc, Runtime.getRuntime().availableProcessors()); }
+
+	/**
+	 * Load a TSV file in parallel.
+	 * The file is split into chunks of lines, which are parsed on several threads.
+	 * The selection criteria is pushed down as with {@link #load(Reader, Criteria)}. It is shared by the threads, and must be thread safe.
+	 * 
+	 * @param inputFilePath
+	 * @param ssc
+	 * @param parallelism The number of threads.
+	 * @return A columnar hypercube.
+	 */
+	public static StatsHypercube loadParallel(String inputFilePath, Criteria ssc, int parallelism){
+		Header h;
+		try (BufferedReader br = new BufferedReader(new FileReader(new File(inputFilePath)))) {
+			String line = br.readLine();
+			if(line == null) return new StatsHypercube();
+			h = new Header(line, ssc);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new StatsHypercube();
+		}
+		try {
+			long dataStart = ParallelLoader.getNextLineStart(inputFilePath, 0);
+			return ParallelLoader.load(inputFilePath, dataStart, parallelism, () -> {
+				RowParser rp = new RowParser(h);
+				return (line, chunk) -> rp.parse(line, chunk::addStat);
+			}, h.getAllDimLabels());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return new StatsHypercube();
+		}
+	}
+
+	/**
+	 * A TSV file header, with the criteria parts pushed down.
+	 */
+	private static class Header {
+		String[] dimLabels;
+		String[] times;
+		PushedDownCriteria pdc;
+		boolean[] keepTime;
+
+		Header(String line, Criteria ssc) {
+			int sepIndex = line.indexOf('\t');
+			String dimHeader = sepIndex<0 ? line : line.substring(0, sepIndex);
+			ArrayList<String> dimLabelsL = split(dimHeader, ',');
+			int nbDims = dimLabelsL.size();
+			dimLabelsL.set(nbDims-1, dimLabelsL.get(nbDims-1).replace("\\time", ""));
+			this.dimLabels = dimLabelsL.toArray(new String[nbDims]);
+
+			//read times
+			ArrayList<String> timesL = sepIndex<0 ? new ArrayList<>() : split(line.substring(sepIndex+1), '\t');
+			this.times = new String[timesL.size()];
+			for(int i=0; i<this.times.length; i++) this.times[i] = timesL.get(i).replace(" ", "");
+
+			//split the criteria into row, time and cell criteria
+			this.pdc = new PushedDownCriteria(ssc, dimLabelsL);
+
+			//times to keep
+			this.keepTime = new boolean[this.times.length];
+			Stat timeStat = new Stat();
+			for(int i=0; i<this.times.length; i++) {
+				timeStat.dims.put("time", this.times[i]);
+				this.keepTime[i] = this.pdc.keepTime(timeStat);
+			}
+		}
+
+		String[] getAllDimLabels() {
+			String[] out = Arrays.copyOf(this.dimLabels, this.dimLabels.length+1);
+			out[this.dimLabels.length] = "time";
+			return out;
+		}
+	}
+
+	/**
+	 * A parser of the TSV rows. It is not thread safe.
+	 */
+	private static class RowParser {
+		private Header h;
+		private Stat rowStat = new Stat();
+		private String[] dimValues;
+
+		RowParser(Header h) {
+			this.h = h;
+			this.dimValues = new String[h.dimLabels.length];
+		}
+
+		void parse(String line, Consumer<Stat> out) {
+			if(line.isEmpty()) return;
+			String[] dimLabels = this.h.dimLabels;
+			int nbDims = dimLabels.length;
+
+			//read row dimension values
+			int end = line.indexOf('\t');
+			if(end < 0) end = line.length();
+			int start = 0;
+			for(int k=0; k<nbDims; k++) {
+				int e = k==nbDims-1 ? end : line.indexOf(',', start);
+				if(e<0 || e>end) e = end;
+				this.dimValues[k] = start<=e ? line.substring(start, e) : "";
+				start = e+1;
+			}
+
+			//filter row
+			if(this.h.pdc.row != null) {
+				for(int k=0; k<nbDims; k++) this.rowStat.dims.put(dimLabels[k], this.dimValues[k]);
+				if(!this.h.pdc.row.keep(this.rowStat)) return;
+			}
+
+			//read cells
+			int timeIndex = -1;
+			while(end < line.length()) {
+				start = end+1;
+				end = line.indexOf('\t', start);
+				if(end < 0) end = line.length();
+				timeIndex++;
+				if(timeIndex >= this.h.times.length) break;
+				if(!this.h.keepTime[timeIndex]) continue;
+
+				Stat s = parseCell(line, start, end);
+				if(s == null) continue;
+
+				//dims
+				for(int k=0; k<nbDims; k++) s.dims.put(dimLabels[k], this.dimValues[k]);
+				s.dims.put("time", this.h.times[timeIndex]);
+
+				if(this.h.pdc.cell != null && !this.h.pdc.cell.keep(s)) continue;
 
-			//read dim names
-			StringTokenizer stDims = new StringTokenizer(st.nextToken(),",");
-			while(stDims.hasMoreTokens()){
-				dimLabelsL.add( stDims.nextToken().replace("\\time", "") );
+				out.accept(s);
 			}
-			dimLabelsL.add("time");
-			sh.dimLabels.addAll(dimLabelsL);
-			br.close();
-
-
-
-			//read the files
-			br = new BufferedReader(new FileReader(new File(inputFilePath)));
-
-			//read the years
-			line = br.readLine();
-			st = new StringTokenizer(line,sep);
-			st.nextToken();
-			String[] times=new String[st.countTokens()];
-			int i=0;
-			while(st.hasMoreTokens())
-				times[i++] = st.nextToken().replace(" ", "");
-
-			while ((line = br.readLine()) != null) {
-				st = new StringTokenizer(line,sep);
-
-				//read dims
-				String lbl = st.nextToken();
-
-				int timeIndex=-1;
-				while(st.hasMoreTokens()){
-					timeIndex++;
-					//TODO better manage flags
-					String val_ = st.nextToken().replace(" ", "");
-					if(val_.contains(":")) continue;
-
-					Stat s = new Stat();
-
-					//flags
-					char[] flagCodes = val_.replaceAll("\\d","").replace(".", "").replace("-", "").toCharArray();
-					for(int k=0; k<flagCodes.length; k++){
-						char fc = flagCodes[k];
-						Flag.FlagType ft = Flag.code.get(""+fc);
-						if(ft == null){
-							System.err.println("Unknown flag: "+fc);
-							continue;
-						}
-						s.addFlag(ft);
-					}
-
-					//value
-					s.value = Double.parseDouble( val_.replaceAll("[A-Za-z]", "") );
-
-					//dims
-					stDims = new StringTokenizer(lbl,","); int dimIndex=0;
-					while(stDims.hasMoreTokens()){
-						String dimLabel = dimLabelsL.get(dimIndex++);
-						String dimValue = stDims.nextToken();
-						s.dims.put(dimLabel, dimValue);
-					}
-					//year
-					s.dims.put("time", times[timeIndex]);
-
-					if(ssc!=null && !ssc.keep(s)) continue;
-
-					sh.stats.add(s);
+		}
+	}
+
+	/**
+	 * Split a string, keeping empty tokens.
+	 */
+	private static ArrayList<String> split(String str, char sep) {
+		ArrayList<String> out = new ArrayList<>();
+		int start = 0, end;
+		while((end = str.indexOf(sep, start)) >= 0) {
+			out.add(str.substring(start, end));
+			start = end+1;
+		}
+		out.add(str.substring(start));
+		return out;
+	}
+
+	/**
+	 * Parse a cell such as "1234.5 ep".
+	 * 
+	 * @param line
+	 * @param start
+	 * @param end
+	 * @return The stat, with its value and flags, or null if the cell has no value.
+	 */
+	static Stat parseCell(String line, int start, int end) {
+		//scan the cell once: numerical characters form the value, letters are flags
+		long mantissa = 0;
+		int nbDigits = 0, nbDecimals = 0;
+		boolean negative = false, decimal = false, hasNumber = false, fastPath = true;
+		String flags = null;
+		for(int i=start; i<end; i++) {
+			char c = line.charAt(i);
+			if(c >= '0' && c <= '9') {
+				hasNumber = true;
+				if(mantissa == 0 && c == '0') { if(decimal) nbDecimals++; continue; }
+				if(++nbDigits > 15) fastPath = false;
+				else { mantissa = 10*mantissa + (c-'0'); if(decimal) nbDecimals++; }
+			}
+			else if(c == '.') { if(decimal) fastPath = false; decimal = true; }
+			else if(c == '-') { if(hasNumber || negative) fastPath = false; negative = true; }
+			else if(c == ' ') continue;
+			else if(c == ':') return null;
+			else flags = flags == null ? String.valueOf(c) : flags + c;
+		}
+		if(!hasNumber) return null;
+
+		Stat s = new Stat();
+
+		//value
+		if(fastPath && nbDecimals <= 22) {
+			//exact: the mantissa and the power of ten are both exactly represented as doubles
+			s.value = mantissa / POW10[nbDecimals];
+			if(negative) s.value = -s.value;
+		} else {
+			StringBuilder sb = new StringBuilder(end-start);
+			for(int i=start; i<end; i++) {
+				char c = line.charAt(i);
+				if((c >= '0' && c <= '9') || c == '.' || c == '-') sb.append(c);
+			}
+			try { s.value = Double.parseDouble(sb.toString()); }
+			catch (@SuppressWarnings("unused") NumberFormatException e) {
+				System.err.println("Could not parse value: "+line.substring(start, end));
+				return null;
+			}
+		}
+
+		//flags
+		if(flags != null)
+			for(int k=0; k<flags.length(); k++){
+				char fc = flags.charAt(k);
+				Flag.FlagType ft = fc < 128 ? FLAGS[fc] : null;
+				if(ft == null){
+					System.err.println("Unknown flag: "+fc);
+					continue;
 				}
+				s.addFlag(ft);
 			}
 
-			br.close();
-			br = null;
-		} catch (IOException e) {
-			e.printStackTrace();
-		} finally {
-			try { if (br != null) br.close(); } catch (Exception e) { e.printStackTrace(); }
+		return s;
+	}
+
+	private static final double[] POW10 = new double[23];
+	private static final Flag.FlagType[] FLAGS = new Flag.FlagType[128];
+	static {
+		POW10[0] = 1;
+		for(int i=1; i<POW10.length; i++) POW10[i] = 10 * POW10[i-1];
+		for(Entry<String, Flag.FlagType> e : Flag.code.entrySet())
+			if(e.getKey().length() == 1 && e.getKey().charAt(0) < 128) FLAGS[e.getKey().charAt(0)] = e.getValue();
+	}
+
+	/**
+	 * A selection criteria split into the parts which can be evaluated on the row dimensions only,
+	 * on the time only, and on the complete stats.
+	 */
+	private static class PushedDownCriteria {
+		Criteria row = null, time = null, cell = null;
+
+		PushedDownCriteria(Criteria ssc, ArrayList<String> rowDimLabels) {
+			if(ssc == null) return;
+			ArrayList<Criteria> rows = new ArrayList<>(), times = new ArrayList<>(), cells = new ArrayList<>();
+			Criteria[] cris = ssc instanceof And ? ((And)ssc).getCriteria() : new Criteria[] { ssc };
+			for(Criteria cri : cris) {
+				Set<String> labels = Selection.getDimLabels(cri);
+				if(labels == null) cells.add(cri);
+				else if(rowDimLabels.containsAll(labels)) rows.add(cri);
+				else if(labels.size() == 1 && labels.contains("time")) times.add(cri);
+				else cells.add(cri);
+			}
+			this.row = combine(rows);
+			this.time = combine(times);
+			this.cell = combine(cells);
+		}
+
+		boolean keepTime(Stat s) { return this.time == null || this.time.keep(s); }
+
+		private static Criteria combine(ArrayList<Criteria> cris) {
+			if(cris.size() == 0) return null;
+			if(cris.size() == 1) return cris.get(0);
+			return new And(cris.toArray(new Criteria[cris.size()]));
 		}
-		return sh;
 	}
 
 	/*
@@ -0,0 +1,255 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.DimValueDictionary;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+
+/**
+ * A binary snapshot format for hypercubes, to reload them without parsing.
+ *
+ * A snapshot stores the columns of a {@link ColumnarStatsHypercube}: The dimension value dictionaries,
+ * the code columns, the value column and the flag column. The columns are stored as little endian blocks,
+ * which are loaded with memory mapping. Each block can be compressed.
+ *
+ * File structure:
+ * - magic number, version, header length
+ * - header: dimension labels, column labels and dictionaries, flag dictionary, number of stats, block descriptions
+ * - blocks: code columns, value column, flag column
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class HypercubeSnapshot {
+	private final static Logger LOGGER = LogManager.getLogger(HypercubeSnapshot.class.getName());
+
+	private static final int MAGIC = 0x4A344553; //J4ES
+	private static final int VERSION = 1;
+
+	private static final byte RAW = 0, DEFLATE = 1;
+
+	/**
+	 * Save an hypercube as a snapshot, without compression.
+	 *
+	 * @param hc
+	 * @param outFile
+	 */
+	public static void save(StatsHypercube hc, String outFile) { save(hc, outFile, false); }
+
+	/**
+	 * Save an hypercube as a snapshot.
+	 *
+	 * @param hc
+	 * @param outFile
+	 * @param compress If true, the columns are compressed when this reduces their size.
+	 */
+	public static void save(StatsHypercube hc, String outFile, boolean compress) {
+		ColumnarStatsHypercube chc = hc instanceof ColumnarStatsHypercube ? (ColumnarStatsHypercube)hc : new ColumnarStatsHypercube(hc);
+		int n = chc.size();
+		String[] columnLabels = chc.getColumnLabels();
+		byte[] flags = chc.getFlagCodes();
+
+		//build blocks
+		ArrayList<byte[]> raws = new ArrayList<>();
+		for(String columnLabel : columnLabels) {
+			ByteBuffer bb = allocate(4 * n);
+			bb.asIntBuffer().put(chc.getCodes(columnLabel), 0, n);
+			raws.add(bb.array());
+		}
+		ByteBuffer bb = allocate(8 * n);
+		bb.asDoubleBuffer().put(chc.getValues(), 0, n);
+		raws.add(bb.array());
+		if(flags != null) {
+			byte[] fl = new byte[n];
+			System.arraycopy(flags, 0, fl, 0, n);
+			raws.add(fl);
+		}
+		byte[][] blocks = new byte[raws.size()][];
+		byte[] encodings = new byte[raws.size()];
+		for(int b=0; b<blocks.length; b++) {
+			blocks[b] = raws.get(b);
+			encodings[b] = RAW;
+			if(!compress) continue;
+			byte[] compressed = deflate(blocks[b]);
+			if(compressed.length >= blocks[b].length) continue;
+			blocks[b] = compressed;
+			encodings[b] = DEFLATE;
+		}
+
+		try (FileChannel ch = FileChannel.open(FileUtil.getFile(outFile, true, true).toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			//header
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(baos);
+			out.writeInt(chc.dimLabels.size());
+			for(String dimLabel : chc.dimLabels) out.writeUTF(dimLabel);
+			out.writeInt(columnLabels.length);
+			for(String columnLabel : columnLabels) {
+				out.writeUTF(columnLabel);
+				writeDictionary(out, chc.getDictionary(columnLabel));
+			}
+			out.writeBoolean(flags != null);
+			if(flags != null) writeDictionary(out, chc.getFlagDictionary());
+			out.writeInt(n);
+			out.writeInt(blocks.length);
+			for(int b=0; b<blocks.length; b++) {
+				out.writeByte(encodings[b]);
+				out.writeInt(raws.get(b).length);
+				out.writeInt(blocks[b].length);
+			}
+			out.close();
+			byte[] header = baos.toByteArray();
+
+			ByteBuffer start = ByteBuffer.allocate(12);
+			start.putInt(MAGIC).putInt(VERSION).putInt(header.length).flip();
+			writeFully(ch, start);
+			writeFully(ch, ByteBuffer.wrap(header));
+			for(byte[] block : blocks) writeFully(ch, ByteBuffer.wrap(block));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Load a snapshot.
+	 *
+	 * @param inFile
+	 * @return The hypercube, or null if the file could not be read.
+	 */
+	public static ColumnarStatsHypercube load(String inFile) {
+		try (FileChannel ch = FileChannel.open(new File(inFile).toPath(), StandardOpenOption.READ)) {
+			MappedByteBuffer start = ch.map(MapMode.READ_ONLY, 0, 12);
+			if(start.getInt() != MAGIC) {
+				LOGGER.error("Not an hypercube snapshot: " + inFile);
+				return null;
+			}
+			int version = start.getInt();
+			if(version != VERSION) {
+				LOGGER.error("Unsupported hypercube snapshot version " + version + ": " + inFile);
+				return null;
+			}
+			int headerLength = start.getInt();
+
+			//header
+			byte[] header = new byte[headerLength];
+			ch.map(MapMode.READ_ONLY, 12, headerLength).get(header);
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(header));
+			String[] dimLabels = new String[in.readInt()];
+			for(int k=0; k<dimLabels.length; k++) dimLabels[k] = in.readUTF();
+			int nbCols = in.readInt();
+			String[] columnLabels = new String[nbCols];
+			DimValueDictionary[] dictionaries = new DimValueDictionary[nbCols];
+			for(int col=0; col<nbCols; col++) {
+				columnLabels[col] = in.readUTF();
+				dictionaries[col] = readDictionary(in);
+			}
+			DimValueDictionary flagDictionary = in.readBoolean() ? readDictionary(in) : null;
+			int n = in.readInt();
+			int nbBlocks = in.readInt();
+			byte[] encodings = new byte[nbBlocks];
+			int[] rawLengths = new int[nbBlocks], lengths = new int[nbBlocks];
+			for(int b=0; b<nbBlocks; b++) {
+				encodings[b] = in.readByte();
+				rawLengths[b] = in.readInt();
+				lengths[b] = in.readInt();
+			}
+
+			//blocks
+			long pos = 12 + headerLength;
+			ByteBuffer[] blocks = new ByteBuffer[nbBlocks];
+			for(int b=0; b<nbBlocks; b++) {
+				ByteBuffer block = ch.map(MapMode.READ_ONLY, pos, lengths[b]);
+				if(encodings[b] == DEFLATE) block = ByteBuffer.wrap(inflate(block, rawLengths[b]));
+				blocks[b] = block.order(ByteOrder.LITTLE_ENDIAN);
+				pos += lengths[b];
+			}
+			int[][] codes = new int[nbCols][n];
+			for(int col=0; col<nbCols; col++) blocks[col].asIntBuffer().get(codes[col]);
+			double[] values = new double[n];
+			blocks[nbCols].asDoubleBuffer().get(values);
+			byte[] flags = null;
+			if(flagDictionary != null) {
+				flags = new byte[n];
+				blocks[nbCols+1].get(flags);
+			}
+
+			return new ColumnarStatsHypercube(dimLabels, columnLabels, dictionaries, codes, values, flags, flagDictionary, n);
+		} catch (IOException | DataFormatException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+
+
+	private static ByteBuffer allocate(int length) { return ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN); }
+
+	private static void writeFully(FileChannel ch, ByteBuffer bb) throws IOException {
+		while(bb.hasRemaining()) ch.write(bb);
+	}
+
+	private static void writeDictionary(DataOutputStream out, DimValueDictionary dict) throws IOException {
+		out.writeInt(dict.size());
+		for(int code=0; code<dict.size(); code++) out.writeUTF(dict.getValue(code));
+	}
+
+	private static DimValueDictionary readDictionary(DataInputStream in) throws IOException {
+		DimValueDictionary dict = new DimValueDictionary();
+		int nb = in.readInt();
+		for(int code=0; code<nb; code++) dict.encode(in.readUTF());
+		return dict;
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(data);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 16);
+		byte[] buffer = new byte[CompressUtil.BUFFER_SIZE];
+		while(!deflater.finished()) {
+			int len = deflater.deflate(buffer);
+			out.write(buffer, 0, len);
+		}
+		deflater.end();
+		return out.toByteArray();
+	}
+
+	private static byte[] inflate(ByteBuffer data, int rawLength) throws DataFormatException {
+		byte[] in = new byte[data.remaining()];
+		data.get(in);
+		Inflater inflater = new Inflater();
+		inflater.setInput(in);
+		byte[] out = new byte[rawLength];
+		int len = 0;
+		while(len < rawLength && !inflater.finished()) {
+			int n = inflater.inflate(out, len, rawLength - len);
+			if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+			len += n;
+		}
+		inflater.end();
+		if(len != rawLength) throw new DataFormatException("Unexpected length of uncompressed block: " + len + " instead of " + rawLength);
+		return out;
+	}
+
+}
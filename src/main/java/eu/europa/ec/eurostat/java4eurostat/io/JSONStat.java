@@ -3,12 +3,23 @@
  */
 package eu.europa.ec.eurostat.java4eurostat.io;
 
-import java.util.HashMap;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
 import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
 import eu.europa.ec.eurostat.java4eurostat.base.Stat;
 import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
@@ -33,81 +44,282 @@ public class JSONStat {
 	public static StatsHypercube load(String data, boolean statusAsEurostatFlags) { return load(data, statusAsEurostatFlags, null); }
 
 	/**
+	 * Load JSON-stat data.
+	 * See {@link #load(Reader, boolean, Criteria)}.
+	 *
 	 * @param data
 	 * @param statusAsEurostatFlags
 	 * @param ssc
 	 * @return
 	 */
 	public static StatsHypercube load(String data, boolean statusAsEurostatFlags, Criteria ssc) {
-		//System.out.println(data);
+		return load(new StringReader(data), statusAsEurostatFlags, ssc);
+	}
+
+	/**
+	 * Load JSON-stat data from a stream. The stream is not closed.
+	 * See {@link #load(Reader, boolean, Criteria)}.
+	 *
+	 * @param in
+	 * @param statusAsEurostatFlags
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube load(InputStream in, boolean statusAsEurostatFlags, Criteria ssc) {
+		return load(new InputStreamReader(in, StandardCharsets.UTF_8), statusAsEurostatFlags, ssc);
+	}
+
+	/**
+	 * Load JSON-stat data from a reader. The reader is not closed.
+	 *
+	 * The data is read token by token: The values and status are read directly into columns indexed by position,
+	 * without building the JSON tree of the whole document. They can be given either as objects whose keys are the positions,
+	 * or as arrays. The status can also be a single string for all values.
+	 *
+	 * The criteria which depend on a single dimension are pushed down: They are evaluated once on each dimension value,
+	 * and only the sub-cube of the dimension values to keep is read. The other criteria are evaluated on each stat.
+	 *
+	 * @param reader
+	 * @param statusAsEurostatFlags
+	 * @param ssc
+	 * @return
+	 */
+	public static StatsHypercube load(Reader reader, boolean statusAsEurostatFlags, Criteria ssc) {
+		//read the document members, in any order
+		JSONArray ids = null, sizesA = null;
+		JSONObject dimensions = null;
+		Column values = new Column(false), status = statusAsEurostatFlags ? new Column(true) : null;
+		JSONTokener t = new JSONTokener(reader);
+		if(t.nextClean() != '{') throw t.syntaxError("A JSON object must begin with '{'");
+		if(t.nextClean() != '}') {
+			t.back();
+			while(true) {
+				String key = t.nextValue().toString();
+				if(t.nextClean() != ':') throw t.syntaxError("Expected a ':' after a key");
+				if("id".equals(key)) ids = (JSONArray) t.nextValue();
+				else if("size".equals(key)) sizesA = (JSONArray) t.nextValue();
+				else if("dimension".equals(key)) dimensions = (JSONObject) t.nextValue();
+				else if("value".equals(key)) values.read(t);
+				else if("status".equals(key) && status != null) status.read(t);
+				else t.nextValue();
+				char c = t.nextClean();
+				if(c == '}') break;
+				if(c != ',') throw t.syntaxError("Expected a ',' or '}'");
+			}
+		}
+		if(ids == null || sizesA == null || dimensions == null) throw new JSONException("JSON-stat id, size and dimension expected");
+		values.sort();
+		if(status != null) status.sort();
+
+		//read dimension labels and sizes
 		StatsHypercube hc = new StatsHypercube();
-		JSONObject obj = new JSONObject(data);
-
-		//read dimension labels
-		JSONObject dimensions = obj.getJSONObject("dimension");
-		for(Object o : dimensions.keySet()) hc.dimLabels.add(o.toString());
-
-		//read dimension sizes
-		JSONArray sizes = obj.getJSONArray("size");
-
-		//read dimension values
-		HashMap<String,JSONObject> dimValues = new HashMap<>();
-		for(int coordI=0; coordI<sizes.length(); coordI++){
-			String dimLabel = obj.getJSONArray("id").getString(coordI);
-			JSONObject ind = dimensions.getJSONObject(dimLabel).getJSONObject("category").getJSONObject("index");
-			ind = invert(ind);
-			dimValues.put(dimLabel, ind);
+		int nbDims = sizesA.length();
+		String[] dimLabels = new String[nbDims];
+		int[] sizes = new int[nbDims];
+		for(int k=0; k<nbDims; k++) {
+			dimLabels[k] = ids.getString(k);
+			sizes[k] = sizesA.getInt(k);
+			hc.dimLabels.add(dimLabels[k]);
 		}
 
-		//compute number of values
-		int nb = 1;
-		for(int i=0; i<sizes.length(); i++) nb = nb*sizes.getInt(i);
-
-		JSONObject values = obj.getJSONObject("value"); //TODO This might be an array
-		JSONObject status = obj.getJSONObject("status"); //TODO This might be a lot of other stuff...
-		for(int i=0; i<nb; i++){
-			Stat s = new Stat();
-
-			//get value. If none, continue.
-			try { s.value = values.getDouble(""+i); }
-			catch (@SuppressWarnings("unused") JSONException e) { continue; }
-
-			//get status/flags
-			if(statusAsEurostatFlags)
-				try { s.addAllFlags(status.getString(""+i)); }
-			catch (@SuppressWarnings("unused") Exception e) { /* Do nothing */ }
-
-			//compute value coordinates in the hypercube
-			int[] coords = new int[sizes.length()];
-			int i_=i, nb_=nb;
-			for(int coordI=0; coordI<coords.length; coordI++){
-				nb_ = nb_ / sizes.getInt(coordI);
-				coords[coordI] = i_;
-				if(nb_>0) coords[coordI] /= nb_;
-				i_ -= coords[coordI] * nb_;
+		//read dimension values, by position
+		String[][] dimValues = new String[nbDims][];
+		for(int k=0; k<nbDims; k++) dimValues[k] = getDimValues(dimensions.getJSONObject(dimLabels[k]).getJSONObject("category"), sizes[k]);
+
+		//split the criteria into the criteria on a single dimension, and the others
+		Criteria[] dimCriteria = new Criteria[nbDims];
+		Criteria cell = null;
+		if(ssc != null) {
+			ArrayList<Criteria> cells = new ArrayList<>();
+			List<String> dimLabelsL = Arrays.asList(dimLabels);
+			for(Criteria cri : ssc instanceof And ? ((And)ssc).getCriteria() : new Criteria[] { ssc }) {
+				Set<String> labels = Selection.getDimLabels(cri);
+				int k = labels != null && labels.size() == 1 ? dimLabelsL.indexOf(labels.iterator().next()) : -1;
+				if(k < 0) cells.add(cri);
+				else dimCriteria[k] = dimCriteria[k] == null ? cri : new And(dimCriteria[k], cri);
 			}
+			if(cells.size() == 1) cell = cells.get(0);
+			else if(cells.size() > 1) cell = new And(cells.toArray(new Criteria[cells.size()]));
+		}
 
-			//assign dimension values depending on coordinates
-			for(int coordI=0; coordI<coords.length; coordI++){
-				String dimLabel = obj.getJSONArray("id").getString(coordI);
-				String dimValue = dimValues.get(dimLabel).getString(""+coords[coordI]);
-				s.dims.put(dimLabel, dimValue);
+		//the coordinates to keep, by dimension
+		int[][] coords = new int[nbDims][];
+		boolean[][] keep = new boolean[nbDims][];
+		long nbSub = 1;
+		Stat dimStat = new Stat();
+		for(int k=0; k<nbDims; k++) {
+			keep[k] = new boolean[sizes[k]];
+			int nb = 0;
+			for(int c=0; c<sizes[k]; c++) {
+				if(dimCriteria[k] != null) {
+					dimStat.dims.clear();
+					dimStat.dims.put(dimLabels[k], dimValues[k][c]);
+					if(!dimCriteria[k].keep(dimStat)) continue;
+				}
+				keep[k][c] = true;
+				nb++;
 			}
+			coords[k] = new int[nb];
+			for(int c=0, j=0; c<sizes[k]; c++) if(keep[k][c]) coords[k][j++] = c;
+			nbSub *= nb;
+		}
+
+		//the position multipliers, by dimension
+		long[] mult = new long[nbDims];
+		long nbAll = 1;
+		for(int k=nbDims-1; k>=0; k--) { mult[k] = nbAll; nbAll *= sizes[k]; }
 
-			if(ssc!=null && !ssc.keep(s)) continue;
+		if(nbSub == 0) return hc;
 
-			hc.stats.add(s);
+		if(nbSub <= values.size) {
+			//iterate through the sub-cube of the coordinates to keep
+			int[] pos = new int[nbDims];
+			while(true) {
+				long i = 0;
+				for(int k=0; k<nbDims; k++) i += coords[k][pos[k]] * mult[k];
+				addStat(hc, i, values, status, pos, coords, dimLabels, dimValues, cell);
+				//next coordinates
+				int k = nbDims-1;
+				while(k >= 0 && ++pos[k] == coords[k].length) pos[k--] = 0;
+				if(k < 0) break;
+			}
+		} else {
+			//iterate through the values, and check their coordinates
+			int[] cs = new int[nbDims];
+			for(int j=0; j<values.size; j++) {
+				long i = values.positions[j];
+				boolean ok = true;
+				for(int k=0; k<nbDims && ok; k++) {
+					cs[k] = (int)(i / mult[k] % sizes[k]);
+					ok = keep[k][cs[k]];
+				}
+				if(ok) addStat(hc, i, values, status, cs, null, dimLabels, dimValues, cell);
+			}
 		}
 		return hc;
 	}
 
-	private static JSONObject invert(JSONObject obj) {
-		JSONObject out = new JSONObject();
-		for(Object key : obj.keySet())
-			out.put(obj.get(key.toString()).toString(), key);
+	/** Add the stat at a position, if it has a value and satisfies the criteria. */
+	private static void addStat(StatsHypercube hc, long i, Column values, Column status, int[] pos, int[][] coords, String[] dimLabels, String[][] dimValues, Criteria cri) {
+		int j = values.indexOf(i);
+		if(j < 0 || Double.isNaN(values.values[j])) return;
+		Stat s = new Stat(values.values[j]);
+		if(status != null) {
+			String st = status.getString(i);
+			if(st != null) s.addAllFlags(st);
+		}
+		for(int k=0; k<dimLabels.length; k++)
+			s.dims.put(dimLabels[k], dimValues[k][coords == null ? pos[k] : coords[k][pos[k]]]);
+		if(cri != null && !cri.keep(s)) return;
+		hc.stats.add(s);
+	}
+
+	/** Read the dimension values, by position, from the category index. */
+	private static String[] getDimValues(JSONObject category, int size) {
+		String[] out = new String[size];
+		Object index = category.opt("index");
+		if(index instanceof JSONArray) {
+			JSONArray a = (JSONArray)index;
+			for(int c=0; c<size && c<a.length(); c++) out[c] = a.getString(c);
+		} else if(index instanceof JSONObject) {
+			JSONObject o = (JSONObject)index;
+			for(Object key : o.keySet()) out[o.getInt(key.toString())] = key.toString();
+		} else if(size == 1 && category.has("label")) {
+			//single category without index
+			out[0] = category.getJSONObject("label").keys().next().toString();
+		}
 		return out;
 	}
 
+	/**
+	 * A column of values or status, indexed by position.
+	 */
+	private static class Column {
+		/** The positions, sorted after {@link #sort()}. */
+		long[] positions = new long[16];
+		double[] values;
+		String[] strings;
+		int size = 0;
+		/** The string for all positions, if given as a single string. */
+		String all = null;
+		private boolean sorted = true;
+
+		Column(boolean strings) {
+			if(strings) this.strings = new String[16]; else this.values = new double[16];
+		}
+
+		/** Read the column, given either as an object whose keys are the positions, an array, or a single string. */
+		void read(JSONTokener t) {
+			char c = t.nextClean();
+			if(c == '{' || c == '[') {
+				boolean array = c == '[';
+				char end = array ? ']' : '}';
+				if(t.nextClean() == end) return;
+				t.back();
+				for(long pos=0; ; pos++) {
+					if(!array) {
+						pos = Long.parseLong(t.nextValue().toString());
+						if(t.nextClean() != ':') throw t.syntaxError("Expected a ':' after a key");
+					}
+					add(pos, t.nextValue());
+					c = t.nextClean();
+					if(c == end) return;
+					if(c != ',') throw t.syntaxError("Expected a ',' or '" + end + "'");
+				}
+			}
+			t.back();
+			Object o = t.nextValue();
+			if(this.strings != null && o instanceof String) this.all = (String)o;
+		}
+
+		private void add(long pos, Object o) {
+			if(o == null || JSONObject.NULL.equals(o)) return;
+			if(this.size == this.positions.length) {
+				this.positions = Arrays.copyOf(this.positions, 2 * this.size);
+				if(this.values != null) this.values = Arrays.copyOf(this.values, 2 * this.size);
+				else this.strings = Arrays.copyOf(this.strings, 2 * this.size);
+			}
+			if(this.size > 0 && pos <= this.positions[this.size-1]) this.sorted = false;
+			this.positions[this.size] = pos;
+			if(this.values != null) this.values[this.size] = toDouble(o);
+			else this.strings[this.size] = o.toString();
+			this.size++;
+		}
+
+		/** Sort the column by position. */
+		void sort() {
+			if(this.sorted) return;
+			long[] positions = Arrays.copyOf(this.positions, this.size);
+			Arrays.sort(positions);
+			double[] values = this.values == null ? null : new double[this.size];
+			String[] strings = this.strings == null ? null : new String[this.size];
+			for(int j=0; j<this.size; j++) {
+				int k = Arrays.binarySearch(positions, this.positions[j]);
+				if(values != null) values[k] = this.values[j]; else strings[k] = this.strings[j];
+			}
+			this.positions = positions;
+			this.values = values;
+			this.strings = strings;
+			this.sorted = true;
+		}
+
+		/** @return The index of a position in the column, or a negative value if there is none. */
+		int indexOf(long pos) { return Arrays.binarySearch(this.positions, 0, this.size, pos); }
+
+		/** @return The string at a position, null if none. */
+		String getString(long pos) {
+			if(this.all != null) return this.all;
+			int j = indexOf(pos);
+			return j < 0 ? null : this.strings[j];
+		}
+
+		private static double toDouble(Object o) {
+			if(o instanceof Number) return ((Number)o).doubleValue();
+			try { return Double.parseDouble(o.toString()); }
+			catch (@SuppressWarnings("unused") NumberFormatException e) { return Double.NaN; }
+		}
+	}
+
 	/*
 	public static void main(String[] args) {
 		//StatsHypercube hc = JSONStat.load( IOUtil.getDataFromURL("http://ec.europa.eu/eurostat/wdds/rest/data/v2.1/json/en/prc_hicp_midx?geo=AT&unit=I15&coicop=CP00&sinceTimePeriod=2016M01") );
@@ -0,0 +1,146 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.io;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Supplier;
+
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+
+/**
+ * Parallel loading of large text files with one record per line.
+ *
+ * The file is split into newline-aligned byte ranges, which are parsed in parallel into columnar hypercubes.
+ * These chunks are then merged into a single hypercube, their dimension value dictionaries being remapped.
+ * The header handling is left to the format specific classes.
+ *
+ * @author julien Gaffuri
+ *
+ */
+class ParallelLoader {
+
+	/** The minimum size of a chunk, in bytes. */
+	static int minChunkSize = 1 << 20;
+
+	/** The number of chunks per thread, to balance the load between threads. */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	/**
+	 * A line parser, adding the stats of a line to a chunk hypercube.
+	 * A parser is created for each chunk: It does not need to be thread safe.
+	 */
+	interface LineParser {
+		/**
+		 * @param line
+		 * @param chunk
+		 */
+		void parse(String line, ColumnarStatsHypercube chunk);
+	}
+
+	/**
+	 * @param inputFilePath
+	 * @param offset
+	 * @return The position of the first byte after the line containing a byte position, or the file size.
+	 * @throws IOException
+	 */
+	static long getNextLineStart(String inputFilePath, long offset) throws IOException {
+		try (FileChannel ch = FileChannel.open(Paths.get(inputFilePath), StandardOpenOption.READ)) {
+			InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(offset)));
+			long pos = offset;
+			int b;
+			while((b = in.read()) >= 0) {
+				pos++;
+				if(b == '\n') break;
+			}
+			return pos;
+		}
+	}
+
+	/**
+	 * Parse the lines of a file in parallel.
+	 *
+	 * @param inputFilePath
+	 * @param dataStart The position of the first byte of the first line to parse, after the header.
+	 * @param parallelism The number of threads.
+	 * @param parsers The line parser factory.
+	 * @param dimLabels The dimension labels of the output hypercube.
+	 * @return
+	 * @throws IllegalStateException if a chunk could not be parsed, or if the loading is interrupted.
+	 */
+	static ColumnarStatsHypercube load(String inputFilePath, long dataStart, int parallelism, Supplier<LineParser> parsers, String... dimLabels) {
+		ColumnarStatsHypercube out = new ColumnarStatsHypercube(dimLabels);
+		ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+		try {
+			//split the file into byte ranges
+			long size = Paths.get(inputFilePath).toFile().length() - dataStart;
+			long nb = Math.max(1, Math.min((long)CHUNKS_PER_THREAD * Math.max(parallelism, 1), size / Math.max(minChunkSize, 1)));
+			ArrayList<ForkJoinTask<ColumnarStatsHypercube>> tasks = new ArrayList<>();
+			for(long k=0; k<nb; k++) {
+				long start = dataStart + size * k / nb, end = dataStart + size * (k+1) / nb;
+				boolean first = k == 0;
+				tasks.add(pool.submit(() -> parseChunk(inputFilePath, start, end, first, parsers.get(), dimLabels)));
+			}
+
+			//merge chunks, in file order
+			for(ForkJoinTask<ColumnarStatsHypercube> task : tasks) out.addAll(task.get());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while loading file in parallel: " + inputFilePath, e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException("Could not load file in parallel: " + inputFilePath, e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+		return out;
+	}
+
+	/**
+	 * Parse the lines starting in a byte range.
+	 */
+	private static ColumnarStatsHypercube parseChunk(String inputFilePath, long start, long end, boolean first, LineParser parser, String... dimLabels) {
+		ColumnarStatsHypercube chunk = new ColumnarStatsHypercube(dimLabels);
+		Charset cs = Charset.defaultCharset();
+		try (FileChannel ch = FileChannel.open(Paths.get(inputFilePath), StandardOpenOption.READ)) {
+			//a line belongs to the chunk containing its first byte: skip the end of the line of the previous chunk
+			long pos = first ? start : start - 1;
+			InputStream in = new BufferedInputStream(Channels.newInputStream(ch.position(pos)), 1 << 16);
+			int b;
+			if(!first) {
+				while((b = in.read()) >= 0) { pos++; if(b == '\n') break; }
+			}
+
+			byte[] buf = new byte[1024];
+			while(pos < end) {
+				//read a line
+				int len = 0;
+				while((b = in.read()) >= 0) {
+					pos++;
+					if(b == '\n') break;
+					if(len == buf.length) buf = Arrays.copyOf(buf, 2*len);
+					buf[len++] = (byte)b;
+				}
+				if(len > 0 && buf[len-1] == '\r') len--;
+				if(len > 0) parser.parse(new String(buf, 0, len, cs), chunk);
+				if(b < 0) break;
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return chunk;
+	}
+
+}
@@ -5,6 +5,7 @@ package eu.europa.ec.eurostat.java4eurostat.util;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
 
 import org.apache.commons.lang.ArrayUtils;
@@ -19,13 +20,59 @@ import org.apache.commons.math3.stat.StatUtils;
  */
 public class StatsUtil {
 
-	private static double[] getQuantiles(double[] vals, int nb) {
-		double[] out = new double[nb];
-		for(int quantile=0; quantile<nb; quantile++)
-			out[quantile] = StatUtils.percentile(vals, 100*(quantile+1)/(nb+1));
+	/**
+	 * Compute the quantiles.
+	 * 
+	 * @param vals
+	 * @param nb
+	 * @return
+	 */
+	public static double[] getQuantiles(double[] vals, int nb) {
+		double[] ps = new double[nb];
+		for(int quantile=0; quantile<nb; quantile++) ps[quantile] = 100*(quantile+1)/(nb+1);
+		return getPercentiles(vals, ps);
+	}
+
+	/**
+	 * Compute several percentiles, with the same estimation as {@link StatUtils#percentile(double[], double)}.
+	 * The values are sorted once for all percentiles. NaN values are ignored.
+	 * 
+	 * @param vals
+	 * @param percentiles The percentiles, in ]0,100].
+	 * @return The percentile values, or NaN if there is no value.
+	 */
+	public static double[] getPercentiles(double[] vals, double... percentiles) {
+		double[] sorted = vals.clone();
+		Arrays.sort(sorted);
+		//NaN values are sorted at the end
+		int n = sorted.length;
+		while(n > 0 && Double.isNaN(sorted[n-1])) n--;
+		double[] out = new double[percentiles.length];
+		for(int i=0; i<percentiles.length; i++) out[i] = getPercentileSorted(sorted, n, percentiles[i]);
 		return out;
 	}
 
+	/**
+	 * Compute a percentile of sorted values, with the same estimation as {@link StatUtils#percentile(double[], double)}.
+	 * 
+	 * @param sorted The sorted values.
+	 * @param n The number of values to consider, at the beginning of the array.
+	 * @param p The percentile, in ]0,100].
+	 * @return The percentile value, or NaN if there is no value.
+	 */
+	public static double getPercentileSorted(double[] sorted, int n, double p) {
+		if(p <= 0 || p > 100) throw new IllegalArgumentException("Percentile should be in ]0,100]: " + p);
+		if(n == 0) return Double.NaN;
+		if(n == 1) return sorted[0];
+		double pos = p * (n + 1) / 100;
+		double fpos = Math.floor(pos);
+		int intPos = (int) fpos;
+		if(pos < 1) return sorted[0];
+		if(pos >= n) return sorted[n-1];
+		double lower = sorted[intPos-1], upper = sorted[intPos];
+		return lower + (pos - fpos) * (upper - lower);
+	}
+
 	/**
 	 * Compute the quantiles.
 	 * 
@@ -50,12 +97,13 @@ public class StatsUtil {
 	 * @param vals
 	 */
 	public static void printStats(double[] vals){
+		double[] ps = getPercentiles(vals, 50, 25, 75);
 		System.out.println("Max = " + StatUtils.max(vals));
 		System.out.println("Min = " + StatUtils.min(vals));
 		System.out.println("Mean = " + StatUtils.mean(vals));
-		System.out.println("Median = " + StatUtils.percentile(vals, 50));
-		System.out.println("Q1 = " + StatUtils.percentile(vals, 25));
-		System.out.println("Q2 = " + StatUtils.percentile(vals, 75));
+		System.out.println("Median = " + ps[0]);
+		System.out.println("Q1 = " + ps[1]);
+		System.out.println("Q2 = " + ps[2]);
 		System.out.println("Std = " + Math.sqrt(StatUtils.variance(vals)));
 		System.out.println("RMS = " + Math.sqrt(StatUtils.sumSq(vals)/vals.length));
 	}
@@ -82,12 +130,13 @@ public class StatsUtil {
 	 * @throws IOException
 	 */
 	public static void writeStats(BufferedWriter bw, double[] vals) throws MathIllegalArgumentException, IOException {
+		double[] ps = getPercentiles(vals, 50, 25, 75);
 		bw.write("Max," + StatUtils.max(vals) + "\n");
 		bw.write("Min," + StatUtils.min(vals) + "\n");
 		bw.write("Mean," + StatUtils.mean(vals) + "\n");
-		bw.write("Median," + StatUtils.percentile(vals, 50) + "\n");
-		bw.write("Q1," + StatUtils.percentile(vals, 25) + "\n");
-		bw.write("Q2," + StatUtils.percentile(vals, 75) + "\n");
+		bw.write("Median," + ps[0] + "\n");
+		bw.write("Q1," + ps[1] + "\n");
+		bw.write("Q2," + ps[2] + "\n");
 		bw.write("Std," + Math.sqrt(StatUtils.variance(vals)) + "\n");
 		bw.write("RMS," + Math.sqrt(StatUtils.sumSq(vals)/vals.length) + "\n");
 	}
@@ -99,8 +148,11 @@ public class StatsUtil {
 	 * @param nb
 	 */
 	private static void printQuantiles(double[] vals, int nb) {
+		double[] ps = new double[nb];
+		for(int quantile=1; quantile<=nb; quantile++) ps[quantile-1] = quantile*100/nb;
+		double[] qs = getPercentiles(vals, ps);
 		for(int quantile=1; quantile<=nb; quantile++)
-			System.out.println("Quantile " + quantile + "/" + nb + ": " + StatUtils.percentile(vals, quantile*100/nb));
+			System.out.println("Quantile " + quantile + "/" + nb + ": " + qs[quantile-1]);
 	}
 
 	/**
@@ -0,0 +1,206 @@
+/**
+ *
+ */
+package eu.europa.ec.eurostat.java4eurostat.util;
+
+import java.util.Arrays;
+
+/**
+ * A t-digest, to estimate quantiles of very large sets of values with a bounded memory.
+ *
+ * The values are summarised by centroids (mean and weight), which are small near the extreme quantiles and larger around the median.
+ * The size of the centroids is bounded by the compression parameter: The number of centroids is of the order of the compression,
+ * and the quantile estimation error decreases with it. Two digests can be merged, for example to combine partial digests computed in parallel.
+ *
+ * This is the merging variant of the t-digest: The values are first added to a buffer, which is sorted and merged
+ * with the centroids when it is full.
+ * See: Ted Dunning, Otmar Ertl, Computing Extremely Accurate Quantiles Using t-Digests.
+ *
+ * @author julien Gaffuri
+ *
+ */
+public class TDigest {
+
+	/** The default compression. */
+	public static final double DEFAULT_COMPRESSION = 100;
+
+	private final double compression;
+
+	/** The centroids, sorted by mean. */
+	private double[] means, weights;
+	private int nbCentroids = 0;
+
+	/** The buffer of the values not yet merged into the centroids. It grows up to a maximum capacity. */
+	private double[] buffer = new double[16];
+	private int nbBuffered = 0;
+	private final int bufferCapacity;
+
+	private double totalWeight = 0;
+	private double min = Double.NaN, max = Double.NaN;
+
+	/**
+	 * Build a t-digest with the default compression.
+	 */
+	public TDigest() { this(DEFAULT_COMPRESSION); }
+
+	/**
+	 * Build a t-digest.
+	 *
+	 * @param compression The compression. The higher, the more accurate and the more memory is used. Typically between 50 and 1000.
+	 */
+	public TDigest(double compression) {
+		if(compression < 10) throw new IllegalArgumentException("Compression should be at least 10: " + compression);
+		this.compression = compression;
+		this.means = new double[16];
+		this.weights = new double[16];
+		this.bufferCapacity = 5 * getCentroidCapacity();
+	}
+
+	/**
+	 * @return The compression.
+	 */
+	public double getCompression() { return this.compression; }
+
+	/**
+	 * @return The number of values added.
+	 */
+	public long size() { return (long)this.totalWeight; }
+
+	/**
+	 * Add a value. NaN values are ignored.
+	 *
+	 * @param value
+	 */
+	public void add(double value) {
+		if(Double.isNaN(value)) return;
+		if(this.nbBuffered == this.buffer.length) {
+			if(this.buffer.length < this.bufferCapacity) this.buffer = Arrays.copyOf(this.buffer, Math.min(2 * this.buffer.length, this.bufferCapacity));
+			else flush();
+		}
+		this.buffer[this.nbBuffered++] = value;
+		this.totalWeight++;
+		if(this.totalWeight == 1 || value < this.min) this.min = value;
+		if(this.totalWeight == 1 || value > this.max) this.max = value;
+	}
+
+	/**
+	 * Add the values of another digest.
+	 *
+	 * @param other
+	 */
+	public void merge(TDigest other) {
+		if(other.totalWeight == 0) return;
+		other.flush();
+		flush();
+		if(this.totalWeight == 0 || other.min < this.min) this.min = other.min;
+		if(this.totalWeight == 0 || other.max > this.max) this.max = other.max;
+		this.totalWeight += other.totalWeight;
+		mergeCentroids(other.means, other.weights, other.nbCentroids);
+	}
+
+	/**
+	 * Estimate a quantile.
+	 *
+	 * @param q The quantile, between 0 and 1.
+	 * @return The estimated value, or NaN if no value was added.
+	 */
+	public double quantile(double q) {
+		if(q < 0 || q > 1) throw new IllegalArgumentException("Quantile should be between 0 and 1: " + q);
+		flush();
+		if(this.nbCentroids == 0) return Double.NaN;
+		if(this.nbCentroids == 1) return this.means[0];
+
+		double index = q * this.totalWeight;
+		if(index <= 0) return this.min;
+		if(index >= this.totalWeight) return this.max;
+
+		//before the center of the first centroid: interpolate from the minimum
+		double c = this.weights[0] / 2;
+		if(index < c) return this.min + (this.means[0] - this.min) * index / c;
+
+		for(int i=0; i<this.nbCentroids-1; i++) {
+			double c_ = c + (this.weights[i] + this.weights[i+1]) / 2;
+			if(index < c_) return this.means[i] + (this.means[i+1] - this.means[i]) * (index - c) / (c_ - c);
+			c = c_;
+		}
+
+		//after the center of the last centroid: interpolate to the maximum
+		double last = this.means[this.nbCentroids-1];
+		return last + (this.max - last) * (index - c) / (this.totalWeight - c);
+	}
+
+	/**
+	 * Estimate several quantiles.
+	 *
+	 * @param qs The quantiles, between 0 and 1.
+	 * @return The estimated values.
+	 */
+	public double[] quantiles(double... qs) {
+		double[] out = new double[qs.length];
+		for(int i=0; i<qs.length; i++) out[i] = quantile(qs[i]);
+		return out;
+	}
+
+	/**
+	 * Merge the buffered values into the centroids.
+	 */
+	private void flush() {
+		if(this.nbBuffered == 0) return;
+		Arrays.sort(this.buffer, 0, this.nbBuffered);
+		int nb = this.nbBuffered;
+		this.nbBuffered = 0;
+		mergeCentroids(this.buffer, null, nb);
+	}
+
+	/**
+	 * Merge sorted centroids into the centroids, and compress the result.
+	 * The total weight is supposed to include the weight of the centroids to merge.
+	 * If the weights are null, the weights of the centroids to merge are 1.
+	 */
+	private void mergeCentroids(double[] means2, double[] weights2, int nb2) {
+		double[] means1 = this.means, weights1 = this.weights;
+		int nb1 = this.nbCentroids;
+		int capacity = Math.max(1, Math.min(nb1 + nb2, getCentroidCapacity()));
+		double[] means = new double[capacity], weights = new double[capacity];
+
+		int i1 = 0, i2 = 0, nb = 0;
+		double wSoFar = 0, wLimit = 0;
+		while(i1 < nb1 || i2 < nb2) {
+			//get next centroid in mean order
+			double m, w;
+			if(i2 >= nb2 || (i1 < nb1 && means1[i1] <= means2[i2])) { m = means1[i1]; w = weights1[i1]; i1++; }
+			else { m = means2[i2]; w = weights2 == null ? 1 : weights2[i2]; i2++; }
+
+			if(nb > 0 && wSoFar + weights[nb-1] + w <= wLimit) {
+				//merge into the current centroid
+				double w_ = weights[nb-1] + w;
+				means[nb-1] += (m - means[nb-1]) * w / w_;
+				weights[nb-1] = w_;
+			} else {
+				//start a new centroid
+				if(nb > 0) wSoFar += weights[nb-1];
+				if(nb == means.length) { means = Arrays.copyOf(means, 2*nb); weights = Arrays.copyOf(weights, 2*nb); }
+				means[nb] = m;
+				weights[nb] = w;
+				nb++;
+				wLimit = this.totalWeight * qLimit(wSoFar / this.totalWeight);
+			}
+		}
+		this.means = means;
+		this.weights = weights;
+		this.nbCentroids = nb;
+	}
+
+	/** The maximum number of centroids, which is of the order of the compression. */
+	private int getCentroidCapacity() { return 2 * (int)Math.ceil(this.compression) + 10; }
+
+	/**
+	 * The scale function k1: A centroid starting at quantile q should not go beyond the quantile returned.
+	 */
+	private double qLimit(double q) {
+		double k = this.compression / (2 * Math.PI) * Math.asin(2 * q - 1);
+		double a = Math.min((k + 1) * 2 * Math.PI / this.compression, Math.PI / 2);
+		return (Math.sin(a) + 1) / 2;
+	}
+
+}
@@ -0,0 +1,98 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.GroupBy.Aggregate;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Join.Type;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class ExpressionTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(ExpressionTest.class);
+	}*/
+
+	private static StatsHypercube load() { return CSV.load("./src/test/resources/ex.csv", "population"); }
+
+	public void testElementWise() throws Exception {
+		StatsHypercube hc = load();
+		Expression e = Expression.of(hc).mult(100).diff(10).abs();
+		//the operations are fused
+		assertTrue(e.optimize().toString().startsWith("apply(source"));
+		StatsHypercube out = e.evaluate();
+		assertEquals(4510.0 - 10, new StatsIndex(out, "country", "gender", "year").getSingleValue("Brasil", "Male", "2013"), 1e-9);
+		//the source is not modified
+		assertEquals(45.1, new StatsIndex(hc, "country", "gender", "year").getSingleValue("Brasil", "Male", "2013"), 1e-9);
+	}
+
+	public void testJoin() throws Exception {
+		StatsHypercube hc = load();
+		StatsHypercube tot = load().selectDimValueEqualTo("gender", "Total").delete("gender");
+		Expression e = Expression.of(hc).mult(100).div(Expression.of(tot)).select(new DimValueEqualTo("country", "Japan")).select(new DimValueEqualTo("year", "2014"));
+
+		//the selections are pushed below the join, and the operations are fused into the join
+		Expression o = e.optimize();
+		assertTrue(o.toString().startsWith("join(select(source"));
+		assertTrue(o.toString().contains(",select(source"));
+
+		StatsHypercube out = e.evaluate();
+		assertEquals(3, out.stats.size());
+		assertEquals(100 * 146.2 / 293.9, new StatsIndex(out, "country", "gender", "year").getSingleValue("Japan", "Male", "2014"), 1e-9);
+		assertEquals(45.1, new StatsIndex(hc, "country", "gender", "year").getSingleValue("Brasil", "Male", "2013"), 1e-9);
+	}
+
+	public void testValueSelection() throws Exception {
+		//a selection on values is not pushed below an element-wise operation
+		Expression e = Expression.of(load()).mult(2).select(new ValueGreaterThan(290));
+		assertTrue(e.optimize().toString().startsWith("select(apply("));
+		assertEquals(6, e.evaluate().stats.size());
+	}
+
+	public void testShared() throws Exception {
+		StatsHypercube hc = load();
+		Expression shared = Expression.of(hc).select(new DimValueEqualTo("gender", "Male")).mult(10);
+		Expression e = shared.sum(shared.opp().mult(2));
+		StatsHypercube out = e.evaluate();
+		assertEquals(4, out.stats.size());
+		assertEquals(-451.0, new StatsIndex(out, "country", "gender", "year").getSingleValue("Brasil", "Male", "2013"), 1e-9);
+		assertEquals(45.1, new StatsIndex(hc, "country", "gender", "year").getSingleValue("Brasil", "Male", "2013"), 1e-9);
+	}
+
+	public void testSharedJoin() throws Exception {
+		StatsHypercube hc = load();
+		StatsHypercube tot = load().selectDimValueEqualTo("gender", "Total").delete("gender");
+		int[] nb = new int[1];
+		Expression j = Expression.of(hc).join(Expression.of(tot), (v1, v2) -> { nb[0]++; return v1 / v2; }, Type.INNER);
+		Expression e = j.mult(2).diff(j);
+
+		//the operation is fused into the last join, not into the shared join
+		assertTrue(e.optimize().toString().startsWith("join(join(source"));
+		StatsHypercube out = e.evaluate();
+		//the shared join is computed once
+		assertEquals(hc.stats.size(), nb[0]);
+		assertEquals(hc.stats.size(), out.stats.size());
+		assertEquals(146.2 / 293.9, new StatsIndex(out, "country", "gender", "year").getSingleValue("Japan", "Male", "2014"), 1e-9);
+
+		//a selection is not pushed below a shared join
+		nb[0] = 0;
+		e = j.select(new DimValueEqualTo("country", "Japan")).sum(j);
+		assertTrue(e.optimize().toString().startsWith("join(select(join("));
+		assertEquals(6, e.evaluate().stats.size());
+		assertEquals(hc.stats.size(), nb[0]);
+	}
+
+	public void testAggregate() throws Exception {
+		Expression e = Expression.of(load()).mult(2).aggregate("country", new Aggregate[] { Aggregate.SUM }, "sum").select(new DimValueEqualTo("year", "2013"));
+		StatsHypercube out = e.evaluate();
+		assertEquals(3, out.stats.size());
+		assertEquals(2 * (45.1 + 145.1), new StatsIndex(out, "country", "gender", "year").getSingleValue("sum", "Male", "2013"), 1e-9);
+	}
+
+}
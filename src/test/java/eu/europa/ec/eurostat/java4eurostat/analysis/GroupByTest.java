@@ -0,0 +1,70 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.GroupBy.Aggregate;
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class GroupByTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(GroupByTest.class);
+	}*/
+
+	private static final Aggregate[] AGGS = new Aggregate[] { Aggregate.COUNT, Aggregate.SUM, Aggregate.MEAN, Aggregate.MIN, Aggregate.MAX, Aggregate.STD, Aggregate.RMS };
+	private static final String[] AGG_VALUES = new String[] { "count", "sum", "mean", "min", "max", "std", "rms" };
+
+	private static void check(StatsHypercube out) {
+		assertEquals(3, out.dimLabels.size());
+		assertEquals(2 * 3 * AGGS.length, out.stats.size());
+		StatsIndex index = new StatsIndex(out, "country", "gender", "year");
+		assertEquals(2.0, index.getSingleValue("count", "Male", "2013"), 1e-9);
+		assertEquals(190.2, index.getSingleValue("sum", "Male", "2013"), 1e-9);
+		assertEquals(95.1, index.getSingleValue("mean", "Male", "2013"), 1e-9);
+		assertEquals(45.1, index.getSingleValue("min", "Male", "2013"), 1e-9);
+		assertEquals(145.1, index.getSingleValue("max", "Male", "2013"), 1e-9);
+		assertEquals(100 / Math.sqrt(2), index.getSingleValue("std", "Male", "2013"), 1e-9);
+		assertEquals(Math.sqrt((45.1*45.1 + 145.1*145.1) / 2), index.getSingleValue("rms", "Male", "2013"), 1e-9);
+	}
+
+	public void testCompute() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		check(GroupBy.compute(hc, "country", AGGS, AGG_VALUES));
+	}
+
+	public void testComputeColumnar() throws Exception {
+		StatsHypercube hc = new ColumnarStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+		check(GroupBy.compute(hc, "country", AGGS, AGG_VALUES));
+	}
+
+	public void testGroupDims() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		StatsHypercube out = GroupBy.compute(hc, new String[] { "country" }, "stat", new Aggregate[] { Aggregate.SUM, Aggregate.COUNT }, new String[] { "sum", "count" });
+		assertEquals(2, out.dimLabels.size());
+		assertEquals(4, out.stats.size());
+		StatsIndex index = new StatsIndex(out, "country", "stat");
+		assertEquals(6.0, index.getSingleValue("Japan", "count"), 1e-9);
+		assertEquals(374.6, index.getSingleValue("Brasil", "sum"), 1e-9);
+	}
+
+	public void testSameAsAggregation() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		StatsHypercube sum = new StatsHypercube(hc.getDimLabels());
+		sum.stats.addAll(Operations.computeAggregation(hc, v -> { double s = 0; for(double d : v) s += d; return s; }, "gender", "Total"));
+		StatsHypercube sum_ = new StatsHypercube(hc.getDimLabels());
+		sum_.stats.addAll(Operations.computeSumDim(hc, "gender", "Total"));
+		assertEquals(sum.stats.size(), sum_.stats.size());
+		StatsIndex index = new StatsIndex(sum, "country", "year");
+		StatsIndex index_ = new StatsIndex(sum_, "country", "year");
+		for(String c : new String[] { "Brasil", "Japan" })
+			for(String y : new String[] { "2013", "2014" })
+				assertEquals(index.getSingleValue(c, y), index_.getSingleValue(c, y), 1e-9);
+	}
+
+}
@@ -0,0 +1,67 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Join.Strategy;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Join.Type;
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class JoinTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(JoinTest.class);
+	}*/
+
+	private static StatsHypercube load() { return CSV.load("./src/test/resources/ex.csv", "population"); }
+
+	/** The totals, without the gender dimension */
+	private static StatsHypercube totals() {
+		return load().selectDimValueEqualTo("gender", "Total").delete("gender");
+	}
+
+	public void testBroadcast() throws Exception {
+		for(Strategy st : Strategy.values()) {
+			for(boolean columnar : new boolean[] { false, true }) {
+				StatsHypercube hc = columnar ? new ColumnarStatsHypercube(load()) : load();
+				StatsHypercube tot = columnar ? new ColumnarStatsHypercube(totals()) : totals();
+				StatsHypercube out = Join.compute(hc, tot, (v1, v2) -> v1 / v2, Type.INNER, st);
+				assertEquals(3, out.dimLabels.size());
+				assertEquals(12, out.stats.size());
+				StatsIndex index = new StatsIndex(out, "country", "gender", "year");
+				assertEquals(45.1/93.4, index.getSingleValue("Brasil", "Male", "2013"), 1e-12);
+				assertEquals(1.0, index.getSingleValue("Japan", "Total", "2014"), 1e-12);
+			}
+		}
+	}
+
+	public void testTypes() throws Exception {
+		StatsHypercube brasil = totals().selectDimValueEqualTo("country", "Brasil");
+		StatsHypercube y2013 = load().selectDimValueEqualTo("year", "2013");
+		for(Strategy st : Strategy.values()) {
+			assertEquals(3, Join.compute(y2013, brasil, (v1, v2) -> v1 / v2, Type.INNER, st).stats.size());
+			StatsHypercube left = Join.compute(y2013, brasil, (v1, v2) -> v1 / v2, Type.LEFT, st);
+			assertEquals(6, left.stats.size());
+			assertTrue(Double.isNaN(new StatsIndex(left, "country", "gender", "year").getSingleValue("Japan", "Male", "2013")));
+			StatsHypercube outer = Join.compute(y2013, brasil, (v1, v2) -> v1 / v2, Type.OUTER, st);
+			assertEquals(7, outer.stats.size());
+		}
+	}
+
+	public void testManyToMany() throws Exception {
+		StatsHypercube hc1 = load().selectDimValueEqualTo("gender", "Male").delete("gender");
+		StatsHypercube hc2 = load().selectDimValueEqualTo("year", "2014").delete("year");
+		for(Strategy st : Strategy.values()) {
+			StatsHypercube out = Join.compute(hc1, hc2, (v1, v2) -> v1 + v2, Type.INNER, st);
+			assertEquals(3, out.dimLabels.size());
+			assertEquals(12, out.stats.size());
+			assertEquals(45.1 + 47.7, new StatsIndex(out, "country", "gender", "year").getSingleValue("Brasil", "Female", "2013"), 1e-12);
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Operations.Aggregator;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class OperationsTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(OperationsTest.class);
+	}*/
+
+	private static final Aggregator MAX = new Aggregator() {
+		@Override
+		public double compute(double[] values) {
+			double max = Double.NEGATIVE_INFINITY;
+			for(double v : values) max = Math.max(max, v);
+			return max;
+		}
+		@Override
+		public boolean isThreadSafe() { return true; }
+		@Override
+		public boolean isCombinable() { return true; }
+	};
+
+	private static StatsHypercube build(int nbGeo, int nbTime) {
+		StatsHypercube hc = new StatsHypercube("geo", "time");
+		for(int g=0; g<nbGeo; g++)
+			for(int t=0; t<nbTime; t++)
+				hc.stats.add(new Stat(g * 1000 + t, "geo", "g"+g, "time", ""+t));
+		return hc;
+	}
+
+	private static HashMap<String, Double> toMap(Collection<Stat> stats) {
+		HashMap<String, Double> out = new HashMap<>();
+		for(Stat s : stats) out.put(s.dims.get("geo"), s.value);
+		return out;
+	}
+
+	public void testParallelAggregation() throws Exception {
+		StatsHypercube hc = build(3000, 5);
+		Collection<Stat> seq = Operations.computeAggregation(hc, MAX, "time", "max");
+		Collection<Stat> ord = Operations.computeAggregation(hc, MAX, "time", "max", 4, true);
+		Collection<Stat> unord = Operations.computeAggregation(hc, MAX, "time", "max", 4, false);
+		assertEquals(3000, seq.size());
+		assertEquals(3000, ord.size());
+		assertEquals(3000, unord.size());
+
+		//same order as the sequential computation
+		ArrayList<Stat> seq_ = new ArrayList<>(seq), ord_ = new ArrayList<>(ord);
+		for(int i=0; i<seq_.size(); i++) {
+			assertEquals(seq_.get(i).dims, ord_.get(i).dims);
+			assertEquals(seq_.get(i).value, ord_.get(i).value);
+		}
+		assertEquals(toMap(seq), toMap(unord));
+		assertEquals(2004.0, toMap(unord).get("g2"));
+	}
+
+	public void testCombinable() throws Exception {
+		StatsHypercube hc = build(2, 200000);
+		HashMap<String, Double> out = toMap(Operations.computeAggregation(hc, MAX, "time", "max", 4, true));
+		assertEquals(199999.0, out.get("g0"));
+		assertEquals(200999.0, out.get("g1"));
+	}
+
+	public void testNotThreadSafe() throws Exception {
+		//an aggregator which does not declare itself thread safe is computed by the calling thread only
+		Set<Thread> threads = ConcurrentHashMap.newKeySet();
+		Aggregator agg = values -> { threads.add(Thread.currentThread()); return values.length; };
+		Collection<Stat> out = Operations.computeAggregation(build(1000, 5), agg, "time", "nb", 4, true);
+		assertEquals(1000, out.size());
+		assertEquals(1, threads.size());
+		assertTrue(threads.contains(Thread.currentThread()));
+	}
+
+	public void testPercentiles() throws Exception {
+		StatsHypercube hc = build(2, 99);
+		Collection<Stat> out = Operations.computePercentilesDim(hc, new double[] { 10, 50 }, "time", "p10", "p50");
+		assertEquals(4, out.size());
+		for(Stat s : out) {
+			double base = "g0".equals(s.dims.get("geo")) ? 0 : 1000;
+			assertEquals(base + ("p10".equals(s.dims.get("time")) ? 9 : 49), s.value, 1e-6);
+		}
+
+		//not one dimension value per percentile
+		try {
+			Operations.computePercentilesDim(hc, new double[] { 10, 50, 90 }, "time", "p10", "p50");
+			fail("The percentiles should have one dimension value each");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("3"));
+			assertTrue(e.getMessage().contains("2"));
+		}
+	}
+
+}
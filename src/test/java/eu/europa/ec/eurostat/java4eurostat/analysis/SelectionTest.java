@@ -0,0 +1,57 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class SelectionTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(SelectionTest.class);
+	}*/
+
+	public void testParse() throws Exception {
+		Criteria cri = Selection.parse("country IN (Brasil,Japan) AND year >= 2014 AND value > 0");
+		assertTrue(cri instanceof And);
+		Criteria[] cris = ((And)cri).getCriteria();
+		assertEquals(3, cris.length);
+		assertTrue(cris[0] instanceof Or);
+		assertEquals(2014.0, ((DimValueGreaterOrEqualThan)cris[1]).getDimValue());
+		assertEquals(0.0, ((ValueGreaterThan)cris[2]).getValue());
+
+		cri = Selection.parse("not (gender='Total' or year<>2013) and country not in (Japan)");
+		cris = ((And)cri).getCriteria();
+		assertTrue(cris[0] instanceof Not);
+		assertTrue(((Not)cris[0]).getCriteria() instanceof Or);
+		assertEquals(2, ((DimValueDifferentFrom)cris[1]).getDimLabelValues().length);
+		//AND has precedence over OR
+		assertTrue(Selection.parse("year = 2013 OR year = 2014 AND gender = Male") instanceof Or);
+	}
+
+	public void testParseErrors() throws Exception {
+		for(String query : new String[] { "", "country", "country = ", "year > abc", "(year = 2013", "value IN (1,2)", "country NOT = Japan", "year = 2013 gender = Male", "country = 'Japan" })
+			try {
+				Selection.parse(query);
+				fail("No error for: " + query);
+			} catch (@SuppressWarnings("unused") IllegalArgumentException e) { /* expected */ }
+	}
+
+	public void testSelect() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		assertEquals(4, hc.select("country IN (Brasil,Japan) AND year >= 2014 AND gender != Total").stats.size());
+		assertEquals(hc.select(new Or(new ValueGreaterThan(100), new Not(new DimValueGreaterOrEqualThan("year", 2014)))).stats.size(),
+				hc.select("value > 100 OR NOT year >= 2014").stats.size());
+	}
+
+}
@@ -0,0 +1,75 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.Random;
+
+import org.apache.commons.math3.stat.StatUtils;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.StreamingAggregator.Accumulator;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class StreamingAggregatorTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(StreamingAggregatorTest.class);
+	}*/
+
+	private static double[] values() {
+		Random r = new Random(42);
+		double[] vals = new double[1000];
+		for(int i=0; i<vals.length; i++) vals[i] = 1000 + 100 * r.nextGaussian();
+		return vals;
+	}
+
+	public void testCompute() throws Exception {
+		double[] vals = values();
+		assertEquals(1000.0, StreamingAggregator.COUNT.compute(vals));
+		assertEquals(StatUtils.sum(vals), StreamingAggregator.SUM.compute(vals), 1e-6);
+		assertEquals(StatUtils.mean(vals), StreamingAggregator.MEAN.compute(vals), 1e-9);
+		assertEquals(StatUtils.variance(vals), StreamingAggregator.VARIANCE.compute(vals), 1e-6);
+		assertEquals(Math.sqrt(StatUtils.variance(vals)), StreamingAggregator.STD.compute(vals), 1e-9);
+		assertEquals(Math.sqrt(StatUtils.sumSq(vals)/vals.length), StreamingAggregator.RMS.compute(vals), 1e-9);
+		assertEquals(StatUtils.min(vals), StreamingAggregator.MIN.compute(vals));
+		assertEquals(StatUtils.max(vals), StreamingAggregator.MAX.compute(vals));
+		assertTrue(Double.isNaN(StreamingAggregator.MEAN.compute(new double[0])));
+		assertEquals(2.0, StreamingAggregator.MAX.compute(new double[] { 1, Double.NaN, 2 }));
+		assertEquals(StatUtils.percentile(vals, 50), StreamingAggregator.percentile(50).compute(vals), 5);
+		assertEquals(StatUtils.percentile(vals, 90), StreamingAggregator.percentile(90, 200).compute(vals), 5);
+	}
+
+	public void testMerge() throws Exception {
+		double[] vals = values();
+		StreamingAggregator[] aggs = new StreamingAggregator[] { StreamingAggregator.COUNT, StreamingAggregator.SUM, StreamingAggregator.MEAN,
+				StreamingAggregator.VARIANCE, StreamingAggregator.RMS, StreamingAggregator.MIN, StreamingAggregator.MAX, StreamingAggregator.percentile(50) };
+		for(StreamingAggregator agg : aggs) {
+			//accumulate in 3 chunks, and merge
+			Accumulator acc = agg.init(), acc2 = agg.init(), acc3 = agg.init();
+			for(int i=0; i<vals.length; i++) (i<100 ? acc : i<700 ? acc2 : acc3).accumulate(vals[i]);
+			acc.merge(acc2);
+			acc.merge(acc3);
+			acc.merge(agg.init());
+			assertEquals(agg.compute(vals), acc.finish(), agg == aggs[aggs.length-1] ? 5 : 1e-6);
+		}
+	}
+
+	public void testGroupBy() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		StatsHypercube out = GroupBy.compute(hc, "country", new StreamingAggregator[] { StreamingAggregator.SUM, StreamingAggregator.STD }, new String[] { "sum", "std" });
+		assertEquals(12, out.stats.size());
+		StatsIndex index = new StatsIndex(out, "country", "gender", "year");
+		assertEquals(190.2, index.getSingleValue("sum", "Male", "2013"), 1e-9);
+		assertEquals(100 / Math.sqrt(2), index.getSingleValue("std", "Male", "2013"), 1e-9);
+
+		//as an aggregator
+		StatsHypercube sum = new StatsHypercube(hc.getDimLabels());
+		sum.stats.addAll(Operations.computeAggregation(hc, StreamingAggregator.SUM, "country", "sum"));
+		assertEquals(190.2, new StatsIndex(sum, "country", "gender", "year").getSingleValue("sum", "Male", "2013"), 1e-9);
+	}
+
+}
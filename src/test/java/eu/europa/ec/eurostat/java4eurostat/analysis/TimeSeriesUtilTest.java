@@ -0,0 +1,292 @@
+package eu.europa.ec.eurostat.java4eurostat.analysis;
+
+import java.util.ArrayList;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.Completeness;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.Derivation;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.Gap;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.Outlier;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil.OutlierDetection;
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.Flag.FlagType;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class TimeSeriesUtilTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(TimeSeriesUtilTest.class);
+	}*/
+
+	/** A monthly series from 2010M01, with some missing months and a NaN value */
+	private static StatsIndex getSeries() {
+		StatsHypercube sh = new StatsHypercube("time");
+		for(int i=0; i<40; i++) {
+			if(i%7 == 3) continue;
+			Stat s = new Stat();
+			s.value = i == 20 ? Double.NaN : 1000 + 10*Math.sin(i) + i*i;
+			s.dims.put("time", EBTimeUtil.getEBText(2010 + i/12, i%12 + 1));
+			sh.stats.add(s);
+		}
+		return new StatsIndex(sh, "time");
+	}
+
+	public void testMovingAverage() throws Exception {
+		StatsIndex series = getSeries();
+		for(int w : new int[] { 0, 1, 3, 6 }) {
+			StatsIndex ma = TimeSeriesUtil.getMovingAverageMonth(series, w);
+			assertEquals(series.getKeys().size(), ma.getKeys().size());
+			for(String time : series.getKeys()) {
+				double exp = TimeSeriesUtil.getAverageMonth(series, EBTimeUtil.get(time,-w), EBTimeUtil.get(time,w), false, -1);
+				assertEquals(time, exp, ma.getSingleValue(time), 1e-9);
+			}
+		}
+	}
+
+	public void testMovingStd() throws Exception {
+		StatsIndex series = getSeries();
+		for(int w : new int[] { 0, 1, 3, 6 }) {
+			StatsIndex ms = TimeSeriesUtil.getMovingStdMonth(series, w);
+			for(String time : series.getKeys()) {
+				double exp = TimeSeriesUtil.getStdMonth(series, EBTimeUtil.get(time,-w), EBTimeUtil.get(time,w), false);
+				assertEquals(time, exp, ms.getSingleValue(time), 1e-6);
+			}
+		}
+	}
+
+	public void testPrimitive() throws Exception {
+		double[] values = { 1, 2, Double.NaN, 4, 5 };
+		double[] ma = TimeSeriesUtil.getMovingAverage(values, 1, false, null);
+		assertEquals(1.5, ma[0]); assertEquals(1.5, ma[1]); assertEquals(3.0, ma[2]); assertEquals(4.5, ma[3]); assertEquals(4.5, ma[4]);
+
+		ma = TimeSeriesUtil.getMovingAverage(values, 1, true, new double[5]);
+		for(double v : ma) assertTrue(Double.isNaN(v));
+		ma = TimeSeriesUtil.getMovingAverage(new double[] { 1, 2, 3, 4 }, 1, true, null);
+		assertTrue(Double.isNaN(ma[0])); assertEquals(2.0, ma[1]); assertEquals(3.0, ma[2]); assertTrue(Double.isNaN(ma[3]));
+
+		double[] std = TimeSeriesUtil.getMovingStd(values, 1, false, null);
+		assertEquals(Math.sqrt(0.5), std[0], 1e-12); assertEquals(Math.sqrt(2), std[2], 1e-12);
+		std = TimeSeriesUtil.getMovingStd(new double[] { Double.NaN, 7, Double.NaN, Double.NaN, Double.NaN }, 1, false, null);
+		assertEquals(0.0, std[0]); assertEquals(0.0, std[2]); assertTrue(Double.isNaN(std[3]));
+
+		assertEquals(0, TimeSeriesUtil.getMovingAverage(new double[0], 2, false, null).length);
+	}
+
+	public void testQuarterly() throws Exception {
+		StatsHypercube sh = new StatsHypercube("time");
+		for(String[] tv : new String[][] { {"2015Q3","1"}, {"2015Q4","3"}, {"2016Q1","5"}, {"2016Q3","11"} }) {
+			Stat s = new Stat(); s.value = Double.parseDouble(tv[1]); s.dims.put("time", tv[0]); sh.stats.add(s);
+		}
+		StatsIndex ma = TimeSeriesUtil.getMovingAverageMonth(new StatsIndex(sh, "time"), 1);
+		assertEquals(2.0, ma.getSingleValue("2015Q3"));
+		assertEquals(3.0, ma.getSingleValue("2015Q4"));
+		assertEquals(4.0, ma.getSingleValue("2016Q1"));
+		assertEquals(11.0, ma.getSingleValue("2016Q3"));
+	}
+
+	/** Monthly series by geo and unit, with a spike in each series */
+	private static StatsHypercube getHypercube() {
+		StatsHypercube sh = new StatsHypercube("geo", "unit", "time");
+		String[] geos = { "BE", "DE", "FR", "LU", "NL" };
+		for(int g=0; g<geos.length; g++)
+			for(String unit : new String[] { "I15", "RCH" })
+				for(int i=0; i<60; i++) {
+					if((i+g)%11 == 5) continue;
+					Stat s = new Stat(100 + g + 0.5*Math.sin(i + g) + (i == 20+3*g ? 50 : 0), "geo", geos[g], "unit", unit, "time", EBTimeUtil.getEBText(2010 + i/12, i%12 + 1));
+					sh.stats.add(s);
+				}
+		return sh;
+	}
+
+	public void testBatchOutlierDetection() throws Exception {
+		StatsHypercube hc = getHypercube();
+		String[] seriesDimLabels = { "geo", "unit" };
+		OutlierDetection od = TimeSeriesUtil.performOutlierDetection(hc, seriesDimLabels, 6);
+		assertEquals(10, od.labels.length);
+		assertEquals(10, od.durations.length);
+		assertTrue(od.duration > 0);
+
+		//compare with series by series detection
+		StatsIndex index = new StatsIndex(hc, "geo", "unit", "time");
+		ArrayList<Outlier> exp = new ArrayList<>();
+		for(String label : od.labels) {
+			String[] gu = label.split(",");
+			exp.addAll(TimeSeriesUtil.performOutlierDetection(index.getSubIndex(gu[0], gu[1]), 6, label));
+		}
+		assertSameOutliers(exp, od.outliers);
+		//the spikes
+		assertEquals(10, exp.size());
+		for(Outlier o : exp) {
+			int g = "BE,DE,FR,LU,NL".indexOf(o.label.substring(0, 2)) / 3;
+			assertEquals(EBTimeUtil.getEBText(2011 + (8+3*g)/12, (8+3*g)%12 + 1), o.time);
+		}
+
+		//columnar and sequential
+		assertSameOutliers(exp, TimeSeriesUtil.performOutlierDetection(new ColumnarStatsHypercube(hc), seriesDimLabels, 6, 3, 0, 1).outliers);
+		assertSameOutliers(exp, TimeSeriesUtil.performOutlierDetection(hc, seriesDimLabels, 6, 3, 0, 3).outliers);
+	}
+
+	public void testCompleteness() throws Exception {
+		StatsHypercube hc = getHypercube();
+		//a series with a NaN value and empty years, and a series which is not a time series
+		for(int i : new int[] { 0, 1, 2, 3, 40, 41 }) hc.stats.add(new Stat(i == 2 ? Double.NaN : i, "geo", "PT", "unit", "I15", "time", EBTimeUtil.getEBText(2010 + i/12, i%12 + 1)));
+		hc.stats.add(new Stat(1, "geo", "PT", "unit", "RCH", "time", "whatever"));
+
+		for(boolean columnar : new boolean[] { false, true }) {
+			Completeness c = TimeSeriesUtil.performCompletenessAnalysis(columnar ? new ColumnarStatsHypercube(hc) : hc, "geo", "unit");
+			assertEquals(12, c.labels.length);
+
+			//same gaps as the series by series analysis
+			StatsIndex index = new StatsIndex(hc, "geo", "unit", "time");
+			int nbGaps = 0;
+			for(int g=0; g<c.labels.length; g++) {
+				if(c.labels[g].startsWith("PT")) continue;
+				String[] gu = c.labels[g].split(",");
+				ArrayList<Gap> gaps = TimeSeriesUtil.performGapAnalysis(index.getSubIndex(gu[0], gu[1]), c.labels[g]);
+				assertEquals(gaps.size(), c.nbGaps[g]);
+				int missing = 0;
+				for(Gap gap : gaps) missing += gap.getDuration() - 1;
+				assertEquals(missing, c.nbMissing[g]);
+				int nbValues = index.getSubIndex(gu[0], gu[1]).getKeys().size();
+				assertEquals(nbValues, c.nbValues[g]);
+				assertEquals(nbValues + missing, c.nbPeriods[g]);
+				assertEquals(nbValues / (double)(nbValues + missing), c.getFillRatio(g), 1e-12);
+				assertEquals(0, c.emptyYears[g].length);
+				nbGaps += gaps.size();
+			}
+			assertEquals(nbGaps + 2, c.gaps.size());
+
+			int g = java.util.Arrays.asList(c.labels).indexOf("PT,I15");
+			assertEquals(EBTimeUtil.getEBText(2010, 1), c.first[g]);
+			assertEquals(EBTimeUtil.getEBText(2013, 6), c.last[g]);
+			assertEquals(5, c.nbValues[g]);
+			assertEquals(42, c.nbPeriods[g]);
+			assertEquals(2, c.nbGaps[g]);
+			assertEquals(36, c.maxGap[g]);
+			assertEquals(2, c.emptyYears[g].length);
+			assertEquals(2011, c.emptyYears[g][0]);
+			assertEquals(2012, c.emptyYears[g][1]);
+			g = java.util.Arrays.asList(c.labels).indexOf("PT,RCH");
+			assertNull(c.first[g]);
+			assertTrue(Double.isNaN(c.getFillRatio(g)));
+
+			//as a table
+			StatsHypercube table = c.getHypercube();
+			assertEquals(12 * Completeness.Indicator.values().length, table.stats.size());
+			StatsIndex ti = new StatsIndex(table, "geo", "unit", "indicator");
+			assertEquals(36.0, ti.getSingleValue("PT", "I15", "MAX_GAP"));
+			assertEquals(2.0, ti.getSingleValue("PT", "I15", "NB_EMPTY_YEARS"));
+		}
+	}
+
+	public void testDerive() throws Exception {
+		StatsHypercube hc = getHypercube();
+		//a complete series
+		for(int i=0; i<24; i++) hc.stats.add(new Stat(100 + i, "geo", "PT", "unit", "I15", "time", EBTimeUtil.getEBText(2013 + i/12, i%12 + 1)));
+		//flag some values
+		for(Stat s : hc.stats) {
+			if(s.dims.get("time").startsWith("2012M03")) s.addFlag(FlagType.p);
+			if(s.dims.get("time").startsWith("2013M07")) s.addFlag(FlagType.e);
+		}
+		StatsIndex index = new StatsIndex(hc, "geo", "unit", "time");
+
+		for(boolean columnar : new boolean[] { false, true }) {
+			StatsHypercube hc_ = columnar ? new ColumnarStatsHypercube(hc) : hc;
+
+			//annual rate of change
+			StatsHypercube manr = TimeSeriesUtil.derive(hc_, Derivation.RATE, 12);
+			assertEquals(3, manr.dimLabels.size());
+			int nb = 0;
+			for(String geo : index.getKeys())
+				for(String unit : index.getKeys(geo))
+					for(String time : index.getKeys(geo, unit)) {
+						String time0 = EBTimeUtil.get(time, -12);
+						if(index.getSingleStat(geo, unit, time0) == null) continue;
+						nb++;
+					}
+			assertEquals(nb, manr.stats.size());
+			StatsIndex mi = new StatsIndex(manr, "geo", "unit", "time");
+			String t = EBTimeUtil.getEBText(2013, 3);
+			assertEquals(100 * (index.getSingleValue("LU", "I15", t) / index.getSingleValue("LU", "I15", EBTimeUtil.getEBText(2012, 3)) - 1), mi.getSingleValue("LU", "I15", t), 1e-12);
+			assertEquals("p", mi.getSingleStat("LU", "I15", t).getFlags());
+
+			//differences and ratios
+			StatsIndex di = new StatsIndex(TimeSeriesUtil.derive(hc_, Derivation.DIFFERENCE, 1), "geo", "unit", "time");
+			StatsIndex ri = new StatsIndex(TimeSeriesUtil.derive(hc_, Derivation.RATIO, 1), "geo", "unit", "time");
+			t = EBTimeUtil.getEBText(2012, 3);
+			double v0 = index.getSingleValue("BE", "RCH", EBTimeUtil.getEBText(2012, 2)), v1 = index.getSingleValue("BE", "RCH", t);
+			assertEquals(v1 - v0, di.getSingleValue("BE", "RCH", t), 1e-12);
+			assertEquals(v1 / v0, ri.getSingleValue("BE", "RCH", t), 1e-12);
+			assertEquals("p", di.getSingleStat("BE", "RCH", t).getFlags());
+
+			//rolling average over 3 months: needs the 3 values
+			StatsIndex rai = new StatsIndex(TimeSeriesUtil.derive(hc_, Derivation.ROLLING_AVERAGE, 3), "geo", "unit", "time");
+			StatsIndex rsi = new StatsIndex(TimeSeriesUtil.derive(hc_, Derivation.ROLLING_SUM, 3), "geo", "unit", "time");
+			double sum = 0;
+			for(int m=6; m<=8; m++) sum += index.getSingleValue("BE", "I15", EBTimeUtil.getEBText(2013, m));
+			t = EBTimeUtil.getEBText(2013, 8);
+			assertEquals(sum / 3, rai.getSingleValue("BE", "I15", t), 1e-9);
+			assertEquals(sum, rsi.getSingleValue("BE", "I15", t), 1e-9);
+			assertEquals("e", rsi.getSingleStat("BE", "I15", t).getFlags());
+			//BE misses 2010M06: no average for 2010M06 to 2010M08
+			assertNull(rai.getSingleStat("BE", "I15", EBTimeUtil.getEBText(2010, 7)));
+			assertNotNull(rai.getSingleStat("BE", "I15", EBTimeUtil.getEBText(2010, 9)));
+			assertNull(rai.getSingleStat("BE", "I15", EBTimeUtil.getEBText(2010, 2)));
+
+			//annual averages of the complete years
+			StatsIndex ai = new StatsIndex(TimeSeriesUtil.derive(hc_, Derivation.ANNUAL_AVERAGE, 0), "geo", "unit", "time");
+			assertEquals(1, ai.getKeys().size());
+			assertEquals(2, ai.getKeys("PT", "I15").size());
+			//same time format as the series
+			assertEquals(105.5, ai.getSingleValue("PT", "I15", EBTimeUtil.getEBText(2013)), 1e-9);
+			assertEquals("e", ai.getSingleStat("PT", "I15", EBTimeUtil.getEBText(2013)).getFlags());
+			assertEquals(117.5, ai.getSingleValue("PT", "I15", EBTimeUtil.getEBText(2014)), 1e-9);
+			assertEquals("", ai.getSingleStat("PT", "I15", EBTimeUtil.getEBText(2014)).getFlags());
+			//the other series miss a month every 11 months
+			assertNull(ai.getSingleStat("BE", "I15", EBTimeUtil.getEBText(2010)));
+		}
+
+		//annual averages of a series without the Eurobase time format
+		StatsHypercube hcIso = new StatsHypercube("geo", "time");
+		for(int m=1; m<=12; m++) hcIso.stats.add(new Stat(m, "geo", "PT", "time", "2013M" + (m<10?"0":"") + m));
+		StatsHypercube aiIso = TimeSeriesUtil.derive(hcIso, Derivation.ANNUAL_AVERAGE, 0);
+		assertEquals(1, aiIso.stats.size());
+		assertEquals("2013", aiIso.stats.iterator().next().dims.get("time"));
+		assertEquals(6.5, aiIso.stats.iterator().next().value, 1e-9);
+
+		try {
+			TimeSeriesUtil.derive(hc, Derivation.RATE, 0);
+			fail();
+		} catch (@SuppressWarnings("unused") IllegalArgumentException e) {}
+	}
+
+	public void testBatchFailure() throws Exception {
+		SeriesBatch sb = new SeriesBatch(getHypercube(), new String[] { "geo", "unit" });
+		try {
+			sb.process(3, (g, buf, out) -> {
+				if(g == 7) throw new IllegalArgumentException("Failure of series " + g);
+				out.add(g);
+			});
+			fail("The failure of a series should fail the batch");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+	}
+
+	private static void assertSameOutliers(ArrayList<Outlier> exp, ArrayList<Outlier> outliers) {
+		assertEquals(exp.size(), outliers.size());
+		for(int i=0; i<exp.size(); i++) {
+			assertEquals(exp.get(i).label, outliers.get(i).label);
+			assertEquals(exp.get(i).time, outliers.get(i).time);
+			assertEquals(exp.get(i).diff, outliers.get(i).diff, 1e-9);
+			assertEquals(exp.get(i).std, outliers.get(i).std, 1e-9);
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class BitmapIndexTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(BitmapIndexTest.class);
+	}*/
+
+	private static ColumnarStatsHypercube load() {
+		ColumnarStatsHypercube hc = new ColumnarStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+		hc.createBitmapIndex();
+		return hc;
+	}
+
+	public void testEvaluate() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		BitmapIndex bi = hc.getBitmapIndex();
+		assertEquals(6, bi.getCount("country", "Japan"));
+		assertEquals(0, bi.getCount("country", "France"));
+		assertEquals(2, bi.evaluate(new DimValueEqualTo("country", "Japan", "gender", "Total")).cardinality());
+		assertEquals(4, bi.evaluate(new DimValueDifferentFrom("gender", "Total", "year", "2013")).cardinality());
+		assertEquals(8, bi.evaluate(new Or(new DimValueEqualTo("gender", "Male"), new DimValueEqualTo("gender", "Female"))).cardinality());
+		assertEquals(6, bi.evaluate(new Not(new DimValueEqualTo("country", "Japan"))).cardinality());
+		assertNull(bi.evaluate(new ValueGreaterThan(3)));
+	}
+
+	public void testSelect() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		Criteria[] cris = new Criteria[] {
+				new DimValueEqualTo("country", "Japan", "gender", "Total", "year", "2014"),
+				new And(new DimValueEqualTo("country", "Japan"), new Not(new DimValueEqualTo("gender", "Total"))),
+				new And(new DimValueDifferentFrom("country", "Japan"), new ValueGreaterThan(46)),
+				new Or(new DimValueEqualTo("year", "2013"), new ValueGreaterThan(200)),
+				new DimValueEqualTo("country", "France"),
+		};
+		StatsHypercube hc_ = CSV.load("./src/test/resources/ex.csv", "population");
+		for(Criteria cri : cris)
+			assertEquals(hc_.select(cri).stats.size(), hc.select(cri).stats.size());
+	}
+
+	public void testInvalidation() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		assertEquals(6, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+		hc.addStat(1.0, null, "country", "Japan", "gender", "Total", "year", "2015");
+		assertEquals(7, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+		hc.changeDimValue("country", "Japan", "Nippon");
+		assertEquals(0, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+		assertEquals(7, hc.selectDimValueEqualTo("country", "Nippon").stats.size());
+	}
+
+}
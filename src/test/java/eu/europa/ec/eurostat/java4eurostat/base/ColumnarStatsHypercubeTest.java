@@ -0,0 +1,184 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.Iterator;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.EBTimeUtil;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Operations;
+import eu.europa.ec.eurostat.java4eurostat.analysis.TimeSeriesUtil;
+import eu.europa.ec.eurostat.java4eurostat.base.Flag.FlagType;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class ColumnarStatsHypercubeTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(ColumnarStatsHypercubeTest.class);
+	}*/
+
+	private static ColumnarStatsHypercube load() {
+		return new ColumnarStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+	}
+
+	public void testStructure() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		assertEquals(3, hc.dimLabels.size());
+		assertEquals(12, hc.size());
+		assertEquals(12, hc.stats.size());
+		assertEquals(2, hc.getDimValues("country").size());
+		assertEquals(3, hc.getDimValues("gender").size());
+		assertEquals(2, hc.getDimValues("year").size());
+		assertEquals(2, hc.getDictionary("country").size());
+	}
+
+	public void testSelect() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		StatsHypercube sel = hc.selectDimValueEqualTo("country", "Japan", "gender", "Total", "year", "2014");
+		assertEquals(1, sel.stats.size());
+		assertEquals(293.9, sel.stats.iterator().next().value);
+		assertEquals(6, hc.selectDimValueEqualTo("country", "Brasil").stats.size());
+		assertEquals(4, hc.selectValueGreaterThan(147).stats.size());
+		assertEquals(1, hc.selectDimValueEqualTo("country", "Brasil").getDimValues("country").size());
+	}
+
+	public void testDelete() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		hc.delete("gender", "Total");
+		assertEquals(8, hc.size());
+		assertEquals(2, hc.getDimValues("gender").size());
+		hc.delete("year");
+		assertEquals(2, hc.dimLabels.size());
+		assertEquals(8, hc.size());
+		assertNull(hc.stats.iterator().next().dims.get("year"));
+	}
+
+	public void testApply() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		hc.mult(10);
+		StatsIndex index = new StatsIndex(hc, "country", "gender", "year");
+		assertEquals(939.0, index.getSingleValue("Brasil", "Total", "2014"), 1e-9);
+
+		hc.diff(load());
+		index = new StatsIndex(hc, "country", "gender", "year");
+		assertEquals(845.1, index.getSingleValue("Brasil", "Total", "2014"), 1e-9);
+	}
+
+	public void testCompute() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		StatsHypercube out = Operations.computeDouble(hc, v -> 2*v);
+		assertTrue(out instanceof ColumnarStatsHypercube);
+		assertEquals(187.8, new StatsIndex(out, "country", "gender", "year").getSingleValue("Brasil", "Total", "2014"), 1e-9);
+		assertEquals(93.9, new StatsIndex(hc, "country", "gender", "year").getSingleValue("Brasil", "Total", "2014"), 1e-9);
+
+		out = Operations.computeDouble(out, hc, (v1, v2) -> v1 - v2);
+		assertEquals(12, out.stats.size());
+		assertEquals(93.9, new StatsIndex(out, "country", "gender", "year").getSingleValue("Brasil", "Total", "2014"), 1e-9);
+
+		out = Operations.compute(hc, v -> -v);
+		assertEquals(-93.9, new StatsIndex(out, "country", "gender", "year").getSingleValue("Brasil", "Total", "2014"), 1e-9);
+	}
+
+	public void testChangeDimValue() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		hc.changeDimValue("country", "Brasil", "Brazil");
+		assertEquals(6, hc.selectDimValueEqualTo("country", "Brazil").stats.size());
+		assertEquals(0, hc.selectDimValueEqualTo("country", "Brasil").stats.size());
+	}
+
+	public void testToMap() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		StatsHypercube hc_ = hc.selectDimValueEqualTo("gender", "Total", "year", "2013");
+		assertTrue(hc_ instanceof ColumnarStatsHypercube);
+		hc_.delete("gender").delete("year");
+		assertEquals(293.4, hc_.toMap().get("Japan").doubleValue());
+	}
+
+	public void testFlags() throws Exception {
+		ColumnarStatsHypercube hc = new ColumnarStatsHypercube("geo");
+		hc.addStat(1.2, "pe", "geo", "BE");
+		hc.addStat(3.4, null, "geo", "FR");
+		hc.addStat(5.6, "ep", "geo", "DE");
+		assertEquals("ep", hc.getFlags(0));
+		assertEquals("", hc.getFlags(1));
+		assertEquals("ep", hc.getFlags(2));
+		Stat s = hc.getStat(0);
+		assertTrue(s.isFlagged(Flag.FlagType.e));
+		assertTrue(s.isFlagged(Flag.FlagType.p));
+		assertFalse(hc.getStat(1).isFlagged(Flag.FlagType.e));
+	}
+
+	public void testRemove() throws Exception {
+		ColumnarStatsHypercube hc = load();
+		hc.createBitmapIndex();
+		assertEquals(6, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+
+		//with the iterator
+		for(Iterator<Stat> it = hc.stats.iterator(); it.hasNext(); )
+			if("Male".equals(it.next().dims.get("gender"))) it.remove();
+		assertEquals(8, hc.size());
+		assertEquals(0, hc.selectDimValueEqualTo("gender", "Male").stats.size());
+		assertEquals(4, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+
+		//with a predicate
+		assertTrue(hc.stats.removeIf(s -> "Japan".equals(s.dims.get("country"))));
+		assertFalse(hc.stats.removeIf(s -> "Japan".equals(s.dims.get("country"))));
+		assertEquals(4, hc.stats.size());
+		assertEquals(0, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+		assertEquals(2, hc.selectDimValueEqualTo("gender", "Female").stats.size());
+
+		try {
+			hc.stats.iterator().remove();
+			fail();
+		} catch (@SuppressWarnings("unused") IllegalStateException e) {}
+	}
+
+	public void testWriteThrough() throws Exception {
+		ColumnarStatsHypercube hc = new ColumnarStatsHypercube("time");
+		for(int y=2013; y<=2014; y++)
+			for(int m=1; m<=12; m++) hc.addStat(m, null, "time", EBTimeUtil.getEBText(y, m));
+
+		//change the values through an index
+		StatsIndex index = new StatsIndex(hc, "time");
+		TimeSeriesUtil.multiplyYearValues(index, 2013, 10);
+		assertEquals(30.0, hc.getValue(2));
+		assertEquals(3.0, hc.getValue(14));
+		assertEquals(30.0, new StatsIndex(hc, "time").getSingleValue(EBTimeUtil.getEBText(2013, 3)));
+
+		//change the flags
+		Stat s = index.getSingleStat(EBTimeUtil.getEBText(2014, 1));
+		s.addFlag(FlagType.p);
+		assertEquals("p", hc.getFlags(12));
+		s.removeFlag(FlagType.p);
+		assertEquals("", hc.getFlags(12));
+
+		//the stats retrieved before a removal cannot be changed
+		hc.stats.removeIf(s_ -> s_.value > 100);
+		try {
+			s.setValue(5);
+			fail("A stat retrieved before a removal should not be changed");
+		} catch (@SuppressWarnings("unused") IllegalStateException e) {}
+		assertEquals(1.0, hc.getValue(10));
+	}
+
+	public void testTooManyFlags() throws Exception {
+		ColumnarStatsHypercube hc = new ColumnarStatsHypercube("id");
+		String flags = "bcdefinprsuxz";
+		int nb = 0;
+		try {
+			for(int i=0; i<flags.length(); i++)
+				for(int j=i+1; j<flags.length(); j++)
+					for(int k=j+1; k<flags.length(); k++) {
+						hc.addStat(1, "" + flags.charAt(i) + flags.charAt(j) + flags.charAt(k), "id", "" + nb);
+						nb++;
+					}
+			fail("The flags of a stat should not be dropped");
+		} catch (@SuppressWarnings("unused") IllegalStateException e) {}
+		assertEquals(255, nb);
+		assertEquals(255, hc.size());
+		assertEquals("bcd", hc.getFlags(0));
+	}
+
+}
@@ -0,0 +1,62 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueLowerThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Not;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueLowerOrEqualThan;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class CompiledCriteriaTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(CompiledCriteriaTest.class);
+	}*/
+
+	public void testEvaluate() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		ColumnarStatsHypercube chc = new ColumnarStatsHypercube(hc);
+		Criteria[] cris = new Criteria[] {
+				new DimValueEqualTo("country", "Japan", "gender", "Total"),
+				new DimValueEqualTo("country", "France"),
+				new DimValueDifferentFrom("country", "France", "gender", "Total"),
+				new DimValueGreaterOrEqualThan("year", 2014),
+				new And(new DimValueGreaterOrEqualThan("year", 2013), new DimValueLowerThan("year", 2014)),
+				new DimValueLowerThan("gender", 3),
+				new Or(new Not(new DimValueEqualTo("country", "Japan")), new ValueGreaterThan(100), new ValueLowerOrEqualThan(5)),
+				new Not(new And(new DimValueEqualTo("year", "2013"), s -> s.value > 50)),
+				new And(),
+				new Or(),
+		};
+		for(Criteria cri : cris) {
+			CompiledCriteria cc = new CompiledCriteria(chc, cri);
+			assertEquals(hc.select(cri).stats.size(), cc.evaluate().cardinality());
+			assertEquals(hc.select(cri).stats.size(), chc.select(cri).stats.size());
+		}
+		assertEquals(0, new CompiledCriteria(chc, new DimValueLowerThan("unknown", 3)).evaluate().cardinality());
+		assertEquals(0, new CompiledCriteria(chc, cris[4]).getUncompiledCount());
+		assertEquals(1, new CompiledCriteria(chc, cris[7]).getUncompiledCount());
+	}
+
+	public void testNumericValues() throws Exception {
+		DimValueDictionary dict = new DimValueDictionary();
+		dict.encode("2015");
+		dict.encode("2016Q1");
+		assertEquals(2015.0, dict.getNumericValues()[0]);
+		assertTrue(Double.isNaN(dict.getNumericValues()[1]));
+		dict.encode("2017");
+		assertEquals(3, dict.getNumericValues().length);
+		assertEquals(2017.0, dict.getNumericValues()[2]);
+	}
+
+}
@@ -0,0 +1,122 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import eu.europa.ec.eurostat.java4eurostat.base.Flag.FlagType;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class DenseStatsHypercubeTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(DenseStatsHypercubeTest.class);
+	}*/
+
+	public void testStructure() throws Exception {
+		DenseStatsHypercube hc = new DenseStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+		assertEquals(12, hc.getMaxSize());
+		assertEquals(12, hc.stats.size());
+		assertEquals(3, hc.getDimValues("gender").size());
+		assertEquals(6, hc.selectDimValueEqualTo("country", "Japan").stats.size());
+	}
+
+	public void testNonCompact() throws Exception {
+		DenseStatsHypercube hc = new DenseStatsHypercube(CSV.load("./src/test/resources/ex_non_compact.csv", "population"));
+		assertEquals(12, hc.getMaxSize());
+		assertEquals(9, hc.stats.size());
+	}
+
+	public void testIndex() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		StatsIndex index = new StatsIndex(new DenseStatsHypercube(hc), "gender", "year", "country");
+		assertEquals(293.9, index.getSingleValue("Total", "2014", "Japan"));
+		assertEquals(45.1, index.getSingleStat("Male", "2013", "Brasil").value);
+		assertTrue(Double.isNaN(index.getSingleValue("Total", "2014", "France")));
+		//tree access
+		assertEquals(3, index.getKeys().size());
+		assertEquals(2, index.getKeys("Total").size());
+		assertEquals(293.9, index.getSingleValue("Total", "2014", "Japan"));
+	}
+
+	public void testPromote() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		assertTrue(DenseStatsHypercube.promote(hc) instanceof DenseStatsHypercube);
+		StatsHypercube hcNc = CSV.load("./src/test/resources/ex_non_compact.csv", "population");
+		assertFalse(DenseStatsHypercube.promote(hcNc) instanceof DenseStatsHypercube);
+		assertTrue(DenseStatsHypercube.promote(hcNc, 0.7) instanceof DenseStatsHypercube);
+		StatsHypercube hcOv = CSV.load("./src/test/resources/ex_overlap.csv", "population");
+		assertFalse(DenseStatsHypercube.promote(hcOv) instanceof DenseStatsHypercube);
+	}
+
+	public void testPromoteIndex() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		//the index is built on a dense copy
+		StatsIndex index = new StatsIndex(hc, 0.5, "gender", "year", "country");
+		assertEquals(293.9, index.getSingleValue("Total", "2014", "Japan"));
+		index.getSingleStat("Total", "2014", "Japan").setValue(1);
+		assertEquals(1.0, index.getSingleValue("Total", "2014", "Japan"));
+		assertEquals(293.9, new StatsIndex(hc, "gender", "year", "country").getSingleValue("Total", "2014", "Japan"));
+		//not promoted
+		index = new StatsIndex(CSV.load("./src/test/resources/ex_non_compact.csv", "population"), 0.8, "gender", "year", "country");
+		assertEquals(3, index.getKeys().size());
+	}
+
+	public void testWriteThrough() throws Exception {
+		DenseStatsHypercube hc = new DenseStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+		StatsIndex index = new StatsIndex(hc, "gender", "year", "country");
+		Stat s = index.getSingleStat("Male", "2013", "Brasil");
+		s.setValue(s.value * 2);
+		s.addFlag(FlagType.e);
+		StatsIndex index2 = new StatsIndex(hc, "gender", "year", "country");
+		assertEquals(90.2, index2.getSingleValue("Male", "2013", "Brasil"), 1e-9);
+		assertEquals("e", index2.getSingleStat("Male", "2013", "Brasil").getFlags());
+		//the tree access gives bound stats too
+		for(Stat s_ : index.getSubIndex("Female").getCollection()) s_.setValue(0);
+		for(Stat s_ : hc.stats) if("Female".equals(s_.dims.get("gender"))) assertEquals(0.0, s_.value);
+
+		//the stats retrieved before a deletion cannot be changed
+		hc.delete("gender", "Total");
+		try {
+			s.setValue(1);
+			fail("A stat retrieved before a deletion should not be changed");
+		} catch (@SuppressWarnings("unused") IllegalStateException e) {}
+	}
+
+	public void testOperations() throws Exception {
+		DenseStatsHypercube hc = new DenseStatsHypercube(CSV.load("./src/test/resources/ex_non_compact.csv", "population"));
+		hc.mult(2);
+		assertEquals(9, hc.stats.size());
+		hc.delete("country", "Japan");
+		assertEquals(1, hc.getDimValues("country").size());
+		hc.add("unit", "MIO");
+		assertEquals(4, hc.dimLabels.size());
+		assertEquals("MIO", hc.stats.iterator().next().dims.get("unit"));
+		hc.delete("unit");
+		assertEquals(3, hc.dimLabels.size());
+	}
+
+	public void testTooManyFlags() throws Exception {
+		String[] ids = new String[300];
+		for(int i=0; i<ids.length; i++) ids[i] = "" + i;
+		DenseStatsHypercube hc = new DenseStatsHypercube(new String[] { "id" }, new String[][] { ids });
+		String flags = "bcdefinprsuxz";
+		int nb = 0;
+		try {
+			for(int i=0; i<flags.length(); i++)
+				for(int j=i+1; j<flags.length(); j++)
+					for(int k=j+1; k<flags.length(); k++) {
+						hc.setFlags(nb, "" + flags.charAt(i) + flags.charAt(j) + flags.charAt(k));
+						nb++;
+					}
+			fail("The flags of a stat should not be dropped");
+		} catch (@SuppressWarnings("unused") IllegalStateException e) {}
+		assertEquals(255, nb);
+		assertEquals("bcd", hc.getFlags(0));
+		//the existing combinations can still be used
+		hc.setFlags(299, "dcb");
+		assertEquals("bcd", hc.getFlags(299));
+	}
+
+}
@@ -0,0 +1,57 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Operations;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class FlatStatsIndexTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(FlatStatsIndexTest.class);
+	}*/
+
+	public void testSingleValue() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		FlatStatsIndex index = new FlatStatsIndex(hc, "gender", "year", "country");
+		assertEquals(293.9, index.getSingleValue("Total", "2014", "Japan"));
+		assertEquals(45.1, index.getSingleStat("Male", "2013", "Brasil").value);
+		assertTrue(Double.isNaN(index.getSingleValue("Total", "2014", "France")));
+		assertTrue(Double.isNaN(index.getSingleValue("Total", "2014")));
+	}
+
+	public void testColumnar() throws Exception {
+		ColumnarStatsHypercube hc = new ColumnarStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+		FlatStatsIndex index = new FlatStatsIndex(hc, "gender", "year", "country");
+		assertEquals(293.9, index.getSingleValue("Total", "2014", "Japan"));
+		assertEquals(45.1, index.getSingleStat("Male", "2013", "Brasil").value);
+	}
+
+	public void testSeveral() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex_overlap.csv", "population");
+		FlatStatsIndex index = new FlatStatsIndex(hc, "gender", "year", "country");
+		assertTrue(Double.isNaN(index.getSingleValue("Female", "2013", "Brasil")));
+		assertEquals(93.4, index.getSingleValue("Total", "2013", "Brasil"));
+		index = new FlatStatsIndex(hc, "country");
+		assertNull(index.getSingleStat("Brasil"));
+	}
+
+	public void testCompute() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		StatsHypercube hcNc = CSV.load("./src/test/resources/ex_non_compact.csv", "population");
+		StatsHypercube out = Operations.compute(hc, hcNc, (v1, v2) -> v1 - v2);
+		FlatStatsIndex index = new FlatStatsIndex(out, "gender", "year", "country");
+		assertEquals(0.0, index.getSingleValue("Total", "2014", "Japan"));
+		assertTrue(Double.isNaN(index.getSingleValue("Total", "2014", "Brasil")));
+
+		ColumnarStatsHypercube chc = new ColumnarStatsHypercube(hc);
+		chc.diff(hcNc);
+		index = new FlatStatsIndex(chc, "gender", "year", "country");
+		assertEquals(0.0, index.getSingleValue("Total", "2014", "Japan"));
+		assertTrue(Double.isNaN(index.getSingleValue("Total", "2014", "Brasil")));
+	}
+
+}
@@ -0,0 +1,88 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class SelectionPlannerTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(SelectionPlannerTest.class);
+	}*/
+
+	public void testPlan() throws Exception {
+		ColumnarStatsHypercube hc = new ColumnarStatsHypercube(CSV.load("./src/test/resources/ex.csv", "population"));
+		SelectionPlanner planner = hc.getSelectionPlanner();
+		assertEquals(0.5, planner.getSelectivity(new DimValueEqualTo("country", "Japan")), 1e-9);
+		assertEquals(0.0, planner.getSelectivity(new DimValueEqualTo("country", "France")));
+		assertEquals(0.5, planner.getSelectivity(Selection.parse("year >= 2014")), 1e-9);
+
+		//the most selective first, the uncompiled last
+		Criteria custom = s -> s.value > 0;
+		Criteria[] plan = planner.plan(Selection.parse("year >= 2014 AND country = Japan AND gender = Male"));
+		assertEquals("Male", ((DimValueEqualTo)plan[0]).getDimLabelValues()[1]);
+		plan = planner.plan(new Selection.And(custom, new ValueGreaterThan(40), new DimValueEqualTo("gender", "Male")));
+		assertSame(custom, plan[2]);
+
+		//with indexes
+		hc.createBitmapIndex("country");
+		plan = hc.getSelectionPlanner().plan(Selection.parse("gender = Male AND country = Japan"));
+		assertEquals("country", ((DimValueEqualTo)plan[0]).getDimLabelValues()[0]);
+	}
+
+	public void testSelect() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		ColumnarStatsHypercube chc = new ColumnarStatsHypercube(hc);
+		String[] queries = new String[] {
+				"year >= 2014 AND country = Japan AND gender = Male",
+				"country IN (Brasil, Japan) AND value > 50",
+				"NOT country = Brasil AND (year < 2014 OR value <= 46)",
+				"country = France AND value > 0",
+		};
+		for(int k=0; k<2; k++) {
+			for(String query : queries)
+				assertEquals(hc.select(query).stats.size(), chc.select(query).stats.size());
+			chc.createBitmapIndex();
+		}
+		assertEquals(1, chc.select("year >= 2014 AND country = Japan AND gender = Male").size());
+	}
+
+	public void testConcurrentSelect() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		String[] queries = new String[] {
+				"year >= 2014 AND country = Japan AND gender = Male",
+				"country IN (Brasil, Japan) AND value > 50",
+				"NOT country = Brasil AND (year < 2014 OR value <= 46)",
+		};
+		for(int k=0; k<2; k++) {
+			//the planner and the indexes are built by concurrent selections on the shared hypercube
+			ColumnarStatsHypercube chc = new ColumnarStatsHypercube(hc);
+			if(k == 1) chc.createBitmapIndex();
+			ExecutorService pool = Executors.newFixedThreadPool(4);
+			try {
+				ArrayList<Future<Integer>> sizes = new ArrayList<>();
+				for(int i=0; i<100; i++) {
+					String query = queries[i % queries.length];
+					sizes.add(pool.submit(() -> chc.select(query).size()));
+				}
+				for(int i=0; i<sizes.size(); i++)
+					assertEquals(hc.select(queries[i % queries.length]).stats.size(), sizes.get(i).get().intValue());
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+}
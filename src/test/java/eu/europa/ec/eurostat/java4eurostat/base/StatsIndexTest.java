@@ -1,5 +1,6 @@
 package eu.europa.ec.eurostat.java4eurostat.base;
 
+import eu.europa.ec.eurostat.java4eurostat.io.CSV;
 import junit.framework.TestCase;
 
 /**
@@ -13,7 +14,14 @@ public class StatsIndexTest extends TestCase {
 	}*/
 
 	public void test() throws Exception {
-		//TODO
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		StatsIndex index = new StatsIndex(hc, "gender", "year", "country");
+		assertEquals(293.9, index.getSingleValue("Total", "2014", "Japan"));
+		assertEquals(3, index.getKeys().size());
+		assertEquals(2, index.getKeys("Total", "2014").size());
+		assertEquals(4, index.getCollection("Total").size());
+		assertEquals(12, index.getLeaves().size());
+		assertTrue(Double.isNaN(index.getSingleValue("Total", "2014", "France")));
 	}
 
 }
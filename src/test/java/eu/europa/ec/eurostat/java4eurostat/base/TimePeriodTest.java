@@ -0,0 +1,85 @@
+package eu.europa.ec.eurostat.java4eurostat.base;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.TimePeriodBetween;
+import eu.europa.ec.eurostat.java4eurostat.base.TimePeriod.Frequency;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class TimePeriodTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(TimePeriodTest.class);
+	}*/
+
+	public void testEncode() throws Exception {
+		for(String p : new String[] { "2015", "2015S2", "2015Q1", "2015M03", "1999M12", "2015W05", "2015W53", "2020W01", "2016M02D29", "1960M01D01" })
+			assertEquals(p, TimePeriod.decode(TimePeriod.encode(p)));
+		assertEquals("2015M03", TimePeriod.decode(TimePeriod.encode("2015M03 ")));
+		assertEquals(TimePeriod.encode("2015Q1"), TimePeriod.encode("2015-Q1"));
+		assertEquals(TimePeriod.encode("2015M03"), TimePeriod.encode("2015-03"));
+		assertEquals(TimePeriod.encode("2015M03D12"), TimePeriod.encode("2015-03-12"));
+		assertEquals(Frequency.W, TimePeriod.getFrequency(TimePeriod.encode("2015W05")));
+		assertEquals(2015, TimePeriod.getYear(TimePeriod.encode("2015M12D31")));
+		for(String p : new String[] { null, "", "15", "2015M13", "2015M00", "2015Q5", "2015S3", "2014W53", "2015M02D29", "2015-3", "2015X1", "Total", "20150" })
+			assertEquals("" + p, TimePeriod.NONE, TimePeriod.encode(p));
+	}
+
+	public void testArithmetic() throws Exception {
+		int m = TimePeriod.encode("2015M11");
+		assertEquals("2016M02", TimePeriod.decode(TimePeriod.add(m, 3)));
+		assertEquals("2014M12", TimePeriod.decode(TimePeriod.add(m, -11)));
+		assertEquals(14, TimePeriod.getDuration(m, TimePeriod.encode("2017M01")));
+		assertEquals("2016W01", TimePeriod.decode(TimePeriod.add(TimePeriod.encode("2015W53"), 1)));
+		assertEquals("2016M03D01", TimePeriod.decode(TimePeriod.add(TimePeriod.encode("2016M02D29"), 1)));
+		assertEquals("2016Q1", TimePeriod.decode(TimePeriod.add(TimePeriod.encode("2015Q4"), 1)));
+		try {
+			TimePeriod.getDuration(m, TimePeriod.encode("2015"));
+			fail();
+		} catch (@SuppressWarnings("unused") IllegalArgumentException e) { /* expected */ }
+	}
+
+	public void testSort() throws Exception {
+		ArrayList<String> times = new ArrayList<>(Arrays.asList("2015M10", "2015M9", "2014M12", "2015", "Total", "2014"));
+		Collections.sort(times, TimePeriod.COMPARATOR);
+		assertEquals(Arrays.asList("2014", "2015", "2014M12", "2015M9", "2015M10", "Total"), times);
+	}
+
+	public void testSelect() throws Exception {
+		StatsHypercube hc = new StatsHypercube("time");
+		for(int y=2010; y<2016; y++) {
+			hc.stats.add(new Stat(y, "time", "" + y));
+			for(int m=1; m<=12; m++) hc.stats.add(new Stat(m, "time", y + "M" + (m<10?"0":"") + m));
+		}
+		ColumnarStatsHypercube chc = new ColumnarStatsHypercube(hc);
+		assertEquals(14, hc.select(new TimePeriodBetween("time", "2012M11", "2013M12")).stats.size());
+		assertEquals(14, chc.select("time BETWEEN 2012M11 AND 2013M12").size());
+		assertEquals(3, chc.select(new TimePeriodBetween("time", "2013", null)).size());
+		assertEquals(14 / 78.0, chc.getSelectionPlanner().getSelectivity(Selection.parse("time BETWEEN 2012M11 AND 2013M12")), 1e-9);
+		try {
+			Selection.parse("time BETWEEN 2012 AND 2013M12");
+			fail();
+		} catch (@SuppressWarnings("unused") IllegalArgumentException e) { /* expected */ }
+		try {
+			new TimePeriodBetween("time", "2012Q1", "2013M12");
+			fail();
+		} catch (@SuppressWarnings("unused") IllegalArgumentException e) { /* expected */ }
+	}
+
+	public void testNbPeriods() throws Exception {
+		assertEquals(12, TimePeriod.getNbPeriods(2015, Frequency.M));
+		assertEquals(4, TimePeriod.getNbPeriods(2015, Frequency.Q));
+		assertEquals(53, TimePeriod.getNbPeriods(2015, Frequency.W));
+		assertEquals(52, TimePeriod.getNbPeriods(2016, Frequency.W));
+		assertEquals(366, TimePeriod.getNbPeriods(2016, Frequency.D));
+		assertEquals(365, TimePeriod.getNbPeriods(2015, Frequency.D));
+	}
+
+}
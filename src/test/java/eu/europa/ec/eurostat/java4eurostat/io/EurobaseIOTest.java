@@ -1,7 +1,16 @@
 package eu.europa.ec.eurostat.java4eurostat.io;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.zip.GZIPOutputStream;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
 
 import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
 import junit.framework.TestCase;
@@ -44,6 +53,41 @@ public class EurobaseIOTest extends TestCase {
 		//hc2.printInfo();
 	}
 
+	public void testBulkLocal() throws Exception {
+		//use a local bulk download folder
+		String path = "target/test/bulk/";
+		new File(path).mkdirs();
+		try (GZIPOutputStream out = new GZIPOutputStream(new FileOutputStream(path + "ex.tsv.gz"))) {
+			Files.copy(Paths.get("src/test/resources/ex.tsv"), out);
+		}
+		String base = EurobaseIO.eurobaseBulkURLBase;
+		EurobaseIO.eurobaseBulkURLBase = new File(path).toURI().toString();
+		try {
+			assertEquals(10, EurobaseIO.getDataBulk("ex").stats.size());
+			assertEquals(2, EurobaseIO.getDataBulk("ex", new DimValueEqualTo("geo", "FR")).stats.size());
+
+			//keep compressed file
+			StatsHypercube hc = EurobaseIO.getDataBulk("ex", null, "target/test/ex_copy.tsv.gz");
+			assertEquals(10, hc.stats.size());
+			assertEquals(10, EurostatTSV.loadGZIP("target/test/ex_copy.tsv.gz", null).stats.size());
+
+			EurobaseIO.getDataBulkDownload("ex", "target/test/bulk2", true);
+			assertEquals(10, EurostatTSV.load("target/test/bulk2/ex.tsv").stats.size());
+			EurobaseIO.getDataBulkDownload("ex", "target/test/bulk2", false);
+			assertEquals(10, EurostatTSV.loadGZIP("target/test/bulk2/ex.tsv.gz", null).stats.size());
+
+			//corrupt file: the failure is thrown, and no partial copy is kept
+			Files.copy(Paths.get("src/test/resources/ex.tsv"), Paths.get(path + "corrupt.tsv.gz"), StandardCopyOption.REPLACE_EXISTING);
+			try {
+				EurobaseIO.getDataBulk("corrupt", null, "target/test/corrupt_copy.tsv.gz");
+				fail("A corrupt file should not be loaded");
+			} catch (@SuppressWarnings("unused") UncheckedIOException e) {}
+			assertFalse(new File("target/test/corrupt_copy.tsv.gz").exists());
+		} finally {
+			EurobaseIO.eurobaseBulkURLBase = base;
+		}
+	}
+
 	public void testEBUpdateDate1() throws Exception {
 		Date date = EurobaseIO.getUpdateDate("prc_hicp_midx");
 		//System.out.println(date);
@@ -0,0 +1,70 @@
+package eu.europa.ec.eurostat.java4eurostat.io;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.And;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueDifferentFrom;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Or;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.ValueGreaterThan;
+import eu.europa.ec.eurostat.java4eurostat.base.Flag.FlagType;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class EurostatTSVTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(EurostatTSVTest.class);
+	}*/
+
+	public void testLoad() throws Exception {
+		StatsHypercube hc = EurostatTSV.load("./src/test/resources/ex.tsv");
+		assertEquals(4, hc.dimLabels.size());
+		assertTrue(hc.dimLabels.contains("geo"));
+		assertTrue(hc.dimLabels.contains("time"));
+		assertEquals(10, hc.stats.size());
+
+		StatsIndex index = new StatsIndex(hc, "sex", "geo", "time");
+		assertEquals(11237.5, index.getSingleValue("T", "BE", "2015"));
+		assertEquals(-0.25, index.getSingleValue("T", "FR", "2014"));
+		assertTrue(Double.isNaN(index.getSingleValue("T", "FR", "2013")));
+		assertTrue(Double.isNaN(index.getSingleValue("F", "BE", "2013")));
+		Stat s = index.getSingleStat("F", "BE", "2014");
+		assertEquals(5691.0, s.value);
+		assertTrue(s.isFlagged(FlagType.e));
+		assertTrue(s.isFlagged(FlagType.p));
+		assertFalse(index.getSingleStat("M", "BE", "2014").isFlagged(FlagType.b));
+		assertTrue(index.getSingleStat("M", "BE", "2013").isFlagged(FlagType.b));
+	}
+
+	public void testPushDown() throws Exception {
+		StatsHypercube hc = EurostatTSV.load("./src/test/resources/ex.tsv");
+		Criteria[] cris = new Criteria[] {
+				new DimValueEqualTo("geo", "FR"),
+				new DimValueEqualTo("time", "2014"),
+				new And(new DimValueEqualTo("sex", "T"), new DimValueGreaterThan("time", 2013)),
+				new And(new DimValueDifferentFrom("geo", "FR"), new ValueGreaterThan(5600)),
+				new Or(new DimValueEqualTo("geo", "FR"), new DimValueEqualTo("time", "2013")),
+				new DimValueEqualTo("unit", "PC"),
+		};
+		for(Criteria cri : cris)
+			assertEquals(hc.select(cri).stats.size(), EurostatTSV.load("./src/test/resources/ex.tsv", cri).stats.size());
+		assertEquals(2, EurostatTSV.load("./src/test/resources/ex.tsv", cris[0]).stats.size());
+	}
+
+	public void testParseCell() throws Exception {
+		assertEquals(0.05, EurostatTSV.parseCell("0.05 ", 0, 5).value);
+		assertEquals(1234567.891, EurostatTSV.parseCell("1234567.891", 0, 11).value);
+		assertEquals(12345678901234567890.0, EurostatTSV.parseCell("12345678901234567890", 0, 20).value);
+		assertNull(EurostatTSV.parseCell(": z", 0, 3));
+		assertNull(EurostatTSV.parseCell(" ", 0, 1));
+		assertTrue(EurostatTSV.parseCell("12 u", 0, 4).isFlagged(FlagType.u));
+	}
+
+}
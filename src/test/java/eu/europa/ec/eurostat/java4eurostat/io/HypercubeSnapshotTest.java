@@ -0,0 +1,73 @@
+package eu.europa.ec.eurostat.java4eurostat.io;
+
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class HypercubeSnapshotTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(HypercubeSnapshotTest.class);
+	}*/
+
+	private static final String outpath = "./target/test/";
+
+	private static void assertSameStats(StatsHypercube hc1, StatsHypercube hc2) {
+		assertEquals(hc1.dimLabels.size(), hc2.dimLabels.size());
+		assertTrue(hc2.dimLabels.containsAll(hc1.dimLabels));
+		assertEquals(hc1.stats.size(), hc2.stats.size());
+		String[] dimLabels = hc1.getDimLabels();
+		StatsIndex index = new StatsIndex(hc2, dimLabels);
+		for(Stat s : hc1.stats) {
+			Stat s2 = index.getSingleStat(s.getDimValues(dimLabels));
+			assertNotNull(s2);
+			assertEquals(s.value, s2.value);
+			assertEquals(s.getFlags().length(), s2.getFlags().length());
+			for(char f : s.getFlags().toCharArray()) assertTrue(s2.getFlags().indexOf(f) >= 0);
+		}
+	}
+
+	public void testCSV() throws Exception {
+		StatsHypercube hc = CSV.load("./src/test/resources/ex.csv", "population");
+		for(boolean compress : new boolean[] { false, true }) {
+			HypercubeSnapshot.save(hc, outpath + "ex.j4es", compress);
+			ColumnarStatsHypercube hc2 = HypercubeSnapshot.load(outpath + "ex.j4es");
+			assertSameStats(hc, hc2);
+
+			//round trip through CSV
+			CSV.save(hc2, "population", outpath + "ex_snapshot.csv");
+			assertSameStats(hc, CSV.load(outpath + "ex_snapshot.csv", "population"));
+		}
+	}
+
+	public void testTSV() throws Exception {
+		StatsHypercube hc = EurostatTSV.load("./src/test/resources/ex.tsv");
+		for(boolean compress : new boolean[] { false, true }) {
+			HypercubeSnapshot.save(hc, outpath + "ex_tsv.j4es", compress);
+			ColumnarStatsHypercube hc2 = HypercubeSnapshot.load(outpath + "ex_tsv.j4es");
+			assertSameStats(hc, hc2);
+			assertEquals(3, hc2.getDimValues("time").size());
+
+			//the loaded hypercube can be changed
+			hc2.addStat(1.0, "p", "unit", "THS", "sex", "T", "geo", "LU", "time", "2015");
+			assertEquals(11, hc2.stats.size());
+		}
+	}
+
+	public void testEmpty() throws Exception {
+		HypercubeSnapshot.save(new StatsHypercube("geo", "time"), outpath + "empty.j4es");
+		ColumnarStatsHypercube hc = HypercubeSnapshot.load(outpath + "empty.j4es");
+		assertEquals(0, hc.stats.size());
+		assertEquals(2, hc.dimLabels.size());
+		hc.addStat(1.0, null, "geo", "LU", "time", "2015");
+		assertEquals(1, hc.stats.size());
+		assertNull(HypercubeSnapshot.load("./src/test/resources/ex.csv"));
+	}
+
+}
@@ -0,0 +1,88 @@
+package eu.europa.ec.eurostat.java4eurostat.io;
+
+import java.io.FileInputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection;
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.Criteria;
+import eu.europa.ec.eurostat.java4eurostat.base.Flag.FlagType;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class JSONStatTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(JSONStatTest.class);
+	}*/
+
+	private static String data() throws Exception {
+		return new String(Files.readAllBytes(Paths.get("./src/test/resources/ex.json")), "UTF-8");
+	}
+
+	public void testLoad() throws Exception {
+		StatsHypercube hc = JSONStat.load(data());
+		assertEquals(3, hc.dimLabels.size());
+		assertEquals(10, hc.stats.size());
+		StatsIndex index = new StatsIndex(hc, "geo", "time");
+		assertEquals(11.5, index.getSingleValue("BE", "2012"));
+		assertEquals(0.8, index.getSingleValue("LU", "2015"));
+		assertTrue(Double.isNaN(index.getSingleValue("FR", "2015")));
+		assertTrue(index.getSingleStat("BE", "2014").isFlagged(FlagType.e));
+		assertTrue(index.getSingleStat("FR", "2014").isFlagged(FlagType.p));
+		assertFalse(JSONStat.load(data(), false).select("geo = BE AND time = 2014").stats.iterator().next().isFlagged(FlagType.e));
+	}
+
+	public void testStream() throws Exception {
+		try (FileInputStream in = new FileInputStream("./src/test/resources/ex.json")) {
+			StatsHypercube hc = JSONStat.load(in, true, null);
+			assertEquals(10, hc.stats.size());
+			assertTrue(new StatsIndex(hc, "geo", "time").getSingleStat("BE", "2014").isFlagged(FlagType.e));
+		}
+	}
+
+	public void testForms() throws Exception {
+		//values and status first, as arrays
+		String data = "{\"value\":[1.5,null,3,4],\"status\":[null,\"e\",\"p\",null],\"label\":{\"a\":[1,2]},"
+				+ "\"id\":[\"geo\",\"time\"],\"size\":[2,2],"
+				+ "\"dimension\":{\"geo\":{\"category\":{\"index\":[\"BE\",\"FR\"]}},\"time\":{\"category\":{\"index\":{\"2015\":1,\"2014\":0}}}}}";
+		StatsHypercube hc = JSONStat.load(data);
+		assertEquals(3, hc.stats.size());
+		StatsIndex index = new StatsIndex(hc, "geo", "time");
+		assertEquals(1.5, index.getSingleValue("BE", "2014"));
+		assertEquals(4.0, index.getSingleValue("FR", "2015"));
+		assertTrue(index.getSingleStat("FR", "2014").isFlagged(FlagType.p));
+		assertEquals(1, JSONStat.load(data, true, Selection.parse("time = 2015")).stats.size());
+
+		//unordered value object, and single status
+		data = "{\"id\":[\"geo\"],\"size\":[3],\"dimension\":{\"geo\":{\"category\":{\"index\":{\"BE\":0,\"FR\":1,\"LU\":2}}}},"
+				+ "\"value\":{\"2\":3,\"0\":1},\"status\":\"p\"}";
+		index = new StatsIndex(JSONStat.load(data), "geo");
+		assertEquals(3.0, index.getSingleValue("LU"));
+		assertTrue(index.getSingleStat("BE").isFlagged(FlagType.p));
+		assertTrue(Double.isNaN(index.getSingleValue("FR")));
+	}
+
+	public void testPushDown() throws Exception {
+		String data = data();
+		StatsHypercube all = JSONStat.load(data);
+		String[] queries = new String[] {
+				"geo = FR",
+				"geo IN (BE,LU) AND time >= 2014",
+				"time = 2015 AND value > 1",
+				"geo = FR OR time = 2012",
+				"geo = DE",
+				"unit = NR AND NOT geo = BE AND time < 2015",
+		};
+		for(String query : queries) {
+			Criteria cri = Selection.parse(query);
+			assertEquals(query, all.select(cri).stats.size(), JSONStat.load(data, true, cri).stats.size());
+		}
+	}
+
+}
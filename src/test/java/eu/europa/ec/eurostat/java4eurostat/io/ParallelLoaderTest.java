@@ -0,0 +1,81 @@
+package eu.europa.ec.eurostat.java4eurostat.io;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import eu.europa.ec.eurostat.java4eurostat.analysis.Selection.DimValueEqualTo;
+import eu.europa.ec.eurostat.java4eurostat.base.ColumnarStatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.Stat;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsHypercube;
+import eu.europa.ec.eurostat.java4eurostat.base.StatsIndex;
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class ParallelLoaderTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(ParallelLoaderTest.class);
+	}*/
+
+	private static void assertSameStats(StatsHypercube hc1, StatsHypercube hc2) {
+		assertEquals(hc1.dimLabels.size(), hc2.dimLabels.size());
+		assertEquals(hc1.stats.size(), hc2.stats.size());
+		String[] dimLabels = hc1.getDimLabels();
+		StatsIndex index = new StatsIndex(hc2, dimLabels);
+		for(Stat s : hc1.stats) {
+			Stat s2 = index.getSingleStat(s.getDimValues(dimLabels));
+			assertNotNull(s2);
+			assertEquals(s.value, s2.value);
+			assertEquals(s.getFlags().length(), s2.getFlags().length());
+		}
+	}
+
+	public void testTSV() throws Exception {
+		int mcs = ParallelLoader.minChunkSize;
+		ParallelLoader.minChunkSize = 8;
+		StatsHypercube hc = EurostatTSV.loadParallel("./src/test/resources/ex.tsv", null, 3);
+		assertTrue(hc instanceof ColumnarStatsHypercube);
+		assertSameStats(EurostatTSV.load("./src/test/resources/ex.tsv"), hc);
+		assertSameStats(EurostatTSV.load("./src/test/resources/ex.tsv", new DimValueEqualTo("geo", "BE")), EurostatTSV.loadParallel("./src/test/resources/ex.tsv", new DimValueEqualTo("geo", "BE"), 2));
+		ParallelLoader.minChunkSize = mcs;
+		assertSameStats(EurostatTSV.load("./src/test/resources/ex.tsv"), EurostatTSV.loadParallel("./src/test/resources/ex.tsv", null));
+	}
+
+	public void testCSV() throws Exception {
+		int mcs = ParallelLoader.minChunkSize;
+		ParallelLoader.minChunkSize = 16;
+		for(String file : new String[] { "ex.csv", "ex_non_compact.csv" }) {
+			StatsHypercube hc = CSV.loadParallel("./src/test/resources/"+file, "population", null);
+			assertSameStats(CSV.load("./src/test/resources/"+file, "population"), hc);
+		}
+		assertEquals(CSV.load("./src/test/resources/ex_dirty.csv", "population").stats.size(), CSV.loadParallel("./src/test/resources/ex_dirty.csv", "population", null).stats.size());
+		assertEquals(6, CSV.loadParallel("./src/test/resources/ex.csv", "population", new DimValueEqualTo("country", "Japan")).stats.size());
+		ParallelLoader.minChunkSize = mcs;
+	}
+
+	public void testCorruptChunk() throws Exception {
+		File f = new File("./target/test/parallel_corrupt.txt");
+		f.getParentFile().mkdirs();
+		StringBuilder sb = new StringBuilder();
+		for(int i=0; i<100; i++) sb.append(i == 70 ? "corrupt" : "v" + i).append('\n');
+		Files.write(f.toPath(), sb.toString().getBytes());
+
+		int mcs = ParallelLoader.minChunkSize;
+		ParallelLoader.minChunkSize = 16;
+		try {
+			ParallelLoader.load(f.getPath(), 0, 3, () -> (line, chunk) -> {
+				if("corrupt".equals(line)) throw new IllegalArgumentException("Corrupt line");
+				chunk.addStat(1, null, "id", line);
+			}, "id");
+			fail("The loading of a corrupt chunk should fail");
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		} finally {
+			ParallelLoader.minChunkSize = mcs;
+		}
+	}
+
+}
@@ -0,0 +1,40 @@
+package eu.europa.ec.eurostat.java4eurostat.util;
+
+import java.util.Random;
+
+import org.apache.commons.math3.stat.StatUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class StatsUtilTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(StatsUtilTest.class);
+	}*/
+
+	public void testPercentiles() throws Exception {
+		Random r = new Random(3);
+		for(int n : new int[] { 1, 2, 3, 10, 101, 1000 }) {
+			double[] vals = new double[n];
+			for(int i=0; i<n; i++) vals[i] = r.nextInt(50) + r.nextDouble();
+			double[] ps = new double[] { 0.5, 1, 10, 25, 33.3, 50, 75, 90, 99, 100 };
+			double[] out = StatsUtil.getPercentiles(vals, ps);
+			for(int i=0; i<ps.length; i++)
+				assertEquals(StatUtils.percentile(vals, ps[i]), out[i], 1e-12);
+		}
+	}
+
+	public void testQuantiles() throws Exception {
+		double[] vals = new double[] { 5, 1, Double.NaN, 4, 2, 3 };
+		double[] qs = StatsUtil.getQuantiles(vals, 3);
+		assertEquals(3, qs.length);
+		assertEquals(StatUtils.percentile(new double[] { 1, 2, 3, 4, 5 }, 25), qs[0], 1e-12);
+		assertEquals(3.0, qs[1], 1e-12);
+		assertTrue(Double.isNaN(StatsUtil.getPercentiles(new double[0], 50)[0]));
+	}
+
+}
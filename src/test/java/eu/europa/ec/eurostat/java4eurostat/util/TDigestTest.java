@@ -0,0 +1,71 @@
+package eu.europa.ec.eurostat.java4eurostat.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.math3.stat.StatUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * @author julien Gaffuri
+ *
+ */
+public class TDigestTest extends TestCase {
+
+	/*public static void main(String[] args) throws Exception {
+		junit.textui.TestRunner.run(TDigestTest.class);
+	}*/
+
+	private static double[] values(int n, long seed) {
+		Random r = new Random(seed);
+		double[] vals = new double[n];
+		for(int i=0; i<n; i++) vals[i] = Math.exp(r.nextGaussian());
+		return vals;
+	}
+
+	public void testQuantiles() throws Exception {
+		double[] vals = values(200000, 1);
+		TDigest td = new TDigest();
+		for(double v : vals) td.add(v);
+		assertEquals(200000, td.size());
+		assertEquals(StatUtils.min(vals), td.quantile(0));
+		assertEquals(StatUtils.max(vals), td.quantile(1));
+
+		//check the rank error
+		double[] sorted = vals.clone();
+		Arrays.sort(sorted);
+		for(double q : new double[] { 0.001, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.99, 0.999 }) {
+			double v = td.quantile(q);
+			int rank = Arrays.binarySearch(sorted, v);
+			if(rank < 0) rank = -rank - 1;
+			assertEquals(q, rank / (double)sorted.length, 0.005);
+		}
+	}
+
+	public void testMerge() throws Exception {
+		double[] vals = values(100000, 2);
+		TDigest td = new TDigest(), td1 = new TDigest(), td2 = new TDigest();
+		for(int i=0; i<vals.length; i++) {
+			td.add(vals[i]);
+			(i%3 == 0 ? td1 : td2).add(vals[i]);
+		}
+		td1.merge(td2);
+		assertEquals(td.size(), td1.size());
+		for(double q : new double[] { 0.01, 0.5, 0.99 })
+			assertEquals(td.quantile(q), td1.quantile(q), 0.02 * td.quantile(q));
+	}
+
+	public void testSmall() throws Exception {
+		TDigest td = new TDigest();
+		assertTrue(Double.isNaN(td.quantile(0.5)));
+		td.add(3);
+		assertEquals(3.0, td.quantile(0.5));
+		td.add(Double.NaN);
+		td.add(1);
+		td.add(2);
+		assertEquals(3, td.size());
+		assertEquals(2.0, td.quantile(0.5), 1e-9);
+	}
+
+}